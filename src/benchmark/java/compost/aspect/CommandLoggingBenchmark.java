@@ -0,0 +1,130 @@
+package compost.aspect;
+
+import compost.annotation.BotCommandMapping;
+import compost.bot.CodeCompostInspectorBot.CommandContext;
+import compost.bot.handlers.CommandHandler;
+import compost.bot.handlers.InstrumentedCommandHandler;
+import compost.util.Constants.BotCommand;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilder;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilderFactory;
+import org.apache.logging.log4j.core.config.builder.api.LoggerComponentBuilder;
+import org.apache.logging.log4j.core.config.builder.impl.BuiltConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+/**
+ * Цена логирования команды с синхронным или асинхронным логгером и разной частотой выборки:
+ *
+ * <ul>
+ *   <li>direct — обработчик без логирования;
+ *   <li>legacy — прежний аспект ({@link LegacyCommandLoggingAspect}), две записи на вызов;
+ *   <li>instrumented — {@link InstrumentedCommandHandler}, как обработчики подключены сейчас.
+ * </ul>
+ *
+ * <p>Вывод идёт в /dev/null с той же раскладкой, что и в log4j2-spring.xml, так что замер включает
+ * форматирование, но не скорость консоли.
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="CommandLoggingBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j2.asyncQueueFullPolicy=Discard")
+public class CommandLoggingBenchmark {
+
+  private static final String PATTERN = "%d{DEFAULT_PERIOD} [%t] %-5level %logger{36} - %msg%n";
+
+  /** sync — Logger с синхронным appender'ом, async — AsyncLogger. */
+  @Param({"sync", "async"})
+  private String logging;
+
+  /** Логировать в среднем один успешный вызов из sampleRate (для instrumented). */
+  @Param({"1", "100"})
+  private int sampleRate;
+
+  private final TopHandler direct = new TopHandler();
+  private final CommandContext context = new CommandContext(1L, null, null, "/top");
+  private TopHandler legacy;
+  private InstrumentedCommandHandler instrumented;
+
+  @Setup
+  public void setUp() {
+    ConfigurationBuilder<BuiltConfiguration> builder =
+        ConfigurationBuilderFactory.newConfigurationBuilder();
+    builder.add(
+        builder
+            .newAppender("Null", "File")
+            .addAttribute("fileName", "/dev/null")
+            .addAttribute("immediateFlush", false)
+            .add(builder.newLayout("PatternLayout").addAttribute("pattern", PATTERN)));
+    LoggerComponentBuilder compost =
+        "async".equals(logging)
+            ? builder.newAsyncLogger("compost", Level.INFO)
+            : builder.newLogger("compost", Level.INFO);
+    builder.add(compost.add(builder.newAppenderRef("Null")).addAttribute("additivity", false));
+    builder.add(builder.newRootLogger(Level.WARN).add(builder.newAppenderRef("Null")));
+    Configurator.reconfigure(builder.build());
+
+    legacy = proxy(new LegacyCommandLoggingAspect());
+    instrumented =
+        new InstrumentedCommandHandler(
+            BotCommand.TOP, new TopHandler(), new SimpleMeterRegistry(), sampleRate);
+  }
+
+  private static TopHandler proxy(Object loggingAspect) {
+    AspectJProxyFactory factory = new AspectJProxyFactory(new TopHandler());
+    factory.setProxyTargetClass(true);
+    factory.addAspect(loggingAspect);
+    return factory.getProxy();
+  }
+
+  @Benchmark
+  public int direct() {
+    direct.handle(context);
+    return direct.calls;
+  }
+
+  @Benchmark
+  public int legacy() {
+    legacy.handle(context);
+    return legacy.calls();
+  }
+
+  @Benchmark
+  public CommandHandler instrumented() {
+    instrumented.handle(context);
+    return instrumented;
+  }
+
+  @BotCommandMapping(BotCommand.TOP)
+  public static class TopHandler implements CommandHandler {
+    int calls;
+
+    @Override
+    public void handle(CommandContext context) {
+      calls++;
+    }
+
+    public int calls() {
+      return calls;
+    }
+  }
+}
@@ -4,17 +4,19 @@ import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
-import org.springframework.stereotype.Component;
 
+/**
+ * Прежний аспект логирования команд: две записи INFO на каждый вызов обработчика через прокси.
+ * В приложении его заменил {@code InstrumentedCommandHandler}, здесь он оставлен только для
+ * сравнения в {@link CommandLoggingBenchmark}.
+ */
 @Aspect
-@Component
 @Slf4j
-public class CommandLoggingAspect {
+public class LegacyCommandLoggingAspect {
 
-  @Around("@annotation(compost.annotation.LoggableCommand)")
+  @Around("execution(* compost.bot.handlers.CommandHandler.handle(..))")
   public Object logCommandExecution(ProceedingJoinPoint joinPoint) throws Throwable {
     String methodName = joinPoint.getSignature().getName();
-    Object[] args = joinPoint.getArgs();
 
     log.info("Вызов команды: {}", methodName);
 
@@ -0,0 +1,105 @@
+package compost.bot;
+
+import compost.bot.CodeCompostInspectorBot.CommandContext;
+import compost.bot.handlers.CommandHandler;
+import compost.bot.handlers.UnknownCommandHandler;
+import compost.storage.StorageDriver;
+import compost.util.Constants;
+import compost.util.Constants.BotCommand;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Сравнение поиска обработчика: прежний split/substring + поток по {@code BotCommand.values()}
+ * против {@link CommandRouter}, а также полный путь {@link UpdateProcessor#process}, который
+ * выполняется для каждого обновления из {@code onUpdateReceived}. Обновления приходят из личного
+ * чата в разрешённой теме, чтобы замер не включал учёт активности и ответ о неверной теме.
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="CommandRoutingBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandRoutingBenchmark {
+
+  @Param({"/top", "/addtag@codeCompostInspectorBot #java язык", "/panic@OtherBot"})
+  private String text;
+
+  private final CommandHandler unknown = new UnknownCommandHandler(null);
+  private final Map<BotCommand, CommandHandler> hashHandlers = new HashMap<>();
+  private CommandRouter router;
+  private UpdateProcessor processor;
+  private Update update;
+
+  @Setup
+  public void setUp() {
+    Map<BotCommand, CommandHandler> handlers = new EnumMap<>(BotCommand.class);
+    for (BotCommand command : BotCommand.values()) {
+      CommandHandler handler = new NamedHandler(command);
+      handlers.put(command, handler);
+      hashHandlers.put(command, handler);
+    }
+    router =
+        new CommandRouter(handlers, (UnknownCommandHandler) unknown, "codeCompostInspectorBot");
+    processor =
+        new UpdateProcessor(
+            router, null, null, new BacklogCatchUp(null, 0, false, 0, 0), StorageDriver.SYNC);
+
+    Chat chat = new Chat(42L, "private");
+    Message message = new Message();
+    message.setChat(chat);
+    message.setText(text);
+    message.setMessageThreadId(Constants.ALLOWED_THREAD_ID);
+    update = new Update();
+    update.setMessage(message);
+  }
+
+  @Benchmark
+  public CommandHandler legacy() {
+    String rawCommand = text.split(" ")[0];
+    String command =
+        rawCommand.contains("@") ? rawCommand.substring(0, rawCommand.indexOf("@")) : rawCommand;
+    return Arrays.stream(BotCommand.values())
+        .filter(cmd -> cmd.getCommand().equalsIgnoreCase(command))
+        .findFirst()
+        .map(cmd -> hashHandlers.getOrDefault(cmd, unknown))
+        .orElse(unknown);
+  }
+
+  @Benchmark
+  public CommandHandler router() {
+    return router.route(text);
+  }
+
+  @Benchmark
+  public void process() {
+    processor.process(update);
+  }
+
+  private record NamedHandler(BotCommand command) implements CommandHandler {
+    @Override
+    public void handle(CommandContext context) {}
+  }
+}
@@ -0,0 +1,50 @@
+package compost.load;
+
+import compost.model.UserActivity;
+import compost.storage.ActivityBucketRepository;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Корзины активности в памяти для нагрузочного стенда; без TTL — прогон короткий. */
+class InMemoryActivityBucketRepository implements ActivityBucketRepository {
+
+  private final Map<BucketKey, Map<Long, Integer>> buckets = new ConcurrentHashMap<>();
+
+  @Override
+  public void increment(Collection<UserActivity> activities) {
+    for (UserActivity activity : activities) {
+      activity
+          .hourly()
+          .forEach(
+              (hour, count) -> {
+                for (Granularity granularity : Granularity.values()) {
+                  Map<Long, Integer> counts =
+                      buckets.computeIfAbsent(
+                          new BucketKey(
+                              activity.chatId(), granularity, granularity.bucketStart(hour)),
+                          k -> new ConcurrentHashMap<>());
+                  counts.merge(activity.userId(), count, Integer::sum);
+                }
+              });
+    }
+  }
+
+  @Override
+  public Map<Long, Integer> countsSince(Long chatId, Granularity granularity, Instant from) {
+    Map<Long, Integer> totals = new HashMap<>();
+    buckets.forEach(
+        (key, counts) -> {
+          if (key.chatId().equals(chatId)
+              && key.granularity() == granularity
+              && !key.start().isBefore(from)) {
+            counts.forEach((userId, count) -> totals.merge(userId, count, Integer::sum));
+          }
+        });
+    return totals;
+  }
+
+  private record BucketKey(Long chatId, Granularity granularity, Instant start) {}
+}
@@ -0,0 +1,92 @@
+package compost.load;
+
+import compost.service.TagService.ParsedTag;
+import compost.storage.TagRepository;
+import compost.util.Constants.TagOperationResult;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Потокобезопасный TagRepository в памяти для нагрузочного стенда. Чат блокируется целиком. */
+class InMemoryTagRepository implements TagRepository {
+
+  private final Map<Long, SortedMap<String, String>> chats = new ConcurrentHashMap<>();
+
+  @Override
+  public Set<String> getTags(Long chatId) {
+    SortedMap<String, String> tags = chat(chatId);
+    synchronized (tags) {
+      return new TreeSet<>(tags.keySet());
+    }
+  }
+
+  @Override
+  public boolean addTag(Long chatId, String tag, String description) {
+    SortedMap<String, String> tags = chat(chatId);
+    synchronized (tags) {
+      tags.put(tag, description);
+    }
+    return true;
+  }
+
+  @Override
+  public boolean removeTag(Long chatId, String tag) {
+    SortedMap<String, String> tags = chat(chatId);
+    synchronized (tags) {
+      tags.remove(tag);
+    }
+    return true;
+  }
+
+  @Override
+  public Map<String, String> getTagMap(Long chatId) {
+    SortedMap<String, String> tags = chat(chatId);
+    synchronized (tags) {
+      return new TreeMap<>(tags);
+    }
+  }
+
+  @Override
+  public void batchUpdateTagDescription(Long chatId, List<ParsedTag> tagsToUpdate) {
+    SortedMap<String, String> tags = chat(chatId);
+    synchronized (tags) {
+      for (ParsedTag tag : tagsToUpdate) {
+        tags.replace(tag.tag(), tag.description());
+      }
+    }
+  }
+
+  @Override
+  public void batchClearTagDescription(Long chatId, List<String> tagsToClear) {
+    SortedMap<String, String> tags = chat(chatId);
+    synchronized (tags) {
+      for (String tag : tagsToClear) {
+        tags.replace(tag, "");
+      }
+    }
+  }
+
+  @Override
+  public Map<String, TagOperationResult> applyTagChanges(Long chatId, List<ParsedTag> changes) {
+    SortedMap<String, String> tags = chat(chatId);
+    Map<String, TagOperationResult> outcomes = new LinkedHashMap<>();
+    synchronized (tags) {
+      for (ParsedTag change : changes) {
+        boolean existed = tags.put(change.tag(), change.description()) != null;
+        outcomes.putIfAbsent(
+            change.tag(),
+            existed ? TagOperationResult.UPDATED_DESCRIPTION : TagOperationResult.SUCCESS);
+      }
+    }
+    return outcomes;
+  }
+
+  private SortedMap<String, String> chat(Long chatId) {
+    return chats.computeIfAbsent(chatId, id -> new TreeMap<>());
+  }
+}
@@ -0,0 +1,20 @@
+package compost.load;
+
+import compost.storage.UpdateOffsetRepository;
+import java.util.Optional;
+
+/** Позиция обработки обновлений в памяти для нагрузочного стенда. */
+class InMemoryUpdateOffsetRepository implements UpdateOffsetRepository {
+
+  private volatile Offset offset;
+
+  @Override
+  public Optional<Offset> load() {
+    return Optional.ofNullable(offset);
+  }
+
+  @Override
+  public void save(Offset offset) {
+    this.offset = offset;
+  }
+}
@@ -0,0 +1,121 @@
+package compost.load;
+
+import compost.model.SimpleUser;
+import compost.model.UserActivity;
+import compost.storage.MongoUserRepository.RankedUser;
+import compost.storage.UserRepository;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Потокобезопасный UserRepository в памяти для нагрузочного стенда. Рейтинг сортирует участников
+ * так же, как MongoDB: по messageCount по убыванию, затем по id.
+ */
+class InMemoryUserRepository implements UserRepository {
+
+  private static final Comparator<StoredUser> RANKING =
+      Comparator.comparingInt(StoredUser::messageCount)
+          .reversed()
+          .thenComparing(stored -> stored.user().getId());
+
+  private final Map<Long, Map<Long, StoredUser>> chats = new ConcurrentHashMap<>();
+
+  @Override
+  public void bulkUpsertUsers(long flushId, Collection<UserActivity> activities) {
+    activities.forEach(this::store);
+  }
+
+  @Override
+  public SimpleUser getUser(Long chatId, Long userId) {
+    Map<Long, StoredUser> users = chat(chatId);
+    synchronized (users) {
+      StoredUser stored = users.get(userId);
+      return stored != null ? stored.user() : null;
+    }
+  }
+
+  @Override
+  public Collection<SimpleUser> getAllUsers(Long chatId) {
+    Map<Long, StoredUser> users = chat(chatId);
+    synchronized (users) {
+      return users.values().stream().map(StoredUser::user).toList();
+    }
+  }
+
+  @Override
+  public List<SimpleUser> getUsers(Long chatId, Collection<Long> userIds) {
+    Map<Long, StoredUser> users = chat(chatId);
+    synchronized (users) {
+      return userIds.stream()
+          .map(users::get)
+          .filter(Objects::nonNull)
+          .map(StoredUser::user)
+          .toList();
+    }
+  }
+
+  @Override
+  public void forEachUser(Long chatId, Consumer<SimpleUser> action) {
+    getAllUsers(chatId).forEach(action);
+  }
+
+  @Override
+  public List<SimpleUser> getUsersAfter(Long chatId, Long afterUserId, int limit) {
+    return getAllUsers(chatId).stream()
+        .filter(user -> afterUserId == null || user.getId() > afterUserId)
+        .sorted(Comparator.comparing(SimpleUser::getId))
+        .limit(limit)
+        .toList();
+  }
+
+  @Override
+  public List<RankedUser> getTopUsers(Long chatId, int limit) {
+    List<RankedUser> ranking = getRanking(chatId);
+    return ranking.size() > limit ? ranking.subList(0, limit) : ranking;
+  }
+
+  @Override
+  public List<RankedUser> getRanking(Long chatId) {
+    List<StoredUser> sorted;
+    Map<Long, StoredUser> users = chat(chatId);
+    synchronized (users) {
+      sorted = new ArrayList<>(users.values());
+    }
+    sorted.sort(RANKING);
+    List<RankedUser> ranking = new ArrayList<>(sorted.size());
+    for (StoredUser stored : sorted) {
+      ranking.add(new RankedUser(stored.user(), stored.messageCount(), ranking.size() + 1));
+    }
+    return ranking;
+  }
+
+  @Override
+  public Collection<Long> getChatIds() {
+    return List.copyOf(chats.keySet());
+  }
+
+  private void store(UserActivity activity) {
+    Map<Long, StoredUser> users = chat(activity.chatId());
+    SimpleUser user =
+        new SimpleUser(
+            activity.userId(), activity.username(), activity.firstName(), activity.lastName());
+    synchronized (users) {
+      StoredUser previous = users.get(activity.userId());
+      int count = (previous != null ? previous.messageCount() : 0) + activity.increment();
+      users.put(activity.userId(), new StoredUser(user, count));
+    }
+  }
+
+  private Map<Long, StoredUser> chat(Long chatId) {
+    return chats.computeIfAbsent(chatId, id -> new HashMap<>());
+  }
+
+  private record StoredUser(SimpleUser user, int messageCount) {}
+}
@@ -0,0 +1,473 @@
+package compost.load;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+import compost.annotation.BotCommandMapping;
+import compost.bot.AppliedUpdates;
+import compost.bot.BacklogCatchUp;
+import compost.bot.CodeCompostInspectorBot;
+import compost.bot.CommandRouter;
+import compost.bot.UpdateDispatcher;
+import compost.bot.UpdateDispatcher.RejectionPolicy;
+import compost.bot.UpdateProcessor;
+import compost.bot.handlers.AddTagCommandHandler;
+import compost.bot.handlers.CommandHandler;
+import compost.bot.handlers.DeleteTagCommandHandler;
+import compost.bot.handlers.HelpCommandHandler;
+import compost.bot.handlers.InstrumentedCommandHandler;
+import compost.bot.handlers.MentionAllCommandHandler;
+import compost.bot.handlers.TagsCommandHandler;
+import compost.bot.handlers.TopCommandHandler;
+import compost.bot.handlers.UnknownCommandHandler;
+import compost.service.ActivityLeaderboard;
+import compost.service.TagService;
+import compost.service.UserService;
+import compost.storage.ActivityBucketRepository;
+import compost.storage.AsyncActivityBucketRepository;
+import compost.storage.AsyncTagRepository;
+import compost.storage.AsyncUserRepository;
+import compost.storage.CachingTagRepository;
+import compost.storage.MongoActivityBucketRepository;
+import compost.storage.MongoSchemaManager;
+import compost.storage.MongoSchemaManager.CollScanPolicy;
+import compost.storage.MongoTagRepository;
+import compost.storage.MongoUpdateOffsetRepository;
+import compost.storage.MongoUserRepository;
+import compost.storage.SchemaMigration;
+import compost.storage.StorageDriver;
+import compost.storage.TagRepository;
+import compost.storage.UpdateOffsetRepository;
+import compost.storage.UserActivityBuffer;
+import compost.storage.UserProfileCache;
+import compost.storage.UserRepository;
+import compost.storage.codec.BotCodecs;
+import compost.util.Constants;
+import compost.util.Constants.BotCommand;
+import compost.util.MessageUtils;
+import compost.util.OutboundMessageQueue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+/**
+ * Нагрузочный стенд: генерирует поток Update и подаёт его в {@link
+ * CodeCompostInspectorBot#onUpdateReceived} одного экземпляра бота, собранного вручную из боевых
+ * классов (диспетчер, маршрутизатор, обработчики, сервисы, буфер активности, очередь отправки).
+ * Telegram заменён {@link RecordingTelegramSender}, хранилище — памятью или локальным mongod.
+ *
+ * <p>Поток обновлений: чаты выбираются по Zipf, участники внутри чата — тоже по Zipf, доля
+ * обычных сообщений и команд /top, /tags, /addtag, /all задаётся параметром {@code mix}. Задержка
+ * обновления — от вызова onUpdateReceived (или от запланированного момента при заданном {@code
+ * rate}, чтобы не прятать очередь) до конца его обработки. Отправка ответов асинхронна и в
+ * задержку не входит.
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec@load -Dload.args="updates=500000 chats=500 rate=0"
+ * mvn -Pjmh test-compile exec:exec@load -Dload.args="mongo-uri=mongodb://localhost:27017"
+ * </pre>
+ *
+ * <p>Параметры (key=value): updates, warmup, chats, users, zipf, mix, rate (обновлений в секунду,
+ * 0 — без ограничения), threads, queue-depth, send-latency-ms, telegram-limits, mongo-uri, seed,
+ * backlog-seconds (насколько даты сообщений отстают от текущего времени — разбор бэклога после
+ * простоя, см. {@link BacklogCatchUp}).
+ */
+public final class LoadHarness {
+
+  /** Вид обновления в сгенерированном потоке. */
+  enum Kind {
+    PLAIN,
+    TOP,
+    TAGS,
+    ADDTAG,
+    ALL
+  }
+
+  private static final int TAG_VOCABULARY = 300;
+
+  private final Map<String, String> options;
+  private final int updates;
+  private final int warmup;
+  private final int chats;
+  private final int usersPerChat;
+  private final double zipf;
+  private final long rate;
+  private final long backlogSeconds;
+  private final Kind[] mixTable;
+  private final SplittableRandom random;
+
+  private final long[] startNanos;
+  private final long[] latencyNanos;
+  private final Kind[] kinds;
+
+  private LoadHarness(Map<String, String> options) {
+    this.options = options;
+    this.updates = intOption("updates", 200_000);
+    this.warmup = intOption("warmup", 50_000);
+    this.chats = intOption("chats", 200);
+    this.usersPerChat = intOption("users", 300);
+    this.zipf = Double.parseDouble(options.getOrDefault("zipf", "1.1"));
+    this.rate = Long.parseLong(options.getOrDefault("rate", "0"));
+    this.backlogSeconds = Long.parseLong(options.getOrDefault("backlog-seconds", "0"));
+    this.mixTable = mixTable(options.getOrDefault("mix", "plain=90,top=4,tags=3,addtag=2,all=1"));
+    this.random = new SplittableRandom(Long.parseLong(options.getOrDefault("seed", "42")));
+
+    int total = warmup + updates;
+    this.startNanos = new long[total];
+    this.latencyNanos = new long[total];
+    this.kinds = new Kind[total];
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new LinkedHashMap<>();
+    for (String arg : args) {
+      String option = arg.startsWith("--") ? arg.substring(2) : arg;
+      int eq = option.indexOf('=');
+      if (eq <= 0) {
+        throw new IllegalArgumentException("Ожидается key=value: " + arg);
+      }
+      options.put(option.substring(0, eq), option.substring(eq + 1));
+    }
+    new LoadHarness(options).run();
+  }
+
+  private void run() throws InterruptedException {
+    String mongoUri = options.get("mongo-uri");
+    MongoClient client = mongoUri != null ? MongoClients.create(mongoUri) : null;
+    MongoDatabase database = null;
+    UserRepository userRepository;
+    ActivityBucketRepository bucketRepository;
+    TagRepository tagRepository;
+    UpdateOffsetRepository offsetRepository;
+    if (client != null) {
+      database =
+          client
+              .getDatabase("compost_load_" + System.currentTimeMillis())
+              .withCodecRegistry(BotCodecs.registry());
+      new MongoSchemaManager(
+              database,
+              new StaticListableBeanFactory().getBeanProvider(SchemaMigration.class),
+              MongoSchemaManager.Mode.SYNC,
+              CollScanPolicy.WARN)
+          .bootstrap();
+      userRepository = new MongoUserRepository(database, new UserProfileCache(100_000, 24));
+      bucketRepository = new MongoActivityBucketRepository(database, 48, 35);
+      tagRepository = new CachingTagRepository(new MongoTagRepository(database), 10_000, 30);
+      offsetRepository = new MongoUpdateOffsetRepository(database);
+    } else {
+      userRepository = new InMemoryUserRepository();
+      bucketRepository = new InMemoryActivityBucketRepository();
+      tagRepository = new InMemoryTagRepository();
+      offsetRepository = new InMemoryUpdateOffsetRepository();
+    }
+
+    RecordingTelegramSender sender =
+        new RecordingTelegramSender(Long.parseLong(options.getOrDefault("send-latency-ms", "0")));
+    boolean telegramLimits = Boolean.parseBoolean(options.getOrDefault("telegram-limits", "false"));
+    OutboundMessageQueue outbound =
+        telegramLimits
+            ? new OutboundMessageQueue(
+                sender, 30, 20, 1, 1_000_000, 5, 500, 30_000, 2, 2, 1_000, Ticker.systemTicker())
+            : new OutboundMessageQueue(
+                sender,
+                1_000_000,
+                1_000_000_000,
+                1_000_000,
+                1_000_000,
+                5,
+                500,
+                30_000,
+                2,
+                2,
+                1_000,
+                Ticker.systemTicker());
+    outbound.start();
+    MessageUtils messageUtils = new MessageUtils(outbound);
+
+    UserActivityBuffer activityBuffer =
+        new UserActivityBuffer(userRepository, bucketRepository, 1_000, 5_000);
+    activityBuffer.start();
+    ActivityLeaderboard leaderboard =
+        new ActivityLeaderboard(userRepository, activityBuffer, false, 0);
+    UserService userService =
+        new UserService(
+            userRepository,
+            AsyncUserRepository.blocking(userRepository),
+            bucketRepository,
+            AsyncActivityBucketRepository.blocking(bucketRepository),
+            activityBuffer,
+            leaderboard);
+    TagService tagService =
+        new TagService(tagRepository, AsyncTagRepository.blocking(tagRepository));
+
+    UnknownCommandHandler unknown = new UnknownCommandHandler(messageUtils);
+    Map<BotCommand, CommandHandler> handlers = new EnumMap<>(BotCommand.class);
+    SimpleMeterRegistry metrics = new SimpleMeterRegistry();
+    for (CommandHandler handler :
+        List.of(
+            new AddTagCommandHandler(tagService, messageUtils),
+            new DeleteTagCommandHandler(tagService, messageUtils),
+            new HelpCommandHandler(messageUtils),
+            new MentionAllCommandHandler(userService, messageUtils),
+            new TagsCommandHandler(tagService, messageUtils),
+            new TopCommandHandler(userService, messageUtils))) {
+      BotCommand command = handler.getClass().getAnnotation(BotCommandMapping.class).value();
+      handlers.put(
+          command, new InstrumentedCommandHandler(command, handler, metrics, 100));
+    }
+    CommandRouter router = new CommandRouter(handlers, unknown, "codeCompostInspectorBot");
+
+    CountDownLatch warmedUp = new CountDownLatch(warmup);
+    CountDownLatch finished = new CountDownLatch(updates);
+    BacklogCatchUp catchUp = new BacklogCatchUp(messageUtils, 120, false, 5_000, 10_000);
+    UpdateProcessor processor =
+        new UpdateProcessor(router, userService, messageUtils, catchUp, StorageDriver.SYNC) {
+          @Override
+          public void process(Update update) {
+            try {
+              super.process(update);
+            } finally {
+              int seq = update.getUpdateId() - 1;
+              latencyNanos[seq] = System.nanoTime() - startNanos[seq];
+              (seq < warmup ? warmedUp : finished).countDown();
+            }
+          }
+        };
+    UpdateDispatcher dispatcher =
+        new UpdateDispatcher(
+            processor,
+            new AppliedUpdates(offsetRepository, activityBuffer, 4096),
+            intOption("threads", 8),
+            intOption("queue-depth", 100),
+            RejectionPolicy.BLOCK);
+    CodeCompostInspectorBot bot =
+        new CodeCompostInspectorBot("load-test", "codeCompostInspectorBot", dispatcher);
+
+    ZipfSampler chatSampler = new ZipfSampler(chats, zipf);
+    ZipfSampler userSampler = new ZipfSampler(usersPerChat, zipf);
+    ZipfSampler tagSampler = new ZipfSampler(TAG_VOCABULARY, zipf);
+    Chat[] chatPool = new Chat[chats];
+    for (int i = 0; i < chats; i++) {
+      chatPool[i] = new Chat(-1_000_000_000_000L - i, "supergroup");
+    }
+
+    System.out.printf(
+        Locale.ROOT,
+        "Стенд: %s, %d чатов x %d участников, zipf=%.2f, rate=%s, прогрев %d, замер %d%n",
+        client != null ? "mongod " + database.getName() : "память",
+        chats,
+        usersPerChat,
+        zipf,
+        rate > 0 ? rate + "/с" : "без ограничения",
+        warmup,
+        updates);
+
+    feed(bot, 0, warmup, chatPool, chatSampler, userSampler, tagSampler);
+    warmedUp.await();
+    long sentBefore = sender.messages();
+    long begin = System.nanoTime();
+    feed(bot, warmup, warmup + updates, chatPool, chatSampler, userSampler, tagSampler);
+    finished.await();
+    long elapsed = System.nanoTime() - begin;
+
+    report(elapsed);
+    dispatcher.shutdown();
+    activityBuffer.shutdown();
+    leaderboard.shutdown();
+    outbound.shutdown();
+    System.out.printf(
+        Locale.ROOT,
+        "Отправлено ответов за замер: %d, очередь отправки: %s, буфер активности: %s,"
+            + " догоняние: %s%n",
+        sender.messages() - sentBefore,
+        outbound.getStats(),
+        activityBuffer.getStats(),
+        catchUp.getStats());
+    if (client != null) {
+      if (!Boolean.parseBoolean(options.getOrDefault("keep-db", "false"))) {
+        database.drop();
+      }
+      client.close();
+    }
+  }
+
+  private void feed(
+      CodeCompostInspectorBot bot,
+      int from,
+      int to,
+      Chat[] chatPool,
+      ZipfSampler chatSampler,
+      ZipfSampler userSampler,
+      ZipfSampler tagSampler) {
+    long intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+    long next = System.nanoTime();
+    for (int seq = from; seq < to; seq++) {
+      int chatIndex = chatSampler.next(random);
+      Chat chat = chatPool[chatIndex];
+      long userId = 10_000_000L * (chatIndex + 1) + userSampler.next(random);
+      Kind kind = mixTable[random.nextInt(mixTable.length)];
+
+      Message message = new Message();
+      message.setMessageId(seq + 1);
+      message.setChat(chat);
+      message.setFrom(user(userId));
+      message.setText(text(kind, tagSampler));
+      message.setDate((int) (System.currentTimeMillis() / 1000 - backlogSeconds));
+      if (kind != Kind.PLAIN) {
+        message.setMessageThreadId(Constants.ALLOWED_THREAD_ID);
+      }
+      Update update = new Update();
+      update.setUpdateId(seq + 1);
+      update.setMessage(message);
+      kinds[seq] = kind;
+
+      if (intervalNanos > 0) {
+        // Открытая модель нагрузки: задержка считается от запланированного момента
+        long now;
+        while ((now = System.nanoTime()) < next) {
+          LockSupport.parkNanos(next - now);
+        }
+        startNanos[seq] = next;
+        next += intervalNanos;
+      } else {
+        startNanos[seq] = System.nanoTime();
+      }
+      bot.onUpdateReceived(update);
+    }
+  }
+
+  private String text(Kind kind, ZipfSampler tagSampler) {
+    return switch (kind) {
+      case PLAIN -> "обычное сообщение в чате, чтобы было что посчитать";
+      case TOP -> "/top";
+      case TAGS -> "/tags";
+      case ALL -> "/all@codeCompostInspectorBot";
+      case ADDTAG -> {
+        int tag = tagSampler.next(random);
+        yield random.nextInt(4) == 0
+            ? "/addtag #tag" + tag + " #тег" + tag + " общее описание"
+            : "/addtag #tag" + tag + " описание тега " + tag;
+      }
+    };
+  }
+
+  private static User user(long id) {
+    User user = new User(id, "Имя" + id, false);
+    if (id % 3 != 0) {
+      user.setUserName("user_" + id);
+    }
+    if (id % 2 == 0) {
+      user.setLastName("Фамилия" + id);
+    }
+    return user;
+  }
+
+  private void report(long elapsedNanos) {
+    System.out.printf(
+        Locale.ROOT,
+        "%nПропускная способность: %.0f обновлений/с (%d за %.2f с)%n%n",
+        updates / (elapsedNanos / 1e9),
+        updates,
+        elapsedNanos / 1e9);
+    System.out.printf(
+        Locale.ROOT,
+        "%-8s %9s %10s %10s %10s %10s%n",
+        "kind",
+        "count",
+        "p50 ms",
+        "p99 ms",
+        "p999 ms",
+        "max ms");
+    for (Kind kind : Kind.values()) {
+      long[] samples = new long[updates];
+      int count = 0;
+      for (int seq = warmup; seq < warmup + updates; seq++) {
+        if (kinds[seq] == kind) {
+          samples[count++] = latencyNanos[seq];
+        }
+      }
+      if (count == 0) {
+        continue;
+      }
+      Arrays.sort(samples, 0, count);
+      System.out.printf(
+          Locale.ROOT,
+          "%-8s %9d %10.3f %10.3f %10.3f %10.3f%n",
+          kind.name().toLowerCase(Locale.ROOT),
+          count,
+          percentile(samples, count, 0.50),
+          percentile(samples, count, 0.99),
+          percentile(samples, count, 0.999),
+          samples[count - 1] / 1e6);
+    }
+  }
+
+  private static double percentile(long[] sorted, int count, double quantile) {
+    int index = (int) Math.ceil(quantile * count) - 1;
+    return sorted[Math.max(0, Math.min(count - 1, index))] / 1e6;
+  }
+
+  /** Таблица для равномерного выбора: каждый вид занимает столько ячеек, каков его вес. */
+  private static Kind[] mixTable(String mix) {
+    Map<Kind, Integer> weights = new EnumMap<>(Kind.class);
+    int total = 0;
+    for (String part : mix.split(",")) {
+      String[] pair = part.trim().split("=");
+      Kind kind = Kind.valueOf(pair[0].trim().toUpperCase(Locale.ROOT));
+      int weight = Integer.parseInt(pair[1].trim());
+      weights.merge(kind, weight, Integer::sum);
+      total += weight;
+    }
+    if (total <= 0) {
+      throw new IllegalArgumentException("Пустая смесь обновлений: " + mix);
+    }
+    Kind[] table = new Kind[total];
+    int pos = 0;
+    for (Map.Entry<Kind, Integer> entry : weights.entrySet()) {
+      Arrays.fill(table, pos, pos + entry.getValue(), entry.getKey());
+      pos += entry.getValue();
+    }
+    return table;
+  }
+
+  private int intOption(String name, int defaultValue) {
+    return Integer.parseInt(options.getOrDefault(name, String.valueOf(defaultValue)));
+  }
+
+  /** Выборка рангов 0..n-1 с вероятностью, пропорциональной 1 / (rank + 1)^s. */
+  static final class ZipfSampler {
+
+    private final double[] cumulative;
+
+    ZipfSampler(int n, double s) {
+      cumulative = new double[n];
+      double sum = 0;
+      for (int i = 0; i < n; i++) {
+        sum += 1 / Math.pow(i + 1, s);
+        cumulative[i] = sum;
+      }
+      for (int i = 0; i < n; i++) {
+        cumulative[i] /= sum;
+      }
+    }
+
+    int next(SplittableRandom random) {
+      int index = Arrays.binarySearch(cumulative, random.nextDouble());
+      return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+    }
+  }
+}
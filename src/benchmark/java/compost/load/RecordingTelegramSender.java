@@ -0,0 +1,47 @@
+package compost.load;
+
+import compost.util.TelegramSender;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Message;
+
+/**
+ * TelegramSender для нагрузочного стенда: ничего не отправляет, считает сообщения и символы
+ * текста и при необходимости имитирует задержку Bot API.
+ */
+class RecordingTelegramSender implements TelegramSender {
+
+  private final long latencyNanos;
+  private final AtomicLong messages = new AtomicLong();
+  private final AtomicLong characters = new AtomicLong();
+
+  RecordingTelegramSender(long latencyMillis) {
+    this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+  }
+
+  @Override
+  public Message execute(BotApiMethod<Message> method) {
+    if (latencyNanos > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(latencyNanos);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (method instanceof SendMessage sendMessage) {
+      characters.addAndGet(sendMessage.getText().length());
+    }
+    messages.incrementAndGet();
+    return new Message();
+  }
+
+  long messages() {
+    return messages.get();
+  }
+
+  long characters() {
+    return characters.get();
+  }
+}
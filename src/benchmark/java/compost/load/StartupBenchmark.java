@@ -0,0 +1,319 @@
+package compost.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import compost.util.Constants;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+/**
+ * Стенд замера запуска: сколько проходит от старта JVM до ответа на первое обновление.
+ *
+ * <p>Каждый замер — отдельный процесс с собранным профилем {@code aot} jar. Вместо Telegram стенд
+ * поднимает локальный Bot API ({@code bot.api-url}): на первый getUpdates он отдаёт команду /help
+ * и ждёт sendMessage с ответом. Так в замер входит всё, что задерживает ответ после передеплоя:
+ * JVM, контекст Spring, подключение к MongoDB, регистрация бота и обработка обновления.
+ *
+ * <pre>
+ * mvn -Paot package -DskipTests
+ * mvn -Pjmh test-compile exec:exec@startup -Dstartup.args="runs=5 mongo-uri=mongodb://localhost"
+ * </pre>
+ *
+ * <p>Режимы ({@code modes}, через запятую):
+ *
+ * <ul>
+ *   <li>{@code jvm} — обычный запуск;
+ *   <li>{@code aot} — с {@code -Dspring.aot.enabled=true};
+ *   <li>{@code cds}, {@code aot-cds} — то же с архивом классов AppCDS. Архив записывается
+ *       тренировочным запуском ({@code bot.startup.training-run}) в {@code target/startup}.
+ * </ul>
+ *
+ * <p>Параметры (key=value): runs, modes, jar, mongo-uri, timeout-seconds, jvm-args и app-args
+ * (через пробел). Без mongod запуск ждёт выбора сервера MongoDB; чтобы замерить только JVM и
+ * Spring, передайте {@code app-args=--bot.mongo.server-selection-timeout-ms=50}.
+ */
+public final class StartupBenchmark {
+
+  private static final String TOKEN = "startup-benchmark";
+  private static final long CHAT_ID = -1_000_000_000_001L;
+
+  private final Map<String, String> options;
+  private final Path jar;
+  private final Path workDir;
+  private final long timeoutSeconds;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final ExecutorService telegramExecutor = Executors.newCachedThreadPool();
+  private HttpServer telegram;
+  private volatile Run current;
+  private int nextUpdateId = (int) (System.currentTimeMillis() / 1000);
+
+  private StartupBenchmark(Map<String, String> options) {
+    this.options = options;
+    this.jar =
+        Path.of(options.getOrDefault("jar", "target/CodeCompostInspectorBot-1.0-SNAPSHOT.jar"));
+    this.workDir = jar.toAbsolutePath().getParent().resolve("startup");
+    this.timeoutSeconds = Long.parseLong(options.getOrDefault("timeout-seconds", "120"));
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new LinkedHashMap<>();
+    for (String arg : args) {
+      String option = arg.startsWith("--") ? arg.substring(2) : arg;
+      int eq = option.indexOf('=');
+      if (eq <= 0) {
+        throw new IllegalArgumentException("Ожидается key=value: " + arg);
+      }
+      options.put(option.substring(0, eq), option.substring(eq + 1));
+    }
+    new StartupBenchmark(options).run();
+  }
+
+  private void run() throws Exception {
+    if (!Files.isRegularFile(jar) || !Files.isDirectory(jar.resolveSibling("lib"))) {
+      throw new IllegalStateException(
+          "Нет " + jar + " с зависимостями в lib/: соберите его командой mvn -Paot package");
+    }
+    Files.createDirectories(workDir);
+    int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+    List<String> modes =
+        Arrays.asList(options.getOrDefault("modes", "jvm,aot,cds,aot-cds").split(","));
+
+    telegram = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    telegram.createContext("/", this::handle);
+    telegram.setExecutor(telegramExecutor);
+    telegram.start();
+    try {
+      Map<String, long[][]> results = new LinkedHashMap<>();
+      for (String mode : modes) {
+        List<String> jvmArgs = jvmArgs(mode);
+        long[][] samples = new long[2][runs];
+        for (int i = 0; i < runs; i++) {
+          Run result = start(mode + "-" + (i + 1), jvmArgs);
+          samples[0][i] = result.pollNanos - result.startNanos;
+          samples[1][i] = result.replyNanos - result.startNanos;
+          System.out.printf(
+              Locale.ROOT,
+              "%-8s #%d: опрос Telegram через %.0f мс, ответ через %.0f мс%n",
+              mode,
+              i + 1,
+              samples[0][i] / 1e6,
+              samples[1][i] / 1e6);
+        }
+        results.put(mode, samples);
+      }
+      report(results);
+    } finally {
+      telegram.stop(0);
+      telegramExecutor.shutdownNow();
+    }
+  }
+
+  private List<String> jvmArgs(String mode) throws Exception {
+    List<String> args = new ArrayList<>();
+    String extra = options.getOrDefault("jvm-args", "");
+    if (!extra.isBlank()) {
+      args.addAll(Arrays.asList(extra.trim().split("\\s+")));
+    }
+    switch (mode) {
+      case "jvm" -> {}
+      case "aot" -> args.add("-Dspring.aot.enabled=true");
+      case "cds", "aot-cds" -> {
+        if (mode.equals("aot-cds")) {
+          args.add("-Dspring.aot.enabled=true");
+        }
+        Path archive = workDir.resolve(mode + ".jsa");
+        Files.deleteIfExists(archive);
+        List<String> training = new ArrayList<>(args);
+        training.add("-XX:ArchiveClassesAtExit=" + archive);
+        train(mode, training);
+        args.add("-XX:SharedArchiveFile=" + archive);
+      }
+      default -> throw new IllegalArgumentException("Неизвестный режим: " + mode);
+    }
+    return args;
+  }
+
+  private void train(String mode, List<String> jvmArgs) throws Exception {
+    current = null;
+    Process process =
+        launch(mode + "-training", jvmArgs, List.of("--bot.startup.training-run=true"));
+    if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+      process.destroyForcibly();
+      throw new IllegalStateException("Тренировочный запуск " + mode + " не завершился");
+    }
+    if (!Files.isRegularFile(workDir.resolve(mode + ".jsa"))) {
+      throw new IllegalStateException(
+          "Архив классов не записан, см. " + workDir.resolve(mode + "-training.log"));
+    }
+    System.out.printf("%-8s архив классов записан (%s)%n", mode, workDir.resolve(mode + ".jsa"));
+  }
+
+  private Run start(String name, List<String> jvmArgs) throws Exception {
+    Run run = new Run(nextUpdateId++);
+    current = run;
+    run.startNanos = System.nanoTime();
+    Process process = launch(name, jvmArgs, List.of());
+    try {
+      if (!run.replied.await(timeoutSeconds, TimeUnit.SECONDS)) {
+        throw new IllegalStateException(
+            "Нет ответа за " + timeoutSeconds + " с, см. " + workDir.resolve(name + ".log"));
+      }
+      return run;
+    } finally {
+      process.destroy();
+      if (!process.waitFor(10, TimeUnit.SECONDS)) {
+        process.destroyForcibly().waitFor();
+      }
+    }
+  }
+
+  private Process launch(String name, List<String> jvmArgs, List<String> appArgs)
+      throws IOException {
+    List<String> command = new ArrayList<>();
+    command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+    command.addAll(jvmArgs);
+    command.add("-jar");
+    command.add(jar.toAbsolutePath().toString());
+    command.add("--bot.api-url=http://127.0.0.1:" + telegram.getAddress().getPort() + "/bot");
+    command.add(
+        "--spring.data.mongodb.uri="
+            + options.getOrDefault("mongo-uri", "mongodb://127.0.0.1:27017/compost_startup"));
+    command.addAll(appArgs);
+    String extra = options.getOrDefault("app-args", "");
+    if (!extra.isBlank()) {
+      command.addAll(Arrays.asList(extra.trim().split("\\s+")));
+    }
+
+    ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+    builder.redirectOutput(new File(workDir.toFile(), name + ".log"));
+    Map<String, String> env = builder.environment();
+    env.put("BOT_TOKEN", TOKEN);
+    // application.properties собирает адрес MongoDB из переменных окружения
+    for (String variable :
+        List.of("MONGO_ROOT_USERNAME", "MONGO_ROOT_PASSWORD", "MONGO_DATABASE_NAME")) {
+      env.putIfAbsent(variable, "compost");
+    }
+    return builder.start();
+  }
+
+  /** Локальный Bot API: метод — последний сегмент пути {@code /bot<token>/<method>}. */
+  private void handle(HttpExchange exchange) throws IOException {
+    String path = exchange.getRequestURI().getPath();
+    String method = path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+    exchange.getRequestBody().readAllBytes();
+    Run run = current;
+    String result;
+    switch (method) {
+      case "getupdates" -> {
+        if (run != null && run.delivered.compareAndSet(false, true)) {
+          run.pollNanos = System.nanoTime();
+          result = "[" + objectMapper.writeValueAsString(update(run.updateId)) + "]";
+        } else {
+          // Пустой long polling: не даём сессии крутиться вхолостую
+          sleep(200);
+          result = "[]";
+        }
+      }
+      case "sendmessage" -> {
+        if (run != null && run.replied.getCount() > 0) {
+          run.replyNanos = System.nanoTime();
+          run.replied.countDown();
+        }
+        result =
+            "{\"message_id\":1,\"date\":0,"
+                + "\"chat\":{\"id\":" + CHAT_ID + ",\"type\":\"supergroup\"}}";
+      }
+      default -> result = "true";
+    }
+    byte[] body = ("{\"ok\":true,\"result\":" + result + "}").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private static Update update(int updateId) {
+    User user = new User(7L, "Старт", false);
+    Message message = new Message();
+    message.setMessageId(1);
+    message.setChat(new Chat(CHAT_ID, "supergroup"));
+    message.setFrom(user);
+    message.setText("/help");
+    message.setMessageThreadId(Constants.ALLOWED_THREAD_ID);
+    message.setDate((int) (System.currentTimeMillis() / 1000));
+    Update update = new Update();
+    update.setUpdateId(updateId);
+    update.setMessage(message);
+    return update;
+  }
+
+  private static void report(Map<String, long[][]> results) {
+    System.out.printf(
+        Locale.ROOT,
+        "%n%-8s %14s %14s %14s %14s%n",
+        "mode",
+        "опрос p50 мс",
+        "ответ p50 мс",
+        "ответ min мс",
+        "ответ max мс");
+    for (Map.Entry<String, long[][]> entry : results.entrySet()) {
+      long[] poll = entry.getValue()[0].clone();
+      long[] reply = entry.getValue()[1].clone();
+      Arrays.sort(poll);
+      Arrays.sort(reply);
+      System.out.printf(
+          Locale.ROOT,
+          "%-8s %14.0f %14.0f %14.0f %14.0f%n",
+          entry.getKey(),
+          poll[poll.length / 2] / 1e6,
+          reply[reply.length / 2] / 1e6,
+          reply[0] / 1e6,
+          reply[reply.length - 1] / 1e6);
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Один замер: моменты старта процесса, первого опроса и ответа. */
+  private static final class Run {
+    private final int updateId;
+    private final AtomicBoolean delivered = new AtomicBoolean();
+    private final CountDownLatch replied = new CountDownLatch(1);
+    private volatile long startNanos;
+    private volatile long pollNanos;
+    private volatile long replyNanos;
+
+    private Run(int updateId) {
+      this.updateId = updateId;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package compost.service;
+
+import compost.service.TagService.ParsedTag;
+import compost.util.Constants;
+import compost.util.Constants.BotCommand;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Сравнение разбора /addtag: прежний разбор на регулярных выражениях ({@link RegexTagParser})
+ * против {@link TagLexer}.
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="TagParsingBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagParsingBenchmark {
+
+  @Param({"single", "shared", "individual", "contaminated"})
+  private String shape;
+
+  private final RegexTagParser regex = new RegexTagParser();
+  private String command;
+  private String token = "#kotlin";
+
+  @Setup
+  public void setUp() {
+    String args =
+        switch (shape) {
+          case "single" -> "#java";
+          case "shared" -> "#java #kotlin #scala языки под JVM, про которые спорят в чате";
+          case "individual" -> "#java язык #kotlin тоже язык #gradle сборка #maven тоже сборка";
+          case "contaminated" -> "#java язык, см. #spring/boot и #jakarta.ee #kotlin";
+          default -> throw new IllegalArgumentException(shape);
+        };
+    command = "/addtag@CompostBot " + args;
+  }
+
+  @Benchmark
+  public List<ParsedTag> regex() {
+    return regex.parseInput(regex.stripCommand(BotCommand.ADDTAG.getCommand(), command));
+  }
+
+  @Benchmark
+  public List<ParsedTag> lexer() {
+    return TagLexer.parse(TagLexer.stripCommand(BotCommand.ADDTAG.getCommand(), command));
+  }
+
+  @Benchmark
+  public boolean regexTagToken() {
+    return Constants.TAG_PATTERN.matcher(token).matches();
+  }
+
+  @Benchmark
+  public boolean lexerTagToken() {
+    return TagLexer.isTagToken(token);
+  }
+}
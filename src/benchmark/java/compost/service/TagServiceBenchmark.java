@@ -0,0 +1,99 @@
+package compost.service;
+
+import compost.service.TagService.ParsedTag;
+import compost.service.TagService.TagResult;
+import compost.storage.AsyncTagRepository;
+import compost.storage.TagRepository;
+import compost.util.Constants.TagOperationResult;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link TagService#tryAddTag} целиком (разбор команды и сборка результатов) против хранилища-
+ * заглушки, которое не тратит процессорное время. Регрессии здесь — это регрессии разбора и
+ * обработки, а не MongoDB.
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="TagServiceBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagServiceBenchmark {
+
+  private static final Long CHAT_ID = -1001234567890L;
+
+  @Param({"1", "5", "20"})
+  private int tags;
+
+  private TagService service;
+  private String command;
+
+  @Setup
+  public void setUp() {
+    StubTagRepository repository = new StubTagRepository();
+    service = new TagService(repository, AsyncTagRepository.blocking(repository));
+    StringBuilder text = new StringBuilder("/addtag@codeCompostInspectorBot");
+    for (int i = 0; i < tags; i++) {
+      text.append(" #тег").append(i).append(" описание тега номер ").append(i);
+    }
+    command = text.toString();
+  }
+
+  @Benchmark
+  public List<TagResult> tryAddTag() {
+    return service.tryAddTag(CHAT_ID, command);
+  }
+
+  /** Хранилище без данных: все теги считаются новыми. */
+  private static final class StubTagRepository implements TagRepository {
+
+    @Override
+    public Set<String> getTags(Long chatId) {
+      return Set.of();
+    }
+
+    @Override
+    public boolean addTag(Long chatId, String tag, String description) {
+      return true;
+    }
+
+    @Override
+    public boolean removeTag(Long chatId, String tag) {
+      return true;
+    }
+
+    @Override
+    public Map<String, String> getTagMap(Long chatId) {
+      return Map.of();
+    }
+
+    @Override
+    public void batchUpdateTagDescription(Long chatId, List<ParsedTag> tagsToUpdate) {}
+
+    @Override
+    public void batchClearTagDescription(Long chatId, List<String> tagsToClear) {}
+
+    @Override
+    public Map<String, TagOperationResult> applyTagChanges(Long chatId, List<ParsedTag> tags) {
+      return Map.of();
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package compost.storage.codec;
+
+import compost.model.SimpleUser;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.bson.BsonBinaryReader;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Цена декодирования одного документа users: прежний путь (весь документ в {@link Document}, затем
+ * ручной перенос в {@link SimpleUser}) против {@link SimpleUserCodec} на полном документе и на
+ * документе после проекции. Время и выделения памяти (-prof gc) — на документ.
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="UserDecodingBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserDecodingBenchmark {
+
+  private static final DecoderContext CONTEXT = DecoderContext.builder().build();
+
+  private final DocumentCodec documentCodec = new DocumentCodec();
+  private final SimpleUserCodec userCodec = new SimpleUserCodec();
+  private byte[] full;
+  private byte[] projected;
+
+  @Setup
+  public void setUp() {
+    Document user =
+        new Document("_id", new ObjectId())
+            .append("chatId", -1001234567890L)
+            .append("id", 123456789L)
+            .append("username", "compost_user")
+            .append("firstName", "Имя")
+            .append("lastName", "Фамилия")
+            .append("messageCount", 1234);
+    full = bytes(user);
+    Document profile = new Document(user);
+    profile.remove("_id");
+    profile.remove("chatId");
+    profile.remove("messageCount");
+    projected = bytes(profile);
+  }
+
+  private byte[] bytes(Document document) {
+    ByteBuffer buffer = new RawBsonDocument(document, documentCodec).getByteBuffer().asNIO();
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private static BsonBinaryReader reader(byte[] bytes) {
+    return new BsonBinaryReader(ByteBuffer.wrap(bytes));
+  }
+
+  @Benchmark
+  public SimpleUser documentFull() {
+    try (BsonBinaryReader reader = reader(full)) {
+      Document doc = documentCodec.decode(reader, CONTEXT);
+      return new SimpleUser(
+          doc.getLong("id"),
+          doc.getString("username"),
+          doc.getString("firstName"),
+          doc.getString("lastName"));
+    }
+  }
+
+  @Benchmark
+  public SimpleUser codecFull() {
+    try (BsonBinaryReader reader = reader(full)) {
+      return userCodec.decode(reader, CONTEXT);
+    }
+  }
+
+  @Benchmark
+  public SimpleUser codecProjected() {
+    try (BsonBinaryReader reader = reader(projected)) {
+      return userCodec.decode(reader, CONTEXT);
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package compost.util;
+
+import compost.model.SimpleUser;
+import compost.storage.MongoUserRepository.RankedUser;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Сборка ответов {@link MessageBuilder} на размерах, которые встречаются в чатах: /top — до 10
+ * строк, /all и /tags — от десятков до тысяч записей. Каждый третий пользователь без username,
+ * чтобы в выборку попадали HTML-упоминания.
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="MessageBuilderBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBuilderBenchmark {
+
+  private static final int TOP_LIMIT = 10;
+
+  @Param({"50", "500", "5000"})
+  private int size;
+
+  private List<RankedUser> top;
+  private List<SimpleUser> users;
+  private List<Entry<String, String>> withDescription;
+  private List<String> withoutDescription;
+
+  @Setup
+  public void setUp() {
+    users = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      users.add(
+          i % 3 == 0
+              ? new SimpleUser(100_000L + i, null, "Имя" + i, i % 2 == 0 ? "Фамилия" + i : null)
+              : new SimpleUser(100_000L + i, "user_" + i, "Имя" + i, null));
+    }
+
+    top = new ArrayList<>(TOP_LIMIT);
+    for (int i = 0; i < Math.min(TOP_LIMIT, size); i++) {
+      top.add(new RankedUser(users.get(i), 5_000 - i * 37, i + 1));
+    }
+
+    withDescription = new ArrayList<>(size / 2);
+    withoutDescription = new ArrayList<>(size - size / 2);
+    for (int i = 0; i < size; i++) {
+      if (i % 2 == 0) {
+        withDescription.add(Map.entry("#тег" + i, "описание тега номер " + i));
+      } else {
+        withoutDescription.add("#tag" + i);
+      }
+    }
+  }
+
+  @Benchmark
+  public String topUsers() {
+    return MessageBuilder.topUsers(top);
+  }
+
+  @Benchmark
+  public String mentionAll() {
+    return MessageBuilder.mentionAll(users);
+  }
+
+  @Benchmark
+  public String tagList() {
+    return MessageBuilder.tagList(withDescription, withoutDescription);
+  }
+}
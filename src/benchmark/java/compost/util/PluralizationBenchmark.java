@@ -0,0 +1,37 @@
+package compost.util;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link PluralizationHelper#pluralize} на счётчиках, покрывающих все формы (one/few/many).
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="PluralizationBenchmark"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PluralizationBenchmark {
+
+  private final int[] counts = {1, 2, 5, 11, 21, 22, 25, 101, 1234, 4321};
+  private int next;
+
+  @Benchmark
+  public String pluralize() {
+    int count = counts[next++ % counts.length];
+    return PluralizationHelper.pluralize(count, "сообщени");
+  }
+}
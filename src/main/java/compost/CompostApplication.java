@@ -1,14 +1,21 @@
 package compost;
 
+import compost.config.BotRuntimeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 @SpringBootApplication
-@EnableAspectJAutoProxy(proxyTargetClass = true)
+@ImportRuntimeHints(BotRuntimeHints.class)
 public class CompostApplication {
 
   public static void main(String[] args) {
-    SpringApplication.run(CompostApplication.class, args);
+    ConfigurableApplicationContext context = SpringApplication.run(CompostApplication.class, args);
+    // Тренировочный запуск для архива классов AppCDS (-XX:ArchiveClassesAtExit): контекст
+    // поднимается полностью, после чего приложение завершается и JVM записывает архив.
+    if (context.getEnvironment().getProperty("bot.startup.training-run", Boolean.class, false)) {
+      System.exit(SpringApplication.exit(context));
+    }
   }
 }
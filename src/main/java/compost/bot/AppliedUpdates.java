@@ -0,0 +1,245 @@
+package compost.bot;
+
+import compost.storage.UpdateOffsetRepository;
+import compost.storage.UpdateOffsetRepository.Offset;
+import compost.storage.UserActivityBuffer;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Учёт применённых обновлений, переживающий перезапуск.
+ *
+ * <p>Telegram доставляет обновления по возрастанию update_id, а после перезапуска (или при
+ * повторе webhook) заново присылает те, получение которых не успело подтвердиться. Чтобы повтор
+ * не выполнил команду и не увеличил messageCount второй раз, хранится:
+ *
+ * <ul>
+ *   <li>{@code watermark} — update_id, до которого включительно всё применено;
+ *   <li>окно битов над ним — обновления, завершившиеся раньше более старых (очереди чатов
+ *       выполняются параллельно). Окно ограничено {@code bot.updates.window-size}: если самое
+ *       старое обновление в обработке отстаёт сильнее, watermark сдвигается принудительно.
+ * </ul>
+ *
+ * <p>Позиция сохраняется в {@link UpdateOffsetRepository} при каждом сбросе {@link
+ * UserActivityBuffer}: снимок берётся до выборки инкрементов, а записывается после их записи.
+ * Поэтому сохранённая позиция никогда не опережает messageCount в базе — повтор, попавший в
+ * сохранённое окно, уже посчитан. И наоборот, инкременты обновлений, которых нет в снимке (ещё в
+ * обработке или завершились после него), буфер удерживает до следующего сброса: повтор
+ * обновления за сохранённой позицией не посчитан.
+ *
+ * <p>Бин учитывает поток обновлений от Telegram. {@link PartitionWorker} создаёт отдельный
+ * экземпляр на каждую арендованную партицию очереди и сам подключает его к сбросу буфера.
+ */
+@Component
+@Log4j2
+public class AppliedUpdates {
+
+  private final UpdateOffsetRepository repository;
+  private final int windowSize;
+
+  private boolean initialized;
+  private long watermark;
+  private long maxBegun;
+  private BitSet applied = new BitSet();
+  private final TreeSet<Long> inFlight = new TreeSet<>();
+  private final TreeSet<Long> released = new TreeSet<>();
+  private final Set<Long> completedSinceSnapshot = new HashSet<>();
+
+  private long version;
+  private volatile long savedVersion;
+  private long duplicates;
+  private long forcedSlides;
+  private long failedSaves;
+
+  @Autowired
+  public AppliedUpdates(
+      UpdateOffsetRepository repository,
+      UserActivityBuffer activityBuffer,
+      @Value("${bot.updates.window-size:4096}") int windowSize) {
+    this(repository, windowSize);
+    activityBuffer.addCheckpoint(
+        UserActivityBuffer.FlushCheckpoint.of(this::prepareCheckpoint, this::holds));
+  }
+
+  /**
+   * Учёт без подключения к буферу: точку сохранения вызывает владелец через {@link
+   * #prepareCheckpoint} и {@link #holds}.
+   */
+  AppliedUpdates(UpdateOffsetRepository repository, int windowSize) {
+    this.repository = repository;
+    this.windowSize = windowSize;
+    restore();
+  }
+
+  /**
+   * Отмечает начало обработки обновления.
+   *
+   * @param updateId update_id Telegram
+   * @return false, если обновление уже применено или обрабатывается — его нужно пропустить
+   */
+  public synchronized boolean begin(long updateId) {
+    if (!initialized) {
+      initialized = true;
+      watermark = updateId - 1;
+      maxBegun = watermark;
+    }
+    if (isApplied(updateId) || inFlight.contains(updateId)) {
+      duplicates++;
+      return false;
+    }
+    released.remove(updateId);
+    inFlight.add(updateId);
+    maxBegun = Math.max(maxBegun, updateId);
+    return true;
+  }
+
+  /**
+   * Отмечает обновление применённым: выполненным или окончательно отброшенным. Обновление, не
+   * отмеченное так (например, не принятое при остановке), после перезапуска будет выполнено снова.
+   */
+  public synchronized void complete(long updateId) {
+    if (!inFlight.remove(updateId)) {
+      return;
+    }
+    completedSinceSnapshot.add(updateId);
+    version++;
+    long offset = updateId - watermark - 1;
+    if (offset >= windowSize) {
+      if (!inFlight.isEmpty()) {
+        forcedSlides++;
+        log.warn(
+            "Окно применённых обновлений переполнено: {} ещё в обработке, сдвиг до {}",
+            inFlight.first(),
+            updateId - windowSize);
+      }
+      slideTo(updateId - windowSize);
+      offset = windowSize - 1;
+    }
+    if (offset >= 0) {
+      applied.set((int) offset);
+    }
+    // Иначе окно уже сдвинуто принудительно поверх этого обновления.
+
+    // Всё ниже самого старого обновления в обработке или ожидающего повтора применено: либо
+    // завершено, либо не доставлялось вовсе (Telegram не присылает пропущенные update_id позже).
+    long target = oldestPending() - 1;
+    if (target > watermark) {
+      slideTo(target);
+    }
+  }
+
+  /**
+   * Снимает обновление с обработки, не отмечая его применённым: приём отклонён, и Telegram
+   * доставит обновление снова (webhook получает ответ 503), или обработку прервала остановка.
+   * Пока повтора нет, watermark не поднимается выше этого обновления — до принудительного сдвига
+   * переполненного окна.
+   */
+  public synchronized void release(long updateId) {
+    if (inFlight.remove(updateId)) {
+      released.add(updateId);
+    }
+  }
+
+  /** Возвращает показатели учёта. */
+  public synchronized Stats getStats() {
+    return new Stats(watermark, inFlight.size(), duplicates, forcedSlides, failedSaves);
+  }
+
+  synchronized Offset snapshot() {
+    return new Offset(watermark, applied.toLongArray());
+  }
+
+  private long oldestPending() {
+    long oldest = maxBegun + 1;
+    if (!inFlight.isEmpty()) {
+      oldest = Math.min(oldest, inFlight.first());
+    }
+    if (!released.isEmpty()) {
+      oldest = Math.min(oldest, released.first());
+    }
+    return oldest;
+  }
+
+  private boolean isApplied(long updateId) {
+    long offset = updateId - watermark - 1;
+    return offset < 0 || (offset < windowSize && applied.get((int) offset));
+  }
+
+  private void slideTo(long newWatermark) {
+    long shift = newWatermark - watermark;
+    applied =
+        shift >= applied.length() ? new BitSet() : applied.get((int) shift, applied.length());
+    watermark = newWatermark;
+    released.headSet(newWatermark, true).clear();
+  }
+
+  private void restore() {
+    Optional<Offset> saved;
+    try {
+      saved = repository.load();
+    } catch (RuntimeException e) {
+      log.error("Не удалось прочитать позицию обработки обновлений, повторы не отсеются: ", e);
+      return;
+    }
+    saved.ifPresent(
+        offset -> {
+          initialized = true;
+          watermark = offset.watermark();
+          maxBegun = watermark;
+          applied = BitSet.valueOf(offset.applied());
+          log.info("Позиция обработки обновлений восстановлена: update_id {}", watermark);
+        });
+  }
+
+  /**
+   * Точка сохранения для {@link UserActivityBuffer.FlushCheckpoint}.
+   *
+   * @return сохранение снимка или null, если позиция не менялась с прошлого сохранения
+   */
+  synchronized Runnable prepareCheckpoint() {
+    completedSinceSnapshot.clear();
+    if (!initialized || version == savedVersion) {
+      return null;
+    }
+    Offset offset = snapshot();
+    long snapshotVersion = version;
+    return () -> {
+      try {
+        repository.save(offset);
+        savedVersion = snapshotVersion;
+      } catch (RuntimeException e) {
+        synchronized (this) {
+          failedSaves++;
+        }
+        log.error("Не удалось сохранить позицию обработки обновлений: ", e);
+      }
+    };
+  }
+
+  /**
+   * Не отмечено ли обновление применённым в последнем снимке {@link #prepareCheckpoint}: оно ещё
+   * в обработке или завершилось после снимка. Инкременты такого обновления в сброс не попадают.
+   */
+  synchronized boolean holds(long updateId) {
+    return inFlight.contains(updateId) || completedSinceSnapshot.contains(updateId);
+  }
+
+  /**
+   * Показатели учёта применённых обновлений.
+   *
+   * @param watermark update_id, до которого включительно всё применено
+   * @param inFlight обновлений в обработке
+   * @param duplicates повторно доставленных обновлений, которые были пропущены
+   * @param forcedSlides принудительных сдвигов окна из-за долгой обработки
+   * @param failedSaves неудачных сохранений позиции
+   */
+  public record Stats(
+      long watermark, int inFlight, long duplicates, long forcedSlides, long failedSaves) {}
+}
@@ -0,0 +1,237 @@
+package compost.bot;
+
+import compost.bot.CodeCompostInspectorBot.CommandContext;
+import compost.util.Constants;
+import compost.util.MessageBuilder;
+import compost.util.MessageUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Message;
+
+/**
+ * Режим догоняния после простоя.
+ *
+ * <p>После недоступности бота Telegram отдаёт накопленные за время простоя обновления (до суток).
+ * Пока дата сообщений отстаёт от текущего времени больше чем на {@code
+ * bot.catch-up.stale-command-seconds}, бот догоняет бэклог:
+ *
+ * <ul>
+ *   <li>активность по-прежнему учитывается — инкременты складываются в {@link
+ *       compost.storage.UserActivityBuffer} и уходят в базу общими bulkWrite;
+ *   <li>устаревшие команды не выполняются: ответ на /top часовой давности никому не нужен, а
+ *       сотни ответов разом упрутся в лимиты Telegram. Вместо них, когда бэклог разобран, в каждый
+ *       чат с пропущенными командами уходит одно сообщение ({@code bot.catch-up.notify-skipped});
+ *   <li>раз в {@code bot.catch-up.report-interval-ms} в лог пишется прогресс: отставание, темп и
+ *       число пропущенных команд.
+ * </ul>
+ *
+ * <p>Режим завершается свежим сообщением или, если свежих нет, когда {@code
+ * bot.catch-up.idle-exit-ms} не приходило устаревших: Telegram отдаёт бэклог без пауз, поэтому
+ * затишье значит, что он разобран. Вне режима команды выполняются при любом отставании.
+ */
+@Component
+@Log4j2
+public class BacklogCatchUp {
+
+  private final MessageUtils messageUtils;
+  private final long staleSeconds;
+  private final boolean notifySkipped;
+  private final long reportIntervalMs;
+  private final long idleExitMs;
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread thread = new Thread(r, "catch-up");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final AtomicLong newestDate = new AtomicLong();
+  private final Map<Long, LongAdder> skippedByChat = new ConcurrentHashMap<>();
+  private final LongAdder skippedTotal = new LongAdder();
+  private final LongAdder caughtUp = new LongAdder();
+  private final LongAdder catchUps = new LongAdder();
+  private volatile long lastLagSeconds;
+  private volatile boolean active;
+  private volatile long lastStaleNanos;
+  private long startedAtNanos;
+  private long lastReportNanos;
+  private long caughtUpAtLastReport;
+  private long caughtUpAtStart;
+  private long skippedAtStart;
+
+  public BacklogCatchUp(
+      MessageUtils messageUtils,
+      @Value("${bot.catch-up.stale-command-seconds:120}") long staleSeconds,
+      @Value("${bot.catch-up.notify-skipped:true}") boolean notifySkipped,
+      @Value("${bot.catch-up.report-interval-ms:5000}") long reportIntervalMs,
+      @Value("${bot.catch-up.idle-exit-ms:10000}") long idleExitMs) {
+    this.messageUtils = messageUtils;
+    this.staleSeconds = staleSeconds;
+    this.notifySkipped = notifySkipped;
+    this.reportIntervalMs = reportIntervalMs;
+    this.idleExitMs = idleExitMs;
+  }
+
+  @PostConstruct
+  public void start() {
+    if (staleSeconds > 0 && idleExitMs > 0) {
+      scheduler.scheduleWithFixedDelay(
+          this::exitIfIdleQuietly, idleExitMs, idleExitMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * Учитывает отставание входящего сообщения и переключает режим догоняния.
+   *
+   * @param message входящее сообщение
+   */
+  public void observe(Message message) {
+    if (staleSeconds <= 0 || message.getDate() == null) {
+      return;
+    }
+    // Очереди чатов выполняются параллельно, поэтому отставание считается по самому свежему
+    // сообщению: так одна медленная очередь не держит режим включённым.
+    long newest = newestDate.accumulateAndGet(message.getDate(), Math::max);
+    long lag = nowSeconds() - newest;
+    lastLagSeconds = lag;
+    if (lag > staleSeconds) {
+      lastStaleNanos = System.nanoTime();
+      caughtUp.increment();
+      if (!active) {
+        enter(lag);
+      } else {
+        reportProgress(lag);
+      }
+    } else if (active) {
+      exit();
+    }
+  }
+
+  /**
+   * Проверяет, устарела ли команда. Пока идёт догоняние, устаревшая команда не выполняется и
+   * учитывается в сводке для её чата.
+   *
+   * @param context контекст команды
+   * @return true, если команду нужно пропустить
+   */
+  public boolean skipIfStale(CommandContext context) {
+    Integer date = context.message().getDate();
+    if (!active || staleSeconds <= 0 || date == null || nowSeconds() - date <= staleSeconds) {
+      return false;
+    }
+    skippedTotal.increment();
+    skippedByChat.computeIfAbsent(context.chatId(), k -> new LongAdder()).increment();
+    log.debug("Команда {} в чате {} устарела и пропущена", context.fullText(), context.chatId());
+    return true;
+  }
+
+  /** Возвращает показатели режима догоняния. */
+  public Stats getStats() {
+    return new Stats(active, lastLagSeconds, caughtUp.sum(), skippedTotal.sum(), catchUps.sum());
+  }
+
+  /** Завершает догоняние, если устаревших сообщений не было {@code bot.catch-up.idle-exit-ms}. */
+  void exitIfIdle() {
+    if (active
+        && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastStaleNanos) >= idleExitMs) {
+      exit();
+    }
+  }
+
+  private void exitIfIdleQuietly() {
+    try {
+      exitIfIdle();
+    } catch (Exception e) {
+      log.error("Ошибка при завершении догоняния бэклога: ", e);
+    }
+  }
+
+  private synchronized void enter(long lag) {
+    if (active) {
+      return;
+    }
+    active = true;
+    catchUps.increment();
+    startedAtNanos = System.nanoTime();
+    lastReportNanos = startedAtNanos;
+    caughtUpAtStart = caughtUp.sum();
+    skippedAtStart = skippedTotal.sum();
+    caughtUpAtLastReport = caughtUpAtStart;
+    log.warn(
+        "Бэклог после простоя: отставание {} с, команды старше {} с выполняться не будут",
+        lag,
+        staleSeconds);
+  }
+
+  private synchronized void reportProgress(long lag) {
+    long now = System.nanoTime();
+    if (!active || TimeUnit.NANOSECONDS.toMillis(now - lastReportNanos) < reportIntervalMs) {
+      return;
+    }
+    long done = caughtUp.sum();
+    double seconds = (now - lastReportNanos) / 1e9;
+    log.info(
+        "Догоняем бэклог: отставание {} с, разобрано {} сообщений ({} в секунду), "
+            + "пропущено команд: {}",
+        lag,
+        done - caughtUpAtStart,
+        Math.round((done - caughtUpAtLastReport) / seconds),
+        skippedTotal.sum() - skippedAtStart);
+    lastReportNanos = now;
+    caughtUpAtLastReport = done;
+  }
+
+  private synchronized void exit() {
+    if (!active) {
+      return;
+    }
+    active = false;
+    long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtNanos);
+    log.info(
+        "Бэклог разобран за {} мс: {} сообщений, пропущено команд: {}",
+        elapsedMs,
+        caughtUp.sum() - caughtUpAtStart,
+        skippedTotal.sum() - skippedAtStart);
+    for (Long chatId : Map.copyOf(skippedByChat).keySet()) {
+      LongAdder skipped = skippedByChat.remove(chatId);
+      if (notifySkipped && skipped != null && skipped.sum() > 0) {
+        messageUtils.sendText(
+            chatId,
+            Constants.ALLOWED_THREAD_ID,
+            MessageBuilder.staleCommandsSkipped(skipped.intValue()));
+      }
+    }
+  }
+
+  private static long nowSeconds() {
+    return System.currentTimeMillis() / 1000;
+  }
+
+  /**
+   * Показатели режима догоняния.
+   *
+   * @param active идёт ли догоняние сейчас
+   * @param lagSeconds отставание последнего сообщения, с
+   * @param caughtUp сообщений, разобранных в режиме догоняния
+   * @param skippedCommands устаревших команд, которые не выполнялись
+   * @param catchUps сколько раз включался режим
+   */
+  public record Stats(
+      boolean active, long lagSeconds, long caughtUp, long skippedCommands, long catchUps) {}
+}
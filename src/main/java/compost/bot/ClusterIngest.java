@@ -0,0 +1,132 @@
+package compost.bot;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import compost.storage.UpdateQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Узел приёма кластера ({@code bot.cluster.role=ingest}): вместо локальной обработки складывает
+ * обновления в {@link UpdateQueue}, в партицию своего чата. Команды выполняют узлы {@link
+ * PartitionWorker}.
+ *
+ * <p>Запись выполняется в потоке long polling (или webhook), поэтому медленная база притормаживает
+ * приём, а не копит обновления в памяти. Неудачная запись повторяется {@code
+ * bot.cluster.ingest-attempts} раз, после чего обновление не принимается: webhook отвечает ошибкой,
+ * и Telegram доставит его снова. Повторы от Telegram после перезапуска узла отсеиваются {@link
+ * AppliedUpdates} ещё до записи.
+ */
+@Component
+@Primary
+@ConditionalOnProperty(name = "bot.cluster.role", havingValue = "ingest")
+@Log4j2
+public class ClusterIngest implements UpdateSink {
+
+  private final UpdateQueue queue;
+  private final AppliedUpdates appliedUpdates;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final int partitions;
+  private final int attempts;
+  private final long retryDelayMs;
+
+  private final LongAdder appended = new LongAdder();
+  private final LongAdder duplicates = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+
+  public ClusterIngest(
+      UpdateQueue queue,
+      AppliedUpdates appliedUpdates,
+      @Value("${bot.cluster.partitions:16}") int partitions,
+      @Value("${bot.cluster.ingest-attempts:5}") int attempts,
+      @Value("${bot.cluster.ingest-retry-delay-ms:200}") long retryDelayMs) {
+    this.queue = queue;
+    this.appliedUpdates = appliedUpdates;
+    this.partitions = partitions;
+    this.attempts = attempts;
+    this.retryDelayMs = retryDelayMs;
+  }
+
+  @Override
+  public boolean dispatch(Update update) {
+    if (!appliedUpdates.begin(update.getUpdateId())) {
+      duplicates.increment();
+      return true;
+    }
+    boolean accepted = false;
+    try {
+      accepted = enqueue(update);
+      return accepted;
+    } finally {
+      // Незаписанное обновление должно пройти, когда Telegram повторит его
+      if (accepted) {
+        appliedUpdates.complete(update.getUpdateId());
+      } else {
+        appliedUpdates.release(update.getUpdateId());
+      }
+    }
+  }
+
+  private boolean enqueue(Update update) {
+    long chatId = UpdateDispatcher.chatIdOf(update);
+    int partition = UpdateQueue.partitionOf(chatId, partitions);
+    String payload;
+    try {
+      payload = objectMapper.writeValueAsString(update);
+    } catch (JsonProcessingException e) {
+      failed.increment();
+      log.error("Не удалось сериализовать обновление {}: ", update.getUpdateId(), e);
+      return false;
+    }
+
+    for (int attempt = 1; ; attempt++) {
+      try {
+        if (queue.append(partition, update.getUpdateId(), chatId, payload)) {
+          appended.increment();
+        } else {
+          duplicates.increment();
+        }
+        return true;
+      } catch (RuntimeException e) {
+        if (attempt >= attempts) {
+          failed.increment();
+          log.error(
+              "Обновление {} чата {} не записано в очередь после {} попыток: ",
+              update.getUpdateId(),
+              chatId,
+              attempts,
+              e);
+          return false;
+        }
+        log.warn("Ошибка записи в очередь (попытка {}): {}", attempt, e.getMessage());
+        try {
+          TimeUnit.MILLISECONDS.sleep(retryDelayMs * attempt);
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          failed.increment();
+          return false;
+        }
+      }
+    }
+  }
+
+  /** Возвращает показатели узла приёма. */
+  public IngestStats getStats() {
+    return new IngestStats(appended.sum(), duplicates.sum(), failed.sum());
+  }
+
+  /**
+   * Показатели узла приёма.
+   *
+   * @param appended обновлений записано в очередь
+   * @param duplicates повторов, уже бывших в очереди
+   * @param failed обновлений, которые не удалось записать
+   */
+  public record IngestStats(long appended, long duplicates, long failed) {}
+}
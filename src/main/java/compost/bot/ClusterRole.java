@@ -0,0 +1,11 @@
+package compost.bot;
+
+/** Роль процесса бота, {@code bot.cluster.role}. */
+public enum ClusterRole {
+  /** Один процесс получает и обрабатывает обновления. */
+  STANDALONE,
+  /** Получает обновления от Telegram и складывает их в очередь, команды не выполняет. */
+  INGEST,
+  /** Обрабатывает арендованные партиции очереди, обновления от Telegram не запрашивает. */
+  WORKER
+}
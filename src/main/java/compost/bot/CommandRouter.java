@@ -0,0 +1,141 @@
+package compost.bot;
+
+import compost.bot.handlers.CommandHandler;
+import compost.bot.handlers.UnknownCommandHandler;
+import compost.util.Constants.BotCommand;
+import java.util.Arrays;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Маршрутизатор команд. Строится один раз при старте: имена {@link BotCommand} укладываются в
+ * регистронезависимый префиксный автомат, обработчики — в массив по {@code ordinal()}.
+ *
+ * <p>{@link #route(String)} разбирает токен команды и суффикс {@code @botname} прямо в исходной
+ * строке, без split/substring и без выделения памяти:
+ *
+ * <ul>
+ *   <li>токен команды заканчивается на первом пробельном символе или на '@';
+ *   <li>команда, адресованная другому боту ({@code /tags@OtherBot}), игнорируется;
+ *   <li>неизвестная команда уходит в {@link UnknownCommandHandler}.
+ * </ul>
+ */
+@Component
+public class CommandRouter {
+
+  private static final int ALPHABET = 'z' - 'a' + 1;
+  private static final int NO_STATE = 0;
+  private static final int NO_COMMAND = -1;
+
+  /** Переходы автомата: {@code transitions[state * ALPHABET + letter]}, 0 — перехода нет. */
+  private final int[] transitions;
+
+  /** Команда, которой заканчивается состояние, или {@link #NO_COMMAND}. */
+  private final int[] accepting;
+
+  private final CommandHandler[] handlers;
+  private final CommandHandler unknownCommandHandler;
+  private final String botUsername;
+
+  public CommandRouter(
+      Map<BotCommand, CommandHandler> handlers,
+      UnknownCommandHandler unknownCommandHandler,
+      @Value("${bot.username:codeCompostInspectorBot}") String botUsername) {
+    this.unknownCommandHandler = unknownCommandHandler;
+    this.botUsername = botUsername;
+
+    BotCommand[] commands = BotCommand.values();
+    this.handlers = new CommandHandler[commands.length];
+    for (BotCommand command : commands) {
+      this.handlers[command.ordinal()] =
+          handlers.getOrDefault(command, unknownCommandHandler);
+    }
+
+    // Состояние 0 — «перехода нет», корень автомата — состояние 1
+    int maxStates = 2;
+    for (BotCommand command : commands) {
+      maxStates += command.getCommand().length();
+    }
+    int[] table = new int[maxStates * ALPHABET];
+    int[] accept = new int[maxStates];
+    Arrays.fill(accept, NO_COMMAND);
+    int states = 2;
+    for (BotCommand command : commands) {
+      String name = command.getCommand();
+      int state = 1;
+      for (int i = 1; i < name.length(); i++) {
+        int letter = letter(name.charAt(i));
+        if (letter < 0) {
+          throw new IllegalStateException("Имя команды должно состоять из букв a-z: " + name);
+        }
+        int index = state * ALPHABET + letter;
+        if (table[index] == NO_STATE) {
+          table[index] = states++;
+        }
+        state = table[index];
+      }
+      accept[state] = command.ordinal();
+    }
+    this.transitions = Arrays.copyOf(table, states * ALPHABET);
+    this.accepting = Arrays.copyOf(accept, states);
+  }
+
+  /**
+   * Находит обработчик для текста сообщения.
+   *
+   * @param text текст сообщения без пробелов по краям
+   * @return обработчик команды; {@link UnknownCommandHandler} для неизвестной команды; null, если
+   *     текст не является командой или команда адресована другому боту
+   */
+  public CommandHandler route(String text) {
+    if (text == null || text.isEmpty() || text.charAt(0) != '/') {
+      return null;
+    }
+
+    int length = text.length();
+    int pos = 1;
+    int state = 1;
+    while (pos < length) {
+      char c = text.charAt(pos);
+      if (c == '@' || Character.isWhitespace(c)) {
+        break;
+      }
+      if (state != NO_STATE) {
+        int letter = letter(c);
+        state = letter < 0 ? NO_STATE : transitions[state * ALPHABET + letter];
+      }
+      pos++;
+    }
+
+    if (pos < length && text.charAt(pos) == '@' && !isAddressedToUs(text, pos + 1)) {
+      return null;
+    }
+
+    int command = state == NO_STATE ? NO_COMMAND : accepting[state];
+    return command == NO_COMMAND ? unknownCommandHandler : handlers[command];
+  }
+
+  /** Суффикс после '@' пуст или совпадает с именем бота без учёта регистра. */
+  private boolean isAddressedToUs(String text, int from) {
+    int end = from;
+    while (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+      end++;
+    }
+    int length = end - from;
+    return length == 0
+        || (length == botUsername.length()
+            && text.regionMatches(true, from, botUsername, 0, length));
+  }
+
+  /** Индекс буквы a-z без учёта регистра или -1. */
+  private static int letter(char c) {
+    if (c >= 'a' && c <= 'z') {
+      return c - 'a';
+    }
+    if (c >= 'A' && c <= 'Z') {
+      return c - 'A';
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,471 @@
+package compost.bot;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import compost.storage.PartitionAcquiredEvent;
+import compost.storage.PartitionLeases;
+import compost.storage.PartitionLeases.Lease;
+import compost.storage.PartitionShareChangedEvent;
+import compost.storage.UpdateOffsetRepository;
+import compost.storage.UpdateQueue;
+import compost.storage.UpdateQueue.QueuedUpdate;
+import compost.storage.UserActivityBuffer;
+import jakarta.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Обработчик кластера ({@code bot.cluster.role=worker}): арендует партиции {@link UpdateQueue} и
+ * выполняет обновления из них через {@link UpdateProcessor} и существующие обработчики команд.
+ *
+ * <p>Раз в {@code bot.cluster.renew-interval-ms} обработчик:
+ *
+ * <ol>
+ *   <li>отмечается живым и продлевает свои аренды; партиции с потерянной арендой останавливает;
+ *   <li>считает свою долю — {@code ceil(partitions / живые обработчики)};
+ *   <li>освобождает лишние партиции или захватывает свободные и просроченные до своей доли.
+ * </ol>
+ *
+ * <p>Поэтому при запуске нового обработчика партиции перераспределяются в течение интервала
+ * продления, а партиции упавшего подхватываются после истечения его аренды ({@code
+ * bot.cluster.lease-ttl-ms}).
+ *
+ * <p>Каждая арендованная партиция обрабатывается одной задачей: обновления выбираются пачками по
+ * возрастанию номера в партиции и выполняются по одному. Каждое обновление перед выполнением
+ * отмечается по своему номеру в {@link AppliedUpdates} партиции, а повтор пропускается. Позиция
+ * партиции хранится в её аренде: при сбросе {@link UserActivityBuffer} watermark подтверждается
+ * через {@link PartitionLeases#commit}, и обновления до него удаляются из очереди. Поэтому подтверждённая
+ * позиция, как и у потока Telegram, не опережает записанные счётчики сообщений.
+ *
+ * <p>Перед каждой пачкой аренда проверяется, а подтверждение проходит только при прежних
+ * владельце и эпохе, поэтому узел, потерявший аренду, не сдвигает чтение нового владельца.
+ * Доставка «хотя бы один раз»: обновления после подтверждённой позиции упавшего или потерявшего
+ * аренду обработчика выполнит следующий владелец.
+ *
+ * <p>Перед обработкой захваченной партиции публикуется {@link PartitionAcquiredEvent}, по которому
+ * кэши узла сбрасывают данные её чатов, изменённые прежним владельцем. Когда число арендованных
+ * партиций меняется, публикуется {@link PartitionShareChangedEvent}: очередь отправки узла
+ * оставляет себе такую же долю общего лимита бота.
+ */
+@Component
+@ConditionalOnProperty(name = "bot.cluster.role", havingValue = "worker")
+@Log4j2
+public class PartitionWorker {
+
+  /** Обновления партиции выполняются по одному, поэтому окну AppliedUpdates хватает малого. */
+  private static final int PARTITION_WINDOW = 64;
+
+  private final UpdateQueue queue;
+  private final PartitionLeases leases;
+  private final UpdateProcessor processor;
+  private final ApplicationEventPublisher events;
+  private final UserActivityBuffer activityBuffer;
+  private final String workerId;
+  private final int partitions;
+  private final Duration leaseTtl;
+  private final long renewIntervalMs;
+  private final long pollIntervalMs;
+  private final int batchSize;
+  private final ObjectMapper objectMapper =
+      new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+  private final Map<Integer, OwnedPartition> owned = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService coordinator;
+  private final ScheduledExecutorService executor;
+
+  private final LongAdder processed = new LongAdder();
+  private final LongAdder duplicates = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder lostLeases = new LongAdder();
+  private int publishedOwned = -1;
+
+  @Autowired
+  public PartitionWorker(
+      UpdateQueue queue,
+      PartitionLeases leases,
+      UpdateProcessor processor,
+      ApplicationEventPublisher events,
+      UserActivityBuffer activityBuffer,
+      @Value("${bot.cluster.partitions:16}") int partitions,
+      @Value("${bot.cluster.worker-threads:4}") int threads,
+      @Value("${bot.cluster.lease-ttl-ms:15000}") long leaseTtlMs,
+      @Value("${bot.cluster.renew-interval-ms:3000}") long renewIntervalMs,
+      @Value("${bot.cluster.poll-interval-ms:200}") long pollIntervalMs,
+      @Value("${bot.cluster.batch-size:100}") int batchSize) {
+    this(
+        queue,
+        leases,
+        processor,
+        events,
+        activityBuffer,
+        ManagementFactory.getRuntimeMXBean().getName()
+            + "-"
+            + UUID.randomUUID().toString().substring(0, 8),
+        partitions,
+        threads,
+        leaseTtlMs,
+        renewIntervalMs,
+        pollIntervalMs,
+        batchSize);
+  }
+
+  PartitionWorker(
+      UpdateQueue queue,
+      PartitionLeases leases,
+      UpdateProcessor processor,
+      ApplicationEventPublisher events,
+      UserActivityBuffer activityBuffer,
+      String workerId,
+      int partitions,
+      int threads,
+      long leaseTtlMs,
+      long renewIntervalMs,
+      long pollIntervalMs,
+      int batchSize) {
+    if (renewIntervalMs * 2 > leaseTtlMs) {
+      throw new IllegalArgumentException(
+          "Аренда должна переживать хотя бы два продления: lease-ttl-ms="
+              + leaseTtlMs
+              + ", renew-interval-ms="
+              + renewIntervalMs);
+    }
+    this.queue = queue;
+    this.leases = leases;
+    this.processor = processor;
+    this.events = events;
+    this.activityBuffer = activityBuffer;
+    this.workerId = workerId;
+    this.partitions = partitions;
+    this.leaseTtl = Duration.ofMillis(leaseTtlMs);
+    this.renewIntervalMs = renewIntervalMs;
+    this.pollIntervalMs = pollIntervalMs;
+    this.batchSize = batchSize;
+    this.coordinator =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "partition-leases");
+              thread.setDaemon(true);
+              return thread;
+            });
+    AtomicInteger counter = new AtomicInteger();
+    this.executor =
+        Executors.newScheduledThreadPool(
+            threads,
+            r -> {
+              Thread thread = new Thread(r, "partition-worker-" + counter.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    activityBuffer.addCheckpoint(
+        UserActivityBuffer.FlushCheckpoint.of(this::prepareCheckpoint, this::holds));
+  }
+
+  /** Начинает аренду партиций после запуска приложения. */
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    log.info("Обработчик кластера {} запущен, партиций в очереди: {}", workerId, partitions);
+    coordinator.scheduleWithFixedDelay(
+        this::rebalanceQuietly, 0, renewIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Останавливает обработку и освобождает партиции, чтобы их сразу забрали другие. Аренды
+   * освобождаются после текущих пачек и сброса активности, который подтверждает их позиции.
+   */
+  @PreDestroy
+  public void shutdown() {
+    coordinator.shutdownNow();
+    synchronized (this) {
+      owned.values().forEach(OwnedPartition::deactivate);
+    }
+    executor.shutdown();
+    try {
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      activityBuffer.flush();
+    } catch (RuntimeException e) {
+      log.error("Не удалось сбросить активность при остановке, позиции партиций отстанут: ", e);
+    }
+    synchronized (this) {
+      for (Integer partition : Set.copyOf(owned.keySet())) {
+        OwnedPartition task = owned.remove(partition);
+        if (task != null) {
+          leases.release(task.lease);
+        }
+      }
+    }
+    leases.leave(workerId);
+  }
+
+  /** Один шаг координации: пульс, продление, освобождение лишних и захват недостающих партиций. */
+  synchronized void rebalance() {
+    leases.heartbeat(workerId, leaseTtl);
+    for (OwnedPartition task : List.copyOf(owned.values())) {
+      // Задача могла раньше сама заметить потерю аренды и уже снять себя
+      if (!leases.renew(task.lease, leaseTtl) && stop(task.partition) != null) {
+        lostLeases.increment();
+        log.warn("Аренда партиции {} потеряна, обработка остановлена", task.partition);
+      }
+    }
+
+    int live = Math.max(1, leases.liveWorkers());
+    int target = (partitions + live - 1) / live;
+    while (owned.size() > target) {
+      int partition = new TreeSet<>(owned.keySet()).last();
+      OwnedPartition task = stop(partition);
+      if (task != null) {
+        leases.release(task.lease);
+      }
+      log.info("Партиция {} освобождена для других обработчиков ({} живых)", partition, live);
+    }
+
+    // Обход начинается со своего смещения, чтобы одновременно стартовавшие узлы не спорили
+    // за одни и те же партиции.
+    int offset = Math.floorMod(workerId.hashCode(), partitions);
+    for (int i = 0; i < partitions && owned.size() < target; i++) {
+      int partition = (offset + i) % partitions;
+      if (owned.containsKey(partition)) {
+        continue;
+      }
+      Lease lease = leases.tryAcquire(partition, workerId, leaseTtl);
+      if (lease != null) {
+        events.publishEvent(new PartitionAcquiredEvent(partition, partitions));
+        start(lease);
+        log.info("Партиция {} взята в аренду, эпоха {}", partition, lease.epoch());
+      }
+    }
+
+    if (owned.size() != publishedOwned) {
+      publishedOwned = owned.size();
+      events.publishEvent(new PartitionShareChangedEvent(publishedOwned, partitions));
+    }
+  }
+
+  /** Возвращает арендованные партиции. */
+  public Set<Integer> ownedPartitions() {
+    return Set.copyOf(owned.keySet());
+  }
+
+  public String getWorkerId() {
+    return workerId;
+  }
+
+  /** Возвращает показатели обработчика. */
+  public WorkerStats getStats() {
+    return new WorkerStats(
+        owned.size(), processed.sum(), duplicates.sum(), failed.sum(), lostLeases.sum());
+  }
+
+  private void rebalanceQuietly() {
+    try {
+      rebalance();
+    } catch (Exception e) {
+      log.error("Ошибка координации партиций: ", e);
+    }
+  }
+
+  /** Точка сохранения арендованных партиций, выполняется при сбросе буфера активности. */
+  private Runnable prepareCheckpoint() {
+    List<Runnable> commits = new ArrayList<>();
+    for (OwnedPartition task : owned.values()) {
+      Runnable commit = task.applied.prepareCheckpoint();
+      if (commit != null) {
+        commits.add(commit);
+      }
+      task.forgetSnapshotted();
+    }
+    return commits.isEmpty() ? null : () -> commits.forEach(Runnable::run);
+  }
+
+  /** Удерживает инкременты обновлений, которые позиции арендованных партиций ещё не отметили. */
+  private boolean holds(long updateId) {
+    for (OwnedPartition task : owned.values()) {
+      if (task.holds(updateId)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void start(Lease lease) {
+    OwnedPartition task = new OwnedPartition(lease);
+    owned.put(lease.partition(), task);
+    task.future =
+        executor.scheduleWithFixedDelay(task, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Останавливает партицию, не дожидаясь текущей пачки: она прервётся после выполняемого
+   * обновления.
+   */
+  private OwnedPartition stop(int partition) {
+    OwnedPartition task = owned.remove(partition);
+    if (task != null) {
+      task.deactivate();
+    }
+    return task;
+  }
+
+  private void process(QueuedUpdate queued) {
+    try {
+      Update update = objectMapper.readValue(queued.payload(), Update.class);
+      processor.processAsync(update).toCompletableFuture().join();
+    } catch (Exception e) {
+      // Как и в UpdateDispatcher: ошибка одной команды не останавливает очередь чата.
+      failed.increment();
+      log.error(
+          "Ошибка при обработке обновления {} чата {}: ", queued.updateId(), queued.chatId(), e);
+    }
+  }
+
+  /**
+   * Показатели обработчика кластера.
+   *
+   * @param partitions арендовано партиций
+   * @param processed обработано обновлений
+   * @param duplicates пропущенных повторов уже применённых обновлений
+   * @param failed обновлений, завершившихся ошибкой
+   * @param lostLeases аренд, потерянных без освобождения
+   */
+  public record WorkerStats(
+      int partitions, long processed, long duplicates, long failed, long lostLeases) {}
+
+  /**
+   * Задача арендованной партиции. Пачки выполняет одна задача по расписанию, поэтому они не
+   * пересекаются; остановка лишь снимает флаг, который цикл пачки проверяет между обновлениями.
+   */
+  private final class OwnedPartition implements Runnable {
+    private final int partition;
+    private final Lease lease;
+    private final AppliedUpdates applied;
+    // update_id → номер для обновлений, которые AppliedUpdates партиции ещё удерживает
+    private final Map<Long, Long> seqByUpdate = new ConcurrentHashMap<>();
+    private long position;
+    private volatile boolean active = true;
+    private volatile ScheduledFuture<?> future;
+
+    private OwnedPartition(Lease lease) {
+      this.partition = lease.partition();
+      this.lease = lease;
+      this.applied = new AppliedUpdates(new LeaseOffsets(), PARTITION_WINDOW);
+      this.position = lease.ackedUpTo();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (drainBatch()) {
+          // Полная пачка: в партиции, скорее всего, есть ещё обновления
+        }
+      } catch (Exception e) {
+        log.error("Ошибка чтения партиции {}: ", partition, e);
+      }
+      // Задача, сама заметившая потерю аренды в первом запуске, снимает своё расписание
+      if (!active && future != null) {
+        future.cancel(false);
+      }
+    }
+
+    private void deactivate() {
+      active = false;
+      ScheduledFuture<?> scheduled = future;
+      if (scheduled != null) {
+        scheduled.cancel(false);
+      }
+    }
+
+    /** Останавливает задачу, заметившую потерю аренды раньше координатора. */
+    private void abandon() {
+      deactivate();
+      if (owned.remove(partition, this)) {
+        lostLeases.increment();
+        log.warn("Аренда партиции {} потеряна, обработка остановлена", partition);
+      }
+    }
+
+    /** @return true, если пачка была полной и стоит сразу выбрать следующую */
+    private boolean drainBatch() {
+      if (!active) {
+        return false;
+      }
+      if (!leases.holds(lease)) {
+        abandon();
+        return false;
+      }
+      List<QueuedUpdate> batch = queue.poll(partition, position, batchSize);
+      for (QueuedUpdate queued : batch) {
+        if (!active) {
+          return false;
+        }
+        if (applied.begin(queued.seq())) {
+          seqByUpdate.put(queued.updateId(), queued.seq());
+          process(queued);
+          processed.increment();
+          applied.complete(queued.seq());
+        } else {
+          duplicates.increment();
+        }
+        position = queued.seq();
+      }
+      return batch.size() == batchSize;
+    }
+
+    private boolean holds(long updateId) {
+      Long seq = seqByUpdate.get(updateId);
+      return seq != null && applied.holds(seq);
+    }
+
+    /** Забывает обновления, которые вошли в снимок позиции и больше не удерживаются. */
+    private void forgetSnapshotted() {
+      seqByUpdate.values().removeIf(seq -> !applied.holds(seq));
+    }
+
+    /**
+     * Позиция {@link AppliedUpdates} партиции в её аренде: восстанавливается из подтверждённого
+     * номера, а сохранение подтверждает его через {@link PartitionLeases#commit}. Обновления
+     * партиции выполняются по порядку, поэтому окно выше watermark всегда пусто.
+     */
+    private final class LeaseOffsets implements UpdateOffsetRepository {
+
+      @Override
+      public Optional<Offset> load() {
+        return Optional.of(new Offset(lease.ackedUpTo(), new long[0]));
+      }
+
+      @Override
+      public void save(Offset offset) {
+        if (!leases.commit(lease, offset.watermark())) {
+          abandon();
+          return;
+        }
+        queue.ack(partition, offset.watermark());
+      }
+    }
+  }
+}
@@ -0,0 +1,417 @@
+package compost.bot;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Асинхронный диспетчер входящих обновлений.
+ *
+ * <p>Каждое обновление попадает в последовательную очередь своего чата. Очереди разных чатов
+ * обрабатываются параллельно на ограниченном пуле потоков, а внутри одного чата порядок обработки
+ * сохраняется. Медленная команда в одном чате не задерживает остальные чаты и поток long polling.
+ * Асинхронная команда ({@code bot.storage.driver=reactive}) отпускает поток на время ожидания:
+ * очередь её чата продолжается по завершении команды.
+ *
+ * <p>Очередь чата существует, пока в ней есть обновления: опустевшая очередь удаляется из таблицы,
+ * поэтому память не растёт с числом когда-либо писавших чатов.
+ *
+ * <p>Повторно доставленные обновления (после перезапуска или повтора webhook) распознаются через
+ * {@link AppliedUpdates} и пропускаются.
+ */
+@Component
+@Log4j2
+public class UpdateDispatcher implements UpdateSink {
+
+  /** Поведение при переполнении очереди чата. */
+  public enum RejectionPolicy {
+    /** Отбросить новое обновление. */
+    DROP_NEWEST,
+    /** Отбросить самое старое обновление в очереди. */
+    DROP_OLDEST,
+    /** Заблокировать вызывающий поток, пока в очереди не освободится место. */
+    BLOCK
+  }
+
+  /** Сколько обновлений чат обрабатывает подряд, прежде чем уступить поток другим чатам. */
+  private static final int DRAIN_BATCH = 32;
+
+  private final UpdateProcessor processor;
+  private final AppliedUpdates appliedUpdates;
+  private final int queueDepth;
+  private final RejectionPolicy rejectionPolicy;
+  private final boolean redeliversRejected;
+  private final ExecutorService executor;
+  private final Map<Long, ChatLane> lanes = new ConcurrentHashMap<>();
+  private final LongAdder received = new LongAdder();
+  private final LongAdder processedTotal = new LongAdder();
+  private final LongAdder droppedTotal = new LongAdder();
+
+  @Autowired
+  public UpdateDispatcher(
+      UpdateProcessor processor,
+      AppliedUpdates appliedUpdates,
+      @Value("${bot.dispatcher.threads:8}") int threads,
+      @Value("${bot.dispatcher.queue-depth:100}") int queueDepth,
+      @Value("${bot.dispatcher.rejection-policy:DROP_OLDEST}") RejectionPolicy rejectionPolicy,
+      @Value("${bot.mode:polling}") String mode) {
+    this.processor = processor;
+    this.appliedUpdates = appliedUpdates;
+    this.queueDepth = queueDepth;
+    this.rejectionPolicy = rejectionPolicy;
+    this.redeliversRejected = "webhook".equals(mode);
+
+    AtomicInteger counter = new AtomicInteger();
+    // Очередь пула не ограничиваем: в ней лежит не больше одной задачи на чат.
+    this.executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            r -> {
+              Thread thread = new Thread(r, "update-worker-" + counter.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /** Диспетчер для long polling. */
+  public UpdateDispatcher(
+      UpdateProcessor processor,
+      AppliedUpdates appliedUpdates,
+      int threads,
+      int queueDepth,
+      RejectionPolicy rejectionPolicy) {
+    this(processor, appliedUpdates, threads, queueDepth, rejectionPolicy, "polling");
+  }
+
+  /**
+   * Ставит обновление в очередь его чата.
+   *
+   * @param update входящее обновление
+   * @return false, если обновление отброшено из-за переполнения очереди
+   */
+  @Override
+  public boolean dispatch(Update update) {
+    received.increment();
+    if (!appliedUpdates.begin(update.getUpdateId())) {
+      log.debug("Обновление {} уже применено, повтор пропущен", update.getUpdateId());
+      return true;
+    }
+    Long chatId = chatIdOf(update);
+    while (true) {
+      // Очередь могла опустеть и удалиться между поиском и постановкой: тогда берём новую.
+      ChatLane lane = lanes.computeIfAbsent(chatId, ChatLane::new);
+      Offer offer = lane.offer(update);
+      if (offer != Offer.RETIRED) {
+        return offer == Offer.ACCEPTED;
+      }
+    }
+  }
+
+  /** Возвращает количество обновлений, переданных в диспетчер с момента запуска. */
+  public long getReceivedCount() {
+    return received.sum();
+  }
+
+  /** Возвращает количество обработанных обновлений с момента запуска. */
+  public long getProcessedCount() {
+    return processedTotal.sum();
+  }
+
+  /** Возвращает количество обновлений, отброшенных из-за переполнения очередей чатов. */
+  public long getDroppedCount() {
+    return droppedTotal.sum();
+  }
+
+  /** Возвращает показатели непустых очередей по каждому чату. */
+  public Map<Long, ChatStats> getChatStats() {
+    return lanes.values().stream()
+        .collect(Collectors.toMap(lane -> lane.chatId, ChatLane::stats));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+        log.warn("Диспетчер обновлений не успел обработать очереди до остановки");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  static Long chatIdOf(Update update) {
+    if (update.hasMessage()) {
+      return update.getMessage().getChatId();
+    }
+    if (update.hasEditedMessage()) {
+      return update.getEditedMessage().getChatId();
+    }
+    if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+      return update.getCallbackQuery().getMessage().getChatId();
+    }
+    return 0L;
+  }
+
+  /**
+   * Показатели очереди одного чата.
+   *
+   * @param queued обновлений в очереди
+   * @param processed обработано обновлений
+   * @param dropped отброшено обновлений
+   * @param lastLagMillis задержка последнего обновления между постановкой в очередь и обработкой
+   * @param maxLagMillis максимальная такая задержка
+   */
+  public record ChatStats(
+      int queued, long processed, long dropped, long lastLagMillis, long maxLagMillis) {}
+
+  private record QueuedUpdate(Update update, long enqueuedAtNanos) {}
+
+  /** Итог постановки в очередь чата. */
+  private enum Offer {
+    ACCEPTED,
+    REJECTED,
+    /** Очередь уже удалена как пустая, обновление нужно поставить в новую. */
+    RETIRED
+  }
+
+  /**
+   * Снимает с обработки обновление, приём которого отклонён. Webhook отвечает на него 503, и
+   * Telegram доставит его снова. Long polling уже подтвердил получение: повтора не будет, поэтому
+   * обновление отмечается применённым, иначе watermark остановился бы на нём.
+   */
+  private void rejected(long updateId) {
+    if (redeliversRejected) {
+      appliedUpdates.release(updateId);
+    } else {
+      appliedUpdates.complete(updateId);
+    }
+  }
+
+  private static Throwable failure(CompletableFuture<?> result) {
+    try {
+      result.join();
+      return null;
+    } catch (CompletionException e) {
+      return e.getCause() != null ? e.getCause() : e;
+    } catch (CancellationException e) {
+      return e;
+    }
+  }
+
+  /** Последовательная очередь одного чата. В пуле находится не больше одной её задачи. */
+  private final class ChatLane implements Runnable {
+
+    private final Long chatId;
+    private final Deque<QueuedUpdate> queue = new ArrayDeque<>();
+    private boolean scheduled;
+    private boolean retired;
+    private long processed;
+    private long dropped;
+    private long lastLagMillis;
+    private long maxLagMillis;
+
+    private ChatLane(Long chatId) {
+      this.chatId = chatId;
+    }
+
+    private Offer offer(Update update) {
+      synchronized (this) {
+        if (retired) {
+          return Offer.RETIRED;
+        }
+        if (queue.size() >= queueDepth) {
+          switch (rejectionPolicy) {
+            case DROP_NEWEST -> {
+              dropped();
+              rejected(update.getUpdateId());
+              log.warn("Очередь чата {} переполнена, обновление отброшено", chatId);
+              return Offer.REJECTED;
+            }
+            case DROP_OLDEST -> {
+              QueuedUpdate oldest = queue.pollFirst();
+              dropped();
+              if (oldest != null) {
+                // Приём старого обновления уже подтверждён, повторно оно не придёт
+                appliedUpdates.complete(oldest.update().getUpdateId());
+              }
+              log.warn("Очередь чата {} переполнена, отброшено самое старое обновление", chatId);
+            }
+            case BLOCK -> {
+              while (queue.size() >= queueDepth) {
+                try {
+                  wait();
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                  dropped();
+                  rejected(update.getUpdateId());
+                  return Offer.REJECTED;
+                }
+              }
+            }
+          }
+        }
+        queue.addLast(new QueuedUpdate(update, System.nanoTime()));
+        if (scheduled) {
+          return Offer.ACCEPTED;
+        }
+        scheduled = true;
+      }
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        abandon();
+        log.warn("Диспетчер остановлен, обновление чата {} не будет обработано", chatId);
+        return Offer.REJECTED;
+      }
+      return Offer.ACCEPTED;
+    }
+
+    private void dropped() {
+      dropped++;
+      droppedTotal.increment();
+    }
+
+    @Override
+    public void run() {
+      for (int i = 0; i < DRAIN_BATCH; i++) {
+        QueuedUpdate next;
+        synchronized (this) {
+          next = queue.pollFirst();
+          if (next == null) {
+            scheduled = false;
+          } else {
+            notifyAll();
+            long lag = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - next.enqueuedAtNanos());
+            lastLagMillis = lag;
+            maxLagMillis = Math.max(maxLagMillis, lag);
+          }
+        }
+        if (next == null) {
+          retireIfIdle();
+          return;
+        }
+
+        CompletableFuture<Void> result;
+        try {
+          result = processor.processAsync(next.update()).toCompletableFuture();
+        } catch (Exception e) {
+          result = CompletableFuture.failedFuture(e);
+        }
+
+        if (!result.isDone()) {
+          // Команда ждёт базу: поток свободен, очередь чата продолжится по завершении. Флаг
+          // scheduled остаётся установленным, поэтому порядок внутри чата сохраняется.
+          result.whenComplete(
+              (ignored, e) -> {
+                completed(next, e);
+                resume();
+              });
+          return;
+        }
+        completed(next, result.isCompletedExceptionally() ? failure(result) : null);
+      }
+
+      // Чат исчерпал свою порцию — уступаем поток другим чатам.
+      boolean idle;
+      synchronized (this) {
+        idle = queue.isEmpty();
+        if (idle) {
+          scheduled = false;
+        }
+      }
+      if (idle) {
+        retireIfIdle();
+        return;
+      }
+      resume();
+    }
+
+    /**
+     * Удаляет опустевшую очередь из таблицы. Проверка и удаление выполняются атомарно внутри
+     * {@code compute}; признак retired не даёт поставить обновление в уже удалённую очередь,
+     * иначе у чата оказались бы две очереди и порядок внутри чата нарушился бы.
+     */
+    private void retireIfIdle() {
+      lanes.computeIfPresent(
+          chatId,
+          (id, lane) -> {
+            if (lane != this) {
+              return lane;
+            }
+            synchronized (this) {
+              if (scheduled || !queue.isEmpty()) {
+                return lane;
+              }
+              retired = true;
+              return null;
+            }
+          });
+    }
+
+    private void completed(QueuedUpdate update, Throwable error) {
+      if (error != null) {
+        log.error("Ошибка при обработке обновления в чате {}: ", chatId, error);
+      }
+      appliedUpdates.complete(update.update().getUpdateId());
+      processedTotal.increment();
+      synchronized (this) {
+        processed++;
+      }
+    }
+
+    /** Продолжает очередь после асинхронной команды или исчерпанной порции. */
+    private void resume() {
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        abandon();
+        log.warn("Диспетчер остановлен, очередь чата {} не будет дообработана", chatId);
+      }
+    }
+
+    /**
+     * Пул остановлен: снимает оставшиеся обновления с обработки, не отмечая применёнными, чтобы
+     * после перезапуска они выполнились снова, и удаляет очередь.
+     */
+    private void abandon() {
+      List<QueuedUpdate> remaining;
+      synchronized (this) {
+        scheduled = false;
+        remaining = new ArrayList<>(queue);
+        queue.clear();
+        notifyAll();
+      }
+      remaining.forEach(next -> appliedUpdates.release(next.update().getUpdateId()));
+      retireIfIdle();
+    }
+
+    private synchronized ChatStats stats() {
+      return new ChatStats(queue.size(), processed, dropped, lastLagMillis, maxLagMillis);
+    }
+  }
+}
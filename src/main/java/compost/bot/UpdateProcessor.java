@@ -0,0 +1,179 @@
+package compost.bot;
+
+import compost.bot.CodeCompostInspectorBot.CommandContext;
+import compost.bot.handlers.CommandHandler;
+import compost.model.SimpleUser;
+import compost.service.UserService;
+import compost.storage.StorageDriver;
+import compost.util.Constants;
+import compost.util.MessageBuilder;
+import compost.util.MessageUtils;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Обработчик одного входящего обновления: учитывает активность пользователя, разбирает команду и
+ * передаёт её соответствующему {@link CommandHandler} через {@link CommandRouter}. Вызывается из
+ * {@link UpdateDispatcher}.
+ */
+@Component
+@Log4j2
+public class UpdateProcessor {
+
+  private static final CompletionStage<Void> DONE = CompletableFuture.completedFuture(null);
+
+  private final CommandRouter commandRouter;
+  private final UserService userService;
+  private final MessageUtils messageUtils;
+  private final BacklogCatchUp catchUp;
+  private final StorageDriver driver;
+
+  public UpdateProcessor(
+      CommandRouter commandRouter,
+      UserService userService,
+      MessageUtils messageUtils,
+      BacklogCatchUp catchUp,
+      @Value("${bot.storage.driver:sync}") StorageDriver driver) {
+    this.commandRouter = commandRouter;
+    this.userService = userService;
+    this.messageUtils = messageUtils;
+    this.catchUp = catchUp;
+    this.driver = driver;
+  }
+
+  /**
+   * Метод для проверки различных типов контента в сообщении.
+   *
+   * @param message Объект message, содержащий сообщение пользователя.
+   * @return Возвращает true, если сообщение содержит хотя бы один из типов контента, false, если
+   *     сообщение не содержит ни одного из них.
+   */
+  private boolean hasAnyContent(Message message) {
+    if (message == null) {
+      return false;
+    }
+    return message.hasText()
+        || message.hasPhoto()
+        || message.hasDocument()
+        || message.hasVideo()
+        || message.hasSticker()
+        || message.hasAudio()
+        || message.hasVoice()
+        || message.isReply();
+  }
+
+  /**
+   * Обрабатывает входящее обновление (сообщение) от Telegram-бота. Метод проверяет тип сообщения,
+   * выполняет команды и отправляет ответы пользователю.
+   *
+   * @param update Объект Update, содержащий информацию о входящем сообщении.
+   */
+  public void process(Update update) {
+    CommandContext context = accept(update);
+    if (context == null) {
+      return;
+    }
+    CommandHandler handler = commandRouter.route(context.fullText());
+    if (handler == null) {
+      // Команда адресована другому боту.
+      return;
+    }
+    if (catchUp.skipIfStale(context)) {
+      return;
+    }
+
+    // Проверка, что команда отправлена из разрешенной темы в группе (thread).
+    if (!Objects.equals(context.threadId(), Constants.ALLOWED_THREAD_ID)) {
+      Message message = context.message();
+      replyWrongThread(context, userService.getUser(context.chatId(), message.getFrom().getId()));
+      return;
+    }
+
+    handler.handle(context);
+  }
+
+  /**
+   * Обрабатывает обновление с учётом {@code bot.storage.driver}. При {@code reactive} команда
+   * выполняется через {@link CommandHandler#handleAsync} и не занимает поток на время запросов к
+   * базе; результат завершается, когда ответ поставлен в очередь отправки. При {@code sync}
+   * выполняется {@link #process} и возвращается уже завершённый результат.
+   *
+   * @param update Объект Update, содержащий информацию о входящем сообщении.
+   * @return завершение обработки
+   */
+  public CompletionStage<Void> processAsync(Update update) {
+    if (driver != StorageDriver.REACTIVE) {
+      process(update);
+      return DONE;
+    }
+    CommandContext context = accept(update);
+    if (context == null) {
+      return DONE;
+    }
+    CommandHandler handler = commandRouter.route(context.fullText());
+    if (handler == null || catchUp.skipIfStale(context)) {
+      return DONE;
+    }
+    if (!Objects.equals(context.threadId(), Constants.ALLOWED_THREAD_ID)) {
+      Message message = context.message();
+      return userService
+          .getUserAsync(context.chatId(), message.getFrom().getId())
+          .thenAccept(user -> replyWrongThread(context, user));
+    }
+    return handler.handleAsync(context);
+  }
+
+  /**
+   * Учитывает активность пользователя и возвращает контекст команды.
+   *
+   * @return контекст или null, если обновление не содержит команды
+   */
+  private CommandContext accept(Update update) {
+    // Проверка, что сообщение содержит допустимый контент.
+    if (!update.hasMessage() || !hasAnyContent(update.getMessage())) {
+      return null;
+    }
+
+    Message message = update.getMessage();
+    catchUp.observe(message);
+    Long chatId = message.getChatId();
+    String fullText = message.hasText() ? message.getText().trim() : "";
+    Integer threadId = message.getMessageThreadId();
+
+    if (message.getChat().isGroupChat() || message.getChat().isSuperGroupChat()) {
+      userService.handleUser(
+          chatId,
+          message.getFrom(),
+          !fullText.startsWith("/"),
+          sentAt(message),
+          update.getUpdateId());
+    }
+
+    // Проверка, является ли сообщение командой боту.
+    if (!fullText.startsWith("/")) {
+      return null;
+    }
+    log.debug("Обнаружена команда: {}", fullText);
+    return new CommandContext(chatId, threadId, message, fullText);
+  }
+
+  /** Время отправки сообщения; у сообщения без даты — время получения. */
+  private static Instant sentAt(Message message) {
+    Integer date = message.getDate();
+    return date != null ? Instant.ofEpochSecond(date) : Instant.now();
+  }
+
+  private void replyWrongThread(CommandContext context, SimpleUser user) {
+    if (user != null) {
+      messageUtils.sendText(
+          context.chatId(), Constants.ALLOWED_THREAD_ID, MessageBuilder.wrongThreadId(user));
+    }
+  }
+}
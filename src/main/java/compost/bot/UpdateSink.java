@@ -0,0 +1,18 @@
+package compost.bot;
+
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Приёмник входящих обновлений от long polling и webhook: локальный {@link UpdateDispatcher} или,
+ * на узле приёма кластера, {@link ClusterIngest}.
+ */
+public interface UpdateSink {
+
+  /**
+   * Принимает обновление в обработку.
+   *
+   * @param update входящее обновление
+   * @return false, если обновление отброшено
+   */
+  boolean dispatch(Update update);
+}
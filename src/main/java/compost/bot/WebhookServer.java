@@ -0,0 +1,143 @@
+package compost.bot;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Встроенный HTTP-сервер для приёма обновлений в режиме webhook ({@code bot.mode=webhook}).
+ *
+ * <p>Принимает POST с JSON-объектом Update и сразу передаёт его в {@link UpdateSink}, отвечая
+ * 200 до начала обработки. Если приёмник отбросил обновление, отвечает 503, и Telegram доставит
+ * его повторно. Соединения HTTP/1.1 остаются открытыми между запросами, а очередь
+ * запросов ограничена: при её заполнении приём новых соединений притормаживается. Для локальной
+ * проверки достаточно отправить записанный Update:
+ *
+ * <pre>
+ * curl -X POST -H 'Content-Type: application/json' -d @update.json http://localhost:8443/webhook
+ * </pre>
+ */
+@Component
+@ConditionalOnProperty(name = "bot.mode", havingValue = "webhook")
+@Log4j2
+public class WebhookServer {
+
+  static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+  private final UpdateSink updateSink;
+  private final ObjectMapper objectMapper =
+      new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+  private final String host;
+  private final int port;
+  private final String path;
+  private final String secretToken;
+  private final int threads;
+  private final int queueCapacity;
+  private HttpServer server;
+  private ThreadPoolExecutor executor;
+
+  public WebhookServer(
+      UpdateSink updateSink,
+      @Value("${bot.webhook.host:0.0.0.0}") String host,
+      @Value("${bot.webhook.port:8443}") int port,
+      @Value("${bot.webhook.path:/webhook}") String path,
+      @Value("${bot.webhook.secret-token:}") String secretToken,
+      @Value("${bot.webhook.threads:4}") int threads,
+      @Value("${bot.webhook.queue-capacity:256}") int queueCapacity) {
+    this.updateSink = updateSink;
+    this.host = host;
+    this.port = port;
+    this.path = path;
+    this.secretToken = secretToken;
+    this.threads = threads;
+    this.queueCapacity = queueCapacity;
+  }
+
+  /** Запускает HTTP-сервер. */
+  public synchronized void start() throws IOException {
+    AtomicInteger counter = new AtomicInteger();
+    // При заполненной очереди запрос обрабатывает поток приёма соединений: это и есть
+    // обратное давление на Telegram, без потери уже принятых обновлений.
+    executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            r -> {
+              Thread thread = new Thread(r, "webhook-" + counter.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    server = HttpServer.create(new InetSocketAddress(host, port), queueCapacity);
+    server.createContext(path, this::handle);
+    server.setExecutor(executor);
+    server.start();
+    log.info("Webhook-сервер слушает {}:{}{}", host, getPort(), path);
+  }
+
+  /** Останавливает HTTP-сервер. */
+  @PreDestroy
+  public synchronized void stop() {
+    if (server != null) {
+      server.stop(1);
+      executor.shutdown();
+      server = null;
+    }
+  }
+
+  /** Возвращает фактический порт (полезно при {@code bot.webhook.port=0}). */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!"POST".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      if (!secretToken.isEmpty()
+          && !secretToken.equals(exchange.getRequestHeaders().getFirst(SECRET_HEADER))) {
+        log.warn("Отклонён запрос webhook с неверным секретом от {}", exchange.getRemoteAddress());
+        exchange.sendResponseHeaders(401, -1);
+        return;
+      }
+
+      Update update;
+      try (InputStream body = exchange.getRequestBody()) {
+        update = objectMapper.readValue(body, Update.class);
+      } catch (IOException e) {
+        log.warn("Не удалось разобрать обновление из webhook: {}", e.getMessage());
+        exchange.sendResponseHeaders(400, -1);
+        return;
+      }
+
+      if (!updateSink.dispatch(update)) {
+        // Не подтверждаем доставку: Telegram повторит обновление позже.
+        log.warn("Обновление {} не принято в обработку, ответ 503", update.getUpdateId());
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.sendResponseHeaders(503, -1);
+        return;
+      }
+      exchange.sendResponseHeaders(200, -1);
+    }
+  }
+}
@@ -1,8 +1,26 @@
 package compost.bot.handlers;
 
 import compost.bot.CodeCompostInspectorBot;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 @FunctionalInterface
 public interface CommandHandler {
   void handle(CodeCompostInspectorBot.CommandContext context);
+
+  /**
+   * Неблокирующая обработка для {@code bot.storage.driver=reactive}. Обработчики, которые ходят в
+   * хранилище, переопределяют метод; остальные выполняются синхронно через {@link #handle}.
+   *
+   * @param context контекст команды
+   * @return завершается, когда ответ поставлен в очередь отправки
+   */
+  default CompletionStage<Void> handleAsync(CodeCompostInspectorBot.CommandContext context) {
+    try {
+      handle(context);
+      return CompletableFuture.completedFuture(null);
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
 }
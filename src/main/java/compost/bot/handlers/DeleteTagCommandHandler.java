@@ -1,13 +1,13 @@
 package compost.bot.handlers;
 
 import compost.annotation.BotCommandMapping;
-import compost.annotation.LoggableCommand;
 import compost.bot.CodeCompostInspectorBot;
 import compost.service.TagService;
 import compost.service.TagService.TagResult;
 import compost.util.Constants.BotCommand;
 import compost.util.MessageBuilder;
 import compost.util.MessageUtils;
+import java.util.concurrent.CompletionStage;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -23,9 +23,18 @@ public class DeleteTagCommandHandler implements CommandHandler {
   }
 
   @Override
-  @LoggableCommand
   public void handle(CodeCompostInspectorBot.CommandContext context) {
-    TagResult result = tagService.tryRemoveTag(context.chatId(), context.fullText());
+    reply(context, tagService.tryRemoveTag(context.chatId(), context.fullText()));
+  }
+
+  @Override
+  public CompletionStage<Void> handleAsync(CodeCompostInspectorBot.CommandContext context) {
+    return tagService
+        .tryRemoveTagAsync(context.chatId(), context.fullText())
+        .thenAccept(result -> reply(context, result));
+  }
+
+  private void reply(CodeCompostInspectorBot.CommandContext context, TagResult result) {
     switch (result.result()) {
       case INVALID_FORMAT ->
           messageUtils.sendText(
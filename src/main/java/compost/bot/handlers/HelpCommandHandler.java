@@ -1,11 +1,12 @@
 package compost.bot.handlers;
 
 import compost.annotation.BotCommandMapping;
-import compost.annotation.LoggableCommand;
 import compost.bot.CodeCompostInspectorBot;
 import compost.util.Constants.BotCommand;
 import compost.util.MessageBuilder;
 import compost.util.MessageUtils;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -19,8 +20,18 @@ public class HelpCommandHandler implements CommandHandler {
   }
 
   @Override
-  @LoggableCommand
   public void handle(CodeCompostInspectorBot.CommandContext context) {
     messageUtils.sendText(context.chatId(), context.threadId(), MessageBuilder.getHelp());
   }
+
+  /** Справка статична: ответ ставится в очередь отправки без обращения к хранилищу. */
+  @Override
+  public CompletionStage<Void> handleAsync(CodeCompostInspectorBot.CommandContext context) {
+    try {
+      handle(context);
+      return CompletableFuture.completedFuture(null);
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
 }
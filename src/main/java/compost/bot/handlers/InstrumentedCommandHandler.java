@@ -0,0 +1,114 @@
+package compost.bot.handlers;
+
+import compost.bot.CodeCompostInspectorBot.CommandContext;
+import compost.util.Constants.BotCommand;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Обёртка обработчика команды: пишет длительность в гистограмму {@code bot.command.duration} с
+ * тегами command и outcome и логирует выполнение. Успешные вызовы логируются выборочно — в среднем
+ * один из {@code sampleRate} (1 — каждый, 0 — ни одного), ошибки — всегда.
+ *
+ * <p>Обычный вызов не выделяет памяти: таймеры созданы заранее, сообщение строится только для
+ * попавшего в выборку вызова. Обёртку накладывает {@code CommandHandlerConfig}, поэтому обработчики
+ * не проксируются через AOP.
+ */
+@Log4j2
+public class InstrumentedCommandHandler implements CommandHandler {
+
+  static final String TIMER = "bot.command.duration";
+
+  private final CommandHandler delegate;
+  private final String command;
+  private final Timer success;
+  private final Timer error;
+  private final int sampleRate;
+
+  public InstrumentedCommandHandler(
+      BotCommand command, CommandHandler delegate, MeterRegistry registry, int sampleRate) {
+    this.delegate = delegate;
+    this.command = command.name().toLowerCase(Locale.ROOT);
+    this.success = timer(registry, this.command, "success");
+    this.error = timer(registry, this.command, "error");
+    this.sampleRate = sampleRate;
+  }
+
+  @Override
+  public void handle(CommandContext context) {
+    long start = System.nanoTime();
+    try {
+      delegate.handle(context);
+    } catch (RuntimeException e) {
+      error.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      log.error("Ошибка при выполнении команды {}: {}", command, e.getMessage(), e);
+      throw e;
+    }
+    succeeded(context, System.nanoTime() - start);
+  }
+
+  /** Длительность асинхронной команды считается до завершения её результата. */
+  @Override
+  public CompletionStage<Void> handleAsync(CommandContext context) {
+    long start = System.nanoTime();
+    CompletionStage<Void> result;
+    try {
+      result = delegate.handleAsync(context);
+    } catch (RuntimeException e) {
+      result = CompletableFuture.failedFuture(e);
+    }
+    return result.whenComplete(
+        (ignored, e) -> {
+          long elapsed = System.nanoTime() - start;
+          if (e == null) {
+            succeeded(context, elapsed);
+          } else {
+            error.record(elapsed, TimeUnit.NANOSECONDS);
+            Throwable cause = e instanceof CompletionException && e.getCause() != null
+                ? e.getCause()
+                : e;
+            log.error("Ошибка при выполнении команды {}: {}", command, cause.getMessage(), cause);
+          }
+        });
+  }
+
+  private void succeeded(CommandContext context, long elapsed) {
+    success.record(elapsed, TimeUnit.NANOSECONDS);
+    if (sampled() && log.isInfoEnabled()) {
+      log.info(
+          "Команда {} в чате {} выполнена за {} мкс.",
+          command,
+          context.chatId(),
+          TimeUnit.NANOSECONDS.toMicros(elapsed));
+    }
+  }
+
+  /** Исходный обработчик. */
+  public CommandHandler getDelegate() {
+    return delegate;
+  }
+
+  private boolean sampled() {
+    return sampleRate == 1
+        || (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) == 0);
+  }
+
+  private static Timer timer(MeterRegistry registry, String command, String outcome) {
+    return Timer.builder(TIMER)
+        .description("Длительность обработки команды")
+        .tag("command", command)
+        .tag("outcome", outcome)
+        .publishPercentileHistogram()
+        .minimumExpectedValue(Duration.ofMillis(1))
+        .maximumExpectedValue(Duration.ofSeconds(30))
+        .register(registry);
+  }
+}
@@ -1,11 +1,11 @@
 package compost.bot.handlers;
 
 import compost.annotation.BotCommandMapping;
-import compost.annotation.LoggableCommand;
 import compost.bot.CodeCompostInspectorBot;
 import compost.service.UserService;
 import compost.util.Constants.BotCommand;
 import compost.util.MessageUtils;
+import java.util.concurrent.CompletionStage;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -20,10 +20,21 @@ public class MentionAllCommandHandler implements CommandHandler {
     this.messageUtils = messageUtils;
   }
 
+  /**
+   * Ставит упоминания в очередь отправки сериями по странице участников: следующая страница
+   * читается из базы, когда очередь чата доходит до конца предыдущей, а не все сразу. Чтение идёт
+   * через асинхронное хранилище: с драйвером reactive его не ждут ни поток команды, ни поток
+   * отправки.
+   */
   @Override
-  @LoggableCommand
   public void handle(CodeCompostInspectorBot.CommandContext context) {
-    String message = userService.buildMentionAllMessage(context.chatId());
-    messageUtils.sendText(context.chatId(), context.threadId(), message);
+    handleAsync(context).toCompletableFuture().join();
+  }
+
+  @Override
+  public CompletionStage<Void> handleAsync(CodeCompostInspectorBot.CommandContext context) {
+    return userService.mentionAll(
+        context.chatId(),
+        texts -> messageUtils.sendTexts(context.chatId(), context.threadId(), texts));
   }
 }
@@ -1,11 +1,11 @@
 package compost.bot.handlers;
 
 import compost.annotation.BotCommandMapping;
-import compost.annotation.LoggableCommand;
 import compost.bot.CodeCompostInspectorBot;
 import compost.service.TagService;
 import compost.util.Constants.BotCommand;
 import compost.util.MessageUtils;
+import java.util.concurrent.CompletionStage;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -21,9 +21,16 @@ public class TagsCommandHandler implements CommandHandler {
   }
 
   @Override
-  @LoggableCommand
   public void handle(CodeCompostInspectorBot.CommandContext context) {
     String message = tagService.getFormattedTagList(context.chatId());
     messageUtils.sendText(context.chatId(), context.threadId(), message);
   }
+
+  @Override
+  public CompletionStage<Void> handleAsync(CodeCompostInspectorBot.CommandContext context) {
+    return tagService
+        .getFormattedTagListAsync(context.chatId())
+        .thenAccept(
+            message -> messageUtils.sendText(context.chatId(), context.threadId(), message));
+  }
 }
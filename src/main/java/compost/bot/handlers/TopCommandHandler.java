@@ -1,20 +1,25 @@
 package compost.bot.handlers;
 
 import compost.annotation.BotCommandMapping;
-import compost.annotation.LoggableCommand;
 import compost.bot.CodeCompostInspectorBot;
+import compost.service.TagLexer;
 import compost.service.UserService;
 import compost.storage.MongoUserRepository.RankedUser;
 import compost.util.Constants.BotCommand;
+import compost.util.Constants.TopPeriod;
 import compost.util.MessageBuilder;
 import compost.util.MessageUtils;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import org.springframework.stereotype.Component;
 
 @Component
 @BotCommandMapping(BotCommand.TOP)
 public class TopCommandHandler implements CommandHandler {
 
+  private static final int LIMIT = 10;
+
   private final UserService userService;
   private final MessageUtils messageUtils;
 
@@ -24,10 +29,38 @@ public class TopCommandHandler implements CommandHandler {
   }
 
   @Override
-  @LoggableCommand
   public void handle(CodeCompostInspectorBot.CommandContext context) {
-    List<RankedUser> topUsers = userService.getTopUsers(context.chatId(), 10);
-    String message = MessageBuilder.topUsers(topUsers);
+    String argument = TagLexer.stripCommand(BotCommand.TOP.getCommand(), context.fullText());
+    TopPeriod period = TopPeriod.fromArgument(argument);
+    String message;
+    if (period == null) {
+      message = MessageBuilder.topUsage();
+    } else if (period == TopPeriod.ALL) {
+      message = MessageBuilder.topUsers(userService.getTopUsers(context.chatId(), LIMIT));
+    } else {
+      List<RankedUser> topUsers = userService.getTopUsers(context.chatId(), period, LIMIT);
+      message = MessageBuilder.topUsers(topUsers, period);
+    }
     messageUtils.sendText(context.chatId(), context.threadId(), message);
   }
+
+  @Override
+  public CompletionStage<Void> handleAsync(CodeCompostInspectorBot.CommandContext context) {
+    String argument = TagLexer.stripCommand(BotCommand.TOP.getCommand(), context.fullText());
+    TopPeriod period = TopPeriod.fromArgument(argument);
+    CompletionStage<String> message;
+    if (period == null) {
+      message = CompletableFuture.completedFuture(MessageBuilder.topUsage());
+    } else if (period == TopPeriod.ALL) {
+      message =
+          userService.getTopUsersAsync(context.chatId(), period, LIMIT)
+              .thenApply(MessageBuilder::topUsers);
+    } else {
+      message =
+          userService.getTopUsersAsync(context.chatId(), period, LIMIT)
+              .thenApply(topUsers -> MessageBuilder.topUsers(topUsers, period));
+    }
+    return message.thenAccept(
+        text -> messageUtils.sendText(context.chatId(), context.threadId(), text));
+  }
 }
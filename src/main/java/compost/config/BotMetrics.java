@@ -0,0 +1,152 @@
+package compost.config;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import compost.bot.AppliedUpdates;
+import compost.bot.BacklogCatchUp;
+import compost.bot.UpdateDispatcher;
+import compost.bot.UpdateDispatcher.ChatStats;
+import compost.service.ActivityLeaderboard;
+import compost.storage.CachingTagRepository;
+import compost.storage.UserActivityBuffer;
+import compost.storage.UserProfileCache;
+import compost.util.OutboundMessageQueue;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import org.springframework.stereotype.Component;
+
+/**
+ * Публикует в {@link MeterRegistry} показатели, которые компоненты уже считают сами: очереди
+ * обновлений и исходящих сообщений, повторы и догоняние бэклога, буфер активности, кэши и таблицу
+ * лидеров. Значения читаются в
+ * момент сбора метрик, на горячем пути ничего не добавляется.
+ */
+@Component
+public class BotMetrics {
+
+  private final MeterRegistry registry;
+  private final UpdateDispatcher updateDispatcher;
+  private final AppliedUpdates appliedUpdates;
+  private final BacklogCatchUp catchUp;
+  private final OutboundMessageQueue outboundQueue;
+  private final UserActivityBuffer activityBuffer;
+  private final CachingTagRepository tagCache;
+  private final UserProfileCache profileCache;
+  private final ActivityLeaderboard leaderboard;
+
+  public BotMetrics(
+      MeterRegistry registry,
+      UpdateDispatcher updateDispatcher,
+      AppliedUpdates appliedUpdates,
+      BacklogCatchUp catchUp,
+      OutboundMessageQueue outboundQueue,
+      UserActivityBuffer activityBuffer,
+      CachingTagRepository tagCache,
+      UserProfileCache profileCache,
+      ActivityLeaderboard leaderboard) {
+    this.registry = registry;
+    this.updateDispatcher = updateDispatcher;
+    this.appliedUpdates = appliedUpdates;
+    this.catchUp = catchUp;
+    this.outboundQueue = outboundQueue;
+    this.activityBuffer = activityBuffer;
+    this.tagCache = tagCache;
+    this.profileCache = profileCache;
+    this.leaderboard = leaderboard;
+  }
+
+  @PostConstruct
+  public void bind() {
+    FunctionCounter.builder(
+            "bot.updates.received", updateDispatcher, UpdateDispatcher::getReceivedCount)
+        .description("Обновления, переданные в диспетчер")
+        .register(registry);
+    FunctionCounter.builder(
+            "bot.updates.dropped", updateDispatcher, UpdateDispatcher::getDroppedCount)
+        .description("Обновления, отброшенные из-за переполнения очереди чата")
+        .register(registry);
+    Gauge.builder(
+            "bot.updates.queued",
+            updateDispatcher,
+            d -> d.getChatStats().values().stream().mapToInt(ChatStats::queued).sum())
+        .description("Обновления в очередях чатов")
+        .register(registry);
+    FunctionCounter.builder(
+            "bot.updates.duplicates", appliedUpdates, a -> a.getStats().duplicates())
+        .description("Повторно доставленные обновления, пропущенные как уже применённые")
+        .register(registry);
+    FunctionCounter.builder(
+            "bot.updates.offset.save.failures", appliedUpdates, a -> a.getStats().failedSaves())
+        .register(registry);
+    Gauge.builder("bot.catchup.lag.seconds", catchUp, c -> c.getStats().lagSeconds())
+        .description("Отставание даты последнего сообщения от текущего времени")
+        .register(registry);
+    Gauge.builder("bot.catchup.active", catchUp, c -> c.getStats().active() ? 1 : 0)
+        .register(registry);
+    FunctionCounter.builder(
+            "bot.catchup.skipped.commands", catchUp, c -> c.getStats().skippedCommands())
+        .description("Устаревшие команды из бэклога, которые не выполнялись")
+        .register(registry);
+
+    Gauge.builder("bot.outbound.queued", outboundQueue, q -> q.getStats().queued())
+        .register(registry);
+    Gauge.builder("bot.outbound.lanes", outboundQueue, q -> q.getStats().lanes())
+        .description("Очереди чатов в очереди отправки")
+        .register(registry);
+    outboundCounter("bot.outbound.sent", q -> q.getStats().sent());
+    outboundCounter("bot.outbound.failed", q -> q.getStats().failed());
+    outboundCounter("bot.outbound.retried", q -> q.getStats().retried());
+    outboundCounter("bot.outbound.rejected", q -> q.getStats().rejected());
+    outboundCounter("bot.outbound.global.pauses", q -> q.getStats().globalPauses());
+
+    Gauge.builder("bot.activity.pending", activityBuffer, b -> b.getStats().pending())
+        .register(registry);
+    Gauge.builder("bot.activity.unconfirmed", activityBuffer, b -> b.getStats().unconfirmed())
+        .description("Записи активности, ожидающие повтора после неподтверждённой записи")
+        .register(registry);
+    FunctionCounter.builder("bot.activity.flushes", activityBuffer, b -> b.getStats().flushes())
+        .register(registry);
+    FunctionCounter.builder(
+            "bot.activity.flushed.entries", activityBuffer, b -> b.getStats().flushedEntries())
+        .register(registry);
+    FunctionCounter.builder(
+            "bot.activity.flush.failures", activityBuffer, b -> b.getStats().failedFlushes())
+        .register(registry);
+    FunctionCounter.builder(
+            "bot.activity.bucket.failures",
+            activityBuffer,
+            b -> b.getStats().failedBucketWrites())
+        .register(registry);
+
+    cache("tags", tagCache, tagCache::getStats, CachingTagRepository::size);
+    cache("user_profiles", profileCache, profileCache::getStats, UserProfileCache::size);
+
+    Gauge.builder("bot.leaderboard.chats", leaderboard, l -> l.getStats().chats())
+        .register(registry);
+    Gauge.builder("bot.leaderboard.users", leaderboard, l -> l.getStats().users())
+        .register(registry);
+    FunctionCounter.builder(
+            "bot.leaderboard.corrections", leaderboard, l -> l.getStats().corrections())
+        .register(registry);
+  }
+
+  private void outboundCounter(String name, ToDoubleFunction<OutboundMessageQueue> value) {
+    FunctionCounter.builder(name, outboundQueue, value).register(registry);
+  }
+
+  private <T> void cache(
+      String name, T cache, Supplier<CacheStats> stats, ToDoubleFunction<T> size) {
+    Gauge.builder("bot.cache.size", cache, size).tag("cache", name).register(registry);
+    FunctionCounter.builder("bot.cache.requests", cache, c -> stats.get().hitCount())
+        .tag("cache", name)
+        .tag("result", "hit")
+        .register(registry);
+    FunctionCounter.builder("bot.cache.requests", cache, c -> stats.get().missCount())
+        .tag("cache", name)
+        .tag("result", "miss")
+        .register(registry);
+  }
+}
@@ -0,0 +1,30 @@
+package compost.config;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.telegram.telegrambots.meta.api.objects.ApiResponse;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Подсказки для нативного образа (профиль {@code native}) о том, что Spring AOT не выводит из
+ * определений бинов.
+ *
+ * <ul>
+ *   <li>модели Telegram разбираются Jackson через рефлексию: входящие {@link Update} (long polling,
+ *       webhook, очередь кластера) и ответы API с отправленными {@link Message};
+ *   <li>конфигурация Log4j2 читается как ресурс до старта контекста.
+ * </ul>
+ */
+public class BotRuntimeHints implements RuntimeHintsRegistrar {
+
+  @Override
+  public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+    new BindingReflectionHintsRegistrar()
+        .registerReflectionHints(
+            hints.reflection(), Update.class, ApiResponse.class, Message.class);
+    hints.resources().registerPattern("log4j2-spring.xml");
+    hints.resources().registerPattern("log4j2.component.properties");
+  }
+}
@@ -0,0 +1,18 @@
+package compost.config;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Источник монотонного времени для компонентов с лимитами и таймаутами. В тестах вместо него
+ * передаётся управляемый вручную {@link Ticker}.
+ */
+@Configuration
+public class ClockConfig {
+
+  @Bean
+  public Ticker ticker() {
+    return Ticker.systemTicker();
+  }
+}
@@ -2,11 +2,14 @@ package compost.config;
 
 import compost.annotation.BotCommandMapping;
 import compost.bot.handlers.CommandHandler;
+import compost.bot.handlers.InstrumentedCommandHandler;
 import compost.util.Constants.BotCommand;
-import java.util.HashMap;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.EnumMap;
 import java.util.Map;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -21,19 +24,31 @@ public class CommandHandlerConfig {
     this.context = context;
   }
 
+  /**
+   * Обработчики по командам. Каждый обёрнут в {@link InstrumentedCommandHandler}, который замеряет
+   * длительность и выборочно логирует вызовы.
+   */
   @Bean
-  public Map<BotCommand, CommandHandler> commandHandlerMap() {
-    Map<BotCommand, CommandHandler> map = new HashMap<>();
+  public Map<BotCommand, CommandHandler> commandHandlerMap(
+      MeterRegistry registry, @Value("${bot.logging.command-sample-rate:100}") int sampleRate) {
+    Map<BotCommand, CommandHandler> map = new EnumMap<>(BotCommand.class);
 
     Map<String, CommandHandler> beans = context.getBeansOfType(CommandHandler.class);
-    for (CommandHandler handler : beans.values()) {
-      Class<?> targetClass = AopUtils.getTargetClass(handler);
-      BotCommandMapping annotation = targetClass.getAnnotation(BotCommandMapping.class);
+    for (Map.Entry<String, CommandHandler> bean : beans.entrySet()) {
+      CommandHandler handler = bean.getValue();
+      // Аннотация берётся из типа бина, а не из класса прокси: так же работает и после обработки
+      // Spring AOT, и в нативном образе.
+      BotCommandMapping annotation =
+          context.findAnnotationOnBean(bean.getKey(), BotCommandMapping.class);
       if (annotation != null) {
-        map.put(annotation.value(), handler);
+        map.put(
+            annotation.value(),
+            new InstrumentedCommandHandler(annotation.value(), handler, registry, sampleRate));
         log.debug("Зарегистрированный handler для команды: {}", annotation.value());
       } else {
-        log.warn("CommandHandler {} не имеет @BotCommandMapping аннотации.", targetClass);
+        log.warn(
+            "CommandHandler {} не имеет @BotCommandMapping аннотации.",
+            AopUtils.getTargetClass(handler));
       }
     }
 
@@ -0,0 +1,99 @@
+package compost.config;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * HTTP-эндпоинт для Prometheus ({@code GET /metrics}). По умолчанию слушает только localhost,
+ * выключается через {@code bot.metrics.enabled=false}. Ошибка запуска не останавливает бота.
+ *
+ * <pre>
+ * curl http://localhost:9404/metrics
+ * </pre>
+ */
+@Component
+@ConditionalOnProperty(name = "bot.metrics.enabled", havingValue = "true", matchIfMissing = true)
+@Log4j2
+public class MetricsServer {
+
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final PrometheusMeterRegistry registry;
+  private final String host;
+  private final int port;
+  private final String path;
+  private HttpServer server;
+
+  public MetricsServer(
+      PrometheusMeterRegistry registry,
+      @Value("${bot.metrics.host:127.0.0.1}") String host,
+      @Value("${bot.metrics.port:9404}") int port,
+      @Value("${bot.metrics.path:/metrics}") String path) {
+    this.registry = registry;
+    this.host = host;
+    this.port = port;
+    this.path = path;
+  }
+
+  /** Запускает HTTP-сервер метрик. */
+  @PostConstruct
+  public synchronized void start() {
+    try {
+      server = HttpServer.create(new InetSocketAddress(host, port), 0);
+      server.createContext(path, this::handle);
+      server.setExecutor(
+          Executors.newSingleThreadExecutor(
+              r -> {
+                Thread thread = new Thread(r, "metrics-http");
+                thread.setDaemon(true);
+                return thread;
+              }));
+      server.start();
+      log.info("Метрики Prometheus доступны на {}:{}{}", host, getPort(), path);
+    } catch (IOException e) {
+      server = null;
+      log.error("Не удалось запустить сервер метрик на {}:{}: {}", host, port, e.getMessage());
+    }
+  }
+
+  /** Останавливает HTTP-сервер метрик. */
+  @PreDestroy
+  public synchronized void stop() {
+    if (server != null) {
+      server.stop(0);
+      server = null;
+    }
+  }
+
+  /** Возвращает фактический порт (полезно при {@code bot.metrics.port=0}). */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package compost.config;
+
+import compost.storage.ActivityBucketRepository;
+import compost.storage.AsyncActivityBucketRepository;
+import compost.storage.AsyncTagRepository;
+import compost.storage.AsyncUserRepository;
+import compost.storage.TagRepository;
+import compost.storage.UserRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Асинхронные хранилища для {@code bot.storage.driver=sync}: обёртки над блокирующими
+ * репозиториями, чтобы сервисы работали с одним интерфейсом при любом драйвере. При {@code
+ * reactive} вместо них подключаются Reactive* репозитории.
+ */
+@Configuration
+@ConditionalOnProperty(name = "bot.storage.driver", havingValue = "sync", matchIfMissing = true)
+public class StorageDriverConfig {
+
+  @Bean
+  public AsyncUserRepository blockingAsyncUserRepository(UserRepository userRepository) {
+    return AsyncUserRepository.blocking(userRepository);
+  }
+
+  @Bean
+  public AsyncTagRepository blockingAsyncTagRepository(TagRepository tagRepository) {
+    return AsyncTagRepository.blocking(tagRepository);
+  }
+
+  @Bean
+  public AsyncActivityBucketRepository blockingAsyncActivityBucketRepository(
+      ActivityBucketRepository bucketRepository) {
+    return AsyncActivityBucketRepository.blocking(bucketRepository);
+  }
+}
@@ -0,0 +1,10 @@
+package compost.model;
+
+import java.util.List;
+
+/**
+ * Теги чата при встроенном хранении: массив tags документа коллекции tags.
+ *
+ * @param tags теги в порядке хранения
+ */
+public record ChatTags(List<TagEntry> tags) {}
@@ -0,0 +1,9 @@
+package compost.model;
+
+/**
+ * Тег чата с описанием: документ коллекции tag_entries или элемент массива tags.
+ *
+ * @param tag тег вместе с '#'
+ * @param description описание, пустая строка — без описания
+ */
+public record TagEntry(String tag, String description) {}
@@ -0,0 +1,37 @@
+package compost.model;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Накопленная активность пользователя в чате: последний известный профиль и количество сообщений,
+ * которые ещё не записаны в хранилище.
+ *
+ * @param chatId ID чата
+ * @param userId ID пользователя
+ * @param username username пользователя (может быть null)
+ * @param firstName имя пользователя
+ * @param lastName фамилия пользователя (может быть null)
+ * @param increment на сколько увеличить messageCount
+ * @param hourly тот же инкремент по часам отправки сообщений (начало часа UTC → количество); по
+ *     нему заполняются корзины активности
+ */
+public record UserActivity(
+    Long chatId,
+    Long userId,
+    String username,
+    String firstName,
+    String lastName,
+    int increment,
+    Map<Instant, Integer> hourly) {
+
+  public UserActivity {
+    hourly = Map.copyOf(hourly);
+  }
+
+  /** Активность без времени сообщений: в корзины активности она не попадает. */
+  public UserActivity(
+      Long chatId, Long userId, String username, String firstName, String lastName, int increment) {
+    this(chatId, userId, username, firstName, lastName, increment, Map.of());
+  }
+}
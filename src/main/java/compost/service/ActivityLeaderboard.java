@@ -0,0 +1,344 @@
+package compost.service;
+
+import compost.model.SimpleUser;
+import compost.model.UserActivity;
+import compost.storage.MongoUserRepository.RankedUser;
+import compost.storage.PartitionAcquiredEvent;
+import compost.storage.UserActivityBuffer;
+import compost.storage.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+/**
+ * Таблица лидеров по количеству сообщений, поддерживаемая в памяти.
+ *
+ * <p>Для каждого чата хранится упорядоченное множество пользователей (по убыванию messageCount, при
+ * равенстве — по возрастанию id), которое обновляется теми же инкрементами, что и {@link
+ * UserActivityBuffer}. Поэтому /top отвечает за O(k) без запроса к базе. Чат загружается из
+ * хранилища при первом обращении с учётом ещё не записанных инкрементов буфера, а после старта
+ * приложения все чаты прогреваются в фоне. Периодическая сверка с хранилищем исправляет возможные
+ * расхождения.
+ *
+ * <p>Хранилище читается вне {@code compute} по чату: запись активности в чат (и в соседние по
+ * корзине таблицы) не ждёт запроса к базе. Сброс буфера на время чтения приостанавливается, так
+ * что пришедшие за это время инкременты остаются в буфере и добавляются к прочитанному уже внутри
+ * {@code compute}, вместе с установкой таблицы.
+ */
+@Component
+@Log4j2
+public class ActivityLeaderboard {
+
+  private static final Comparator<Entry> ORDER =
+      Comparator.comparingInt(Entry::count)
+          .reversed()
+          .thenComparing(entry -> entry.user().getId());
+
+  private final UserRepository userRepository;
+  private final UserActivityBuffer activityBuffer;
+  private final boolean warmLoad;
+  private final long verifyIntervalMinutes;
+
+  private final Map<Long, ChatBoard> boards = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread thread = new Thread(r, "leaderboard");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final AtomicLong verifications = new AtomicLong();
+  private final AtomicLong corrections = new AtomicLong();
+
+  public ActivityLeaderboard(
+      UserRepository userRepository,
+      UserActivityBuffer activityBuffer,
+      @Value("${bot.leaderboard.warm-load:true}") boolean warmLoad,
+      @Value("${bot.leaderboard.verify-interval-minutes:10}") long verifyIntervalMinutes) {
+    this.userRepository = userRepository;
+    this.activityBuffer = activityBuffer;
+    this.warmLoad = warmLoad;
+    this.verifyIntervalMinutes = verifyIntervalMinutes;
+  }
+
+  @PostConstruct
+  public void start() {
+    if (verifyIntervalMinutes > 0) {
+      scheduler.scheduleWithFixedDelay(
+          this::verifyQuietly, verifyIntervalMinutes, verifyIntervalMinutes, TimeUnit.MINUTES);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  /** Прогревает таблицы всех чатов в фоне, не задерживая запуск бота. */
+  @EventListener(ApplicationReadyEvent.class)
+  public void warmUp() {
+    if (!warmLoad || scheduler.isShutdown()) {
+      return;
+    }
+    scheduler.execute(
+        () -> {
+          try {
+            long start = System.nanoTime();
+            int chats = 0;
+            for (Long chatId : userRepository.getChatIds()) {
+              if (!boards.containsKey(chatId)) {
+                load(chatId);
+              }
+              chats++;
+            }
+            log.info(
+                "Таблица лидеров прогрета: {} чатов за {} мс",
+                chats,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+          } catch (Exception e) {
+            log.error("Не удалось прогреть таблицу лидеров, чаты загрузятся по запросу: ", e);
+          }
+        });
+  }
+
+  /**
+   * Учитывает активность пользователя вне обновления Telegram.
+   *
+   * @see #record(Long, User, boolean, Instant, Integer)
+   */
+  public void record(
+      Long chatId, User telegramUser, boolean incrementMessageCount, Instant sentAt) {
+    record(chatId, telegramUser, incrementMessageCount, sentAt, null);
+  }
+
+  /**
+   * Учитывает активность пользователя в буфере отложенной записи и в таблице чата. Незагруженные
+   * чаты не трогаются: при загрузке инкремент будет взят из буфера или из хранилища.
+   *
+   * <p>Обе записи выполняются внутри {@code compute} по чату, как и загрузка таблицы. Иначе
+   * загрузка между записью в буфер и в таблицу учла бы инкремент из буфера, а затем таблица
+   * получила бы его ещё раз.
+   *
+   * @param chatId ID чата
+   * @param telegramUser Telegram-пользователь
+   * @param incrementMessageCount увеличивать ли messageCount
+   * @param sentAt время отправки сообщения
+   * @param updateId update_id обновления с сообщением или null
+   */
+  public void record(
+      Long chatId,
+      User telegramUser,
+      boolean incrementMessageCount,
+      Instant sentAt,
+      Integer updateId) {
+    SimpleUser user = new SimpleUser(telegramUser);
+    boards.compute(
+        chatId,
+        (id, board) -> {
+          activityBuffer.record(chatId, telegramUser, incrementMessageCount, sentAt, updateId);
+          if (board != null) {
+            board.apply(user, incrementMessageCount ? 1 : 0);
+          }
+          return board;
+        });
+  }
+
+  /**
+   * Возвращает первых {@code limit} пользователей чата по количеству сообщений.
+   *
+   * @param chatId ID чата
+   * @param limit максимальное количество пользователей
+   * @return список с рангами, начиная с 1
+   */
+  public List<RankedUser> getTopUsers(Long chatId, int limit) {
+    ChatBoard board = boards.get(chatId);
+    return (board != null ? board : load(chatId)).top(limit);
+  }
+
+  /**
+   * Неблокирующий вариант {@link #getTopUsers}: загруженный чат отвечает сразу, незагруженный
+   * загружается в потоке таблицы лидеров, а не в потоке вызывающего.
+   *
+   * @param chatId ID чата
+   * @param limit максимальное количество пользователей
+   * @return список с рангами, начиная с 1
+   */
+  public CompletionStage<List<RankedUser>> getTopUsersAsync(Long chatId, int limit) {
+    ChatBoard board = boards.get(chatId);
+    if (board != null) {
+      return CompletableFuture.completedFuture(board.top(limit));
+    }
+    return CompletableFuture.supplyAsync(() -> getTopUsers(chatId, limit), scheduler);
+  }
+
+  /**
+   * Выгружает таблицы чатов партиции, захваченной у другого обработчика кластера: их активность
+   * учитывал другой узел. Таблицы загрузятся из хранилища при следующем обращении.
+   */
+  @EventListener
+  public void onPartitionAcquired(PartitionAcquiredEvent event) {
+    boards.keySet().removeIf(event::covers);
+  }
+
+  /**
+   * Сверяет все загруженные чаты с хранилищем и заменяет расходящиеся таблицы.
+   *
+   * @return количество исправленных чатов
+   */
+  public int verify() {
+    int corrected = 0;
+    for (Long chatId : boards.keySet()) {
+      int[] mismatches = new int[1];
+      activityBuffer.withFlushPaused(
+          () -> {
+            List<RankedUser> stored = userRepository.getRanking(chatId);
+            return boards.computeIfPresent(
+                chatId,
+                (id, board) -> {
+                  ChatBoard fresh = build(id, stored);
+                  mismatches[0] = board.countMismatches(fresh);
+                  return fresh;
+                });
+          });
+      if (mismatches[0] > 0) {
+        corrected++;
+        log.warn(
+            "Таблица лидеров чата {} разошлась с хранилищем у {} пользователей, исправлено",
+            chatId,
+            mismatches[0]);
+      }
+    }
+    verifications.incrementAndGet();
+    corrections.addAndGet(corrected);
+    return corrected;
+  }
+
+  /** Возвращает текущие показатели таблицы лидеров. */
+  public LeaderboardStats getStats() {
+    long users = boards.values().stream().mapToLong(ChatBoard::size).sum();
+    return new LeaderboardStats(boards.size(), users, verifications.get(), corrections.get());
+  }
+
+  private void verifyQuietly() {
+    try {
+      verify();
+    } catch (Exception e) {
+      log.error("Ошибка при сверке таблицы лидеров: ", e);
+    }
+  }
+
+  /**
+   * Загружает таблицу чата, если её ещё нет. Сброс буфера приостанавливается от чтения хранилища
+   * до установки таблицы, иначе инкременты, переходящие из буфера в базу, были бы учтены дважды
+   * или потеряны.
+   */
+  private ChatBoard load(Long chatId) {
+    return activityBuffer.withFlushPaused(
+        () -> {
+          List<RankedUser> stored = userRepository.getRanking(chatId);
+          return boards.computeIfAbsent(chatId, id -> build(id, stored));
+        });
+  }
+
+  /**
+   * Строит таблицу из прочитанных данных хранилища и ещё не записанных инкрементов буфера.
+   * Вызывается внутри {@code compute} по чату, чтобы между чтением буфера и установкой таблицы не
+   * прошла запись активности.
+   */
+  private ChatBoard build(Long chatId, List<RankedUser> stored) {
+    ChatBoard board = new ChatBoard();
+    for (RankedUser ranked : stored) {
+      board.apply(ranked.user(), ranked.messageCount());
+    }
+    for (UserActivity activity : activityBuffer.pendingForChat(chatId)) {
+      SimpleUser user =
+          new SimpleUser(
+              activity.userId(), activity.username(), activity.firstName(), activity.lastName());
+      board.apply(user, activity.increment());
+    }
+    return board;
+  }
+
+  /**
+   * Показатели таблицы лидеров.
+   *
+   * @param chats количество загруженных чатов
+   * @param users суммарное количество пользователей в таблицах
+   * @param verifications количество выполненных сверок
+   * @param corrections количество чатов, исправленных при сверках
+   */
+  public record LeaderboardStats(int chats, long users, long verifications, long corrections) {}
+
+  private record Entry(SimpleUser user, int count) {}
+
+  /** Таблица одного чата. */
+  private static final class ChatBoard {
+    private final Map<Long, Entry> byUser = new HashMap<>();
+    private final TreeSet<Entry> ordered = new TreeSet<>(ORDER);
+
+    private synchronized void apply(SimpleUser user, int increment) {
+      Entry previous = byUser.get(user.getId());
+      int count = increment;
+      if (previous != null) {
+        ordered.remove(previous);
+        count += previous.count();
+      }
+      Entry entry = new Entry(user, count);
+      byUser.put(user.getId(), entry);
+      ordered.add(entry);
+    }
+
+    private synchronized List<RankedUser> top(int limit) {
+      List<RankedUser> top = new ArrayList<>(Math.min(limit, ordered.size()));
+      Iterator<Entry> iterator = ordered.iterator();
+      while (top.size() < limit && iterator.hasNext()) {
+        Entry entry = iterator.next();
+        top.add(new RankedUser(entry.user(), entry.count(), top.size() + 1));
+      }
+      return top;
+    }
+
+    private synchronized int countMismatches(ChatBoard other) {
+      Map<Long, Integer> expected = other.counts();
+      int mismatches = 0;
+      for (Entry entry : byUser.values()) {
+        Integer count = expected.remove(entry.user().getId());
+        if (count == null || count != entry.count()) {
+          mismatches++;
+        }
+      }
+      return mismatches + expected.size();
+    }
+
+    private synchronized Map<Long, Integer> counts() {
+      Map<Long, Integer> counts = new HashMap<>(byUser.size());
+      byUser.forEach((id, entry) -> counts.put(id, entry.count()));
+      return counts;
+    }
+
+    private synchronized int size() {
+      return byUser.size();
+    }
+  }
+}
@@ -0,0 +1,187 @@
+package compost.service;
+
+import compost.service.TagService.ParsedTag;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Однопроходный разбор тегов без регулярных выражений. Повторяет семантику {@code TAG_PATTERN} и
+ * прежней реализации TagService:
+ *
+ * <ul>
+ *   <li>кандидат в теги — '#' и жадная серия из 2–50 символов (букв, цифр 0-9 и {@code
+ *       _/.,:'-()$*=}), символы считаются по code point;
+ *   <li>валидный тег — 2–30 символов, только буквы, цифры 0-9 и '_', не только цифры;
+ *   <li>описание тега — текст до следующего валидного тега; если в нём есть невалидный кандидат,
+ *       описание считается пустым;
+ *   <li>если непустое описание ровно одно, оно общее для всех тегов.
+ * </ul>
+ *
+ * <p>Класс без состояния и потокобезопасен.
+ */
+public final class TagLexer {
+
+  private static final int MIN_RUN = 2;
+  private static final int MAX_RUN = 50;
+  private static final int MAX_VALID = 30;
+  private static final ParsedTag NO_VALID_TAGS = new ParsedTag(null, null);
+
+  private TagLexer() {}
+
+  /**
+   * Разбирает текст на теги и описания.
+   *
+   * @param input текст после команды
+   * @return пустой список для пустого текста; список из одного ParsedTag(null, null), если валидных
+   *     тегов нет; иначе теги в порядке появления с описаниями
+   */
+  public static List<ParsedTag> parse(String input) {
+    if (input == null || input.isBlank()) {
+      return List.of();
+    }
+
+    int length = input.length();
+    // Границы валидных тегов и признак «загрязнённого» описания после каждого из них
+    int[] starts = new int[4];
+    int[] ends = new int[4];
+    boolean[] contaminated = new boolean[4];
+    int count = 0;
+
+    int from = 0;
+    int hash;
+    while ((hash = input.indexOf('#', from)) >= 0) {
+      int pos = hash + 1;
+      int run = 0;
+      boolean onlyWordChars = true;
+      boolean onlyDigits = true;
+      while (pos < length && run < MAX_RUN) {
+        int cp = input.codePointAt(pos);
+        if (!isRunChar(cp)) {
+          break;
+        }
+        boolean digit = cp >= '0' && cp <= '9';
+        if (!digit && cp != '_' && !Character.isLetter(cp)) {
+          onlyWordChars = false;
+        }
+        if (!digit) {
+          onlyDigits = false;
+        }
+        pos += Character.charCount(cp);
+        run++;
+      }
+
+      if (run < MIN_RUN) {
+        // Кандидата здесь нет — ищем следующий '#', как и Matcher.find
+        from = hash + 1;
+        continue;
+      }
+
+      if (onlyWordChars && !onlyDigits && run <= MAX_VALID) {
+        if (count == starts.length) {
+          starts = Arrays.copyOf(starts, count * 2);
+          ends = Arrays.copyOf(ends, count * 2);
+          contaminated = Arrays.copyOf(contaminated, count * 2);
+        }
+        starts[count] = hash;
+        ends[count] = pos;
+        count++;
+      } else if (count > 0) {
+        // Невалидный кандидат до первого тега ни к какому описанию не относится
+        contaminated[count - 1] = true;
+      }
+      from = pos;
+    }
+
+    if (count == 0) {
+      return List.of(NO_VALID_TAGS);
+    }
+
+    String[] descriptions = new String[count];
+    int nonEmpty = 0;
+    String common = "";
+    for (int i = 0; i < count; i++) {
+      int end = i + 1 < count ? starts[i + 1] : length;
+      String description = contaminated[i] ? "" : input.substring(ends[i], end).trim();
+      descriptions[i] = description;
+      if (!description.isEmpty()) {
+        nonEmpty++;
+        common = description;
+      }
+    }
+
+    List<ParsedTag> parsed = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      String tag = input.substring(starts[i], ends[i]);
+      parsed.add(new ParsedTag(tag, nonEmpty == 1 ? common : descriptions[i]));
+    }
+    return parsed;
+  }
+
+  /**
+   * Проверяет, что строка целиком является кандидатом в теги (аналог {@code
+   * TAG_PATTERN.matcher(text).matches()}).
+   */
+  public static boolean isTagToken(String text) {
+    if (text == null || text.isEmpty() || text.charAt(0) != '#') {
+      return false;
+    }
+    int run = 0;
+    int pos = 1;
+    while (pos < text.length()) {
+      int cp = text.codePointAt(pos);
+      if (!isRunChar(cp) || ++run > MAX_RUN) {
+        return false;
+      }
+      pos += Character.charCount(cp);
+    }
+    return run >= MIN_RUN;
+  }
+
+  /**
+   * Удаляет командную часть ({@code /addtag} или {@code /addtag@BotName}) из начала текста.
+   *
+   * @param command команда со слешем или без
+   * @param fullCommandText полный текст сообщения
+   * @return текст после команды без пробелов по краям
+   */
+  public static String stripCommand(String command, String fullCommandText) {
+    if (fullCommandText == null || command == null) {
+      return "";
+    }
+    String name = command.startsWith("/") ? command.substring(1) : command;
+    if (!fullCommandText.startsWith("/") || !fullCommandText.startsWith(name, 1)) {
+      return fullCommandText.trim();
+    }
+
+    int pos = 1 + name.length();
+    int length = fullCommandText.length();
+    // Необязательный @username: '@' и хотя бы один символ \w
+    if (pos + 1 < length
+        && fullCommandText.charAt(pos) == '@'
+        && isAsciiWordChar(fullCommandText.charAt(pos + 1))) {
+      pos += 2;
+      while (pos < length && isAsciiWordChar(fullCommandText.charAt(pos))) {
+        pos++;
+      }
+    }
+    // Пробелы после команды отрежет trim
+    return fullCommandText.substring(pos).trim();
+  }
+
+  /** Символ серии кандидата: {@code [\p{L}0-9_/.,:'\-()$*=]}. */
+  private static boolean isRunChar(int cp) {
+    if (cp < 128) {
+      return (cp >= 'a' && cp <= 'z')
+          || (cp >= 'A' && cp <= 'Z')
+          || (cp >= '0' && cp <= '9')
+          || "_/.,:'-()$*=".indexOf(cp) >= 0;
+    }
+    return Character.isLetter(cp);
+  }
+
+  /** {@code \w} без UNICODE_CHARACTER_CLASS: [a-zA-Z_0-9]. */
+  private static boolean isAsciiWordChar(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+  }
+}
@@ -1,7 +1,6 @@
 package compost.service;
 
-import static compost.util.Constants.TAG_PATTERN;
-
+import compost.storage.AsyncTagRepository;
 import compost.storage.TagRepository;
 import compost.util.Constants.BotCommand;
 import compost.util.Constants.TagOperationResult;
@@ -10,8 +9,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
 
@@ -24,111 +23,11 @@ import org.springframework.stereotype.Service;
 public class TagService {
 
   private final TagRepository tagRepository;
+  private final AsyncTagRepository asyncTagRepository;
 
-  public TagService(TagRepository tagRepository) {
+  public TagService(TagRepository tagRepository, AsyncTagRepository asyncTagRepository) {
     this.tagRepository = tagRepository;
-  }
-
-  /**
-   * Удаляет командную часть (например /addtag или /addtag@BotName) из текста команды.
-   *
-   * @param command команда без слеша (например, "addtag")
-   * @param fullCommandText полный текст команды, включая слеш
-   * @return текст без командной части, готовый для парсинга
-   */
-  private String stripCommand(String command, String fullCommandText) {
-    if (fullCommandText == null || command == null) {
-      return "";
-    }
-
-    String commandName = command.startsWith("/") ? command.substring(1) : command;
-
-    String regex = "^/" + Pattern.quote(commandName) + "(?:@\\w+)?\\s*";
-
-    return fullCommandText.replaceFirst(regex, "").trim();
-  }
-
-  /**
-   * Парсит входной текст, извлекая из него теги и связанные описания. Поддерживает множественные
-   * теги и общие или индивидуальные описания.
-   *
-   * @param input строка для анализа
-   * @return список ParsedTag с валидными тегами и описаниями
-   */
-  private List<ParsedTag> parseInput(String input) {
-    log.debug("parseInput получен: '{}'", input);
-    if (input == null || input.isBlank()) {
-      log.debug("Input пустой или null.");
-      return List.of();
-    }
-
-    Matcher matcher = TAG_PATTERN.matcher(input);
-    List<String> tags = new ArrayList<>();
-    List<Integer> tagStarts = new ArrayList<>();
-    List<Integer> tagEnds = new ArrayList<>();
-
-    while (matcher.find()) {
-      String tag = matcher.group();
-      if (!isValidTag(tag)) {
-        log.debug("Невалидный тег '{}', пропускаем", tag);
-        continue;
-      }
-
-      tags.add(tag);
-      tagStarts.add(matcher.start());
-      tagEnds.add(matcher.end());
-    }
-
-    if (tags.isEmpty()) {
-      log.debug("Не найдено ни одного валидного тега");
-      return List.of(new ParsedTag(null, null));
-    }
-
-    List<ParsedTag> parsed = new ArrayList<>();
-
-    // Собираем все тексты между тегами
-    List<String> betweenTexts = new ArrayList<>();
-    for (int i = 0; i < tags.size(); i++) {
-      int start = tagEnds.get(i);
-      int end = (i + 1 < tagStarts.size()) ? tagStarts.get(i + 1) : input.length();
-      String between = input.substring(start, end).trim();
-
-      // Если текст содержит невалидный тег - игнорируем это описание
-      Matcher tagMatcher = TAG_PATTERN.matcher(between);
-      boolean containsInvalidTag = false;
-      while (tagMatcher.find()) {
-        String found = tagMatcher.group();
-        if (!isValidTag(found)) {
-          containsInvalidTag = true;
-          break;
-        }
-      }
-
-      betweenTexts.add(containsInvalidTag ? "" : between); // очищаем описание, если оно загрязнено
-    }
-
-    long nonEmptyCount = betweenTexts.stream().filter(s -> !s.isEmpty()).count();
-
-    if (nonEmptyCount == 1) {
-      // Только один фрагмент текста - считаем это общим описанием
-      String commonDescription =
-          betweenTexts.stream().filter(s -> !s.isEmpty()).findFirst().orElse("");
-      for (String tag : tags) {
-        parsed.add(new ParsedTag(tag, commonDescription));
-      }
-    } else {
-      // Несколько описаний
-      for (int i = 0; i < tags.size(); i++) {
-        String desc = (i < betweenTexts.size()) ? betweenTexts.get(i) : "";
-        parsed.add(new ParsedTag(tags.get(i), desc));
-      }
-    }
-
-    log.debug("Найдены теги: '{}'", tags);
-    log.debug(
-        "Описание для каждого тега: '{}'", parsed.stream().map(ParsedTag::description).toList());
-
-    return parsed;
+    this.asyncTagRepository = asyncTagRepository;
   }
 
   /**
@@ -143,8 +42,29 @@ public class TagService {
    * @return сообщение для отправки пользователю, соответствующее результату обработки команды
    */
   public String buildAddTagResponse(Long chatId, String fullCommandText) {
-    List<TagResult> results = tryAddTag(chatId, fullCommandText);
+    return addTagResponse(tryAddTag(chatId, fullCommandText));
+  }
 
+  /**
+   * Неблокирующий вариант {@link #buildAddTagResponse}: изменения применяются через {@link
+   * AsyncTagRepository}.
+   *
+   * @param chatId идентификатор чата, в котором выполняется команда
+   * @param fullCommandText полное текстовое содержимое команды, включая аргументы
+   * @return сообщение для отправки пользователю по завершении записи
+   */
+  public CompletionStage<String> buildAddTagResponseAsync(Long chatId, String fullCommandText) {
+    List<ParsedTag> parsed = parseAddTag(fullCommandText);
+    if (parsed == null) {
+      return CompletableFuture.completedFuture(
+          addTagResponse(List.of(TagResult.invalidFormat())));
+    }
+    return asyncTagRepository
+        .applyTagChanges(chatId, parsed)
+        .thenApply(outcomes -> addTagResponse(addTagResults(parsed, outcomes)));
+  }
+
+  private static String addTagResponse(List<TagResult> results) {
     if (results == null || results.isEmpty()) {
       return MessageBuilder.tagException();
     }
@@ -159,7 +79,7 @@ public class TagService {
 
   /**
    * Пытается добавить или обновить теги. Возвращает список результатов с указанием, был ли тег
-   * добавлен, обновлён или отклонён.
+   * добавлен, обновлён или отклонён. Все изменения применяются одной операцией хранилища.
    *
    * @param chatId ID чата
    * @param fullCommandText полный текст команды
@@ -168,46 +88,47 @@ public class TagService {
   public List<TagResult> tryAddTag(Long chatId, String fullCommandText) {
     log.debug("tryAddTag вызван с chatId: '{}', fullCommandText: '{}'", chatId, fullCommandText);
 
-    String cleanedText = stripCommand(BotCommand.ADDTAG.getCommand(), fullCommandText);
+    List<ParsedTag> parsed = parseAddTag(fullCommandText);
+    if (parsed == null) {
+      return List.of(TagResult.invalidFormat());
+    }
+
+    // Добавление и обновление описаний одним обращением к хранилищу, без предварительного чтения
+    return addTagResults(parsed, tagRepository.applyTagChanges(chatId, parsed));
+  }
+
+  /** Теги из команды /addtag или null, если валидных тегов нет. */
+  private static List<ParsedTag> parseAddTag(String fullCommandText) {
+    String cleanedText = TagLexer.stripCommand(BotCommand.ADDTAG.getCommand(), fullCommandText);
 
     // Разбор тегов
-    List<ParsedTag> parsed = parseInput(cleanedText);
+    List<ParsedTag> parsed = TagLexer.parse(cleanedText);
+    log.debug("Найдены теги: '{}'", parsed);
     if (parsed.isEmpty()) {
       log.debug("Не найдено ни одного валидного тега '{}'", cleanedText);
-      return List.of(TagResult.invalidFormat());
+      return null;
     }
     if (parsed.size() == 1 && parsed.get(0).tag() == null) {
       log.debug("Некорректный формат: ParsedTag с null");
-      return List.of(TagResult.invalidFormat());
+      return null;
     }
+    return parsed;
+  }
 
-    Set<String> existingTags = tagRepository.getTags(chatId);
+  private static List<TagResult> addTagResults(
+      List<ParsedTag> parsed, Map<String, TagOperationResult> outcomes) {
     List<TagResult> results = new ArrayList<>();
-    List<ParsedTag> toUpdate = new ArrayList<>();
 
-    // Для каждого тега
     for (ParsedTag tag : parsed) {
-      boolean alreadyExists = existingTags.contains(tag.tag);
-
-      if (alreadyExists) {
-        // Всегда обновляем описание для существующего тега, не важно пустое описание или нет
-        toUpdate.add(tag);
+      if (outcomes.get(tag.tag) == TagOperationResult.UPDATED_DESCRIPTION) {
         log.debug("Обновлен тег: '{}' с описанием: '{}'", tag.tag, tag.description);
         results.add(TagResult.updated(tag.tag, tag.description));
       } else {
-        // Если тег новый, добавляем его
-        tagRepository.addTag(chatId, tag.tag, tag.description);
         log.debug("Добавлен тег: '{}' с описанием: '{}'", tag.tag, tag.description);
         results.add(TagResult.success(tag.tag, tag.description));
       }
     }
 
-    // Обновляем описание для тегов
-    if (!toUpdate.isEmpty()) {
-      tagRepository.batchUpdateTagDescription(chatId, toUpdate);
-      log.debug("Batch-обновлены описания у {} тегов", toUpdate.size());
-    }
-
     return results;
   }
 
@@ -221,10 +142,8 @@ public class TagService {
   public TagResult tryRemoveTag(Long chatId, String fullCommandText) {
     log.debug("tryRemoveTag вызван с chatId: '{}', fullCommandText: '{}'", chatId, fullCommandText);
 
-    String tag = stripCommand(BotCommand.DELTAG.getCommand(), fullCommandText);
-    log.debug("Извлечён тег для удаления: '{}'", tag);
-    if (tag.isEmpty() || !TAG_PATTERN.matcher(tag).matches()) {
-      log.debug("Невалидный формат тега: '{}'", tag);
+    String tag = parseRemoveTag(fullCommandText);
+    if (tag == null) {
       return TagResult.invalidFormat();
     }
 
@@ -241,6 +160,41 @@ public class TagService {
     return TagResult.success(tag, null);
   }
 
+  /**
+   * Неблокирующий вариант {@link #tryRemoveTag}: проверка и удаление идут через {@link
+   * AsyncTagRepository}.
+   *
+   * @param chatId ID чата
+   * @param fullCommandText текст команды с тегом
+   * @return результат операции (успех, не найден, ошибка формата)
+   */
+  public CompletionStage<TagResult> tryRemoveTagAsync(Long chatId, String fullCommandText) {
+    String tag = parseRemoveTag(fullCommandText);
+    if (tag == null) {
+      return CompletableFuture.completedFuture(TagResult.invalidFormat());
+    }
+    return asyncTagRepository
+        .getTags(chatId)
+        .thenCompose(
+            existingTags ->
+                existingTags.contains(tag)
+                    ? asyncTagRepository
+                        .removeTag(chatId, tag)
+                        .thenApply(removed -> TagResult.success(tag, null))
+                    : CompletableFuture.completedFuture(TagResult.tagNotFound(tag)));
+  }
+
+  /** Тег из команды /deltag или null, если формат неверный. */
+  private static String parseRemoveTag(String fullCommandText) {
+    String tag = TagLexer.stripCommand(BotCommand.DELTAG.getCommand(), fullCommandText);
+    log.debug("Извлечён тег для удаления: '{}'", tag);
+    if (!TagLexer.isTagToken(tag)) {
+      log.debug("Невалидный формат тега: '{}'", tag);
+      return null;
+    }
+    return tag;
+  }
+
   /**
    * Формирует строку со списком тегов: сначала с описаниями, затем без.
    *
@@ -248,8 +202,20 @@ public class TagService {
    * @return отформатированная строка списка тегов
    */
   public String getFormattedTagList(Long chatId) {
-    Map<String, String> tagMap = tagRepository.getTagMap(chatId);
+    return formatTagList(tagRepository.getTagMap(chatId));
+  }
+
+  /**
+   * Неблокирующий вариант {@link #getFormattedTagList}.
+   *
+   * @param chatId ID чата
+   * @return отформатированная строка списка тегов
+   */
+  public CompletionStage<String> getFormattedTagListAsync(Long chatId) {
+    return asyncTagRepository.getTagMap(chatId).thenApply(TagService::formatTagList);
+  }
 
+  private static String formatTagList(Map<String, String> tagMap) {
     // Теги с описанием
     List<Map.Entry<String, String>> withDescription =
         tagMap.entrySet().stream()
@@ -268,40 +234,6 @@ public class TagService {
     return MessageBuilder.tagList(withDescription, withoutDescription);
   }
 
-  /**
-   * Проверяет, является ли тег валидным. Должен начинаться с #, содержать 2-30 символов (буквы,
-   * цифры, подчёркивания), не состоять только из цифр и не содержать запрещённых символов.
-   *
-   * @param tag строка тега
-   * @return true если тег валиден, иначе false
-   */
-  private boolean isValidTag(String tag) {
-    if (tag == null || tag.isBlank()) {
-      return false;
-    }
-
-    // Нельзя числа
-    if (tag.matches("#\\d+")) {
-      return false;
-    }
-
-    // Допустимые символы: буквы, цифры, подчёркивания
-    // Длина 2-30, первый символ - решётка
-    if (!tag.matches("#[\\p{L}\\d_]{2,30}")) {
-      return false;
-    }
-
-    // Явно запрещаем символы
-    String disallowedSymbols = "/.,:'\\-()$*=";
-    for (char c : disallowedSymbols.toCharArray()) {
-      if (tag.indexOf(c) >= 0) {
-        return false;
-      }
-    }
-
-    return true;
-  }
-
   /** Обёртка для распарсенного тега: сам тег и описание к нему. */
   public record ParsedTag(String tag, String description) {}
 
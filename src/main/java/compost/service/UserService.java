@@ -1,11 +1,30 @@
 package compost.service;
 
 import compost.model.SimpleUser;
+import compost.storage.ActivityBucketRepository;
+import compost.storage.ActivityBucketRepository.Granularity;
+import compost.storage.AsyncActivityBucketRepository;
+import compost.storage.AsyncUserRepository;
 import compost.storage.MongoUserRepository.RankedUser;
+import compost.storage.UserActivityBuffer;
 import compost.storage.UserRepository;
+import compost.util.Constants.TopPeriod;
+import compost.util.MentionChunker;
 import compost.util.MessageBuilder;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.meta.api.objects.User;
@@ -15,23 +34,53 @@ import org.telegram.telegrambots.meta.api.objects.User;
 @Log4j2
 public class UserService {
 
+  private static final Comparator<Map.Entry<Long, Integer>> BY_COUNT =
+      Map.Entry.<Long, Integer>comparingByValue()
+          .reversed()
+          .thenComparing(Map.Entry.comparingByKey());
+
   private final UserRepository userRepository;
+  private final AsyncUserRepository asyncUserRepository;
+  private final ActivityBucketRepository bucketRepository;
+  private final AsyncActivityBucketRepository asyncBucketRepository;
+  private final UserActivityBuffer activityBuffer;
+  private final ActivityLeaderboard leaderboard;
 
-  public UserService(UserRepository userRepository) {
+  public UserService(
+      UserRepository userRepository,
+      AsyncUserRepository asyncUserRepository,
+      ActivityBucketRepository bucketRepository,
+      AsyncActivityBucketRepository asyncBucketRepository,
+      UserActivityBuffer activityBuffer,
+      ActivityLeaderboard leaderboard) {
     this.userRepository = userRepository;
+    this.asyncUserRepository = asyncUserRepository;
+    this.bucketRepository = bucketRepository;
+    this.asyncBucketRepository = asyncBucketRepository;
+    this.activityBuffer = activityBuffer;
+    this.leaderboard = leaderboard;
   }
 
   /**
-   * Метод для обработки пользователя: сохраняет его в репозитории и, при необходимости, увеличивает
-   * счетчик сообщений.
+   * Метод для обработки пользователя: учитывает его активность в буфере отложенной записи и в
+   * таблице лидеров и, при необходимости, увеличивает счетчик сообщений. В хранилище изменения
+   * попадают пакетно.
    *
    * @param chatId Идентификатор чата.
    * @param telegramUser Пользователь Telegram.
    * @param incrementMessageCount Флаг, указывающий, нужно ли увеличивать счетчик сообщений.
+   * @param sentAt Время отправки сообщения: по нему выбирается корзина активности.
+   * @param updateId update_id обновления с сообщением или null: инкремент попадёт в хранилище не
+   *     раньше, чем обновление будет отмечено применённым.
    */
-  public void handleUser(Long chatId, User telegramUser, boolean incrementMessageCount) {
+  public void handleUser(
+      Long chatId,
+      User telegramUser,
+      boolean incrementMessageCount,
+      Instant sentAt,
+      Integer updateId) {
     try {
-      userRepository.upsertUser(chatId, telegramUser, incrementMessageCount);
+      leaderboard.record(chatId, telegramUser, incrementMessageCount, sentAt, updateId);
     } catch (Exception e) {
       log.error("Ошибка в UserService.handleUser: ", e);
     }
@@ -55,34 +104,235 @@ public class UserService {
    * @return Объект SimpleUser, представляющий пользователя, или null, если пользователь не найден.
    */
   public SimpleUser getUser(Long chatId, Long userId) {
+    // Профиль из буфера свежее и ещё может отсутствовать в хранилище.
+    SimpleUser pending = activityBuffer.peekUser(chatId, userId);
+    if (pending != null) {
+      return pending;
+    }
     return userRepository.getUser(chatId, userId);
   }
 
   /**
-   * Метод возвращает 10 пользователей с самым большим количеством сообщений в группе по убыванию
+   * Неблокирующий вариант {@link #getUser}.
+   *
+   * @param chatId Идентификатор чата.
+   * @param userId Идентификатор пользователя.
+   * @return пользователь или null, если он не найден.
+   */
+  public CompletionStage<SimpleUser> getUserAsync(Long chatId, Long userId) {
+    SimpleUser pending = activityBuffer.peekUser(chatId, userId);
+    if (pending != null) {
+      return CompletableFuture.completedFuture(pending);
+    }
+    return asyncUserRepository.getUser(chatId, userId);
+  }
+
+  /**
+   * Метод возвращает 10 пользователей с самым большим количеством сообщений в группе по убыванию.
+   * Ответ строится по таблице лидеров в памяти, без запроса к базе.
    *
    * @param chatId Идентификатор чата.
    * @param limit Лимит пользователей (10).
    * @return Список объектов {@link SimpleUser}, отсортированный по убыванию количества сообщений.
    */
   public List<RankedUser> getTopUsers(Long chatId, int limit) {
-    return userRepository.getTopUsers(chatId, limit);
+    return leaderboard.getTopUsers(chatId, limit);
   }
 
   /**
-   * Строит сообщение с упоминанием всех пользователей чата.
+   * Метод возвращает самых активных пользователей чата за период. Рейтинг за всё время строится
+   * по таблице лидеров, за сутки — по 24 часовым корзинам активности, за неделю и месяц — по 7 и
+   * 30 суточным (текущие час и сутки входят в период). Профили читаются только для попавших в топ.
    *
-   * <p>Извлекает всех пользователей для указанного чата и формирует строку с упоминаниями. Если
-   * пользователи не найдены, возвращает сообщение о пустом списке.
+   * @param chatId Идентификатор чата.
+   * @param period Период рейтинга.
+   * @param limit Лимит пользователей.
+   * @return Список с рангами, начиная с 1, по убыванию количества сообщений за период.
+   */
+  public List<RankedUser> getTopUsers(Long chatId, TopPeriod period, int limit) {
+    if (period == TopPeriod.ALL) {
+      return getTopUsers(chatId, limit);
+    }
+    Window window = Window.of(period, Instant.now());
+    List<Map.Entry<Long, Integer>> top =
+        topCounts(bucketRepository.countsSince(chatId, window.granularity(), window.from()), limit);
+    if (top.isEmpty()) {
+      return List.of();
+    }
+    return rank(chatId, top, userRepository.getUsers(chatId, keys(top)));
+  }
+
+  /**
+   * Неблокирующий вариант {@link #getTopUsers(Long, TopPeriod, int)}: корзины и профили читаются
+   * через асинхронные хранилища, а рейтинг за всё время — через {@link
+   * ActivityLeaderboard#getTopUsersAsync}.
+   *
+   * @param chatId Идентификатор чата.
+   * @param period Период рейтинга.
+   * @param limit Лимит пользователей.
+   * @return Список с рангами, начиная с 1, по убыванию количества сообщений за период.
+   */
+  public CompletionStage<List<RankedUser>> getTopUsersAsync(
+      Long chatId, TopPeriod period, int limit) {
+    if (period == TopPeriod.ALL) {
+      return leaderboard.getTopUsersAsync(chatId, limit);
+    }
+    Window window = Window.of(period, Instant.now());
+    return asyncBucketRepository
+        .countsSince(chatId, window.granularity(), window.from())
+        .thenCompose(
+            counts -> {
+              List<Map.Entry<Long, Integer>> top = topCounts(counts, limit);
+              if (top.isEmpty()) {
+                return CompletableFuture.completedFuture(List.<RankedUser>of());
+              }
+              return asyncUserRepository
+                  .getUsers(chatId, keys(top))
+                  .thenApply(users -> rank(chatId, top, users));
+            });
+  }
+
+  /**
+   * Корзины, из которых складывается период: последние {@code buckets} корзин, включая текущую.
+   */
+  private record Window(Granularity granularity, Instant from) {
+
+    static Window of(TopPeriod period, Instant now) {
+      return switch (period) {
+        case DAY -> of(Granularity.HOURLY, now, 24);
+        case WEEK -> of(Granularity.DAILY, now, 7);
+        case MONTH -> of(Granularity.DAILY, now, 30);
+        case ALL -> throw new IllegalArgumentException("Рейтинг за всё время не из корзин");
+      };
+    }
+
+    private static Window of(Granularity granularity, Instant now, int buckets) {
+      return new Window(
+          granularity, granularity.bucketStart(now).minus(buckets - 1, granularity.unit()));
+    }
+  }
+
+  private static List<Map.Entry<Long, Integer>> topCounts(Map<Long, Integer> counts, int limit) {
+    return counts.entrySet().stream().sorted(BY_COUNT).limit(limit).toList();
+  }
+
+  private static List<Long> keys(List<Map.Entry<Long, Integer>> top) {
+    return top.stream().map(Map.Entry::getKey).toList();
+  }
+
+  /** Проставляет ранги; профиль, которого ещё нет в хранилище, берётся из буфера. */
+  private List<RankedUser> rank(
+      Long chatId, List<Map.Entry<Long, Integer>> top, Collection<SimpleUser> users) {
+    Map<Long, SimpleUser> profiles = new HashMap<>();
+    for (SimpleUser user : users) {
+      profiles.put(user.getId(), user);
+    }
+    List<RankedUser> ranked = new ArrayList<>(top.size());
+    for (Map.Entry<Long, Integer> entry : top) {
+      SimpleUser user = profiles.get(entry.getKey());
+      if (user == null) {
+        user = activityBuffer.peekUser(chatId, entry.getKey());
+      }
+      if (user != null) {
+        ranked.add(new RankedUser(user, entry.getValue(), ranked.size() + 1));
+      }
+    }
+    return ranked;
+  }
+
+  /**
+   * Ставит в очередь отправки сообщения с упоминанием всех пользователей чата.
+   *
+   * <p>Пользователи читаются через {@link AsyncUserRepository} страницами по {@link
+   * MentionChunker#MAX_MENTIONS} по индексу (chatId, id) и упаковываются {@link MentionChunker} в
+   * сообщения в пределах лимитов Telegram. Готовые сообщения страницы отдаются в {@code send}
+   * отдельной серией. Следующая страница запрашивается, когда поток отправки забирает последнее
+   * сообщение серии, а ставится в очередь по завершении чтения: с драйвером reactive поток
+   * отправки хранилище не ждёт и не задерживает другие чаты. В памяти одновременно не больше
+   * одной страницы и её сообщений, сколько бы участников ни было в чате. Если пользователи не
+   * найдены, отдаётся сообщение о пустом списке.
    *
    * @param chatId идентификатор чата, из которого нужно получить список пользователей
-   * @return строка с упоминаниями всех пользователей или сообщение об отсутствии пользователей
+   * @param send получатель серий сообщений, обычно очередь отправки чата
+   * @return завершается, когда первая серия отдана в {@code send}
    */
-  public String buildMentionAllMessage(Long chatId) {
-    Collection<SimpleUser> users = getAllUsers(chatId);
-    if (users == null || users.isEmpty()) {
-      return MessageBuilder.noUsersInChat();
+  public CompletionStage<Void> mentionAll(Long chatId, Consumer<Iterator<String>> send) {
+    return new MentionPages(chatId, send).fetch();
+  }
+
+  /** Постраничное чтение пользователей чата с упаковкой в сообщения. */
+  private final class MentionPages {
+    private final Long chatId;
+    private final Consumer<Iterator<String>> send;
+    private final MentionChunker chunker =
+        new MentionChunker(MessageBuilder.mentionAllHeader(), this::addChunk);
+    private Deque<String> ready = new ArrayDeque<>();
+    private Long lastUserId;
+
+    private MentionPages(Long chatId, Consumer<Iterator<String>> send) {
+      this.chatId = chatId;
+      this.send = send;
+    }
+
+    private CompletionStage<Void> fetch() {
+      return asyncUserRepository
+          .getUsersAfter(chatId, lastUserId, MentionChunker.MAX_MENTIONS)
+          .thenCompose(this::accept);
+    }
+
+    /** Упаковывает страницу и отдаёт готовые сообщения; недописанное остаётся в упаковщике. */
+    private CompletionStage<Void> accept(List<SimpleUser> page) {
+      page.forEach(chunker::add);
+      if (!page.isEmpty()) {
+        lastUserId = page.get(page.size() - 1).getId();
+      }
+      boolean last = page.size() < MentionChunker.MAX_MENTIONS;
+      if (last && chunker.finish() == 0) {
+        ready.addLast(MessageBuilder.noUsersInChat());
+      }
+      if (ready.isEmpty()) {
+        return last ? CompletableFuture.completedFuture(null) : fetch();
+      }
+      send.accept(new Series(ready, last));
+      ready = new ArrayDeque<>();
+      return CompletableFuture.completedFuture(null);
+    }
+
+    private void addChunk(String chunk) {
+      ready.addLast(chunk);
+    }
+
+    /** Сообщения одной страницы; последнее из них запрашивает следующую. */
+    private final class Series implements Iterator<String> {
+      private final Deque<String> chunks;
+      private final boolean last;
+
+      private Series(Deque<String> chunks, boolean last) {
+        this.chunks = chunks;
+        this.last = last;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return !chunks.isEmpty();
+      }
+
+      @Override
+      public String next() {
+        String chunk = chunks.pollFirst();
+        if (chunk == null) {
+          throw new NoSuchElementException();
+        }
+        if (chunks.isEmpty() && !last) {
+          fetch()
+              .exceptionally(
+                  e -> {
+                    log.error("Ошибка при чтении упоминаний чата {}: ", chatId, e);
+                    return null;
+                  });
+        }
+        return chunk;
+      }
     }
-    return MessageBuilder.mentionAll(users);
   }
 }
@@ -0,0 +1,54 @@
+package compost.storage;
+
+import compost.model.UserActivity;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Предварительно агрегированная активность чатов по интервалам времени. Каждая корзина — счётчики
+ * сообщений пользователей одного чата за час или за сутки (UTC), поэтому рейтинг за период
+ * собирается из нескольких документов без просмотра истории. Старые корзины удаляются по TTL.
+ */
+public interface ActivityBucketRepository {
+
+  /** Размер корзины. */
+  enum Granularity {
+    HOURLY(ChronoUnit.HOURS),
+    DAILY(ChronoUnit.DAYS);
+
+    private final ChronoUnit unit;
+
+    Granularity(ChronoUnit unit) {
+      this.unit = unit;
+    }
+
+    public ChronoUnit unit() {
+      return unit;
+    }
+
+    /** Начало корзины, в которую попадает момент {@code at}. */
+    public Instant bucketStart(Instant at) {
+      return at.truncatedTo(unit);
+    }
+  }
+
+  /**
+   * Добавляет инкременты сообщений в часовые и суточные корзины часа отправки сообщений ({@link
+   * UserActivity#hourly()}). Записи без инкремента (только обновление профиля) пропускаются.
+   *
+   * @param activities накопленная активность пользователей
+   */
+  void increment(Collection<UserActivity> activities);
+
+  /**
+   * Суммирует корзины чата, начиная с {@code from} включительно.
+   *
+   * @param chatId ID чата
+   * @param granularity размер корзин
+   * @param from начало первой корзины периода
+   * @return количество сообщений по ID пользователя
+   */
+  Map<Long, Integer> countsSince(Long chatId, Granularity granularity, Instant from);
+}
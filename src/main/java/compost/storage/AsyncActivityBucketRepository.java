@@ -0,0 +1,33 @@
+package compost.storage;
+
+import compost.storage.ActivityBucketRepository.Granularity;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Неблокирующее чтение корзин активности для рейтинга за период. Запись корзин идёт из буфера
+ * активности в фоновом потоке и остаётся в {@link ActivityBucketRepository}.
+ */
+public interface AsyncActivityBucketRepository {
+
+  /** См. {@link ActivityBucketRepository#countsSince}. */
+  CompletionStage<Map<Long, Integer>> countsSince(
+      Long chatId, Granularity granularity, Instant from);
+
+  /**
+   * Обёртка над блокирующим хранилищем для {@code bot.storage.driver=sync}: вызов выполняется в
+   * потоке вызывающего и возвращает уже завершённый результат.
+   */
+  static AsyncActivityBucketRepository blocking(ActivityBucketRepository repository) {
+    return (chatId, granularity, from) -> {
+      try {
+        return CompletableFuture.completedFuture(
+            repository.countsSince(chatId, granularity, from));
+      } catch (RuntimeException e) {
+        return CompletableFuture.failedFuture(e);
+      }
+    };
+  }
+}
@@ -0,0 +1,64 @@
+package compost.storage;
+
+import compost.service.TagService.ParsedTag;
+import compost.util.Constants.TagOperationResult;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * Неблокирующий вариант {@link TagRepository} с операциями, которые выполняют команды бота.
+ * Семантика каждой операции та же, что у одноимённого метода {@link TagRepository}.
+ */
+public interface AsyncTagRepository {
+
+  CompletionStage<Set<String>> getTags(Long chatId);
+
+  CompletionStage<Boolean> removeTag(Long chatId, String tag);
+
+  CompletionStage<Map<String, String>> getTagMap(Long chatId);
+
+  CompletionStage<Map<String, TagOperationResult>> applyTagChanges(
+      Long chatId, List<ParsedTag> tags);
+
+  /**
+   * Обёртка над блокирующим хранилищем для {@code bot.storage.driver=sync}: вызовы выполняются в
+   * потоке вызывающего и возвращают уже завершённый результат.
+   */
+  static AsyncTagRepository blocking(TagRepository repository) {
+    return new AsyncTagRepository() {
+      @Override
+      public CompletionStage<Set<String>> getTags(Long chatId) {
+        return call(() -> repository.getTags(chatId));
+      }
+
+      @Override
+      public CompletionStage<Boolean> removeTag(Long chatId, String tag) {
+        return call(() -> repository.removeTag(chatId, tag));
+      }
+
+      @Override
+      public CompletionStage<Map<String, String>> getTagMap(Long chatId) {
+        return call(() -> repository.getTagMap(chatId));
+      }
+
+      @Override
+      public CompletionStage<Map<String, TagOperationResult>> applyTagChanges(
+          Long chatId, List<ParsedTag> tags) {
+        return call(() -> repository.applyTagChanges(chatId, tags));
+      }
+    };
+  }
+
+  /** Результат блокирующего вызова; исключение превращается в неуспешный результат. */
+  private static <T> CompletionStage<T> call(Supplier<T> call) {
+    try {
+      return CompletableFuture.completedFuture(call.get());
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package compost.storage;
+
+import compost.model.SimpleUser;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * Неблокирующее чтение пользователей для пути обработки команд. Запись активности идёт через
+ * {@link UserActivityBuffer} в фоновом потоке и остаётся в {@link UserRepository}.
+ */
+public interface AsyncUserRepository {
+
+  CompletionStage<SimpleUser> getUser(Long chatId, Long userId);
+
+  /** См. {@link UserRepository#getUsers}. */
+  CompletionStage<List<SimpleUser>> getUsers(Long chatId, Collection<Long> userIds);
+
+  /** См. {@link UserRepository#getUsersAfter}. */
+  CompletionStage<List<SimpleUser>> getUsersAfter(Long chatId, Long afterUserId, int limit);
+
+  /**
+   * Обёртка над блокирующим хранилищем для {@code bot.storage.driver=sync}: вызовы выполняются в
+   * потоке вызывающего и возвращают уже завершённый результат.
+   */
+  static AsyncUserRepository blocking(UserRepository repository) {
+    return new AsyncUserRepository() {
+      @Override
+      public CompletionStage<SimpleUser> getUser(Long chatId, Long userId) {
+        return call(() -> repository.getUser(chatId, userId));
+      }
+
+      @Override
+      public CompletionStage<List<SimpleUser>> getUsers(Long chatId, Collection<Long> userIds) {
+        return call(() -> repository.getUsers(chatId, userIds));
+      }
+
+      @Override
+      public CompletionStage<List<SimpleUser>> getUsersAfter(
+          Long chatId, Long afterUserId, int limit) {
+        return call(() -> repository.getUsersAfter(chatId, afterUserId, limit));
+      }
+    };
+  }
+
+  /** Результат блокирующего вызова; исключение превращается в неуспешный результат. */
+  private static <T> CompletionStage<T> call(Supplier<T> call) {
+    try {
+      return CompletableFuture.completedFuture(call.get());
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package compost.storage;
+
+import compost.service.TagService.ParsedTag;
+import compost.util.Constants.TagOperationResult;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Реактивное хранилище тегов в связке с кэшем {@link CachingTagRepository}
+ * ({@code bot.storage.driver=reactive}). Чтения отвечают из закэшированного снимка чата, а без
+ * него идут в хранилище, не заполняя кэш: синхронная загрузка заняла бы поток. После каждой
+ * записи, успешной или нет, снимок чата сбрасывается, иначе блокирующий путь продолжил бы читать
+ * теги, какими они были до записи.
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "bot.storage.driver", havingValue = "reactive")
+public class CachingAsyncTagRepository implements AsyncTagRepository {
+
+  private final AsyncTagRepository delegate;
+  private final CachingTagRepository cache;
+
+  public CachingAsyncTagRepository(
+      @Qualifier("reactiveTagStorage") AsyncTagRepository delegate, CachingTagRepository cache) {
+    this.delegate = delegate;
+    this.cache = cache;
+  }
+
+  @Override
+  public CompletionStage<Set<String>> getTags(Long chatId) {
+    Map<String, String> cached = cache.getCachedTagMap(chatId);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(new HashSet<>(cached.keySet()));
+    }
+    return delegate.getTags(chatId);
+  }
+
+  @Override
+  public CompletionStage<Boolean> removeTag(Long chatId, String tag) {
+    return invalidateAfter(chatId, delegate.removeTag(chatId, tag));
+  }
+
+  @Override
+  public CompletionStage<Map<String, String>> getTagMap(Long chatId) {
+    Map<String, String> cached = cache.getCachedTagMap(chatId);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+    return delegate.getTagMap(chatId);
+  }
+
+  @Override
+  public CompletionStage<Map<String, TagOperationResult>> applyTagChanges(
+      Long chatId, List<ParsedTag> tags) {
+    return invalidateAfter(chatId, delegate.applyTagChanges(chatId, tags));
+  }
+
+  private <T> CompletionStage<T> invalidateAfter(Long chatId, CompletionStage<T> write) {
+    return write.whenComplete((result, error) -> cache.invalidate(chatId));
+  }
+}
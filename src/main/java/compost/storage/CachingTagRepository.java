@@ -0,0 +1,218 @@
+package compost.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import compost.service.TagService.ParsedTag;
+import compost.util.Constants.TagOperationResult;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Кэширующая обёртка над хранилищем тегов, выбранным {@code bot.tags.storage}. Хранит для каждого
+ * чата неизменяемый снимок тег → описание, загружаемый из хранилища при первом обращении. Операции
+ * записи сначала выполняются в хранилище, затем применяются к снимку в кэше, поэтому повторные
+ * чтения не обращаются к базе. Записи вытесняются по размеру и по времени простоя.
+ */
+@Repository
+@Primary
+@Log4j2
+public class CachingTagRepository implements TagRepository {
+
+  private final TagRepository delegate;
+  private final Cache<Long, SortedMap<String, String>> cache;
+
+  public CachingTagRepository(
+      @Qualifier("tagStorage") TagRepository delegate,
+      @Value("${bot.tags.cache.max-chats:10000}") long maxChats,
+      @Value("${bot.tags.cache.expire-after-access-minutes:30}") long expireAfterAccessMinutes) {
+    this.delegate = delegate;
+    this.cache =
+        Caffeine.newBuilder()
+            .maximumSize(maxChats)
+            .expireAfterAccess(Duration.ofMinutes(expireAfterAccessMinutes))
+            .recordStats()
+            .build();
+  }
+
+  /**
+   * Получает все теги для заданного чата из кэша.
+   *
+   * @param chatId Идентификатор чата
+   * @return Множество строковых тегов
+   */
+  @Override
+  public Set<String> getTags(Long chatId) {
+    return new HashSet<>(snapshot(chatId).keySet());
+  }
+
+  /**
+   * Добавляет тег в хранилище и в снимок чата, если он закэширован.
+   *
+   * @param chatId Идентификатор чата
+   * @param tag Тег
+   * @param description Описание тега
+   * @return результат операции хранилища
+   */
+  @Override
+  public boolean addTag(Long chatId, String tag, String description) {
+    boolean result = write(chatId, () -> delegate.addTag(chatId, tag, description));
+    update(chatId, tags -> tags.put(tag, description));
+    return result;
+  }
+
+  /**
+   * Удаляет тег из хранилища и из снимка чата.
+   *
+   * @param chatId Идентификатор чата
+   * @param tag Тег, который нужно удалить
+   * @return результат операции хранилища
+   */
+  @Override
+  public boolean removeTag(Long chatId, String tag) {
+    boolean result = write(chatId, () -> delegate.removeTag(chatId, tag));
+    update(chatId, tags -> tags.remove(tag));
+    return result;
+  }
+
+  /**
+   * Возвращает отображение тег → описание, отсортированное по тегам.
+   *
+   * @param chatId Идентификатор чата
+   * @return неизменяемая Map с тегами и их описаниями
+   */
+  @Override
+  public Map<String, String> getTagMap(Long chatId) {
+    return snapshot(chatId);
+  }
+
+  @Override
+  public void batchUpdateTagDescription(Long chatId, List<ParsedTag> tagsToUpdate) {
+    write(
+        chatId,
+        () -> {
+          delegate.batchUpdateTagDescription(chatId, tagsToUpdate);
+          return true;
+        });
+    // Позиционный $ обновляет только существующие теги — так же поступаем со снимком.
+    update(
+        chatId,
+        tags -> tagsToUpdate.forEach(tag -> tags.replace(tag.tag(), tag.description())));
+  }
+
+  @Override
+  public void batchClearTagDescription(Long chatId, List<String> tagsToClear) {
+    write(
+        chatId,
+        () -> {
+          delegate.batchClearTagDescription(chatId, tagsToClear);
+          return true;
+        });
+    update(chatId, tags -> tagsToClear.forEach(tag -> tags.replace(tag, "")));
+  }
+
+  @Override
+  public Map<String, TagOperationResult> applyTagChanges(Long chatId, List<ParsedTag> tags) {
+    Map<String, TagOperationResult> outcomes =
+        write(chatId, () -> delegate.applyTagChanges(chatId, tags));
+    update(chatId, snapshot -> tags.forEach(tag -> snapshot.put(tag.tag(), tag.description())));
+    return outcomes;
+  }
+
+  /**
+   * Сбрасывает все снимки после миграции данных: пока перенос тегов шёл, в кэш мог попасть
+   * неполный снимок новой раскладки.
+   */
+  @EventListener
+  public void onSchemaMigrated(SchemaMigratedEvent event) {
+    cache.invalidateAll();
+    log.info("Кэш тегов сброшен после миграций {}", event.versions());
+  }
+
+  /**
+   * Сбрасывает снимки чатов партиции, захваченной у другого обработчика кластера: их теги
+   * менялись на другом узле.
+   */
+  @EventListener
+  public void onPartitionAcquired(PartitionAcquiredEvent event) {
+    cache.asMap().keySet().removeIf(event::covers);
+  }
+
+  /**
+   * Снимок чата, если он уже в кэше, без загрузки из хранилища. Нужен неблокирующему пути
+   * {@link CachingAsyncTagRepository}, который не может ждать синхронной загрузки.
+   *
+   * @param chatId Идентификатор чата
+   * @return неизменяемая Map тег → описание или null, если чат не закэширован
+   */
+  public Map<String, String> getCachedTagMap(Long chatId) {
+    return cache.getIfPresent(chatId);
+  }
+
+  /**
+   * Сбрасывает снимок чата после записи в хранилище в обход этой обёртки.
+   *
+   * @param chatId Идентификатор чата
+   */
+  public void invalidate(Long chatId) {
+    cache.invalidate(chatId);
+  }
+
+  /** Возвращает статистику кэша (попадания, промахи, вытеснения). */
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  /** Количество закэшированных чатов. */
+  public long size() {
+    return cache.estimatedSize();
+  }
+
+  private SortedMap<String, String> snapshot(Long chatId) {
+    return cache.get(
+        chatId, id -> Collections.unmodifiableSortedMap(new TreeMap<>(delegate.getTagMap(id))));
+  }
+
+  /**
+   * Выполняет запись в хранилище. Если запись не удалась, снимок чата может расходиться с базой,
+   * поэтому он сбрасывается.
+   */
+  private <T> T write(Long chatId, Supplier<T> operation) {
+    try {
+      return operation.get();
+    } catch (RuntimeException e) {
+      cache.invalidate(chatId);
+      throw e;
+    }
+  }
+
+  /**
+   * Применяет изменение к копии снимка чата, если он закэширован. computeIfPresent дожидается
+   * загрузки, которая могла начаться до записи, поэтому изменение не теряется.
+   */
+  private void update(Long chatId, Consumer<SortedMap<String, String>> change) {
+    cache
+        .asMap()
+        .computeIfPresent(
+            chatId,
+            (id, current) -> {
+              SortedMap<String, String> copy = new TreeMap<>(current);
+              change.accept(copy);
+              return Collections.unmodifiableSortedMap(copy);
+            });
+  }
+}
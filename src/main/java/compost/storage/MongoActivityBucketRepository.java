@@ -0,0 +1,147 @@
+package compost.storage;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Projections.excludeId;
+import static com.mongodb.client.model.Projections.fields;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Updates.combine;
+import static com.mongodb.client.model.Updates.inc;
+import static com.mongodb.client.model.Updates.setOnInsert;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import compost.model.UserActivity;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Корзины активности в коллекции {@value #COLLECTION}: документ на (чат, размер, начало корзины)
+ * со счётчиками пользователей в поддокументе {@code counts}.
+ *
+ * <pre>
+ * { _id: "-100123:HOURLY:1718013600", chatId: -100123, granularity: "HOURLY",
+ *   start: ISODate(...), expireAt: ISODate(...), counts: { "42": 17, "43": 3 } }
+ * </pre>
+ *
+ * <p>Один сброс буфера активности — один bulkWrite с upsert на каждую затронутую корзину: обычно
+ * часовая и суточная на чат, больше — если сообщения сброса пришлись на разные часы. Поле
+ * {@code expireAt} закрывает TTL-индекс: часовые корзины живут
+ * {@code bot.activity.buckets.hourly-retention-hours}, суточные —
+ * {@code bot.activity.buckets.daily-retention-days} после окончания корзины.
+ */
+@Repository
+public class MongoActivityBucketRepository implements ActivityBucketRepository {
+
+  static final String COLLECTION = "activity_buckets";
+
+  static final Bson COUNTS_PROJECTION = fields(include("counts"), excludeId());
+
+  private final MongoCollection<Document> buckets;
+  private final Duration hourlyRetention;
+  private final Duration dailyRetention;
+
+  public MongoActivityBucketRepository(
+      MongoDatabase database,
+      @Value("${bot.activity.buckets.hourly-retention-hours:48}") long hourlyRetentionHours,
+      @Value("${bot.activity.buckets.daily-retention-days:35}") long dailyRetentionDays) {
+    this.buckets = database.getCollection(COLLECTION);
+    this.hourlyRetention = Duration.ofHours(hourlyRetentionHours);
+    this.dailyRetention = Duration.ofDays(dailyRetentionDays);
+  }
+
+  @Override
+  public void increment(Collection<UserActivity> activities) {
+    Map<BucketKey, Map<Long, Integer>> byBucket = new LinkedHashMap<>();
+    for (UserActivity activity : activities) {
+      activity
+          .hourly()
+          .forEach(
+              (hour, count) -> {
+                for (Granularity granularity : Granularity.values()) {
+                  BucketKey key =
+                      new BucketKey(activity.chatId(), granularity, granularity.bucketStart(hour));
+                  byBucket
+                      .computeIfAbsent(key, k -> new HashMap<>())
+                      .merge(activity.userId(), count, Integer::sum);
+                }
+              });
+    }
+    if (byBucket.isEmpty()) {
+      return;
+    }
+
+    List<WriteModel<Document>> models = new ArrayList<>(byBucket.size());
+    UpdateOptions upsert = new UpdateOptions().upsert(true);
+    byBucket.forEach(
+        (key, counts) ->
+            models.add(
+                new UpdateOneModel<>(
+                    eq("_id", bucketId(key.chatId(), key.granularity(), key.start())),
+                    bucketUpdate(key.chatId(), key.granularity(), key.start(), counts),
+                    upsert)));
+    buckets.bulkWrite(models, new BulkWriteOptions().ordered(false));
+  }
+
+  @Override
+  public Map<Long, Integer> countsSince(Long chatId, Granularity granularity, Instant from) {
+    Map<Long, Integer> totals = new HashMap<>();
+    for (Document bucket :
+        buckets.find(countsFilter(chatId, granularity, from)).projection(COUNTS_PROJECTION)) {
+      addCounts(totals, bucket);
+    }
+    return totals;
+  }
+
+  /** Корзины чата одного размера, начиная с {@code from}; общий для обоих драйверов. */
+  static Bson countsFilter(Long chatId, Granularity granularity, Instant from) {
+    return and(
+        eq("chatId", chatId), eq("granularity", granularity.name()), gte("start", Date.from(from)));
+  }
+
+  /** Прибавляет счётчики корзины к сумме по пользователям. */
+  static void addCounts(Map<Long, Integer> totals, Document bucket) {
+    Document counts = bucket.get("counts", Document.class);
+    if (counts == null) {
+      return;
+    }
+    counts.forEach(
+        (userId, count) ->
+            totals.merge(Long.valueOf(userId), ((Number) count).intValue(), Integer::sum));
+  }
+
+  static String bucketId(Long chatId, Granularity granularity, Instant start) {
+    return chatId + ":" + granularity.name() + ":" + start.getEpochSecond();
+  }
+
+  private Bson bucketUpdate(
+      Long chatId, Granularity granularity, Instant start, Map<Long, Integer> counts) {
+    Duration retention = granularity == Granularity.HOURLY ? hourlyRetention : dailyRetention;
+    Instant expireAt = start.plus(1, granularity.unit()).plus(retention);
+    List<Bson> updates = new ArrayList<>(counts.size() + 4);
+    updates.add(setOnInsert("chatId", chatId));
+    updates.add(setOnInsert("granularity", granularity.name()));
+    updates.add(setOnInsert("start", Date.from(start)));
+    updates.add(setOnInsert("expireAt", Date.from(expireAt)));
+    counts.forEach((userId, count) -> updates.add(inc("counts." + userId, count)));
+    return combine(updates);
+  }
+
+  private record BucketKey(Long chatId, Granularity granularity, Instant start) {}
+}
@@ -0,0 +1,127 @@
+package compost.storage;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.lt;
+import static com.mongodb.client.model.Filters.or;
+import static com.mongodb.client.model.Updates.combine;
+import static com.mongodb.client.model.Updates.inc;
+import static com.mongodb.client.model.Updates.max;
+import static com.mongodb.client.model.Updates.set;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOptions;
+import java.time.Duration;
+import java.util.Date;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Аренда партиций в коллекции {@value #LEASES_COLLECTION} (документ на партицию: owner,
+ * expiresAt, epoch, ackedUpTo) и пульс обработчиков в {@value #WORKERS_COLLECTION}.
+ *
+ * <p>Захват — один условный upsert с увеличением эпохи: документ обновляется, только если аренда
+ * просрочена или уже наша, а если документ занят другим, вставка упирается в уникальный {@code
+ * _id}. Продление, проверка, подтверждение и освобождение фильтруют по владельцу и эпохе, поэтому
+ * устаревшая аренда ничего не меняет. Сроки считаются по часам узлов, поэтому срок аренды должен
+ * быть много больше их расхождения.
+ */
+@Repository
+@ConditionalOnExpression("'${bot.cluster.role:standalone}' != 'standalone'")
+public class MongoPartitionLeases implements PartitionLeases {
+
+  static final String LEASES_COLLECTION = "partition_leases";
+  static final String WORKERS_COLLECTION = "cluster_workers";
+
+  private final MongoCollection<Document> leases;
+  private final MongoCollection<Document> workers;
+
+  public MongoPartitionLeases(MongoDatabase database) {
+    this.leases = database.getCollection(LEASES_COLLECTION);
+    this.workers = database.getCollection(WORKERS_COLLECTION);
+  }
+
+  @Override
+  public void heartbeat(String workerId, Duration ttl) {
+    workers.updateOne(
+        eq("_id", workerId), set("expiresAt", expiry(ttl)), new UpdateOptions().upsert(true));
+  }
+
+  @Override
+  public void leave(String workerId) {
+    workers.deleteOne(eq("_id", workerId));
+  }
+
+  @Override
+  public int liveWorkers() {
+    return (int) workers.countDocuments(gt("expiresAt", new Date()));
+  }
+
+  @Override
+  public Lease tryAcquire(int partition, String workerId, Duration ttl) {
+    try {
+      Document lease =
+          leases.findOneAndUpdate(
+              and(
+                  eq("_id", partition),
+                  or(lt("expiresAt", new Date()), eq("owner", workerId))),
+              combine(set("owner", workerId), set("expiresAt", expiry(ttl)), inc("epoch", 1L)),
+              new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER));
+      return new Lease(
+          partition, workerId, longValue(lease, "epoch"), longValue(lease, "ackedUpTo"));
+    } catch (MongoCommandException e) {
+      // Партицию держит другой обработчик: условие не совпало, а вставка дублирует _id.
+      // findAndModify — команда, поэтому дубликат приходит ошибкой команды, а не записи.
+      if (ErrorCategory.fromErrorCode(e.getErrorCode()) == ErrorCategory.DUPLICATE_KEY) {
+        return null;
+      }
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean renew(Lease lease, Duration ttl) {
+    return leases.updateOne(owned(lease), set("expiresAt", expiry(ttl))).getMatchedCount() > 0;
+  }
+
+  @Override
+  public boolean holds(Lease lease) {
+    return leases.countDocuments(live(lease)) > 0;
+  }
+
+  @Override
+  public boolean commit(Lease lease, long upToSeq) {
+    return leases.updateOne(live(lease), max("ackedUpTo", upToSeq)).getMatchedCount() > 0;
+  }
+
+  @Override
+  public void release(Lease lease) {
+    leases.updateOne(owned(lease), combine(set("owner", null), set("expiresAt", new Date(0))));
+  }
+
+  private static Bson owned(Lease lease) {
+    return and(
+        eq("_id", lease.partition()), eq("owner", lease.workerId()), eq("epoch", lease.epoch()));
+  }
+
+  private static Bson live(Lease lease) {
+    return and(owned(lease), gt("expiresAt", new Date()));
+  }
+
+  private static long longValue(Document lease, String field) {
+    Number value = lease.get(field, Number.class);
+    return value == null ? 0 : value.longValue();
+  }
+
+  private static Date expiry(Duration ttl) {
+    return new Date(System.currentTimeMillis() + ttl.toMillis());
+  }
+}
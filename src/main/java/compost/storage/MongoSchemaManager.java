@@ -0,0 +1,535 @@
+package compost.storage;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.exists;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Filters.or;
+import static com.mongodb.client.model.Projections.excludeId;
+import static com.mongodb.client.model.Projections.fields;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Sorts.ascending;
+import static com.mongodb.client.model.Sorts.descending;
+import static com.mongodb.client.model.Updates.set;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import lombok.extern.log4j.Log4j2;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Подготовка схемы MongoDB при запуске: индексы, версионированные миграции и проверка планов
+ * запросов.
+ *
+ * <p>Все запросы репозиториев фильтруют по chatId (и id пользователя), поэтому без индексов каждый
+ * из них — полный просмотр коллекции. Менеджер создаёт недостающие индексы, применяет ещё не
+ * выполненные миграции (список выполненных хранится в коллекции {@value #MIGRATIONS_COLLECTION}),
+ * а затем выполняет explain для каждого типового запроса и при обнаружении COLLSCAN пишет
+ * предупреждение или останавливает запуск — в зависимости от {@code bot.mongo.schema.collscan}.
+ *
+ * <p>По умолчанию всё это выполняется в фоновом потоке после старта, чтобы недоступная база не
+ * задерживала запуск бота. В режиме {@code SYNC} ошибки прерывают запуск приложения. В обоих
+ * режимах бот к этому моменту уже принимает обновления и мог закэшировать данные, которые
+ * миграция ещё не перенесла, поэтому после применения миграций публикуется {@link
+ * SchemaMigratedEvent}: по нему кэши сбрасывают снимки.
+ *
+ * <p>Обязательные индексы — уникальный (chatId, id) пользователей, на котором держится
+ * идемпотентный повтор пакета активности, — и обязательные миграции ({@link
+ * SchemaMigration#required()}) выполняются синхронно при создании бина, до репозиториев и первого
+ * сброса {@link UserActivityBuffer}, в любом режиме кроме {@code OFF}. Если это не удалось, запуск
+ * прерывается; в режиме {@code OFF} их наличие только проверяется.
+ *
+ * <p>Менеджер работает через отдельный клиент {@code schemaMongoDatabase} без таймаута чтения
+ * общего клиента: построение индекса или перенос данных на большой базе идут минутами.
+ */
+@Component
+@Log4j2
+public class MongoSchemaManager implements ApplicationEventPublisherAware {
+
+  static final String MIGRATIONS_COLLECTION = "schema_migrations";
+
+  /** Режим запуска подготовки схемы. */
+  public enum Mode {
+    /** В фоновом потоке после старта приложения. */
+    ASYNC,
+    /** Синхронно при старте; ошибки прерывают запуск. */
+    SYNC,
+    /** Не выполнять. */
+    OFF
+  }
+
+  /** Реакция на COLLSCAN в плане запроса. */
+  public enum CollScanPolicy {
+    WARN,
+    FAIL
+  }
+
+  /**
+   * Индекс, который должен существовать.
+   *
+   * @param collection коллекция
+   * @param keys ключи индекса
+   * @param options имя и свойства индекса
+   * @param required нужен до начала записи: без него запуск прерывается
+   */
+  record IndexSpec(String collection, Bson keys, IndexOptions options, boolean required) {}
+
+  /**
+   * Типовой запрос репозитория, план которого проверяется через explain.
+   *
+   * @param name описание запроса для логов
+   * @param collection коллекция
+   * @param filter фильтр с примерными значениями
+   * @param sort сортировка или null
+   * @param projection проекция или null
+   */
+  record QueryProbe(String name, String collection, Bson filter, Bson sort, Bson projection) {
+
+    QueryProbe(String name, String collection, Bson filter, Bson sort) {
+      this(name, collection, filter, sort, null);
+    }
+  }
+
+  /**
+   * Встроенная миграция, не зависящая от конфигурации.
+   *
+   * @param version номер версии
+   * @param description описание для логов
+   * @param action изменение данных
+   */
+  record Migration(int version, String description, Consumer<MongoDatabase> action)
+      implements SchemaMigration {
+
+    @Override
+    public void apply(MongoDatabase database) {
+      action.accept(database);
+    }
+  }
+
+  static final List<IndexSpec> INDEXES =
+      List.of(
+          // Фильтр upsert и getUser. Уникальность отсекает повтор уже применённого upsert из
+          // пакета активности, иначе повтор создал бы второй документ пользователя.
+          new IndexSpec(
+              "users",
+              Indexes.ascending("chatId", "id"),
+              new IndexOptions().name("chatId_id").unique(true),
+              true),
+          // getTopUsers / getRanking: выборка по чату с сортировкой без SORT в памяти.
+          new IndexSpec(
+              "users",
+              Indexes.compoundIndex(
+                  Indexes.ascending("chatId"), Indexes.descending("messageCount")),
+              new IndexOptions().name("chatId_messageCount"),
+              false),
+          // Один документ на чат: уникальный индекс также защищает upsert в addTag от гонки.
+          // Позиционные обновления по tags.tag находят документ по этому же индексу, а массив
+          // внутри одного документа отдельного индекса не требует.
+          new IndexSpec(
+              "tags",
+              Indexes.ascending("chatId"),
+              new IndexOptions().name("chatId").unique(true),
+              false),
+          // Раскладка «документ на тег»: точечные операции и getTagMap с сортировкой по тегу.
+          new IndexSpec(
+              MongoTagEntryRepository.COLLECTION,
+              Indexes.ascending("chatId", "tag"),
+              new IndexOptions().name("chatId_tag").unique(true),
+              false),
+          // Рейтинг за период: корзины чата нужного размера начиная с даты.
+          new IndexSpec(
+              MongoActivityBucketRepository.COLLECTION,
+              Indexes.ascending("chatId", "granularity", "start"),
+              new IndexOptions().name("chatId_granularity_start"),
+              false),
+          // TTL: корзина удаляется, когда наступает её expireAt.
+          new IndexSpec(
+              MongoActivityBucketRepository.COLLECTION,
+              Indexes.ascending("expireAt"),
+              new IndexOptions().name("expireAt_ttl").expireAfter(0L, TimeUnit.SECONDS),
+              false),
+          // Распределённый режим: выборка партиции очереди по возрастанию номера.
+          new IndexSpec(
+              MongoUpdateQueue.COLLECTION,
+              Indexes.ascending("partition", "seq"),
+              new IndexOptions().name("partition_seq"),
+              false),
+          // Пульс обработчиков кластера: упавшие узлы удаляются по TTL.
+          new IndexSpec(
+              MongoPartitionLeases.WORKERS_COLLECTION,
+              Indexes.ascending("expiresAt"),
+              new IndexOptions().name("expiresAt_ttl").expireAfter(60L, TimeUnit.SECONDS),
+              false));
+
+  static final List<QueryProbe> PROBES =
+      List.of(
+          new QueryProbe(
+              "users: getUser/getUsers/bulkUpsertUsers",
+              "users",
+              and(eq("chatId", 0L), eq("id", 0L)),
+              null),
+          new QueryProbe(
+              "users: getUsersAfter",
+              "users",
+              and(eq("chatId", 0L), gt("id", 0L)),
+              ascending("id")),
+          new QueryProbe(
+              "users: bulkUpsertUsers, проверка отметки пакета",
+              "users",
+              and(
+                  eq(MongoUserRepository.FLUSH_ID, 0L),
+                  or(
+                      and(eq("chatId", 0L), in("id", List.of(0L, 1L))),
+                      and(eq("chatId", 1L), in("id", List.of(0L))))),
+              null,
+              fields(include("chatId", "id"), excludeId())),
+          new QueryProbe(
+              "users: getRanking", "users", eq("chatId", 0L), descending("messageCount")),
+          new QueryProbe("tags: getTags/addTag", "tags", eq("chatId", 0L), null),
+          new QueryProbe(
+              "tags: batchUpdateTagDescription",
+              "tags",
+              and(eq("chatId", 0L), eq("tags.tag", "")),
+              null),
+          new QueryProbe(
+              "tag_entries: getTagMap",
+              MongoTagEntryRepository.COLLECTION,
+              eq("chatId", 0L),
+              ascending("tag")),
+          new QueryProbe(
+              "tag_entries: addTag/removeTag",
+              MongoTagEntryRepository.COLLECTION,
+              and(eq("chatId", 0L), eq("tag", "")),
+              null),
+          new QueryProbe(
+              "activity_buckets: countsSince",
+              MongoActivityBucketRepository.COLLECTION,
+              and(eq("chatId", 0L), eq("granularity", "DAILY"), gte("start", new Date(0))),
+              null),
+          new QueryProbe(
+              "update_queue: poll",
+              MongoUpdateQueue.COLLECTION,
+              eq("partition", 0),
+              ascending("seq")));
+
+  static final List<SchemaMigration> BUILTIN_MIGRATIONS =
+      List.of(
+          new Migration(
+              1,
+              "messageCount=0 для пользователей без счётчика",
+              database ->
+                  database
+                      .getCollection("users")
+                      .updateMany(exists("messageCount", false), set("messageCount", 0))));
+
+  private final MongoDatabase database;
+  private final List<SchemaMigration> migrations;
+  private final Mode mode;
+  private final CollScanPolicy collScanPolicy;
+  private ApplicationEventPublisher eventPublisher;
+
+  public MongoSchemaManager(
+      @Qualifier("schemaMongoDatabase") MongoDatabase database,
+      ObjectProvider<SchemaMigration> conditionalMigrations,
+      @Value("${bot.mongo.schema.mode:ASYNC}") Mode mode,
+      @Value("${bot.mongo.schema.collscan:WARN}") CollScanPolicy collScanPolicy) {
+    this.database = database;
+    this.migrations =
+        Stream.concat(BUILTIN_MIGRATIONS.stream(), conditionalMigrations.orderedStream())
+            .sorted(Comparator.comparingInt(SchemaMigration::version))
+            .toList();
+    this.mode = mode;
+    this.collScanPolicy = collScanPolicy;
+    for (int i = 1; i < migrations.size(); i++) {
+      if (migrations.get(i).version() == migrations.get(i - 1).version()) {
+        throw new IllegalStateException(
+            "Повторяющаяся версия миграции: " + migrations.get(i).version());
+      }
+    }
+  }
+
+  @Override
+  public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+    this.eventPublisher = eventPublisher;
+  }
+
+  /**
+   * Создаёт обязательные индексы и применяет обязательные миграции синхронно, до бинов, которые
+   * от них зависят.
+   *
+   * @throws IllegalStateException если обязательный индекс или миграция не готовы
+   */
+  @PostConstruct
+  public void prepareRequired() {
+    ensureRequiredIndexes();
+    migrateRequired();
+  }
+
+  /**
+   * Создаёт обязательные индексы.
+   *
+   * @throws IllegalStateException если обязательного индекса нет и создать его не удалось
+   */
+  public void ensureRequiredIndexes() {
+    for (IndexSpec spec : INDEXES) {
+      if (!spec.required()) {
+        continue;
+      }
+      MongoCollection<Document> collection = database.getCollection(spec.collection());
+      if (indexNames(collection).contains(spec.options().getName())) {
+        continue;
+      }
+      if (mode == Mode.OFF) {
+        throw new IllegalStateException(
+            "Нет обязательного индекса "
+                + spec.collection()
+                + "."
+                + spec.options().getName()
+                + ", а подготовка схемы отключена (bot.mongo.schema.mode=OFF)");
+      }
+      try {
+        collection.createIndex(spec.keys(), spec.options());
+      } catch (RuntimeException e) {
+        throw new IllegalStateException(
+            "Не удалось создать обязательный индекс "
+                + spec.collection()
+                + "."
+                + spec.options().getName(),
+            e);
+      }
+      log.info("Создан обязательный индекс {}.{}", spec.collection(), spec.options().getName());
+    }
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    switch (mode) {
+      case SYNC -> bootstrap();
+      case ASYNC -> {
+        Thread thread =
+            new Thread(
+                () -> {
+                  try {
+                    bootstrap();
+                  } catch (Exception e) {
+                    log.error("Ошибка подготовки схемы MongoDB: ", e);
+                  }
+                },
+                "mongo-schema");
+        thread.setDaemon(true);
+        thread.start();
+      }
+      case OFF -> log.info("Подготовка схемы MongoDB отключена");
+    }
+  }
+
+  /** Создаёт индексы, применяет миграции и проверяет планы запросов. */
+  public void bootstrap() {
+    long start = System.nanoTime();
+    ensureIndexes();
+    int applied = migrate();
+    List<String> collScans = checkQueryPlans();
+    log.info(
+        "Схема MongoDB готова за {} мс: миграций применено {}, запросов с COLLSCAN {}",
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+        applied,
+        collScans.size());
+  }
+
+  /** Создаёт недостающие индексы. Существующие индексы с тем же именем не пересоздаются. */
+  void ensureIndexes() {
+    for (IndexSpec spec : INDEXES) {
+      MongoCollection<Document> collection = database.getCollection(spec.collection());
+      if (indexNames(collection).contains(spec.options().getName())) {
+        continue;
+      }
+      try {
+        collection.createIndex(spec.keys(), spec.options());
+        log.info("Создан индекс {}.{}", spec.collection(), spec.options().getName());
+      } catch (RuntimeException e) {
+        // Например, уникальный индекс на данных с дубликатами: запуск продолжаем, explain
+        // ниже покажет, каким запросам индекса не хватает.
+        log.error(
+            "Не удалось создать индекс {}.{}: {}",
+            spec.collection(),
+            spec.options().getName(),
+            e.getMessage());
+      }
+    }
+  }
+
+  private static Set<String> indexNames(MongoCollection<Document> collection) {
+    Set<String> names = new HashSet<>();
+    for (Document index : collection.listIndexes()) {
+      names.add(index.getString("name"));
+    }
+    return names;
+  }
+
+  /**
+   * Применяет ещё не выполненные обязательные миграции. Событие {@link SchemaMigratedEvent} не
+   * публикуется: зависящие от миграций репозитории и кэши создаются позже и устаревших данных не
+   * видели.
+   *
+   * @return количество применённых миграций
+   * @throws IllegalStateException в режиме {@code OFF}, если обязательная миграция не применена
+   */
+  int migrateRequired() {
+    List<SchemaMigration> required =
+        migrations.stream().filter(SchemaMigration::required).toList();
+    if (required.isEmpty()) {
+      return 0;
+    }
+    if (mode == Mode.OFF) {
+      Set<Integer> applied = appliedVersions();
+      for (SchemaMigration migration : required) {
+        if (!applied.contains(migration.version())) {
+          throw new IllegalStateException(
+              "Не применена обязательная миграция "
+                  + migration.version()
+                  + " ("
+                  + migration.description()
+                  + "), а подготовка схемы отключена (bot.mongo.schema.mode=OFF)");
+        }
+      }
+      return 0;
+    }
+    return apply(required).size();
+  }
+
+  /**
+   * Применяет ещё не выполненные миграции по возрастанию версии.
+   *
+   * @return количество применённых миграций
+   */
+  int migrate() {
+    List<Integer> versions = apply(migrations);
+    if (!versions.isEmpty() && eventPublisher != null) {
+      eventPublisher.publishEvent(new SchemaMigratedEvent(versions));
+    }
+    return versions.size();
+  }
+
+  private Set<Integer> appliedVersions() {
+    Set<Integer> applied = new HashSet<>();
+    for (Document doc : database.getCollection(MIGRATIONS_COLLECTION).find()) {
+      applied.add(doc.getInteger("_id"));
+    }
+    return applied;
+  }
+
+  /**
+   * Применяет миграции из списка, которые ещё не записаны в {@value #MIGRATIONS_COLLECTION}.
+   *
+   * @return версии применённых миграций
+   */
+  private List<Integer> apply(List<SchemaMigration> candidates) {
+    MongoCollection<Document> appliedCollection = database.getCollection(MIGRATIONS_COLLECTION);
+    Set<Integer> applied = appliedVersions();
+
+    List<Integer> versions = new ArrayList<>();
+    for (SchemaMigration migration : candidates) {
+      if (applied.contains(migration.version())) {
+        continue;
+      }
+      log.info("Миграция {}: {}", migration.version(), migration.description());
+      migration.apply(database);
+      try {
+        appliedCollection.insertOne(
+            new Document("_id", migration.version())
+                .append("description", migration.description())
+                .append("appliedAt", new Date()));
+      } catch (MongoWriteException e) {
+        // Миграцию одновременно выполнил другой экземпляр — она идемпотентна, это не ошибка.
+        if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+          throw e;
+        }
+      }
+      versions.add(migration.version());
+    }
+    return versions;
+  }
+
+  /**
+   * Выполняет explain для каждого типового запроса и ищет COLLSCAN в выбранном плане.
+   *
+   * @return описания запросов, выполняемых полным просмотром коллекции
+   * @throws IllegalStateException при политике FAIL, если найден COLLSCAN
+   */
+  List<String> checkQueryPlans() {
+    List<String> collScans = new ArrayList<>();
+    for (QueryProbe probe : PROBES) {
+      FindIterable<Document> find =
+          database.getCollection(probe.collection()).find(probe.filter());
+      if (probe.sort() != null) {
+        find = find.sort(probe.sort());
+      }
+      if (probe.projection() != null) {
+        find = find.projection(probe.projection());
+      }
+      Document queryPlanner = find.explain().get("queryPlanner", Document.class);
+      if (queryPlanner != null && containsStage(queryPlanner.get("winningPlan"), "COLLSCAN")) {
+        collScans.add(probe.name());
+      }
+    }
+
+    if (!collScans.isEmpty()) {
+      String message = "Запросы выполняются полным просмотром коллекции (COLLSCAN): " + collScans;
+      if (collScanPolicy == CollScanPolicy.FAIL) {
+        throw new IllegalStateException(message);
+      }
+      log.warn(message);
+    }
+    return collScans;
+  }
+
+  /**
+   * Рекурсивно ищет стадию в плане. Обходит все вложенные документы и массивы, поэтому
+   * подходит и для классического формата (inputStage/inputStages), и для SBE (queryPlan).
+   */
+  static boolean containsStage(Object node, String stage) {
+    if (node instanceof Document doc) {
+      if (stage.equals(doc.get("stage"))) {
+        return true;
+      }
+      for (Object value : doc.values()) {
+        if (containsStage(value, stage)) {
+          return true;
+        }
+      }
+    } else if (node instanceof List<?> list) {
+      for (Object value : list) {
+        if (containsStage(value, stage)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,222 @@
+package compost.storage;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import compost.model.TagEntry;
+import compost.service.TagService.ParsedTag;
+import compost.util.Constants.TagOperationResult;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Реализация TagRepository на базе MongoDB с документом на каждый тег ({@code
+ * bot.tags.storage=document}). Документы {chatId, tag, description} хранятся в коллекции {@value
+ * #COLLECTION} с уникальным индексом (chatId, tag), поэтому добавление, удаление и обновление
+ * описания — точечные операции по индексу, а размер чата не ограничен размером одного документа.
+ *
+ * <p>При переключении с встроенного массива данные переносит {@link TagEntryMigration}; бин
+ * создаётся после {@link MongoSchemaManager}, который выполняет её до начала работы. Чтение
+ * декодируется сразу в {@link TagEntry} кодеком из {@link compost.storage.codec.BotCodecs}.
+ */
+@Repository
+@DependsOn("mongoSchemaManager")
+@Qualifier("tagStorage")
+@ConditionalOnProperty(name = "bot.tags.storage", havingValue = "document")
+public class MongoTagEntryRepository implements TagRepository {
+
+  static final String COLLECTION = "tag_entries";
+
+  private final MongoCollection<Document> tagCollection;
+
+  public MongoTagEntryRepository(MongoDatabase database) {
+    this.tagCollection = database.getCollection(COLLECTION);
+  }
+
+  /**
+   * Получает все теги для заданного чата.
+   *
+   * @param chatId Идентификатор чата
+   * @return Множество строковых тегов
+   */
+  @Override
+  public Set<String> getTags(Long chatId) {
+    Set<String> tags = new HashSet<>();
+    for (TagEntry entry :
+        tagCollection
+            .find(Filters.eq("chatId", chatId), TagEntry.class)
+            .projection(entryProjection("tag"))) {
+      tags.add(entry.tag());
+    }
+    return tags;
+  }
+
+  /**
+   * Добавляет тег с описанием для заданного чата. Если тег уже есть — обновляет описание.
+   *
+   * @param chatId      Идентификатор чата
+   * @param tag         Тег
+   * @param description Описание тега
+   * @return true всегда
+   */
+  @Override
+  public boolean addTag(Long chatId, String tag, String description) {
+    tagCollection.updateOne(
+        filter(chatId, tag),
+        Updates.set("description", description),
+        new UpdateOptions().upsert(true));
+    return true;
+  }
+
+  /**
+   * Удаляет документ тега.
+   *
+   * @param chatId Идентификатор чата
+   * @param tag    Тег, который нужно удалить
+   * @return true всегда
+   */
+  @Override
+  public boolean removeTag(Long chatId, String tag) {
+    tagCollection.deleteOne(filter(chatId, tag));
+    return true;
+  }
+
+  /**
+   * Возвращает отображение тег → описание, отсортированное по тегам. Сортировку выполняет индекс
+   * (chatId, tag).
+   *
+   * @param chatId Идентификатор чата
+   * @return Map с тегами и их описаниями
+   */
+  @Override
+  public Map<String, String> getTagMap(Long chatId) {
+    Map<String, String> tags = new LinkedHashMap<>();
+    for (TagEntry entry :
+        tagCollection
+            .find(Filters.eq("chatId", chatId), TagEntry.class)
+            .sort(Sorts.ascending("tag"))
+            .projection(entryProjection("tag", "description"))) {
+      tags.put(entry.tag(), entry.description());
+    }
+    return tags;
+  }
+
+  /**
+   * Массовое обновление описаний одним неупорядоченным bulkWrite. Несуществующие теги не
+   * создаются.
+   *
+   * @param chatId       Идентификатор чата
+   * @param tagsToUpdate Список тегов с новыми описаниями
+   */
+  @Override
+  public void batchUpdateTagDescription(Long chatId, List<ParsedTag> tagsToUpdate) {
+    if (tagsToUpdate.isEmpty()) {
+      return;
+    }
+    List<WriteModel<Document>> models = new ArrayList<>(tagsToUpdate.size());
+    for (ParsedTag tag : tagsToUpdate) {
+      models.add(
+          new UpdateOneModel<>(
+              filter(chatId, tag.tag()), Updates.set("description", tag.description())));
+    }
+    tagCollection.bulkWrite(models, new BulkWriteOptions().ordered(false));
+  }
+
+  /**
+   * Массовое удаление описаний (обнуляет строку) для указанных тегов одним updateMany.
+   *
+   * @param chatId      Идентификатор чата
+   * @param tagsToClear Список тегов, для которых нужно очистить описание
+   */
+  @Override
+  public void batchClearTagDescription(Long chatId, List<String> tagsToClear) {
+    if (tagsToClear.isEmpty()) {
+      return;
+    }
+    tagCollection.updateMany(
+        Filters.and(Filters.eq("chatId", chatId), Filters.in("tag", tagsToClear)),
+        Updates.set("description", ""));
+  }
+
+  /**
+   * Применяет набор изменений одним неупорядоченным bulkWrite из upsert-ов. Каждый тег
+   * изменяется атомарно; добавленные теги определяются по upsert-ам в результате bulkWrite.
+   *
+   * @param chatId Идентификатор чата
+   * @param tags   Теги с описаниями
+   * @return исход для каждого тега
+   */
+  @Override
+  public Map<String, TagOperationResult> applyTagChanges(Long chatId, List<ParsedTag> tags) {
+    if (tags.isEmpty()) {
+      return Map.of();
+    }
+
+    // Последнее описание для каждого тега: один upsert на тег, индексы совпадают с порядком
+    Map<String, String> latest = MongoTagRepository.latestDescriptions(tags);
+    BulkWriteResult result =
+        tagCollection.bulkWrite(upserts(chatId, latest), new BulkWriteOptions().ordered(false));
+    return outcomes(latest, result);
+  }
+
+  /** Upsert описания для каждого тега в порядке {@code latest}. */
+  static List<WriteModel<Document>> upserts(Long chatId, Map<String, String> latest) {
+    List<WriteModel<Document>> models = new ArrayList<>(latest.size());
+    latest.forEach(
+        (tag, description) ->
+            models.add(
+                new UpdateOneModel<>(
+                    filter(chatId, tag),
+                    Updates.set("description", description),
+                    new UpdateOptions().upsert(true))));
+    return models;
+  }
+
+  /** Исходы по результату bulkWrite: тег с upsert-ом добавлен, остальные обновлены. */
+  static Map<String, TagOperationResult> outcomes(
+      Map<String, String> latest, BulkWriteResult result) {
+    Set<Integer> inserted = new HashSet<>();
+    for (BulkWriteUpsert upsert : result.getUpserts()) {
+      inserted.add(upsert.getIndex());
+    }
+
+    Map<String, TagOperationResult> outcomes = new LinkedHashMap<>();
+    int i = 0;
+    for (String tag : latest.keySet()) {
+      outcomes.put(
+          tag,
+          inserted.contains(i++)
+              ? TagOperationResult.SUCCESS
+              : TagOperationResult.UPDATED_DESCRIPTION);
+    }
+    return outcomes;
+  }
+
+  /** Проекция на поля тега без chatId и _id. */
+  static Bson entryProjection(String... fields) {
+    return Projections.fields(Projections.include(fields), Projections.excludeId());
+  }
+
+  static Bson filter(Long chatId, String tag) {
+    return Filters.and(Filters.eq("chatId", chatId), Filters.eq("tag", tag));
+  }
+}
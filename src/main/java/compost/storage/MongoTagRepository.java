@@ -3,9 +3,17 @@ package compost.storage;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
 import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.model.Updates;
+import compost.model.ChatTags;
+import compost.model.TagEntry;
 import compost.service.TagService.ParsedTag;
+import compost.util.Constants.TagOperationResult;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -13,15 +21,24 @@ import java.util.Map;
 import java.util.Set;
 import org.bson.Document;
 import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
 /**
  * Реализация интерфейса TagRepository на базе MongoDB. Хранит теги и их описания в коллекции
- * "tags".
+ * "tags" — массивом внутри одного документа на чат. Используется по умолчанию
+ * ({@code bot.tags.storage=embedded}). Чтение декодирует только массив tags сразу в {@link
+ * ChatTags} кодеком из {@link compost.storage.codec.BotCodecs}.
  */
 @Repository
+@Qualifier("tagStorage")
+@ConditionalOnProperty(name = "bot.tags.storage", havingValue = "embedded", matchIfMissing = true)
 public class MongoTagRepository implements TagRepository {
 
+  static final Bson TAGS_PROJECTION =
+      Projections.fields(Projections.include("tags"), Projections.excludeId());
+
   private final MongoCollection<Document> tagCollection;
 
   public MongoTagRepository(MongoDatabase database) {
@@ -36,17 +53,7 @@ public class MongoTagRepository implements TagRepository {
    */
   @Override
   public Set<String> getTags(Long chatId) {
-    Document doc = tagCollection.find(Filters.eq("chatId", chatId)).first();
-    if (doc == null || !doc.containsKey("tags")) {
-      return new HashSet<>();
-    }
-
-    List<Document> tagList = doc.getList("tags", Document.class);
-    Set<String> tags = new HashSet<>();
-    for (Document tagDoc : tagList) {
-      tags.add(tagDoc.getString("tag"));
-    }
-    return tags;
+    return tagSet(findChatTags(chatId));
   }
 
   /**
@@ -75,12 +82,14 @@ public class MongoTagRepository implements TagRepository {
    */
   @Override
   public boolean removeTag(Long chatId, String tag) {
-    Bson filter = Filters.eq("chatId", chatId);
-    Bson update = Updates.pull("tags", new Document("tag", tag));
-    tagCollection.updateOne(filter, update);
+    tagCollection.updateOne(Filters.eq("chatId", chatId), removeTagUpdate(tag));
     return true;
   }
 
+  static Bson removeTagUpdate(String tag) {
+    return Updates.pull("tags", new Document("tag", tag));
+  }
+
   /**
    * Возвращает отображение тег → описание, отсортированное по тегам.
    *
@@ -89,24 +98,44 @@ public class MongoTagRepository implements TagRepository {
    */
   @Override
   public Map<String, String> getTagMap(Long chatId) {
-    Document doc = tagCollection.find(Filters.eq("chatId", chatId)).first();
-    if (doc == null || !doc.containsKey("tags")) {
-      return Map.of();
-    }
+    return sortedTagMap(findChatTags(chatId));
+  }
 
-    List<Document> tagList = doc.getList("tags", Document.class);
+  /** Множество тегов чата; null — документа чата нет. */
+  static Set<String> tagSet(ChatTags chatTags) {
+    Set<String> tags = new HashSet<>();
+    if (chatTags != null) {
+      for (TagEntry entry : chatTags.tags()) {
+        tags.add(entry.tag());
+      }
+    }
+    return tags;
+  }
 
-    // Преобразуем список документов в отсортированную Map: тег -> описание
-    Map<String, String> withDesc = tagList.stream()
-        .map(d -> Map.entry(d.getString("tag"), d.getString("description")))
-        .sorted(Map.Entry.comparingByKey())
-        .collect(LinkedHashMap::new, // сохраняем порядок сортировки
-            (m, e) -> m.put(e.getKey(), e.getValue()),
-            LinkedHashMap::putAll);
+  /** Тег → описание в порядке тегов; null — документа чата нет. */
+  static Map<String, String> sortedTagMap(ChatTags chatTags) {
+    if (chatTags == null || chatTags.tags().isEmpty()) {
+      return Map.of();
+    }
 
+    // Сортируем по тегу и сохраняем порядок: тег -> описание
+    List<TagEntry> entries = new ArrayList<>(chatTags.tags());
+    entries.sort(Comparator.comparing(TagEntry::tag));
+    Map<String, String> withDesc = new LinkedHashMap<>();
+    for (TagEntry entry : entries) {
+      withDesc.put(entry.tag(), entry.description());
+    }
     return withDesc;
   }
 
+  /** Читает только массив tags документа чата, сразу в {@link ChatTags}. */
+  private ChatTags findChatTags(Long chatId) {
+    return tagCollection
+        .find(Filters.eq("chatId", chatId), ChatTags.class)
+        .projection(TAGS_PROJECTION)
+        .first();
+  }
+
   /**
    * Массовое обновление описаний для списка тегов. Использует оператор positional $ для обновления
    * нужного элемента массива.
@@ -143,4 +172,95 @@ public class MongoTagRepository implements TagRepository {
       tagCollection.updateOne(filter, update);
     }
   }
+
+  /**
+   * Применяет набор изменений одним findOneAndUpdate с конвейером обновления. Конвейер заменяет
+   * описания найденных тегов и дописывает отсутствующие, поэтому параллельные /addtag не создают
+   * в массиве дубликатов. Исходы определяются по документу до изменения, который сервер
+   * возвращает тем же вызовом.
+   *
+   * @param chatId Идентификатор чата
+   * @param tags   Теги с описаниями
+   * @return исход для каждого тега
+   */
+  @Override
+  public Map<String, TagOperationResult> applyTagChanges(Long chatId, List<ParsedTag> tags) {
+    if (tags.isEmpty()) {
+      return Map.of();
+    }
+
+    Map<String, String> latest = latestDescriptions(tags);
+    Document before = tagCollection.findOneAndUpdate(
+        Filters.eq("chatId", chatId), applyPipeline(latest), applyOptions());
+    return outcomes(latest, before);
+  }
+
+  /** Последнее описание для каждого тега, в порядке первого появления. */
+  static Map<String, String> latestDescriptions(List<ParsedTag> tags) {
+    Map<String, String> latest = new LinkedHashMap<>();
+    for (ParsedTag tag : tags) {
+      latest.put(tag.tag(), tag.description());
+    }
+    return latest;
+  }
+
+  /** Конвейер обновления массива tags для {@link #applyTagChanges}. */
+  static List<Bson> applyPipeline(Map<String, String> latest) {
+    List<Document> changes = new ArrayList<>(latest.size());
+    latest.forEach((tag, description) ->
+        changes.add(new Document("tag", tag).append("description", description)));
+
+    // $literal: описания — пользовательский текст и не должны разбираться как выражения
+    Document changesLiteral = new Document("$literal", changes);
+    Document currentTags = new Document("$ifNull", List.of("$tags", List.of()));
+    Document currentNames = new Document("$ifNull", List.of("$tags.tag", List.of()));
+
+    // Изменения, относящиеся к тегу $$t (пустой или одноэлементный массив)
+    Document matching = new Document("$filter", new Document("input", changesLiteral)
+        .append("as", "c")
+        .append("cond", new Document("$eq", List.of("$$c.tag", "$$t.tag"))));
+    Document updatedTag = new Document("tag", "$$t.tag")
+        .append("description", new Document("$arrayElemAt", List.of("$$m.description", 0)));
+    Document replaceOrKeep = new Document("$cond", List.of(
+        new Document("$gt", List.of(new Document("$size", "$$m"), 0)), updatedTag, "$$t"));
+
+    // Существующие теги с новыми описаниями, затем отсутствовавшие теги
+    Document replaceMatched = new Document("$map", new Document("input", currentTags)
+        .append("as", "t")
+        .append("in", new Document("$let", new Document("vars", new Document("m", matching))
+            .append("in", replaceOrKeep))));
+    Document appendMissing = new Document("$filter", new Document("input", changesLiteral)
+        .append("as", "c")
+        .append("cond", new Document("$not",
+            List.of(new Document("$in", List.of("$$c.tag", currentNames))))));
+
+    return List.of(new Document("$set", new Document("tags",
+        new Document("$concatArrays", List.of(replaceMatched, appendMissing)))));
+  }
+
+  /** Upsert с возвратом тегов документа до изменения. */
+  static FindOneAndUpdateOptions applyOptions() {
+    return new FindOneAndUpdateOptions()
+        .upsert(true)
+        .returnDocument(ReturnDocument.BEFORE)
+        .projection(Projections.include("tags.tag"));
+  }
+
+  /** Исходы по документу до изменения: тег был — описание обновлено, не было — добавлен. */
+  static Map<String, TagOperationResult> outcomes(Map<String, String> latest, Document before) {
+    Set<String> existed = new HashSet<>();
+    if (before != null && before.containsKey("tags")) {
+      for (Document tagDoc : before.getList("tags", Document.class)) {
+        existed.add(tagDoc.getString("tag"));
+      }
+    }
+
+    Map<String, TagOperationResult> outcomes = new LinkedHashMap<>();
+    for (String tag : latest.keySet()) {
+      outcomes.put(tag, existed.contains(tag)
+          ? TagOperationResult.UPDATED_DESCRIPTION
+          : TagOperationResult.SUCCESS);
+    }
+    return outcomes;
+  }
 }
@@ -0,0 +1,70 @@
+package compost.storage;
+
+import static com.mongodb.client.model.Filters.eq;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.ReplaceOptions;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.Optional;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Позиция обработки обновлений — один документ в коллекции {@value #COLLECTION}:
+ *
+ * <pre>
+ * { _id: "telegram", watermark: NumberLong(...), applied: BinData(...), updatedAt: ISODate(...) }
+ * </pre>
+ *
+ * <p>Окно {@code applied} хранится битами (8 байт на 64 обновления), поэтому документ остаётся
+ * маленьким при любом числе обновлений в обработке.
+ */
+@Repository
+public class MongoUpdateOffsetRepository implements UpdateOffsetRepository {
+
+  static final String COLLECTION = "update_offsets";
+  private static final String ID = "telegram";
+
+  private final MongoCollection<Document> offsets;
+
+  public MongoUpdateOffsetRepository(MongoDatabase database) {
+    this.offsets = database.getCollection(COLLECTION);
+  }
+
+  @Override
+  public Optional<Offset> load() {
+    Document doc = offsets.find(eq("_id", ID)).first();
+    if (doc == null) {
+      return Optional.empty();
+    }
+    Binary applied = doc.get("applied", Binary.class);
+    long[] words = applied != null ? toLongs(applied.getData()) : new long[0];
+    return Optional.of(new Offset(doc.getLong("watermark"), words));
+  }
+
+  @Override
+  public void save(Offset offset) {
+    offsets.replaceOne(
+        eq("_id", ID),
+        new Document("_id", ID)
+            .append("watermark", offset.watermark())
+            .append("applied", new Binary(toBytes(offset.applied())))
+            .append("updatedAt", new Date()),
+        new ReplaceOptions().upsert(true));
+  }
+
+  static byte[] toBytes(long[] words) {
+    ByteBuffer buffer = ByteBuffer.allocate(words.length * Long.BYTES);
+    buffer.asLongBuffer().put(words);
+    return buffer.array();
+  }
+
+  static long[] toLongs(byte[] bytes) {
+    long[] words = new long[bytes.length / Long.BYTES];
+    ByteBuffer.wrap(bytes).asLongBuffer().get(words);
+    return words;
+  }
+}
@@ -0,0 +1,113 @@
+package compost.storage;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.lte;
+import static com.mongodb.client.model.Sorts.ascending;
+import static com.mongodb.client.model.Updates.inc;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.bson.Document;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Очередь обновлений в коллекции {@value #COLLECTION}: документ на обновление с {@code _id =
+ * update_id} и номером {@code seq} в партиции. Повторная запись того же обновления (например,
+ * после перезапуска узла приёма) отбрасывается уникальностью {@code _id}. Выборка партиции идёт по
+ * индексу (partition, seq).
+ *
+ * <p>Номера выдаёт счётчик партиции в {@value #SEQUENCES_COLLECTION}. Записи одной партиции на
+ * узле приёма выполняются по очереди: номер берётся только после того, как предыдущая запись
+ * видна чтению, поэтому обработчик, прочитавший номер N, не встретит позже запись с меньшим
+ * номером. Узел приёма в кластере один — на нём держится long polling или адрес webhook.
+ *
+ * <p>Бин создаётся после {@link MongoSchemaManager}: документы, записанные до нумерации, получает
+ * номера {@link UpdateQueueSequenceMigration}.
+ */
+@Repository
+@DependsOn("mongoSchemaManager")
+@ConditionalOnExpression("'${bot.cluster.role:standalone}' != 'standalone'")
+public class MongoUpdateQueue implements UpdateQueue {
+
+  static final String COLLECTION = "update_queue";
+  static final String SEQUENCES_COLLECTION = "update_queue_sequences";
+
+  private final MongoCollection<Document> queue;
+  private final MongoCollection<Document> sequences;
+  private final Map<Integer, Object> appendLocks = new ConcurrentHashMap<>();
+
+  public MongoUpdateQueue(MongoDatabase database) {
+    this.queue = database.getCollection(COLLECTION);
+    this.sequences = database.getCollection(SEQUENCES_COLLECTION);
+  }
+
+  @Override
+  public boolean append(int partition, long updateId, long chatId, String payload) {
+    synchronized (appendLocks.computeIfAbsent(partition, k -> new Object())) {
+      // Повтор не тратит номер: иначе каждая повторная доставка оставляла бы дыру в партиции
+      if (queue.countDocuments(eq("_id", updateId)) > 0) {
+        return false;
+      }
+      try {
+        queue.insertOne(
+            new Document("_id", updateId)
+                .append("partition", partition)
+                .append("seq", nextSeq(partition))
+                .append("chatId", chatId)
+                .append("enqueuedAt", new Date())
+                .append("payload", payload));
+        return true;
+      } catch (MongoWriteException e) {
+        if (e.getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
+          return false;
+        }
+        throw e;
+      }
+    }
+  }
+
+  @Override
+  public List<QueuedUpdate> poll(int partition, long afterSeq, int limit) {
+    List<QueuedUpdate> batch = new ArrayList<>(limit);
+    for (Document doc :
+        queue
+            .find(and(eq("partition", partition), gt("seq", afterSeq)))
+            .sort(ascending("seq"))
+            .limit(limit)) {
+      batch.add(
+          new QueuedUpdate(
+              doc.getLong("seq"),
+              doc.getLong("_id"),
+              doc.getLong("chatId"),
+              doc.getString("payload")));
+    }
+    return batch;
+  }
+
+  @Override
+  public void ack(int partition, long upToSeq) {
+    queue.deleteMany(and(eq("partition", partition), lte("seq", upToSeq)));
+  }
+
+  private long nextSeq(int partition) {
+    Document sequence =
+        sequences.findOneAndUpdate(
+            eq("_id", partition),
+            inc("seq", 1L),
+            new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER));
+    return sequence.get("seq", Number.class).longValue();
+  }
+}
@@ -2,72 +2,255 @@ package compost.storage;
 
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Filters.ne;
+import static com.mongodb.client.model.Filters.or;
+import static com.mongodb.client.model.Projections.excludeId;
+import static com.mongodb.client.model.Projections.fields;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Sorts.ascending;
 import static com.mongodb.client.model.Sorts.descending;
 import static com.mongodb.client.model.Updates.combine;
 import static com.mongodb.client.model.Updates.inc;
 import static com.mongodb.client.model.Updates.set;
 import static com.mongodb.client.model.Updates.setOnInsert;
 
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import compost.model.SimpleUser;
+import compost.model.UserActivity;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import lombok.extern.log4j.Log4j2;
 import org.bson.Document;
 import org.bson.conversions.Bson;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Repository;
-import org.telegram.telegrambots.meta.api.objects.User;
 
 /**
  * Реализация хранилища пользователей в MongoDB. Используется для хранения Telegram-пользователей.
+ *
+ * <p>Чтение идёт с проекцией только нужных полей и декодируется прямо в {@link SimpleUser} и
+ * {@link RankedUser} кодеками из {@link compost.storage.codec.BotCodecs}, которые должны быть
+ * подключены к клиенту.
+ *
+ * <p>Создаётся после {@link MongoSchemaManager}: к первому сбросу буфера активности уникальный
+ * индекс (chatId, id) уже существует.
  */
 @Repository
+@DependsOn("mongoSchemaManager")
+@Log4j2
 public class MongoUserRepository implements UserRepository {
 
+  /** Размер пачки курсора при обходе пользователей чата. */
+  static final int USER_BATCH_SIZE = 500;
+
+  static final Bson PROFILE_PROJECTION =
+      fields(include("id", "username", "firstName", "lastName"), excludeId());
+
+  /** Поле документа пользователя с ID последнего применённого пакета активности. */
+  static final String FLUSH_ID = "lastFlushId";
+
+  private static final Bson RANKING_PROJECTION =
+      fields(include("id", "username", "firstName", "lastName", "messageCount"), excludeId());
+
   private final MongoCollection<Document> userCollection;
+  private final UserProfileCache profileCache;
 
-  public MongoUserRepository(MongoDatabase database) {
+  public MongoUserRepository(MongoDatabase database, UserProfileCache profileCache) {
     this.userCollection = database.getCollection("users");
+    this.profileCache = profileCache;
   }
 
   /**
-   * Обновляет (сохраняет) информацию о пользователе. Также увеличивает счётчик сообщений.
+   * Пакетно применяет накопленную активность пользователей одним неупорядоченным bulkWrite. Для
+   * новых или изменившихся профилей выполняется полный upsert, для известных — только {@code $inc}
+   * накопленного значения, а записи без изменений не отправляются вовсе.
+   *
+   * <p>Каждая запись помечает документ полем {@value #FLUSH_ID} и применяется, только если там
+   * другой пакет. Поэтому повтор пакета после таймаута, который сервер успел выполнить, ничего не
+   * меняет: $inc просто не находит документ, а upsert упирается в уникальный индекс (chatId, id) —
+   * такие записи проверяются отдельно. Индекс создаётся синхронно при запуске ({@link
+   * MongoSchemaManager#ensureRequiredIndexes}), без него запуск не продолжается.
    *
-   * @param chatId                ID чата
-   * @param telegramUser          Telegram-пользователь
-   * @param incrementMessageCount увеличивать ли messageCount
+   * @param flushId ID пакета
+   * @param activities накопленные изменения по парам (chatId, userId)
    */
   @Override
-  public void upsertUser(Long chatId, User telegramUser, boolean incrementMessageCount) {
-    Bson filter = and(
-        eq("chatId", chatId),
-        eq("id", telegramUser.getId())
-    );
+  public void bulkUpsertUsers(long flushId, Collection<UserActivity> activities) {
+    List<WriteModel<Document>> models = new ArrayList<>(activities.size());
+    List<UserActivity> modelActivities = new ArrayList<>(activities.size());
+    List<UserActivity> incrementOnly = new ArrayList<>();
+    for (UserActivity activity : activities) {
+      Bson filter = and(
+          eq("chatId", activity.chatId()),
+          eq("id", activity.userId()),
+          ne(FLUSH_ID, flushId)
+      );
+
+      if (profileCache.isUnchanged(activity.chatId(), activity.userId(), activity.username(),
+          activity.firstName(), activity.lastName())) {
+        if (activity.increment() > 0) {
+          models.add(new UpdateOneModel<>(filter,
+              combine(inc("messageCount", activity.increment()), set(FLUSH_ID, flushId))));
+          modelActivities.add(activity);
+          incrementOnly.add(activity);
+        }
+        continue;
+      }
+
+      Bson update = combine(
+          profileUpdate(activity.chatId(), activity.userId(), activity.username(),
+              activity.firstName(), activity.lastName(), activity.increment()),
+          set(FLUSH_ID, flushId));
+      models.add(new UpdateOneModel<>(filter, update, new UpdateOptions().upsert(true)));
+      modelActivities.add(activity);
+    }
+    if (models.isEmpty()) {
+      return;
+    }
+
+    BulkWriteResult result;
+    try {
+      result = userCollection.bulkWrite(models, new BulkWriteOptions().ordered(false));
+    } catch (MongoBulkWriteException e) {
+      handlePartialWrite(flushId, modelActivities, e);
+      return;
+    }
 
-    // Список обновлений
+    // Upsert-ы всегда находят или создают документ, значит не нашлась часть $inc: документ
+    // удалён в обход бота или (при повторе пакета) уже содержит его инкремент. Какие именно не
+    // применены, видно по отметке пакета.
+    List<UserActivity> notApplied = List.of();
+    int expected = models.size() - result.getUpserts().size();
+    if (result.getMatchedCount() < expected) {
+      notApplied = notApplied(flushId, incrementOnly);
+    }
+    Set<UserActivity> lost = new HashSet<>(notApplied);
+    for (UserActivity activity : modelActivities) {
+      if (lost.contains(activity)) {
+        // Документа нет: повтор с тем же ID пакета запишет профиль полным upsert.
+        profileCache.forget(activity.chatId(), activity.userId());
+      } else {
+        profileCache.remember(activity.chatId(), activity.userId(), activity.username(),
+            activity.firstName(), activity.lastName());
+      }
+    }
+    if (!notApplied.isEmpty()) {
+      log.warn("bulkWrite пользователей: не найдено {} документов для $inc", notApplied.size());
+      throw new PartialFlushException(notApplied, null);
+    }
+  }
+
+  /**
+   * Отбирает записи, которые пакет не применил: у документа пользователя нет отметки пакета.
+   *
+   * @param flushId ID пакета
+   * @param activities записи пакета
+   * @return записи без отметки пакета в базе
+   */
+  private List<UserActivity> notApplied(long flushId, List<UserActivity> activities) {
+    Map<Long, List<Long>> userIdsByChat = new HashMap<>();
+    for (UserActivity activity : activities) {
+      userIdsByChat.computeIfAbsent(activity.chatId(), id -> new ArrayList<>())
+          .add(activity.userId());
+    }
+    List<Bson> chats = new ArrayList<>(userIdsByChat.size());
+    userIdsByChat.forEach((chatId, userIds) -> chats.add(
+        and(eq("chatId", chatId), in("id", userIds))));
+
+    Set<List<Long>> applied = new HashSet<>();
+    for (Document doc : userCollection.find(and(eq(FLUSH_ID, flushId), or(chats)))
+        .projection(fields(include("chatId", "id"), excludeId()))) {
+      applied.add(List.of(doc.getLong("chatId"), doc.getLong("id")));
+    }
+    List<UserActivity> notApplied = new ArrayList<>();
+    for (UserActivity activity : activities) {
+      if (!applied.contains(List.of(activity.chatId(), activity.userId()))) {
+        notApplied.add(activity);
+      }
+    }
+    return notApplied;
+  }
+
+  /**
+   * Разбирает частично выполненный bulkWrite: записи без ошибок применены, ошибка дубликата ключа
+   * у upsert означает, что документ уже есть — применён ли в нём этот пакет, проверяется чтением.
+   * Остальные записи возвращаются вызывающему в {@link PartialFlushException}.
+   */
+  private void handlePartialWrite(long flushId, List<UserActivity> modelActivities,
+      MongoBulkWriteException e) {
+    if (e.getWriteConcernError() != null) {
+      // Исход неизвестен для всего пакета: повторять придётся целиком.
+      throw e;
+    }
+    Set<Integer> failedIndexes = new HashSet<>();
+    List<UserActivity> failed = new ArrayList<>();
+    for (BulkWriteError error : e.getWriteErrors()) {
+      failedIndexes.add(error.getIndex());
+      UserActivity activity = modelActivities.get(error.getIndex());
+      if (ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY
+          && isApplied(flushId, activity)) {
+        continue;
+      }
+      failed.add(activity);
+    }
+    for (int i = 0; i < modelActivities.size(); i++) {
+      UserActivity activity = modelActivities.get(i);
+      if (!failedIndexes.contains(i)) {
+        profileCache.remember(activity.chatId(), activity.userId(), activity.username(),
+            activity.firstName(), activity.lastName());
+      }
+    }
+    if (!failed.isEmpty()) {
+      log.warn("bulkWrite пользователей: не записано {} из {}", failed.size(),
+          modelActivities.size());
+      throw new PartialFlushException(failed, e);
+    }
+  }
+
+  private boolean isApplied(long flushId, UserActivity activity) {
+    return userCollection
+        .find(and(eq("chatId", activity.chatId()), eq("id", activity.userId()),
+            eq(FLUSH_ID, flushId)))
+        .projection(include("_id"))
+        .first() != null;
+  }
+
+  private static Bson profileUpdate(Long chatId, Long userId, String username, String firstName,
+      String lastName, int increment) {
     List<Bson> updates = new ArrayList<>();
     updates.add(set("chatId", chatId));
-    updates.add(set("id", telegramUser.getId()));
-    updates.add(set("username", telegramUser.getUserName()));
-    updates.add(set("firstName", telegramUser.getFirstName()));
-    updates.add(set("lastName", telegramUser.getLastName()));
+    updates.add(set("id", userId));
+    updates.add(set("username", username));
+    updates.add(set("firstName", firstName));
+    updates.add(set("lastName", lastName));
 
     // Если нужно увеличить счетчик
-    if (incrementMessageCount) {
-      updates.add(inc("messageCount", 1));
+    if (increment > 0) {
+      updates.add(inc("messageCount", increment));
     }
     // Если не инкрементим, то гарантируем наличие поля
     else {
       updates.add(setOnInsert("messageCount", 0));
     }
-
-    userCollection.updateOne(
-        filter,
-        combine(updates),
-        new UpdateOptions().upsert(true)
-    );
+    return combine(updates);
   }
 
   /**
@@ -84,18 +267,7 @@ public class MongoUserRepository implements UserRepository {
         eq("id", userId)
     );
 
-    Document doc = userCollection.find(filter).first();
-    if (doc == null) {
-      return null;
-    }
-
-    // Преобразуем документ MongoDB в SimpleUser
-    return new SimpleUser(
-        doc.getLong("id"),
-        doc.getString("username"),
-        doc.getString("firstName"),
-        doc.getString("lastName")
-    );
+    return userCollection.find(filter, SimpleUser.class).projection(PROFILE_PROJECTION).first();
   }
 
   /**
@@ -106,19 +278,68 @@ public class MongoUserRepository implements UserRepository {
    */
   @Override
   public Collection<SimpleUser> getAllUsers(Long chatId) {
-    Bson filter = eq("chatId", chatId);
     List<SimpleUser> users = new ArrayList<>();
-    for (Document doc : userCollection.find(filter)) {
-      users.add(new SimpleUser(
-          doc.getLong("id"),
-          doc.getString("username"),
-          doc.getString("firstName"),
-          doc.getString("lastName")
-      ));
-    }
+    forEachUser(chatId, users::add);
     return users;
   }
 
+  /**
+   * Возвращает профили пользователей чата одним запросом по индексу (chatId, id).
+   *
+   * @param chatId ID чата
+   * @param userIds ID пользователей
+   * @return Найденные пользователи в порядке выдачи базы
+   */
+  @Override
+  public List<SimpleUser> getUsers(Long chatId, Collection<Long> userIds) {
+    if (userIds.isEmpty()) {
+      return List.of();
+    }
+    return userCollection.find(and(eq("chatId", chatId), in("id", userIds)), SimpleUser.class)
+        .projection(PROFILE_PROJECTION)
+        .into(new ArrayList<>(userIds.size()));
+  }
+
+  /**
+   * Обходит пользователей чата курсором с проекцией на поля профиля: документы приходят пачками по
+   * {@link #USER_BATCH_SIZE} и не накапливаются в памяти.
+   *
+   * @param chatId ID чата
+   * @param action получатель пользователей
+   */
+  @Override
+  public void forEachUser(Long chatId, Consumer<SimpleUser> action) {
+    try (MongoCursor<SimpleUser> cursor = userCollection
+        .find(eq("chatId", chatId), SimpleUser.class)
+        .projection(PROFILE_PROJECTION)
+        .batchSize(USER_BATCH_SIZE)
+        .iterator()) {
+      while (cursor.hasNext()) {
+        action.accept(cursor.next());
+      }
+    }
+  }
+
+  /**
+   * Возвращает страницу пользователей чата по индексу (chatId, id).
+   *
+   * @param chatId ID чата
+   * @param afterUserId id последнего пользователя предыдущей страницы; null — с начала
+   * @param limit размер страницы
+   * @return пользователи по возрастанию id
+   */
+  @Override
+  public List<SimpleUser> getUsersAfter(Long chatId, Long afterUserId, int limit) {
+    Bson filter = afterUserId == null
+        ? eq("chatId", chatId)
+        : and(eq("chatId", chatId), gt("id", afterUserId));
+    return userCollection.find(filter, SimpleUser.class)
+        .projection(PROFILE_PROJECTION)
+        .sort(ascending("id"))
+        .limit(limit)
+        .into(new ArrayList<>(limit));
+  }
+
   /**
    * Возвращает топ пользователей по количеству сообщений.
    *
@@ -127,27 +348,45 @@ public class MongoUserRepository implements UserRepository {
    * @return Отсортированная Map: пользователь → количество сообщений
    */
   public List<RankedUser> getTopUsers(Long chatId, int limit) {
-    Bson filter = eq("chatId", chatId);
+    return rankUsers(userCollection.find(eq("chatId", chatId), RankedUser.class)
+        .projection(RANKING_PROJECTION)
+        .sort(descending("messageCount"))
+        .limit(limit));
+  }
 
-    List<RankedUser> topUsers = new ArrayList<>();
+  /**
+   * Возвращает всех пользователей чата с количеством сообщений, по убыванию.
+   *
+   * @param chatId ID чата
+   * @return Список всех пользователей чата с рангами
+   */
+  @Override
+  public List<RankedUser> getRanking(Long chatId) {
+    return rankUsers(userCollection.find(eq("chatId", chatId), RankedUser.class)
+        .projection(RANKING_PROJECTION)
+        .sort(descending("messageCount")));
+  }
 
-    int rank = 1;
-    for (Document doc : userCollection.find(filter)
-        .sort(descending("messageCount"))
-        .limit(limit)) {
+  /**
+   * Возвращает идентификаторы всех чатов, в которых есть пользователи.
+   *
+   * @return Коллекция chatId
+   */
+  @Override
+  public Collection<Long> getChatIds() {
+    return userCollection.distinct("chatId", Long.class).into(new ArrayList<>());
+  }
 
-      SimpleUser user = new SimpleUser(
-          doc.getLong("id"),
-          doc.getString("username"),
-          doc.getString("firstName"),
-          doc.getString("lastName")
-      );
+  /** Проставляет ранги по порядку выдачи: кодек ранг не знает и возвращает 0. */
+  private static List<RankedUser> rankUsers(Iterable<RankedUser> decoded) {
+    List<RankedUser> rankedUsers = new ArrayList<>();
 
-      Integer messageCount = doc.getInteger("messageCount", 0);
-      topUsers.add(new RankedUser(user, messageCount, rank));
+    int rank = 1;
+    for (RankedUser user : decoded) {
+      rankedUsers.add(new RankedUser(user.user(), user.messageCount(), rank));
       rank++;
     }
-    return topUsers;
+    return rankedUsers;
   }
 
   public record RankedUser(SimpleUser user, int messageCount, int rank) { }
@@ -0,0 +1,23 @@
+package compost.storage;
+
+import compost.model.UserActivity;
+import java.util.List;
+
+/**
+ * Пакет активности применён не полностью: часть записей bulkWrite завершилась ошибкой. Остальные
+ * записи уже в базе, повторять нужно только {@link #getFailed()}.
+ */
+public class PartialFlushException extends RuntimeException {
+
+  private final transient List<UserActivity> failed;
+
+  public PartialFlushException(List<UserActivity> failed, Throwable cause) {
+    super("Не записано " + failed.size() + " записей активности", cause);
+    this.failed = List.copyOf(failed);
+  }
+
+  /** Записи пакета, которые не попали в базу. */
+  public List<UserActivity> getFailed() {
+    return failed;
+  }
+}
@@ -0,0 +1,17 @@
+package compost.storage;
+
+/**
+ * Событие о захвате партиции {@link UpdateQueue} обработчиком кластера. Публикуется до начала
+ * обработки партиции: пока её держал другой узел, чаты партиции менялись мимо локальных кэшей, и
+ * их снимки нужно сбросить.
+ *
+ * @param partition захваченная партиция
+ * @param partitions количество партиций очереди
+ */
+public record PartitionAcquiredEvent(int partition, int partitions) {
+
+  /** Проверяет, относится ли чат к захваченной партиции. */
+  public boolean covers(long chatId) {
+    return UpdateQueue.partitionOf(chatId, partitions) == partition;
+  }
+}
@@ -0,0 +1,64 @@
+package compost.storage;
+
+import java.time.Duration;
+
+/**
+ * Аренда партиций {@link UpdateQueue} обработчиками. Партицию в каждый момент обрабатывает не
+ * больше одного владельца аренды; аренда, которую владелец перестал продлевать, истекает, и
+ * партицию забирает другой обработчик. Живые обработчики отмечаются пульсом, по числу живых каждый
+ * вычисляет свою долю партиций.
+ *
+ * <p>Каждый захват увеличивает эпоху партиции. Прежний владелец, не заметивший потерю аренды
+ * (пауза GC, сетевой разрыв), держит устаревшую эпоху, поэтому его проверки и подтверждения
+ * обработки не проходят, даже если партицию снова взял он же.
+ */
+public interface PartitionLeases {
+
+  /**
+   * Полученная аренда.
+   *
+   * @param partition партиция
+   * @param workerId владелец
+   * @param epoch номер захвата партиции
+   * @param ackedUpTo последний подтверждённый номер {@link UpdateQueue} в партиции на момент
+   *     захвата
+   */
+  record Lease(int partition, String workerId, long epoch, long ackedUpTo) {}
+
+  /** Отмечает обработчик живым на {@code ttl}. */
+  void heartbeat(String workerId, Duration ttl);
+
+  /** Снимает отметку обработчика при штатной остановке. */
+  void leave(String workerId);
+
+  /** Количество обработчиков с непросроченным пульсом. */
+  int liveWorkers();
+
+  /**
+   * Берёт партицию в аренду, если она свободна, просрочена или уже принадлежит обработчику.
+   *
+   * @return аренда с новой эпохой или null, если партицию держит другой обработчик
+   */
+  Lease tryAcquire(int partition, String workerId, Duration ttl);
+
+  /**
+   * Продлевает аренду.
+   *
+   * @return false, если партиция больше не принадлежит этой аренде
+   */
+  boolean renew(Lease lease, Duration ttl);
+
+  /** Проверяет, что аренда не истекла и партицию с тех пор никто не захватывал. */
+  boolean holds(Lease lease);
+
+  /**
+   * Подтверждает обработку партиции до номера {@code upToSeq} включительно, если аренда ещё
+   * действует. Следующий владелец начнёт чтение после подтверждённого номера.
+   *
+   * @return false, если аренда истекла или перехвачена, и подтверждение не записано
+   */
+  boolean commit(Lease lease, long upToSeq);
+
+  /** Освобождает партицию, если она всё ещё принадлежит этой аренде. */
+  void release(Lease lease);
+}
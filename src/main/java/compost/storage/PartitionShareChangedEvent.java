@@ -0,0 +1,19 @@
+package compost.storage;
+
+/**
+ * Событие об изменении числа партиций {@link UpdateQueue}, арендованных обработчиком кластера.
+ * По нему общие для бота лимиты делятся между узлами пропорционально партициям.
+ *
+ * @param owned арендовано партиций
+ * @param partitions количество партиций очереди
+ */
+public record PartitionShareChangedEvent(int owned, int partitions) {
+
+  /**
+   * Доля узла. Узел без партиций сохраняет долю одной: ему ещё может быть нужно отправить ответы
+   * по только что освобождённым партициям.
+   */
+  public double share() {
+    return Math.max(owned, 1) / (double) partitions;
+  }
+}
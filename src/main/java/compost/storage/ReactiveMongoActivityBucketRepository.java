@@ -0,0 +1,44 @@
+package compost.storage;
+
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import compost.storage.ActivityBucketRepository.Granularity;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import org.bson.Document;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+/**
+ * Чтение корзин активности через Reactive Streams драйвер ({@code bot.storage.driver=reactive}).
+ * Фильтр и суммирование общие с {@link MongoActivityBucketRepository}.
+ */
+@Repository
+@ConditionalOnProperty(name = "bot.storage.driver", havingValue = "reactive")
+public class ReactiveMongoActivityBucketRepository implements AsyncActivityBucketRepository {
+
+  private final MongoCollection<Document> buckets;
+
+  public ReactiveMongoActivityBucketRepository(MongoDatabase database) {
+    this.buckets = database.getCollection(MongoActivityBucketRepository.COLLECTION);
+  }
+
+  @Override
+  public CompletionStage<Map<Long, Integer>> countsSince(
+      Long chatId, Granularity granularity, Instant from) {
+    return Flux.from(
+            buckets
+                .find(MongoActivityBucketRepository.countsFilter(chatId, granularity, from))
+                .projection(MongoActivityBucketRepository.COUNTS_PROJECTION))
+        .<Map<Long, Integer>>reduceWith(
+            HashMap::new,
+            (totals, bucket) -> {
+              MongoActivityBucketRepository.addCounts(totals, bucket);
+              return totals;
+            })
+        .toFuture();
+  }
+}
@@ -0,0 +1,88 @@
+package compost.storage;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import compost.model.TagEntry;
+import compost.service.TagService.ParsedTag;
+import compost.util.Constants.TagOperationResult;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link MongoTagEntryRepository} на Reactive Streams драйвере: документ на тег, {@code
+ * bot.storage.driver=reactive}. Запросы общие с блокирующей версией.
+ */
+@Repository
+@DependsOn("mongoSchemaManager")
+@Qualifier("reactiveTagStorage")
+@ConditionalOnExpression(
+    "'${bot.storage.driver:sync}' == 'reactive' && '${bot.tags.storage:embedded}' == 'document'")
+public class ReactiveMongoTagEntryRepository implements AsyncTagRepository {
+
+  private final MongoCollection<Document> tagCollection;
+
+  public ReactiveMongoTagEntryRepository(MongoDatabase database) {
+    this.tagCollection = database.getCollection(MongoTagEntryRepository.COLLECTION);
+  }
+
+  @Override
+  public CompletionStage<Set<String>> getTags(Long chatId) {
+    Mono<Set<String>> tags =
+        Flux.from(
+                tagCollection
+                    .find(Filters.eq("chatId", chatId), TagEntry.class)
+                    .projection(MongoTagEntryRepository.entryProjection("tag")))
+            .collect(HashSet::new, (set, entry) -> set.add(entry.tag()));
+    return tags.toFuture();
+  }
+
+  @Override
+  public CompletionStage<Boolean> removeTag(Long chatId, String tag) {
+    return Mono.from(tagCollection.deleteOne(MongoTagEntryRepository.filter(chatId, tag)))
+        .thenReturn(true)
+        .toFuture();
+  }
+
+  @Override
+  public CompletionStage<Map<String, String>> getTagMap(Long chatId) {
+    // Порядок по тегу даёт индекс (chatId, tag)
+    Mono<Map<String, String>> tags =
+        Flux.from(
+                tagCollection
+                    .find(Filters.eq("chatId", chatId), TagEntry.class)
+                    .sort(Sorts.ascending("tag"))
+                    .projection(MongoTagEntryRepository.entryProjection("tag", "description")))
+            .collect(LinkedHashMap::new, (map, entry) -> map.put(entry.tag(), entry.description()));
+    return tags.toFuture();
+  }
+
+  @Override
+  public CompletionStage<Map<String, TagOperationResult>> applyTagChanges(
+      Long chatId, List<ParsedTag> tags) {
+    if (tags.isEmpty()) {
+      return CompletableFuture.completedFuture(Map.of());
+    }
+    Map<String, String> latest = MongoTagRepository.latestDescriptions(tags);
+    return Mono.from(
+            tagCollection.bulkWrite(
+                MongoTagEntryRepository.upserts(chatId, latest),
+                new BulkWriteOptions().ordered(false)))
+        .toFuture()
+        .thenApply(result -> MongoTagEntryRepository.outcomes(latest, result));
+  }
+}
@@ -0,0 +1,80 @@
+package compost.storage;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import compost.model.ChatTags;
+import compost.service.TagService.ParsedTag;
+import compost.util.Constants.TagOperationResult;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link MongoTagRepository} на Reactive Streams драйвере: встроенный массив тегов, {@code
+ * bot.storage.driver=reactive}. Запросы и конвейер обновления общие с блокирующей версией.
+ */
+@Repository
+@Qualifier("reactiveTagStorage")
+@ConditionalOnExpression(
+    "'${bot.storage.driver:sync}' == 'reactive' && '${bot.tags.storage:embedded}' == 'embedded'")
+public class ReactiveMongoTagRepository implements AsyncTagRepository {
+
+  private final MongoCollection<Document> tagCollection;
+
+  public ReactiveMongoTagRepository(MongoDatabase database) {
+    this.tagCollection = database.getCollection("tags");
+  }
+
+  @Override
+  public CompletionStage<Set<String>> getTags(Long chatId) {
+    return findChatTags(chatId).thenApply(MongoTagRepository::tagSet);
+  }
+
+  @Override
+  public CompletionStage<Boolean> removeTag(Long chatId, String tag) {
+    return Mono.from(
+            tagCollection.updateOne(
+                Filters.eq("chatId", chatId), MongoTagRepository.removeTagUpdate(tag)))
+        .thenReturn(true)
+        .toFuture();
+  }
+
+  @Override
+  public CompletionStage<Map<String, String>> getTagMap(Long chatId) {
+    return findChatTags(chatId).thenApply(MongoTagRepository::sortedTagMap);
+  }
+
+  @Override
+  public CompletionStage<Map<String, TagOperationResult>> applyTagChanges(
+      Long chatId, List<ParsedTag> tags) {
+    if (tags.isEmpty()) {
+      return CompletableFuture.completedFuture(Map.of());
+    }
+    Map<String, String> latest = MongoTagRepository.latestDescriptions(tags);
+    return Mono.from(
+            tagCollection.findOneAndUpdate(
+                Filters.eq("chatId", chatId),
+                MongoTagRepository.applyPipeline(latest),
+                MongoTagRepository.applyOptions()))
+        .toFuture()
+        .thenApply(before -> MongoTagRepository.outcomes(latest, before));
+  }
+
+  /** Документ чата с одним массивом tags; null в результате — документа нет. */
+  private CompletableFuture<ChatTags> findChatTags(Long chatId) {
+    return Mono.from(
+            tagCollection
+                .find(Filters.eq("chatId", chatId), ChatTags.class)
+                .projection(MongoTagRepository.TAGS_PROJECTION)
+                .first())
+        .toFuture();
+  }
+}
@@ -0,0 +1,77 @@
+package compost.storage;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Sorts.ascending;
+
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import compost.model.SimpleUser;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Чтение пользователей через Reactive Streams драйвер ({@code bot.storage.driver=reactive}).
+ * Запросы те же, что у {@link MongoUserRepository}: проекция на поля профиля и декодирование
+ * кодеками, но поток на время запроса не занимается.
+ */
+@Repository
+@ConditionalOnProperty(name = "bot.storage.driver", havingValue = "reactive")
+public class ReactiveMongoUserRepository implements AsyncUserRepository {
+
+  private final MongoCollection<Document> userCollection;
+
+  public ReactiveMongoUserRepository(MongoDatabase database) {
+    this.userCollection = database.getCollection("users");
+  }
+
+  @Override
+  public CompletionStage<SimpleUser> getUser(Long chatId, Long userId) {
+    return Mono.from(
+            userCollection
+                .find(and(eq("chatId", chatId), eq("id", userId)), SimpleUser.class)
+                .projection(MongoUserRepository.PROFILE_PROJECTION)
+                .first())
+        .toFuture();
+  }
+
+  @Override
+  public CompletionStage<List<SimpleUser>> getUsers(Long chatId, Collection<Long> userIds) {
+    if (userIds.isEmpty()) {
+      return CompletableFuture.completedFuture(List.of());
+    }
+    return Flux.from(
+            userCollection
+                .find(and(eq("chatId", chatId), in("id", userIds)), SimpleUser.class)
+                .projection(MongoUserRepository.PROFILE_PROJECTION))
+        .collectList()
+        .toFuture();
+  }
+
+  @Override
+  public CompletionStage<List<SimpleUser>> getUsersAfter(
+      Long chatId, Long afterUserId, int limit) {
+    Bson filter =
+        afterUserId == null
+            ? eq("chatId", chatId)
+            : and(eq("chatId", chatId), gt("id", afterUserId));
+    return Flux.from(
+            userCollection
+                .find(filter, SimpleUser.class)
+                .projection(MongoUserRepository.PROFILE_PROJECTION)
+                .sort(ascending("id"))
+                .limit(limit))
+        .collectList()
+        .toFuture();
+  }
+}
@@ -0,0 +1,11 @@
+package compost.storage;
+
+import java.util.List;
+
+/**
+ * Событие о применённых миграциях MongoDB. Публикуется {@link MongoSchemaManager} после того, как
+ * миграции изменили данные, чтобы кэши сбросили снимки, прочитанные до их окончания.
+ *
+ * @param versions версии применённых миграций по возрастанию
+ */
+public record SchemaMigratedEvent(List<Integer> versions) {}
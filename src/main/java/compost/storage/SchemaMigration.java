@@ -0,0 +1,32 @@
+package compost.storage;
+
+import com.mongodb.client.MongoDatabase;
+
+/**
+ * Версионированная миграция данных MongoDB. Применяется {@link MongoSchemaManager} один раз, номер
+ * версии сохраняется после успешного выполнения. Миграции, которые нужны только при определённой
+ * конфигурации, объявляются отдельными бинами.
+ */
+public interface SchemaMigration {
+
+  /** Номер версии; миграции применяются по возрастанию и не должны повторяться. */
+  int version();
+
+  /** Описание для логов и коллекции миграций. */
+  String description();
+
+  /**
+   * Нужна ли миграция до того, как репозитории начнут обслуживать запросы. Обязательная миграция
+   * выполняется синхронно при запуске в любом режиме {@code bot.mongo.schema.mode}, кроме {@code
+   * OFF}, а остальные — вместе с прочей подготовкой схемы.
+   */
+  default boolean required() {
+    return false;
+  }
+
+  /**
+   * Выполняет изменение данных. Должно быть идемпотентным: если процесс упадёт до записи версии,
+   * миграция будет выполнена повторно.
+   */
+  void apply(MongoDatabase database);
+}
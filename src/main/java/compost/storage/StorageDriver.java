@@ -0,0 +1,12 @@
+package compost.storage;
+
+/** Драйвер MongoDB на пути обработки команд, свойство {@code bot.storage.driver}. */
+public enum StorageDriver {
+  /** Блокирующий mongodb-driver-sync: команда выполняется целиком в потоке диспетчера. */
+  SYNC,
+  /**
+   * Reactive Streams драйвер: команда отдаёт поток диспетчера на время запроса к базе и
+   * продолжается по его завершении.
+   */
+  REACTIVE
+}
@@ -0,0 +1,107 @@
+package compost.storage;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.log4j.Log4j2;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Перенос тегов из встроенного массива коллекции "tags" в документы {@value
+ * MongoTagEntryRepository#COLLECTION}. Включается вместе с {@code bot.tags.storage=document} и
+ * выполняется один раз через {@link MongoSchemaManager}.
+ *
+ * <p>Документы чатов читаются курсором и переносятся пачками upsert-ов, поэтому память не зависит
+ * от объёма данных. Описание пишется через $setOnInsert: повторный запуск ничего не меняет, а
+ * правки, сделанные в новой раскладке во время переноса, не перезаписываются. Старая коллекция не
+ * изменяется.
+ *
+ * <p>Миграция обязательная: {@link MongoTagEntryRepository} читает только новую коллекцию, поэтому
+ * перенос заканчивается до его создания, а не в фоне, пока бот отвечает по пустой или частично
+ * заполненной коллекции.
+ */
+@Component
+@ConditionalOnProperty(name = "bot.tags.storage", havingValue = "document")
+@Log4j2
+public class TagEntryMigration implements SchemaMigration {
+
+  private final int batchSize;
+
+  public TagEntryMigration(@Value("${bot.tags.migration.batch-size:500}") int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  @Override
+  public int version() {
+    return 2;
+  }
+
+  @Override
+  public String description() {
+    return "перенос тегов из tags в " + MongoTagEntryRepository.COLLECTION;
+  }
+
+  @Override
+  public boolean required() {
+    return true;
+  }
+
+  @Override
+  public void apply(MongoDatabase database) {
+    MongoCollection<Document> source = database.getCollection("tags");
+    MongoCollection<Document> target = database.getCollection(MongoTagEntryRepository.COLLECTION);
+    // Миграция выполняется до общей подготовки индексов, а без (chatId, tag) каждый upsert —
+    // полный просмотр коллекции. Имя совпадает с MongoSchemaManager, повторное создание — no-op.
+    target.createIndex(
+        Indexes.ascending("chatId", "tag"), new IndexOptions().name("chatId_tag").unique(true));
+
+    long start = System.nanoTime();
+    long chats = 0;
+    long tags = 0;
+    List<WriteModel<Document>> batch = new ArrayList<>(batchSize);
+    try (MongoCursor<Document> cursor = source.find().batchSize(100).iterator()) {
+      while (cursor.hasNext()) {
+        Document chat = cursor.next();
+        Long chatId = chat.getLong("chatId");
+        for (Document tag : chat.getList("tags", Document.class, List.of())) {
+          Bson filter =
+              Filters.and(Filters.eq("chatId", chatId), Filters.eq("tag", tag.getString("tag")));
+          batch.add(
+              new UpdateOneModel<>(
+                  filter,
+                  Updates.setOnInsert("description", tag.getString("description")),
+                  new UpdateOptions().upsert(true)));
+          tags++;
+          if (batch.size() >= batchSize) {
+            target.bulkWrite(batch, new BulkWriteOptions().ordered(false));
+            batch = new ArrayList<>(batchSize);
+          }
+        }
+        chats++;
+      }
+    }
+    if (!batch.isEmpty()) {
+      target.bulkWrite(batch, new BulkWriteOptions().ordered(false));
+    }
+    log.info(
+        "Перенесено {} тегов из {} чатов за {} мс",
+        tags,
+        chats,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+}
@@ -1,6 +1,7 @@
 package compost.storage;
 
 import compost.service.TagService.ParsedTag;
+import compost.util.Constants.TagOperationResult;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -18,4 +19,14 @@ public interface TagRepository {
   void batchUpdateTagDescription(Long chatId, List<ParsedTag> tagsToUpdate);
 
   void batchClearTagDescription(Long chatId, List<String> tagsToClear);
+
+  /**
+   * Добавляет новые теги и обновляет описания существующих одним обращением к хранилищу, без
+   * предварительного чтения. Если тег встречается несколько раз, применяется последнее описание.
+   *
+   * @param chatId Идентификатор чата
+   * @param tags Теги с описаниями
+   * @return для каждого тега: SUCCESS, если тег добавлен, или UPDATED_DESCRIPTION, если он уже был
+   */
+  Map<String, TagOperationResult> applyTagChanges(Long chatId, List<ParsedTag> tags);
 }
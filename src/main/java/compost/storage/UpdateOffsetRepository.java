@@ -0,0 +1,25 @@
+package compost.storage;
+
+import java.util.Optional;
+
+/**
+ * Сохранённая позиция обработки входящих обновлений: по ней после перезапуска повторно
+ * доставленные Telegram обновления распознаются как уже применённые.
+ */
+public interface UpdateOffsetRepository {
+
+  /**
+   * Позиция обработки.
+   *
+   * @param watermark update_id, до которого включительно применены все обновления
+   * @param applied биты применённых обновлений выше {@code watermark}: бит {@code i} — update_id
+   *     {@code watermark + 1 + i}, в формате {@link java.util.BitSet#toLongArray()}
+   */
+  record Offset(long watermark, long[] applied) {}
+
+  /** Возвращает сохранённую позицию или пустой результат при первом запуске. */
+  Optional<Offset> load();
+
+  /** Перезаписывает позицию. */
+  void save(Offset offset);
+}
@@ -0,0 +1,52 @@
+package compost.storage;
+
+import java.util.List;
+
+/**
+ * Долговременная очередь входящих обновлений для распределённого режима ({@code
+ * bot.cluster.role}). Очередь разбита на партиции по chatId: все обновления чата попадают в одну
+ * партицию и читаются из неё по возрастанию номера, который партиция выдаёт при записи, поэтому
+ * порядок внутри чата сохраняется при любом числе обработчиков.
+ *
+ * <p>Порядок — по записи, а не по update_id: Telegram может повторить отклонённое обновление
+ * после более нового, и обработчик, уже прочитавший новое, пропустил бы повтор с меньшим
+ * update_id. Номер выдаётся тем позже, чем позже запись стала видна чтению, поэтому позиция
+ * обработчика ничего не перепрыгивает.
+ */
+public interface UpdateQueue {
+
+  /**
+   * Обновление в очереди.
+   *
+   * @param seq номер в партиции, ключ порядка чтения
+   * @param updateId update_id Telegram
+   * @param chatId ID чата
+   * @param payload Update в JSON
+   */
+  record QueuedUpdate(long seq, long updateId, long chatId, String payload) {}
+
+  /** Партиция чата. Одинакова на всех узлах при одинаковом {@code partitions}. */
+  static int partitionOf(long chatId, int partitions) {
+    return Math.floorMod(Long.hashCode(chatId), partitions);
+  }
+
+  /**
+   * Добавляет обновление в конец партиции со следующим номером.
+   *
+   * @return false, если обновление с таким update_id уже в очереди
+   */
+  boolean append(int partition, long updateId, long chatId, String payload);
+
+  /**
+   * Возвращает до {@code limit} самых старых обновлений партиции с номером больше {@code
+   * afterSeq}, не удаляя их.
+   */
+  List<QueuedUpdate> poll(int partition, long afterSeq, int limit);
+
+  /**
+   * Удаляет из партиции обработанные обновления с номером не больше {@code upToSeq}. Вызывать
+   * только после {@link PartitionLeases#commit}: чтение продолжается после подтверждённого
+   * номера, поэтому удаление лишь освобождает место.
+   */
+  void ack(int partition, long upToSeq);
+}
@@ -0,0 +1,76 @@
+package compost.storage;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.exists;
+import static com.mongodb.client.model.Updates.max;
+import static com.mongodb.client.model.Updates.set;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.UpdateOptions;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.extern.log4j.Log4j2;
+import org.bson.Document;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+/**
+ * Переход {@link MongoUpdateQueue} с порядка по update_id на номера партиций. Документам очереди
+ * без номера он назначается равным update_id, а счётчики партиций начинаются выше и этих номеров,
+ * и подтверждённых позиций аренд, которые до перехода были update_id. Поэтому новые записи идут
+ * после всего, что уже было в очереди, а позиции обработчиков ничего не пропускают.
+ *
+ * <p>Миграция обязательная: запись и чтение очереди по номерам начинаются только после неё.
+ */
+@Component
+@ConditionalOnExpression("'${bot.cluster.role:standalone}' != 'standalone'")
+@Log4j2
+public class UpdateQueueSequenceMigration implements SchemaMigration {
+
+  @Override
+  public int version() {
+    return 3;
+  }
+
+  @Override
+  public String description() {
+    return "номера партиций в " + MongoUpdateQueue.COLLECTION;
+  }
+
+  @Override
+  public boolean required() {
+    return true;
+  }
+
+  @Override
+  public void apply(MongoDatabase database) {
+    MongoCollection<Document> queue = database.getCollection(MongoUpdateQueue.COLLECTION);
+    Map<Integer, Long> floors = new HashMap<>();
+    long numbered = 0;
+    for (Document doc : queue.find(exists("seq", false))) {
+      long updateId = doc.getLong("_id");
+      queue.updateOne(eq("_id", updateId), set("seq", updateId));
+      floors.merge(doc.getInteger("partition"), updateId, Math::max);
+      numbered++;
+    }
+    for (Document lease :
+        database.getCollection(MongoPartitionLeases.LEASES_COLLECTION).find()) {
+      Number acked = lease.get("ackedUpTo", Number.class);
+      if (acked != null) {
+        floors.merge(lease.getInteger("_id"), acked.longValue(), Math::max);
+      }
+    }
+
+    MongoCollection<Document> sequences =
+        database.getCollection(MongoUpdateQueue.SEQUENCES_COLLECTION);
+    floors.forEach(
+        (partition, floor) ->
+            sequences.updateOne(
+                eq("_id", partition), max("seq", floor), new UpdateOptions().upsert(true)));
+    log.info(
+        "Очередь обновлений пронумерована: {} документов, счётчиков партиций {}",
+        numbered,
+        floors.size());
+  }
+}
@@ -0,0 +1,527 @@
+package compost.storage;
+
+import compost.model.SimpleUser;
+import compost.model.UserActivity;
+import compost.storage.ActivityBucketRepository.Granularity;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+/**
+ * Буфер отложенной записи активности пользователей.
+ *
+ * <p>Вместо отдельного upsert на каждое сообщение накапливает в памяти инкременты messageCount и
+ * последние изменения профиля по ключу (chatId, userId) и сбрасывает их в хранилище одним
+ * неупорядоченным bulkWrite — по таймеру или при достижении лимита записей. Задержка попадания
+ * данных в базу ограничена интервалом сброса. При остановке приложения буфер сбрасывается.
+ *
+ * <p>Каждый сброс получает свой ID пакета. Если запись пакета не подтвердилась (таймаут, ошибка
+ * части записей), неподтверждённые записи не смешиваются с новыми инкрементами, а повторяются
+ * следующим сбросом отдельно и с тем же ID, до новых пакетов: хранилище по ID отбрасывает уже
+ * применённые записи, и инкремент не засчитывается дважды.
+ *
+ * <p>Вслед за пользователями инкременты того же сброса попадают в корзины {@link
+ * ActivityBucketRepository} для рейтингов за период — ровно один раз, когда запись пользователей
+ * подтверждена. Инкремент хранится вместе с часом отправки сообщения, поэтому сообщение попадает
+ * в корзину своего времени, даже если сброс или его повтор случились часом позже. Корзины —
+ * статистика: при ошибке их записи инкременты не возвращаются в буфер, иначе messageCount
+ * пользователей был бы увеличен дважды.
+ *
+ * <p>Инкремент помнит update_id обновления, которое его учло. Пока точка сохранения не отметила
+ * обновление применённым ({@link FlushCheckpoint#holds}), инкремент остаётся в буфере: иначе
+ * сохранённая позиция отставала бы от messageCount в базе, и после падения повтор обновления
+ * засчитал бы сообщение второй раз.
+ */
+@Component
+@Log4j2
+public class UserActivityBuffer {
+
+  private final UserRepository userRepository;
+  private final ActivityBucketRepository bucketRepository;
+  private final long flushIntervalMs;
+  private final int maxPending;
+
+  private final Map<ActivityKey, PendingActivity> pending = new ConcurrentHashMap<>();
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+  private final Object flushLock = new Object();
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread thread = new Thread(r, "activity-flush");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final AtomicLong flushCount = new AtomicLong();
+  private final AtomicLong flushedEntries = new AtomicLong();
+  private final AtomicLong failedFlushes = new AtomicLong();
+  private final AtomicLong failedBucketWrites = new AtomicLong();
+  private final AtomicLong lastFlushSize = new AtomicLong();
+  private final AtomicLong lastFlushMillis = new AtomicLong();
+  private final AtomicLong maxFlushMillis = new AtomicLong();
+
+  private final AtomicLong nextFlushId =
+      new AtomicLong(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE / 2));
+  private volatile Unconfirmed unconfirmed;
+  private final List<FlushCheckpoint> checkpoints = new CopyOnWriteArrayList<>();
+
+  public UserActivityBuffer(
+      UserRepository userRepository,
+      ActivityBucketRepository bucketRepository,
+      @Value("${bot.activity.flush-interval-ms:1000}") long flushIntervalMs,
+      @Value("${bot.activity.max-pending:5000}") int maxPending) {
+    this.userRepository = userRepository;
+    this.bucketRepository = bucketRepository;
+    this.flushIntervalMs = flushIntervalMs;
+    this.maxPending = maxPending;
+  }
+
+  @PostConstruct
+  public void start() {
+    scheduler.scheduleWithFixedDelay(
+        this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    scheduler.shutdown();
+    try {
+      scheduler.awaitTermination(flushIntervalMs * 2, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flushQuietly();
+  }
+
+  /**
+   * Точка сохранения, согласованная со сбросом буфера: {@link #prepare()} вызывается под
+   * блокировкой сброса до выборки записей, возвращённое действие — после успешной записи
+   * пользователей. Инкременты обновлений, которые снимок {@code prepare} отмечает применёнными, к
+   * моменту действия уже в базе, а инкременты остальных ({@link #holds}) в сброс не попадают.
+   */
+  public interface FlushCheckpoint {
+    Runnable prepare();
+
+    /**
+     * Удерживает ли точка инкремент обновления в буфере: обновление ещё обрабатывается или
+     * завершилось после последнего {@link #prepare()}, то есть не отмечено применённым в снимке.
+     * Для чужих обновлений возвращает false.
+     */
+    boolean holds(long updateId);
+
+    static FlushCheckpoint of(Supplier<Runnable> prepare, LongPredicate holds) {
+      return new FlushCheckpoint() {
+        @Override
+        public Runnable prepare() {
+          return prepare.get();
+        }
+
+        @Override
+        public boolean holds(long updateId) {
+          return holds.test(updateId);
+        }
+      };
+    }
+  }
+
+  /**
+   * Подключает точку сохранения, которая выполняется при каждом сбросе. Точек может быть
+   * несколько: позиция приёма и позиции партиций обработчика кластера.
+   */
+  public void addCheckpoint(FlushCheckpoint checkpoint) {
+    checkpoints.add(checkpoint);
+  }
+
+  /**
+   * Учитывает активность пользователя вне обновления Telegram: инкремент попадает в ближайший
+   * сброс.
+   *
+   * @see #record(Long, User, boolean, Instant, Integer)
+   */
+  public void record(
+      Long chatId, User telegramUser, boolean incrementMessageCount, Instant sentAt) {
+    record(chatId, telegramUser, incrementMessageCount, sentAt, null);
+  }
+
+  /**
+   * Учитывает активность пользователя: запоминает актуальный профиль и, при необходимости,
+   * увеличивает отложенный счётчик сообщений.
+   *
+   * @param chatId ID чата
+   * @param telegramUser Telegram-пользователь
+   * @param incrementMessageCount увеличивать ли messageCount
+   * @param sentAt время отправки сообщения
+   * @param updateId update_id обновления с сообщением или null; инкремент записывается не раньше,
+   *     чем точки сохранения отметят обновление применённым
+   */
+  public void record(
+      Long chatId,
+      User telegramUser,
+      boolean incrementMessageCount,
+      Instant sentAt,
+      Integer updateId) {
+    ActivityKey key = new ActivityKey(chatId, telegramUser.getId());
+    // compute блокирует только корзину ключа, поэтому разные пользователи не мешают друг другу,
+    // а flush не может забрать запись посередине обновления.
+    pending.compute(
+        key,
+        (k, current) -> {
+          PendingActivity activity = current != null ? current : new PendingActivity();
+          activity.update(
+              telegramUser.getUserName(),
+              telegramUser.getFirstName(),
+              telegramUser.getLastName(),
+              incrementMessageCount ? 1 : 0,
+              sentAt,
+              updateId,
+              this::isHeld);
+          return activity;
+        });
+
+    if (pending.size() >= maxPending
+        && !scheduler.isShutdown()
+        && flushScheduled.compareAndSet(false, true)) {
+      scheduler.execute(
+          () -> {
+            flushScheduled.set(false);
+            flushQuietly();
+          });
+    }
+  }
+
+  /**
+   * Возвращает профиль пользователя, ещё не записанный в хранилище.
+   *
+   * @param chatId ID чата
+   * @param userId ID пользователя
+   * @return SimpleUser из буфера или null, если в буфере ничего нет
+   */
+  public SimpleUser peekUser(Long chatId, Long userId) {
+    PendingActivity activity = pending.get(new ActivityKey(chatId, userId));
+    if (activity != null) {
+      return activity.toUser(userId);
+    }
+    Unconfirmed retry = unconfirmed;
+    if (retry != null) {
+      for (UserActivity stored : retry.batch()) {
+        if (stored.chatId().equals(chatId) && stored.userId().equals(userId)) {
+          return new SimpleUser(userId, stored.username(), stored.firstName(), stored.lastName());
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Возвращает ещё не записанную активность всех пользователей чата. Чтобы вместе с данными из
+   * хранилища получить согласованный снимок, вызывайте внутри {@link #withFlushPaused}.
+   *
+   * <p>Записи пакета, ожидающего повтора, не возвращаются: сервер мог уже применить их, и сумма с
+   * хранилищем учла бы инкремент дважды.
+   *
+   * @param chatId ID чата
+   * @return отложенная активность пользователей чата
+   */
+  public List<UserActivity> pendingForChat(Long chatId) {
+    List<UserActivity> result = new ArrayList<>();
+    pending.forEach(
+        (key, activity) -> {
+          if (key.chatId().equals(chatId)) {
+            result.add(activity.toActivity(key));
+          }
+        });
+    return result;
+  }
+
+  /**
+   * Выполняет действие, не давая буферу сбрасываться в хранилище. Пока действие выполняется,
+   * инкременты не переходят из буфера в базу, поэтому чтение базы и буфера не учтёт их дважды.
+   */
+  public <T> T withFlushPaused(Supplier<T> action) {
+    synchronized (flushLock) {
+      return action.get();
+    }
+  }
+
+  /**
+   * Сбрасывает накопленную активность в хранилище одним bulkWrite. Сначала повторяется пакет,
+   * запись которого не подтвердилась в прошлый раз.
+   *
+   * @return количество записанных пар (chatId, userId)
+   */
+  public int flush() {
+    synchronized (flushLock) {
+      List<Runnable> commits = new ArrayList<>(checkpoints.size());
+      for (FlushCheckpoint checkpoint : checkpoints) {
+        Runnable commit = checkpoint.prepare();
+        if (commit != null) {
+          commits.add(commit);
+        }
+      }
+      int written = 0;
+      Unconfirmed retry = unconfirmed;
+      if (retry != null) {
+        write(retry.flushId(), retry.batch());
+        written += retry.batch().size();
+      }
+
+      List<UserActivity> batch = new ArrayList<>(pending.size());
+      for (ActivityKey key : pending.keySet()) {
+        pending.computeIfPresent(
+            key,
+            (k, activity) -> {
+              UserActivity taken = activity.take(k, this::isHeld);
+              if (taken != null) {
+                batch.add(taken);
+              }
+              return activity.isDrained() ? null : activity;
+            });
+      }
+      if (!batch.isEmpty()) {
+        write(nextFlushId.getAndIncrement(), batch);
+        written += batch.size();
+      }
+      commits.forEach(UserActivityBuffer::runCheckpoint);
+      return written;
+    }
+  }
+
+  /**
+   * Записывает пакет. Неподтверждённая часть запоминается для повтора с тем же ID, а в корзины
+   * уходит только подтверждённая.
+   */
+  private void write(long flushId, List<UserActivity> batch) {
+    long start = System.nanoTime();
+    try {
+      userRepository.bulkUpsertUsers(flushId, batch);
+    } catch (PartialFlushException e) {
+      failedFlushes.incrementAndGet();
+      unconfirmed = new Unconfirmed(flushId, e.getFailed());
+      Set<UserActivity> failed = new HashSet<>(e.getFailed());
+      writeBuckets(batch.stream().filter(activity -> !failed.contains(activity)).toList());
+      throw e;
+    } catch (RuntimeException e) {
+      failedFlushes.incrementAndGet();
+      // Исход неизвестен: сервер мог применить пакет, не успев ответить.
+      unconfirmed = new Unconfirmed(flushId, batch);
+      throw e;
+    }
+    unconfirmed = null;
+    writeBuckets(batch);
+    long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    flushCount.incrementAndGet();
+    flushedEntries.addAndGet(batch.size());
+    lastFlushSize.set(batch.size());
+    lastFlushMillis.set(elapsedMs);
+    maxFlushMillis.accumulateAndGet(elapsedMs, Math::max);
+    log.debug("Сброшено {} записей активности за {} мс", batch.size(), elapsedMs);
+  }
+
+  private boolean isHeld(long updateId) {
+    for (FlushCheckpoint checkpoint : checkpoints) {
+      if (checkpoint.holds(updateId)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void writeBuckets(List<UserActivity> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    try {
+      bucketRepository.increment(batch);
+    } catch (RuntimeException e) {
+      failedBucketWrites.incrementAndGet();
+      log.error("Не удалось записать корзины активности, рейтинг за период будет неполным: ", e);
+    }
+  }
+
+  /** Возвращает текущие показатели буфера. */
+  public FlushStats getStats() {
+    Unconfirmed retry = unconfirmed;
+    return new FlushStats(
+        pending.size(),
+        retry != null ? retry.batch().size() : 0,
+        flushCount.get(),
+        flushedEntries.get(),
+        failedFlushes.get(),
+        failedBucketWrites.get(),
+        lastFlushSize.get(),
+        lastFlushMillis.get(),
+        maxFlushMillis.get());
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (Exception e) {
+      log.error("Ошибка при сбросе активности пользователей, пакет будет повторён: ", e);
+    }
+  }
+
+  private static void runCheckpoint(Runnable commit) {
+    try {
+      commit.run();
+    } catch (RuntimeException e) {
+      log.error("Ошибка точки сохранения после сброса активности: ", e);
+    }
+  }
+
+  /**
+   * Показатели буфера отложенной записи.
+   *
+   * @param pending количество ожидающих записи пар (chatId, userId)
+   * @param unconfirmed записей пакета, который ждёт повтора после неподтверждённой записи
+   * @param flushes количество успешных сбросов
+   * @param flushedEntries суммарное количество записанных пар
+   * @param failedFlushes количество неудачных сбросов
+   * @param failedBucketWrites количество сбросов, инкременты которых не попали в корзины
+   * @param lastFlushSize размер последнего сброса
+   * @param lastFlushMillis длительность последнего сброса, мс
+   * @param maxFlushMillis максимальная длительность сброса, мс
+   */
+  public record FlushStats(
+      int pending,
+      int unconfirmed,
+      long flushes,
+      long flushedEntries,
+      long failedFlushes,
+      long failedBucketWrites,
+      long lastFlushSize,
+      long lastFlushMillis,
+      long maxFlushMillis) {}
+
+  private record ActivityKey(Long chatId, Long userId) {}
+
+  /** Записи пакета, применение которых не подтвердилось: повторяются с тем же ID пакета. */
+  private record Unconfirmed(long flushId, List<UserActivity> batch) {}
+
+  /**
+   * Инкремент сообщения, обновление которого ещё удерживает точка сохранения.
+   *
+   * @param hour начало часа отправки сообщения
+   */
+  private record Increment(int updateId, int count, Instant hour) {}
+
+  /**
+   * Изменяемая запись буфера. Модифицируется только внутри compute.
+   *
+   * <p>Инкременты сразу складываются в счётчик и почасовые суммы. Отдельно, в порядке записи,
+   * лежат только инкременты обновлений, которые удерживает точка сохранения: они переходят в
+   * счётчики, когда обновление отпущено. Поэтому запись занимает память по числу часов и
+   * удержанных обновлений, а не сообщений, и сброс забирает её за один проход.
+   */
+  private static final class PendingActivity {
+    private String username;
+    private String firstName;
+    private String lastName;
+    private int increment;
+    private Map<Instant, Integer> hourly = new HashMap<>();
+    private final Deque<Increment> held = new ArrayDeque<>();
+    private boolean drained;
+
+    private synchronized void update(
+        String username,
+        String firstName,
+        String lastName,
+        int increment,
+        Instant sentAt,
+        Integer updateId,
+        LongPredicate isHeld) {
+      this.username = username;
+      this.firstName = firstName;
+      this.lastName = lastName;
+      // Отпущенные обновления из начала списка: каждое переносится один раз
+      while (!held.isEmpty() && !isHeld.test(held.peekFirst().updateId())) {
+        Increment released = held.pollFirst();
+        add(released.count(), released.hour());
+      }
+      if (increment > 0) {
+        Instant hour = Granularity.HOURLY.bucketStart(sentAt);
+        if (updateId != null && isHeld.test(updateId)) {
+          held.addLast(new Increment(updateId, increment, hour));
+        } else {
+          add(increment, hour);
+        }
+      }
+    }
+
+    private synchronized SimpleUser toUser(Long userId) {
+      return new SimpleUser(userId, username, firstName, lastName);
+    }
+
+    /** Вся отложенная активность записи, вместе с удержанными инкрементами. */
+    private synchronized UserActivity toActivity(ActivityKey key) {
+      int total = increment;
+      Map<Instant, Integer> all = new HashMap<>(hourly);
+      for (Increment next : held) {
+        total += next.count();
+        all.merge(next.hour(), next.count(), Integer::sum);
+      }
+      return new UserActivity(
+          key.chatId(), key.userId(), username, firstName, lastName, total, all);
+    }
+
+    /**
+     * Забирает для сброса профиль и инкременты, которые не удерживает ни одна точка сохранения.
+     * Удержанные инкременты остаются в записи до следующего сброса.
+     *
+     * @return забранная активность или null, если все инкременты удержаны
+     */
+    private synchronized UserActivity take(ActivityKey key, LongPredicate isHeld) {
+      held.removeIf(
+          next -> {
+            if (isHeld.test(next.updateId())) {
+              return false;
+            }
+            add(next.count(), next.hour());
+            return true;
+          });
+      if (held.isEmpty()) {
+        drained = true;
+      } else if (increment == 0) {
+        return null;
+      }
+      UserActivity taken =
+          new UserActivity(
+              key.chatId(), key.userId(), username, firstName, lastName, increment, hourly);
+      increment = 0;
+      hourly = new HashMap<>();
+      return taken;
+    }
+
+    private synchronized boolean isDrained() {
+      return drained;
+    }
+
+    private void add(int count, Instant hour) {
+      increment += count;
+      hourly.merge(hour, count, Integer::sum);
+    }
+  }
+}
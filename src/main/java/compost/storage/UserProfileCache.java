@@ -0,0 +1,104 @@
+package compost.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Кэш отпечатков профилей пользователей, уже записанных в хранилище. Для каждой пары (chatId,
+ * userId) хранится 64-битный хэш username, firstName и lastName — по нему MongoUserRepository
+ * понимает, что профиль не менялся и его не нужно перезаписывать.
+ *
+ * <p>Отпечаток запоминается только после успешной записи, поэтому после перезапуска кэш пуст и
+ * первое сообщение каждого пользователя снова записывает профиль целиком. Размер ограничен, а
+ * давно не писавшие пользователи вытесняются.
+ */
+@Component
+public class UserProfileCache {
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final Cache<ProfileKey, Long> fingerprints;
+
+  public UserProfileCache(
+      @Value("${bot.users.profile-cache.max-size:100000}") long maxSize,
+      @Value("${bot.users.profile-cache.expire-after-access-hours:24}") long expireAfterHours) {
+    this.fingerprints =
+        Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterAccess(Duration.ofHours(expireAfterHours))
+            .recordStats()
+            .build();
+  }
+
+  /**
+   * Проверяет, совпадает ли профиль с последним записанным в хранилище.
+   *
+   * @return true, если профиль известен и не менялся
+   */
+  public boolean isUnchanged(
+      Long chatId, Long userId, String username, String firstName, String lastName) {
+    Long known = fingerprints.getIfPresent(new ProfileKey(chatId, userId));
+    return known != null && known == fingerprint(username, firstName, lastName);
+  }
+
+  /** Запоминает профиль, успешно записанный в хранилище. */
+  public void remember(
+      Long chatId, Long userId, String username, String firstName, String lastName) {
+    fingerprints.put(new ProfileKey(chatId, userId), fingerprint(username, firstName, lastName));
+  }
+
+  /** Забывает профиль, чтобы следующая запись обновила его целиком. */
+  public void forget(Long chatId, Long userId) {
+    fingerprints.invalidate(new ProfileKey(chatId, userId));
+  }
+
+  /**
+   * Забывает профили чатов партиции, захваченной у другого обработчика кластера: профили могли
+   * быть перезаписаны другим узлом.
+   */
+  @EventListener
+  public void onPartitionAcquired(PartitionAcquiredEvent event) {
+    fingerprints.asMap().keySet().removeIf(key -> event.covers(key.chatId()));
+  }
+
+  /** Возвращает статистику кэша (попадания, промахи, вытеснения). */
+  public CacheStats getStats() {
+    return fingerprints.stats();
+  }
+
+  /** Количество известных профилей. */
+  public long size() {
+    return fingerprints.estimatedSize();
+  }
+
+  /**
+   * FNV-1a по символам полей. Null и пустая строка дают разные отпечатки, а разделитель между
+   * полями не даёт склеить, например, ("ab", "c") и ("a", "bc").
+   */
+  static long fingerprint(String username, String firstName, String lastName) {
+    long hash = FNV_OFFSET;
+    hash = mix(hash, username);
+    hash = mix(hash, firstName);
+    hash = mix(hash, lastName);
+    return hash;
+  }
+
+  private static long mix(long hash, String value) {
+    if (value == null) {
+      return (hash ^ 0xFFFF_FFFFL) * FNV_PRIME;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+    }
+    // Разделитель полей вне диапазона char.
+    return (hash ^ 0x1_0000L) * FNV_PRIME;
+  }
+
+  private record ProfileKey(Long chatId, Long userId) {}
+}
@@ -1,18 +1,48 @@
 package compost.storage;
 
 import compost.model.SimpleUser;
+import compost.model.UserActivity;
 import compost.storage.MongoUserRepository.RankedUser;
 import java.util.Collection;
 import java.util.List;
-import org.telegram.telegrambots.meta.api.objects.User;
+import java.util.function.Consumer;
 
 public interface UserRepository {
 
-  void upsertUser(Long chatId, User telegramUser, boolean incrementMessageCount);
+  /**
+   * Пакетно применяет накопленную активность. {@code flushId} уникален для пакета и запоминается в
+   * документах: повтор того же пакета после ошибки или таймаута не увеличивает messageCount второй
+   * раз.
+   *
+   * @param flushId ID пакета
+   * @param activities изменения по парам (chatId, userId)
+   * @throws PartialFlushException если часть записей не применена
+   */
+  void bulkUpsertUsers(long flushId, Collection<UserActivity> activities);
 
   SimpleUser getUser(Long chatId, Long userId);
 
   Collection<SimpleUser> getAllUsers(Long chatId);
 
+  /** Профили перечисленных пользователей чата; отсутствующие в хранилище пропускаются. */
+  List<SimpleUser> getUsers(Long chatId, Collection<Long> userIds);
+
+  /** Передаёт пользователей чата в {@code action} по одному, не собирая их в коллекцию. */
+  void forEachUser(Long chatId, Consumer<SimpleUser> action);
+
+  /**
+   * Страница пользователей чата по возрастанию id: следующая запрашивается с id последнего
+   * пользователя предыдущей, поэтому курсор между страницами не держится.
+   *
+   * @param chatId ID чата
+   * @param afterUserId id последнего пользователя предыдущей страницы; null — с начала
+   * @param limit размер страницы
+   */
+  List<SimpleUser> getUsersAfter(Long chatId, Long afterUserId, int limit);
+
   List<RankedUser> getTopUsers(Long chatId, int limit);
+
+  List<RankedUser> getRanking(Long chatId);
+
+  Collection<Long> getChatIds();
 }
@@ -0,0 +1,29 @@
+package compost.storage.codec;
+
+import com.mongodb.MongoClientSettings;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+
+/**
+ * Реестр кодеков бота поверх стандартного реестра драйвера. Подключается к клиенту MongoDB, после
+ * чего репозитории читают документы сразу в модели: {@code collection.find(filter,
+ * SimpleUser.class)}.
+ */
+public final class BotCodecs {
+
+  private static final CodecRegistry REGISTRY =
+      CodecRegistries.fromRegistries(
+          CodecRegistries.fromCodecs(
+              new SimpleUserCodec(),
+              new RankedUserCodec(),
+              new TagEntryCodec(),
+              new ChatTagsCodec()),
+          MongoClientSettings.getDefaultCodecRegistry());
+
+  private BotCodecs() {}
+
+  /** Реестр с кодеками бота и всеми стандартными кодеками драйвера. */
+  public static CodecRegistry registry() {
+    return REGISTRY;
+  }
+}
@@ -0,0 +1,43 @@
+package compost.storage.codec;
+
+import org.bson.BsonInvalidOperationException;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+
+/** Чтение и запись полей, общих для кодеков: числа в любом целом типе и строки с null. */
+final class BsonFields {
+
+  private BsonFields() {}
+
+  static String readString(BsonReader reader) {
+    if (reader.getCurrentBsonType() == BsonType.NULL) {
+      reader.readNull();
+      return null;
+    }
+    return reader.readString();
+  }
+
+  /** Число из int32, int64 или double: $inc и старые версии бота писали их по-разному. */
+  static long readLong(BsonReader reader) {
+    return switch (reader.getCurrentBsonType()) {
+      case INT32 -> reader.readInt32();
+      case INT64 -> reader.readInt64();
+      case DOUBLE -> (long) reader.readDouble();
+      case NULL -> {
+        reader.readNull();
+        yield 0;
+      }
+      default -> throw new BsonInvalidOperationException(
+          "Ожидалось число, получено " + reader.getCurrentBsonType());
+    };
+  }
+
+  static void writeString(BsonWriter writer, String name, String value) {
+    if (value == null) {
+      writer.writeNull(name);
+    } else {
+      writer.writeString(name, value);
+    }
+  }
+}
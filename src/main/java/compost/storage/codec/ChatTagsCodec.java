@@ -0,0 +1,56 @@
+package compost.storage.codec;
+
+import compost.model.ChatTags;
+import compost.model.TagEntry;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+/**
+ * Кодек {@link ChatTags} для документов коллекции tags: из документа читается только массив tags,
+ * элементы декодируются {@link TagEntryCodec}.
+ */
+public class ChatTagsCodec implements Codec<ChatTags> {
+
+  private final TagEntryCodec entryCodec = new TagEntryCodec();
+
+  @Override
+  public ChatTags decode(BsonReader reader, DecoderContext decoderContext) {
+    List<TagEntry> tags = new ArrayList<>();
+    reader.readStartDocument();
+    while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+      if (!"tags".equals(reader.readName()) || reader.getCurrentBsonType() != BsonType.ARRAY) {
+        reader.skipValue();
+        continue;
+      }
+      reader.readStartArray();
+      while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+        tags.add(entryCodec.decode(reader, decoderContext));
+      }
+      reader.readEndArray();
+    }
+    reader.readEndDocument();
+    return new ChatTags(tags);
+  }
+
+  @Override
+  public void encode(BsonWriter writer, ChatTags chatTags, EncoderContext encoderContext) {
+    writer.writeStartDocument();
+    writer.writeStartArray("tags");
+    for (TagEntry entry : chatTags.tags()) {
+      encoderContext.encodeWithChildContext(entryCodec, writer, entry);
+    }
+    writer.writeEndArray();
+    writer.writeEndDocument();
+  }
+
+  @Override
+  public Class<ChatTags> getEncoderClass() {
+    return ChatTags.class;
+  }
+}
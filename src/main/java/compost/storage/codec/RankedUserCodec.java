@@ -0,0 +1,57 @@
+package compost.storage.codec;
+
+import compost.model.SimpleUser;
+import compost.storage.MongoUserRepository.RankedUser;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+/**
+ * Кодек {@link RankedUser} для документов коллекции users: профиль и messageCount. Ранг в базе не
+ * хранится — декодированный пользователь получает ранг 0, настоящий проставляет репозиторий по
+ * порядку сортировки.
+ */
+public class RankedUserCodec implements Codec<RankedUser> {
+
+  @Override
+  public RankedUser decode(BsonReader reader, DecoderContext decoderContext) {
+    Long id = null;
+    String username = null;
+    String firstName = null;
+    String lastName = null;
+    int messageCount = 0;
+    reader.readStartDocument();
+    while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+      switch (reader.readName()) {
+        case "id" -> id = BsonFields.readLong(reader);
+        case "username" -> username = BsonFields.readString(reader);
+        case "firstName" -> firstName = BsonFields.readString(reader);
+        case "lastName" -> lastName = BsonFields.readString(reader);
+        case "messageCount" -> messageCount = (int) BsonFields.readLong(reader);
+        default -> reader.skipValue();
+      }
+    }
+    reader.readEndDocument();
+    return new RankedUser(new SimpleUser(id, username, firstName, lastName), messageCount, 0);
+  }
+
+  @Override
+  public void encode(BsonWriter writer, RankedUser ranked, EncoderContext encoderContext) {
+    SimpleUser user = ranked.user();
+    writer.writeStartDocument();
+    writer.writeInt64("id", user.getId());
+    BsonFields.writeString(writer, "username", user.getUsername());
+    BsonFields.writeString(writer, "firstName", user.getFirstName());
+    BsonFields.writeString(writer, "lastName", user.getLastName());
+    writer.writeInt32("messageCount", ranked.messageCount());
+    writer.writeEndDocument();
+  }
+
+  @Override
+  public Class<RankedUser> getEncoderClass() {
+    return RankedUser.class;
+  }
+}
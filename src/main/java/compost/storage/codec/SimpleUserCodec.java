@@ -0,0 +1,61 @@
+package compost.storage.codec;
+
+import compost.model.SimpleUser;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+/**
+ * Кодек {@link SimpleUser} для документов коллекции users: поля id, username, firstName, lastName
+ * читаются прямо из потока BSON, остальные поля пропускаются без разбора.
+ */
+public class SimpleUserCodec implements Codec<SimpleUser> {
+
+  @Override
+  public SimpleUser decode(BsonReader reader, DecoderContext decoderContext) {
+    reader.readStartDocument();
+    SimpleUser user = readFields(reader);
+    reader.readEndDocument();
+    return user;
+  }
+
+  /** Читает профиль из уже открытого документа, пропуская посторонние поля. */
+  static SimpleUser readFields(BsonReader reader) {
+    Long id = null;
+    String username = null;
+    String firstName = null;
+    String lastName = null;
+    while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+      switch (reader.readName()) {
+        case "id" -> id = BsonFields.readLong(reader);
+        case "username" -> username = BsonFields.readString(reader);
+        case "firstName" -> firstName = BsonFields.readString(reader);
+        case "lastName" -> lastName = BsonFields.readString(reader);
+        default -> reader.skipValue();
+      }
+    }
+    return new SimpleUser(id, username, firstName, lastName);
+  }
+
+  @Override
+  public void encode(BsonWriter writer, SimpleUser user, EncoderContext encoderContext) {
+    writer.writeStartDocument();
+    writeFields(writer, user);
+    writer.writeEndDocument();
+  }
+
+  private static void writeFields(BsonWriter writer, SimpleUser user) {
+    writer.writeInt64("id", user.getId());
+    BsonFields.writeString(writer, "username", user.getUsername());
+    BsonFields.writeString(writer, "firstName", user.getFirstName());
+    BsonFields.writeString(writer, "lastName", user.getLastName());
+  }
+
+  @Override
+  public Class<SimpleUser> getEncoderClass() {
+    return SimpleUser.class;
+  }
+}
@@ -0,0 +1,45 @@
+package compost.storage.codec;
+
+import compost.model.TagEntry;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+/**
+ * Кодек {@link TagEntry}: документ коллекции tag_entries или элемент массива tags. Поле chatId и
+ * прочие поля пропускаются.
+ */
+public class TagEntryCodec implements Codec<TagEntry> {
+
+  @Override
+  public TagEntry decode(BsonReader reader, DecoderContext decoderContext) {
+    String tag = null;
+    String description = null;
+    reader.readStartDocument();
+    while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+      switch (reader.readName()) {
+        case "tag" -> tag = BsonFields.readString(reader);
+        case "description" -> description = BsonFields.readString(reader);
+        default -> reader.skipValue();
+      }
+    }
+    reader.readEndDocument();
+    return new TagEntry(tag, description);
+  }
+
+  @Override
+  public void encode(BsonWriter writer, TagEntry entry, EncoderContext encoderContext) {
+    writer.writeStartDocument();
+    BsonFields.writeString(writer, "tag", entry.tag());
+    BsonFields.writeString(writer, "description", entry.description());
+    writer.writeEndDocument();
+  }
+
+  @Override
+  public Class<TagEntry> getEncoderClass() {
+    return TagEntry.class;
+  }
+}
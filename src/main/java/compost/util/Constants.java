@@ -1,7 +1,5 @@
 package compost.util;
 
-import java.util.Arrays;
-import java.util.Optional;
 import java.util.regex.Pattern;
 
 public class Constants {
@@ -34,12 +32,6 @@ public class Constants {
       this.command = command;
     }
 
-    public static Optional<BotCommand> fromString(String command) {
-      return Arrays.stream(values())
-          .filter(cmd -> cmd.command.equalsIgnoreCase(command))
-          .findFirst();
-    }
-
     public String getCommand() {
       return command;
     }
@@ -50,6 +42,48 @@ public class Constants {
     }
   }
 
+  /** Период рейтинга /top: аргумент команды и подпись в заголовке ответа. */
+  public enum TopPeriod {
+    ALL("all", "за всё время"),
+    DAY("day", "за сутки"),
+    WEEK("week", "за неделю"),
+    MONTH("month", "за месяц");
+
+    private final String argument;
+    private final String title;
+
+    TopPeriod(String argument, String title) {
+      this.argument = argument;
+      this.title = title;
+    }
+
+    public String getArgument() {
+      return argument;
+    }
+
+    public String getTitle() {
+      return title;
+    }
+
+    /**
+     * Находит период по аргументу команды без учёта регистра.
+     *
+     * @param argument аргумент /top; пустая строка — рейтинг за всё время
+     * @return период или null, если аргумент не распознан
+     */
+    public static TopPeriod fromArgument(String argument) {
+      if (argument == null || argument.isBlank()) {
+        return ALL;
+      }
+      for (TopPeriod period : values()) {
+        if (period.argument.equalsIgnoreCase(argument.trim())) {
+          return period;
+        }
+      }
+      return null;
+    }
+  }
+
   public enum CaseType {
     SUCCESS,
     INVALID_FORMAT
@@ -0,0 +1,79 @@
+package compost.util;
+
+import compost.model.SimpleUser;
+import java.util.function.Consumer;
+
+/**
+ * Упаковывает упоминания пользователей в сообщения, укладывающиеся в лимиты Telegram: не длиннее
+ * {@code maxLength} символов (вместе с HTML-разметкой, то есть с запасом) и не больше {@code
+ * maxMentions} упоминаний. Готовое сообщение сразу отдаётся в {@code sink}: сам упаковщик держит
+ * только текущее. Сколько сообщений копится дальше, решает получатель — {@code
+ * UserService.mentionAll} забирает их по мере отправки.
+ *
+ * <p>Заголовок ставится только в первое сообщение. Экземпляр не потокобезопасен.
+ */
+public class MentionChunker {
+
+  /** Предельная длина текста сообщения в Telegram. */
+  public static final int MAX_MESSAGE_LENGTH = 4096;
+
+  /** Упоминаний в одном сообщении: Telegram не подсвечивает и не уведомляет сверх примерно 50. */
+  public static final int MAX_MENTIONS = 50;
+
+  private final int maxLength;
+  private final int maxMentions;
+  private final Consumer<String> sink;
+  private final StringBuilder chunk;
+  private int mentions;
+  private int chunks;
+
+  public MentionChunker(String header, Consumer<String> sink) {
+    this(header, MAX_MESSAGE_LENGTH, MAX_MENTIONS, sink);
+  }
+
+  public MentionChunker(String header, int maxLength, int maxMentions, Consumer<String> sink) {
+    if (header.length() >= maxLength || maxMentions < 1) {
+      throw new IllegalArgumentException(
+          "Некорректные лимиты: maxLength=" + maxLength + ", maxMentions=" + maxMentions);
+    }
+    this.maxLength = maxLength;
+    this.maxMentions = maxMentions;
+    this.sink = sink;
+    this.chunk = new StringBuilder(maxLength).append(header);
+  }
+
+  /** Добавляет упоминание; при переполнении текущее сообщение отправляется. */
+  public void add(SimpleUser user) {
+    int mark = chunk.length();
+    MessageBuilder.appendMention(chunk, user).append(' ');
+    if (chunk.length() > maxLength && mentions > 0) {
+      // Не влезло: отправляем накопленное и переносим упоминание в новое сообщение
+      chunk.setLength(mark);
+      flush();
+      MessageBuilder.appendMention(chunk, user).append(' ');
+    }
+    mentions++;
+    if (mentions == maxMentions) {
+      flush();
+    }
+  }
+
+  /**
+   * Отправляет недописанное сообщение.
+   *
+   * @return сколько сообщений отправлено всего; 0 — не было ни одного упоминания
+   */
+  public int finish() {
+    if (mentions > 0) {
+      flush();
+    }
+    return chunks;
+  }
+
+  private void flush() {
+    sink.accept(chunk.toString());
+    chunk.setLength(0);
+    mentions = 0;
+    chunks++;
+  }
+}
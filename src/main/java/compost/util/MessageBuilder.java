@@ -3,6 +3,7 @@ package compost.util;
 import compost.model.SimpleUser;
 import compost.service.TagService.TagResult;
 import compost.storage.MongoUserRepository.RankedUser;
+import compost.util.Constants.TopPeriod;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -22,6 +23,7 @@ public class MessageBuilder {
         /deltag #тег - Удалить хештег
 
         /top - Показать самых активных ⚔️
+        /top day|week|month - Самые активные за сутки, неделю, месяц
         /panic - Создать видимость работы
         """;
   }
@@ -44,10 +46,20 @@ public class MessageBuilder {
     return "Неизвестная команда, падаван \uD83D\uDC7E! Напиши /help для списка команд.";
   }
 
+  public static String staleCommandsSkipped(int count) {
+    return "⏳ Пока бот был недоступен, пропущено устаревших команд: "
+        + count
+        + ". Повторите нужные.";
+  }
+
   public static String noActiveUser() {
     return "Нет данных об активности.";
   }
 
+  public static String topUsage() {
+    return "Укажи период: /top, /top day, /top week или /top month.";
+  }
+
   public static String noTags() {
     return "❌ Пока нет добавленных тегов.";
   }
@@ -111,22 +123,36 @@ public class MessageBuilder {
   }
 
   public static String mention(SimpleUser user) {
+    return appendMention(new StringBuilder(), user).toString();
+  }
+
+  /** Дописывает упоминание пользователя в {@code sb} без промежуточных строк. */
+  public static StringBuilder appendMention(StringBuilder sb, SimpleUser user) {
     if (user.getUsername() != null) {
-      return "@" + user.getUsername();
-    } else {
-      String name =
-          (user.getFirstName() != null ? user.getFirstName() : "??")
-              + (user.getLastName() != null ? " " + user.getLastName() : "");
-      return "<a href=\"tg://user?id=" + user.getId() + "\">" + name + "</a>";
+      return sb.append('@').append(user.getUsername());
     }
+    sb.append("<a href=\"tg://user?id=").append(user.getId()).append("\">");
+    sb.append(user.getFirstName() != null ? user.getFirstName() : "??");
+    if (user.getLastName() != null) {
+      sb.append(' ').append(user.getLastName());
+    }
+    return sb.append("</a>");
   }
 
   public static String topUsers(List<RankedUser> users) {
+    return topUsers(users, TopPeriod.ALL);
+  }
+
+  public static String topUsers(List<RankedUser> users, TopPeriod period) {
     if (users == null || users.isEmpty()) {
       return MessageBuilder.noActiveUser();
     }
 
-    StringBuilder sb = new StringBuilder("🔥 Топ активных навозников:\n");
+    StringBuilder sb =
+        new StringBuilder(
+            period == TopPeriod.ALL
+                ? "🔥 Топ активных навозников:\n"
+                : "🔥 Топ активных навозников " + period.getTitle() + ":\n");
 
     for (RankedUser ru : users) {
       SimpleUser user = ru.user();
@@ -152,8 +178,12 @@ public class MessageBuilder {
     return sb.toString();
   }
 
+  public static String mentionAllHeader() {
+    return "🔔 Призыв всех навозников:\n";
+  }
+
   public static String mentionAll(Collection<SimpleUser> users) {
-    StringBuilder sb = new StringBuilder("🔔 Призыв всех навозников:\n");
+    StringBuilder sb = new StringBuilder(mentionAllHeader());
     for (SimpleUser user : users) {
       sb.append(mention(user)).append(" ");
     }
@@ -1,24 +1,24 @@
 package compost.util;
 
-import compost.annotation.LoggableCommand;
+import java.util.Iterator;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 /**
  * Утилита для отправки сообщений через Telegram-бота. Предоставляет методы для отправки текстовых
- * сообщений с поддержкой HTML и указания потока (thread).
+ * сообщений с поддержкой HTML и указания потока (thread). Сообщения ставятся в
+ * {@link OutboundMessageQueue} и отправляются асинхронно с учётом лимитов Telegram.
  */
 
 @Component
 @Log4j2
 public class MessageUtils {
 
-  private final TelegramSender sender;
+  private final OutboundMessageQueue outboundQueue;
 
-  public MessageUtils(TelegramSender sender) {
-    this.sender = sender;
+  public MessageUtils(OutboundMessageQueue outboundQueue) {
+    this.outboundQueue = outboundQueue;
   }
 
   /**
@@ -48,7 +48,33 @@ public class MessageUtils {
   }
 
   /**
-   * Универсальный метод для отправки сообщений.
+   * Отправка серии HTML-сообщений. Тексты берутся из итератора лениво, когда очередь отправки
+   * чата дошла до следующего сообщения.
+   *
+   * @param chatId   Идентификатор чата, куда будут отправлены сообщения.
+   * @param threadId Идентификатор потока (topic) в чате. Может быть null, если поток не
+   *                 используется.
+   * @param texts    Тексты сообщений.
+   */
+  public void sendTexts(Long chatId, Integer threadId, Iterator<String> texts) {
+    outboundQueue.enqueueAll(
+        chatId,
+        new Iterator<SendMessage>() {
+          @Override
+          public boolean hasNext() {
+            return texts.hasNext();
+          }
+
+          @Override
+          public SendMessage next() {
+            return message(chatId, threadId, texts.next(), true);
+          }
+        });
+  }
+
+  /**
+   * Универсальный метод для отправки сообщений. Возвращается сразу после постановки сообщения в
+   * очередь отправки.
    *
    * @param chatId     Идентификатор чата, куда будет отправлено сообщение.
    * @param threadId   Идентификатор потока (topic) в чате. Может быть null, если поток не
@@ -57,25 +83,26 @@ public class MessageUtils {
    * @param enableHtml Флаг, указывающий, следует ли использовать форматирование HTML в сообщении.
    */
 
-  @LoggableCommand
   public void send(Long chatId, Integer threadId, String text, boolean enableHtml) {
-    SendMessage message = new SendMessage();
-    message.setChatId(chatId.toString());
-    message.setText(text);
-    message.enableHtml(enableHtml);
-    if (threadId != null) {
-      message.setMessageThreadId(threadId);
-    }
+    SendMessage message = message(chatId, threadId, text, enableHtml);
 /*
 
     log.debug("Отправка сообщения: chatId={}, threadId={}, enableHtml={}, text='{}'",
         chatId, threadId, enableHtml, text.replace("\n", "\\n"));
 */
 
-    try {
-      sender.execute(message);
-    } catch (TelegramApiException e) {
-      log.error("Ошибка при отправке сообщения: {}", e.getMessage(), e);
+    outboundQueue.enqueue(chatId, message);
+  }
+
+  private static SendMessage message(
+      Long chatId, Integer threadId, String text, boolean enableHtml) {
+    SendMessage message = new SendMessage();
+    message.setChatId(chatId.toString());
+    message.setText(text);
+    message.enableHtml(enableHtml);
+    if (threadId != null) {
+      message.setMessageThreadId(threadId);
     }
+    return message;
   }
 }
\ No newline at end of file
@@ -1,11 +1,16 @@
 package compost.util;
 
+import com.mongodb.MongoClientSettings;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoDatabase;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 @Configuration
 public class MongoConnection {
@@ -25,15 +30,60 @@ public class MongoConnection {
   @Value("${MONGO_PORT:27017}")
   private String port;
 
+  /** Синхронный клиент MongoDB с настройками {@link MongoSettings}. */
   @Bean
-  public MongoClient mongoClient() {
-    String connectionString =
-        String.format("mongodb://%s:%s@%s:%s/%s", username, password, host, port, databaseName);
-    return MongoClients.create(connectionString);
+  @Primary
+  public MongoClient mongoClient(MongoSettings mongoSettings, MeterRegistry meterRegistry) {
+    return MongoClients.create(settings(mongoSettings, meterRegistry));
   }
 
   @Bean
+  @Primary
   public MongoDatabase mongoDatabase(MongoClient mongoClient) {
     return mongoClient.getDatabase(databaseName);
   }
+
+  /**
+   * Отдельный клиент для {@link compost.storage.MongoSchemaManager}: индексы и миграции не
+   * укладываются в таймаут чтения общего клиента, а снимать его ради них со всех запросов бота
+   * нельзя.
+   */
+  @Bean
+  public MongoClient schemaMongoClient(MongoSettings mongoSettings, MeterRegistry meterRegistry) {
+    return MongoClients.create(mongoSettings.buildForSchema(connectionString(), meterRegistry));
+  }
+
+  @Bean
+  public MongoDatabase schemaMongoDatabase(@Qualifier("schemaMongoClient") MongoClient client) {
+    return client.getDatabase(databaseName);
+  }
+
+  /**
+   * Клиент Reactive Streams драйвера для {@code bot.storage.driver=reactive}: с ним работают
+   * команды бота. Фоновые задачи (буфер активности, миграции, индексы) остаются на синхронном
+   * клиенте.
+   */
+  @Bean
+  @ConditionalOnProperty(name = "bot.storage.driver", havingValue = "reactive")
+  public com.mongodb.reactivestreams.client.MongoClient reactiveMongoClient(
+      MongoSettings mongoSettings, MeterRegistry meterRegistry) {
+    return com.mongodb.reactivestreams.client.MongoClients.create(
+        settings(mongoSettings, meterRegistry));
+  }
+
+  @Bean
+  @ConditionalOnProperty(name = "bot.storage.driver", havingValue = "reactive")
+  public com.mongodb.reactivestreams.client.MongoDatabase reactiveMongoDatabase(
+      com.mongodb.reactivestreams.client.MongoClient reactiveMongoClient) {
+    return reactiveMongoClient.getDatabase(databaseName);
+  }
+
+  private MongoClientSettings settings(MongoSettings mongoSettings, MeterRegistry meterRegistry) {
+    return mongoSettings.build(connectionString(), meterRegistry);
+  }
+
+  private String connectionString() {
+    return String.format(
+        "mongodb://%s:%s@%s:%s/%s", username, password, host, port, databaseName);
+  }
 }
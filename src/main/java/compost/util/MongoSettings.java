@@ -0,0 +1,221 @@
+package compost.util;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCompressor;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import compost.storage.codec.BotCodecs;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.mongodb.MongoMetricsCommandListener;
+import io.micrometer.core.instrument.binder.mongodb.MongoMetricsConnectionPoolListener;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Настройки клиентов MongoDB из свойств {@code bot.mongo.*}: размер пула, таймауты, сжатие
+ * протокола и повтор записей. Без таймаутов драйвер ждёт сервер и соединение из пула до двух
+ * минут, и команда бота «висит» всё это время; здесь ожидание ограничено секундами.
+ *
+ * <p>Исключение — клиент подготовки схемы ({@link #buildForSchema}): построение индекса или
+ * миграция на большой коллекции идут дольше {@code bot.mongo.read-timeout-ms}, поэтому у него свой
+ * таймаут чтения {@code bot.mongo.schema.read-timeout-ms} (0 — без ограничения) и пул без
+ * постоянных соединений.
+ *
+ * <p>К клиенту подключаются слушатели метрик:
+ *
+ * <ul>
+ *   <li>{@code mongodb.driver.commands} — время команд по коллекциям и операциям;
+ *   <li>{@code mongodb.driver.pool.*} — размер пула, занятые соединения, очередь ожидания;
+ *   <li>{@code mongodb.driver.pool.wait} — время ожидания соединения из пула с исходом.
+ * </ul>
+ */
+@Component
+public class MongoSettings {
+
+  private final int minPoolSize;
+  private final int maxPoolSize;
+  private final long maxIdleMillis;
+  private final long maxWaitMillis;
+  private final long connectTimeoutMillis;
+  private final long readTimeoutMillis;
+  private final long schemaReadTimeoutMillis;
+  private final long serverSelectionTimeoutMillis;
+  private final List<MongoCompressor> compressors;
+  private final boolean retryWrites;
+
+  public MongoSettings(
+      int minPoolSize,
+      int maxPoolSize,
+      long maxIdleMillis,
+      long maxWaitMillis,
+      long connectTimeoutMillis,
+      long readTimeoutMillis,
+      long serverSelectionTimeoutMillis,
+      String compressors,
+      boolean retryWrites) {
+    this(
+        minPoolSize,
+        maxPoolSize,
+        maxIdleMillis,
+        maxWaitMillis,
+        connectTimeoutMillis,
+        readTimeoutMillis,
+        0,
+        serverSelectionTimeoutMillis,
+        compressors,
+        retryWrites);
+  }
+
+  @Autowired
+  public MongoSettings(
+      @Value("${bot.mongo.pool.min-size:2}") int minPoolSize,
+      @Value("${bot.mongo.pool.max-size:20}") int maxPoolSize,
+      @Value("${bot.mongo.pool.max-idle-ms:300000}") long maxIdleMillis,
+      @Value("${bot.mongo.pool.max-wait-ms:2000}") long maxWaitMillis,
+      @Value("${bot.mongo.connect-timeout-ms:5000}") long connectTimeoutMillis,
+      @Value("${bot.mongo.read-timeout-ms:10000}") long readTimeoutMillis,
+      @Value("${bot.mongo.schema.read-timeout-ms:0}") long schemaReadTimeoutMillis,
+      @Value("${bot.mongo.server-selection-timeout-ms:5000}") long serverSelectionTimeoutMillis,
+      @Value("${bot.mongo.compressors:zstd,snappy}") String compressors,
+      @Value("${bot.mongo.retry-writes:true}") boolean retryWrites) {
+    if (minPoolSize < 0 || maxPoolSize < 1 || minPoolSize > maxPoolSize) {
+      throw new IllegalArgumentException(
+          "Некорректный размер пула MongoDB: min=" + minPoolSize + ", max=" + maxPoolSize);
+    }
+    this.minPoolSize = minPoolSize;
+    this.maxPoolSize = maxPoolSize;
+    this.maxIdleMillis = maxIdleMillis;
+    this.maxWaitMillis = maxWaitMillis;
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.readTimeoutMillis = readTimeoutMillis;
+    this.schemaReadTimeoutMillis = schemaReadTimeoutMillis;
+    this.serverSelectionTimeoutMillis = serverSelectionTimeoutMillis;
+    this.compressors = parseCompressors(compressors);
+    this.retryWrites = retryWrites;
+  }
+
+  /**
+   * Собирает настройки клиента. Параметры из строки подключения перекрываются свойствами бота,
+   * поэтому одни и те же настройки получают синхронный и реактивный клиенты.
+   *
+   * @param connectionString адрес, учётные данные и база
+   * @param meterRegistry реестр для метрик команд и пула
+   */
+  public MongoClientSettings build(String connectionString, MeterRegistry meterRegistry) {
+    return build(connectionString, meterRegistry, minPoolSize, readTimeoutMillis);
+  }
+
+  /**
+   * Настройки клиента для индексов и миграций: таймаут чтения {@code
+   * bot.mongo.schema.read-timeout-ms}, соединения не держатся после подготовки схемы.
+   *
+   * @param connectionString адрес, учётные данные и база
+   * @param meterRegistry реестр для метрик команд и пула
+   */
+  public MongoClientSettings buildForSchema(String connectionString, MeterRegistry meterRegistry) {
+    return build(connectionString, meterRegistry, 0, schemaReadTimeoutMillis);
+  }
+
+  private MongoClientSettings build(
+      String connectionString, MeterRegistry meterRegistry, int minSize, long readTimeout) {
+    return MongoClientSettings.builder()
+        .applyConnectionString(new ConnectionString(connectionString))
+        .codecRegistry(BotCodecs.registry())
+        .applyToConnectionPoolSettings(
+            pool ->
+                pool.minSize(minSize)
+                    .maxSize(maxPoolSize)
+                    .maxConnectionIdleTime(maxIdleMillis, TimeUnit.MILLISECONDS)
+                    .maxWaitTime(maxWaitMillis, TimeUnit.MILLISECONDS)
+                    .addConnectionPoolListener(
+                        new MongoMetricsConnectionPoolListener(meterRegistry))
+                    .addConnectionPoolListener(new PoolWaitListener(meterRegistry)))
+        .applyToSocketSettings(
+            socket ->
+                socket
+                    .connectTimeout((int) connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .readTimeout((int) readTimeout, TimeUnit.MILLISECONDS))
+        .applyToClusterSettings(
+            cluster ->
+                cluster.serverSelectionTimeout(
+                    serverSelectionTimeoutMillis, TimeUnit.MILLISECONDS))
+        .compressorList(compressors)
+        .retryWrites(retryWrites)
+        .addCommandListener(new MongoMetricsCommandListener(meterRegistry))
+        .build();
+  }
+
+  /**
+   * Разбирает список алгоритмов сжатия в порядке предпочтения. Сервер выбирает первый, который
+   * поддерживает сам; пустая строка или {@code none} отключают сжатие.
+   *
+   * @param value имена через запятую: zstd, snappy, zlib
+   * @throws IllegalArgumentException неизвестный алгоритм
+   */
+  static List<MongoCompressor> parseCompressors(String value) {
+    List<MongoCompressor> result = new ArrayList<>();
+    if (value == null) {
+      return result;
+    }
+    for (String name : value.split(",")) {
+      switch (name.trim().toLowerCase(Locale.ROOT)) {
+        case "", "none" -> {}
+        case "zstd" -> result.add(MongoCompressor.createZstdCompressor());
+        case "snappy" -> result.add(MongoCompressor.createSnappyCompressor());
+        case "zlib" -> result.add(MongoCompressor.createZlibCompressor());
+        default ->
+            throw new IllegalArgumentException("Неизвестный алгоритм сжатия MongoDB: " + name);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Время ожидания соединения из пула: {@code mongodb.driver.pool.wait} с тегом outcome
+   * (acquired или причина отказа). Рост этого таймера при нормальном времени команд означает, что
+   * пул мал для нагрузки.
+   */
+  static final class PoolWaitListener implements ConnectionPoolListener {
+
+    private final Timer acquired;
+    private final Map<ConnectionCheckOutFailedEvent.Reason, Timer> failed =
+        new EnumMap<>(ConnectionCheckOutFailedEvent.Reason.class);
+
+    PoolWaitListener(MeterRegistry meterRegistry) {
+      this.acquired = timer(meterRegistry, "acquired");
+      for (ConnectionCheckOutFailedEvent.Reason reason :
+          ConnectionCheckOutFailedEvent.Reason.values()) {
+        failed.put(reason, timer(meterRegistry, reason.name().toLowerCase(Locale.ROOT)));
+      }
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String outcome) {
+      return Timer.builder("mongodb.driver.pool.wait")
+          .description("Ожидание соединения из пула MongoDB")
+          .tag("outcome", outcome)
+          .register(meterRegistry);
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+      acquired.record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+      failed
+          .get(event.getReason())
+          .record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+  }
+}
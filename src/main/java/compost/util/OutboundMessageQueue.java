@@ -0,0 +1,595 @@
+package compost.util;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import compost.storage.PartitionShareChangedEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+/**
+ * Асинхронная очередь исходящих сообщений с учётом лимитов Telegram.
+ *
+ * <p>Сообщения раскладываются по очередям чатов, порядок внутри чата сохраняется. Перед отправкой
+ * берутся токены из двух bucket'ов: общего на бота (~30 сообщений в секунду) и собственного у
+ * чата (~20 сообщений в минуту для групп, ~1 в секунду для личных чатов). Ответ 429
+ * приостанавливает чат на {@code retry_after} секунд, временные ошибки повторяются с
+ * экспоненциальной задержкой и джиттером. Если 429 за короткое окно получили несколько чатов,
+ * упёрся общий лимит бота: на {@code retry_after} приостанавливается вся отправка. Вызывающий
+ * поток возвращается сразу после постановки сообщения в очередь.
+ *
+ * <p>Длинную серию сообщений (например, упоминания всех участников) можно поставить ленивым
+ * источником: следующее сообщение берётся из него, только когда очередь чата дошла до отправки,
+ * поэтому серия не лежит в памяти целиком, пока лимит чата растягивает её на минуты.
+ *
+ * <p>В распределённом режиме у каждого обработчика своя очередь, а лимит бота общий: обработчик
+ * оставляет себе долю общего bucket'а по доле арендованных партиций ({@link
+ * PartitionShareChangedEvent}). Аренды не пересекаются, поэтому сумма долей не превышает лимит.
+ *
+ * <p>Очередь чата удаляется из таблицы, когда она пуста, не на паузе и её bucket полностью
+ * восстановился: новая очередь того же чата начнёт с полного bucket'а, и лимит не нарушится.
+ * Поэтому память не растёт с числом чатов, когда-либо получавших сообщения.
+ */
+@Component
+@Log4j2
+public class OutboundMessageQueue {
+
+  private static final int TOO_MANY_REQUESTS = 429;
+  private static final int DEFAULT_GLOBAL_PAUSE_CHATS = 2;
+  private static final long DEFAULT_GLOBAL_PAUSE_WINDOW_MS = 1_000;
+  private static final long LANE_SWEEP_INTERVAL_MS = 60_000;
+
+  private final TelegramSender sender;
+  private final TokenBucket globalBucket;
+  private final int groupPerMinute;
+  private final int privatePerSecond;
+  private final int maxQueueSize;
+  private final int maxAttempts;
+  private final long baseBackoffMs;
+  private final long maxBackoffMs;
+  private final int workers;
+  private final int globalPauseChats;
+  private final long globalPauseWindowNanos;
+  private final Ticker ticker;
+
+  private final Map<Long, ChatLane> lanes = new ConcurrentHashMap<>();
+  private final DelayQueue<LaneTicket> ready = new DelayQueue<>();
+  private final List<Thread> workerThreads = new ArrayList<>();
+  private volatile boolean running = true;
+  private final Deque<Throttle> recentThrottles = new ArrayDeque<>();
+  private final AtomicLong globalPausedUntilNanos;
+  private final AtomicLong nextSweepNanos;
+
+  private final AtomicInteger queued = new AtomicInteger();
+  private final AtomicLong sent = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong retried = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong globalPauses = new AtomicLong();
+  private final AtomicLong totalSendNanos = new AtomicLong();
+  private final AtomicLong maxSendNanos = new AtomicLong();
+  private final AtomicLong maxQueueLagNanos = new AtomicLong();
+
+  /**
+   * Общая пауза: если ответ 429 за {@code bot.outbound.global-pause-window-ms} получили не
+   * меньше {@code bot.outbound.global-pause-chats} разных чатов, приостанавливаются все чаты.
+   *
+   * @param ticker источник времени для лимитов, пауз и удаления простаивающих очередей
+   */
+  public OutboundMessageQueue(
+      TelegramSender sender,
+      @Value("${bot.outbound.global-per-second:30}") int globalPerSecond,
+      @Value("${bot.outbound.group-per-minute:20}") int groupPerMinute,
+      @Value("${bot.outbound.private-per-second:1}") int privatePerSecond,
+      @Value("${bot.outbound.max-queue-size:10000}") int maxQueueSize,
+      @Value("${bot.outbound.max-attempts:5}") int maxAttempts,
+      @Value("${bot.outbound.base-backoff-ms:500}") long baseBackoffMs,
+      @Value("${bot.outbound.max-backoff-ms:30000}") long maxBackoffMs,
+      @Value("${bot.outbound.workers:2}") int workers,
+      @Value("${bot.outbound.global-pause-chats:" + DEFAULT_GLOBAL_PAUSE_CHATS + "}")
+          int globalPauseChats,
+      @Value("${bot.outbound.global-pause-window-ms:" + DEFAULT_GLOBAL_PAUSE_WINDOW_MS + "}")
+          long globalPauseWindowMs,
+      Ticker ticker) {
+    this.sender = sender;
+    this.ticker = ticker;
+    long now = ticker.read();
+    this.globalBucket = new TokenBucket(globalPerSecond, 1, TimeUnit.SECONDS, now);
+    this.groupPerMinute = groupPerMinute;
+    this.privatePerSecond = privatePerSecond;
+    this.maxQueueSize = maxQueueSize;
+    this.maxAttempts = maxAttempts;
+    this.baseBackoffMs = baseBackoffMs;
+    this.maxBackoffMs = maxBackoffMs;
+    this.workers = workers;
+    this.globalPauseChats = globalPauseChats;
+    this.globalPauseWindowNanos = TimeUnit.MILLISECONDS.toNanos(globalPauseWindowMs);
+    this.globalPausedUntilNanos = new AtomicLong(now);
+    this.nextSweepNanos = new AtomicLong(now);
+  }
+
+  @PostConstruct
+  public void start() {
+    for (int i = 1; i <= workers; i++) {
+      Thread thread = new Thread(this::workLoop, "outbound-sender-" + i);
+      thread.setDaemon(true);
+      thread.start();
+      workerThreads.add(thread);
+    }
+  }
+
+  /** Пытается отправить оставшиеся сообщения до остановки приложения. */
+  @PreDestroy
+  public void shutdown() {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!workerThreads.isEmpty() && queued.get() > 0 && System.nanoTime() < deadline) {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    running = false;
+    workerThreads.forEach(Thread::interrupt);
+    if (queued.get() > 0) {
+      log.warn("При остановке не отправлено сообщений: {}", queued.get());
+    }
+  }
+
+  /**
+   * Ставит сообщение в очередь отправки.
+   *
+   * @param chatId ID чата получателя
+   * @param method метод Telegram API, отправляющий сообщение
+   * @return false, если очередь переполнена и сообщение отброшено
+   */
+  public boolean enqueue(Long chatId, BotApiMethod<Message> method) {
+    if (queued.incrementAndGet() > maxQueueSize) {
+      queued.decrementAndGet();
+      rejected.incrementAndGet();
+      log.error("Очередь отправки переполнена, сообщение в чат {} отброшено", chatId);
+      return false;
+    }
+    add(chatId, new Outbound(method, ticker.read()));
+    return true;
+  }
+
+  /**
+   * Ставит в очередь чата ленивую серию сообщений. Итератор вызывается из потока отправки, когда
+   * до серии дошла очередь, по одному сообщению; ошибка итератора прерывает серию.
+   *
+   * @param chatId ID чата получателя
+   * @param methods сообщения серии
+   * @return false, если очередь переполнена и серия отброшена
+   */
+  public boolean enqueueAll(Long chatId, Iterator<? extends BotApiMethod<Message>> methods) {
+    if (queued.incrementAndGet() > maxQueueSize) {
+      queued.decrementAndGet();
+      rejected.incrementAndGet();
+      log.error("Очередь отправки переполнена, серия сообщений в чат {} отброшена", chatId);
+      return false;
+    }
+    add(chatId, new Outbound(methods, ticker.read()));
+    return true;
+  }
+
+  private void add(Long chatId, Outbound outbound) {
+    while (true) {
+      // Очередь могла опустеть и удалиться между поиском и постановкой: тогда берём новую.
+      if (lanes.computeIfAbsent(chatId, this::newLane).add(outbound)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Удаляет из таблицы простаивающие очереди чатов. Вызывается потоками отправки раз в {@value
+   * #LANE_SWEEP_INTERVAL_MS} мс.
+   */
+  void retireIdleLanes() {
+    long now = ticker.read();
+    lanes.values().forEach(lane -> lane.retireIfIdle(now));
+  }
+
+  /** Пересчитывает долю общего лимита после перераспределения партиций кластера. */
+  @EventListener
+  public void onPartitionShareChanged(PartitionShareChangedEvent event) {
+    setGlobalShare(event.share());
+    log.info(
+        "Доля общего лимита отправки: {} из {} партиций", event.owned(), event.partitions());
+  }
+
+  /**
+   * Оставляет очереди долю общего лимита {@code bot.outbound.global-per-second}.
+   *
+   * @param share доля от 0 до 1
+   */
+  void setGlobalShare(double share) {
+    globalBucket.scale(share, ticker.read());
+  }
+
+  /** Возвращает текущие показатели очереди отправки. */
+  public OutboundStats getStats() {
+    long sentCount = sent.get();
+    return new OutboundStats(
+        queued.get(),
+        lanes.size(),
+        sentCount,
+        failed.get(),
+        retried.get(),
+        rejected.get(),
+        globalPauses.get(),
+        sentCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalSendNanos.get() / sentCount),
+        TimeUnit.NANOSECONDS.toMillis(maxSendNanos.get()),
+        TimeUnit.NANOSECONDS.toMillis(maxQueueLagNanos.get()));
+  }
+
+  private ChatLane newLane(Long chatId) {
+    // Отрицательные ID у групп, супергрупп и каналов.
+    long now = ticker.read();
+    TokenBucket bucket =
+        chatId < 0
+            ? new TokenBucket(groupPerMinute, 1, TimeUnit.MINUTES, now)
+            : new TokenBucket(privatePerSecond, 1, TimeUnit.SECONDS, now);
+    return new ChatLane(chatId, bucket);
+  }
+
+  private void workLoop() {
+    while (running) {
+      try {
+        LaneTicket ticket = ready.poll(LANE_SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (ticket != null) {
+          ticket.lane.sendNext();
+        }
+        sweepIfDue();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        log.error("Непредвиденная ошибка в потоке отправки: ", e);
+      }
+    }
+  }
+
+  private void sweepIfDue() {
+    long now = ticker.read();
+    long due = nextSweepNanos.get();
+    if (now - due >= 0
+        && nextSweepNanos.compareAndSet(
+            due, now + TimeUnit.MILLISECONDS.toNanos(LANE_SWEEP_INTERVAL_MS))) {
+      retireIdleLanes();
+    }
+  }
+
+  /**
+   * Учитывает ответ 429 в чате. Когда в окне набирается достаточно разных чатов, продлевает общую
+   * паузу до {@code untilNanos}.
+   */
+  private void onThrottled(Long chatId, long nowNanos, long untilNanos) {
+    synchronized (recentThrottles) {
+      recentThrottles.addLast(new Throttle(chatId, nowNanos));
+      while (nowNanos - recentThrottles.peekFirst().atNanos() > globalPauseWindowNanos) {
+        recentThrottles.pollFirst();
+      }
+      long chats = recentThrottles.stream().map(Throttle::chatId).distinct().count();
+      if (chats < globalPauseChats) {
+        return;
+      }
+      long previous =
+          globalPausedUntilNanos.getAndAccumulate(
+              untilNanos, (current, until) -> until - current > 0 ? until : current);
+      if (previous - nowNanos <= 0) {
+        globalPauses.incrementAndGet();
+        log.warn("Лимит Telegram в {} чатах за окно, вся отправка приостановлена на {} мс",
+            chats, TimeUnit.NANOSECONDS.toMillis(untilNanos - nowNanos));
+      }
+    }
+  }
+
+  private long backoffNanos(int attempt) {
+    long exp = Math.min(maxBackoffMs, baseBackoffMs << Math.min(attempt - 1, 20));
+    // Половина задержки фиксирована, половина случайна, чтобы повторы не шли синхронно.
+    long jittered = exp / 2 + ThreadLocalRandom.current().nextLong(exp / 2 + 1);
+    return TimeUnit.MILLISECONDS.toNanos(jittered);
+  }
+
+  private static boolean isRetryable(TelegramApiException e) {
+    if (e instanceof TelegramApiRequestException requestException
+        && requestException.getErrorCode() != null) {
+      int code = requestException.getErrorCode();
+      return code == TOO_MANY_REQUESTS || code >= 500;
+    }
+    // Сетевые ошибки без ответа сервера.
+    return true;
+  }
+
+  private static Integer retryAfterSeconds(TelegramApiException e) {
+    if (e instanceof TelegramApiRequestException requestException
+        && requestException.getParameters() != null) {
+      return requestException.getParameters().getRetryAfter();
+    }
+    return null;
+  }
+
+  /**
+   * Показатели очереди отправки.
+   *
+   * @param queued сообщений в очереди
+   * @param lanes очередей чатов в таблице
+   * @param sent успешно отправлено
+   * @param failed отброшено после исчерпания попыток или из-за неисправимой ошибки
+   * @param retried количество повторных попыток
+   * @param rejected отброшено из-за переполнения очереди
+   * @param globalPauses сколько раз приостанавливалась вся отправка
+   * @param avgSendMillis средняя длительность вызова Telegram API, мс
+   * @param maxSendMillis максимальная длительность вызова Telegram API, мс
+   * @param maxQueueLagMillis максимальное время от постановки в очередь до отправки, мс
+   */
+  public record OutboundStats(
+      int queued,
+      int lanes,
+      long sent,
+      long failed,
+      long retried,
+      long rejected,
+      long globalPauses,
+      long avgSendMillis,
+      long maxSendMillis,
+      long maxQueueLagMillis) {}
+
+  private record Throttle(Long chatId, long atNanos) {}
+
+  /** Сообщение или ленивая серия сообщений ({@code source}) в очереди чата. */
+  private static final class Outbound {
+    private final BotApiMethod<Message> method;
+    private final Iterator<? extends BotApiMethod<Message>> source;
+    private final long enqueuedAtNanos;
+    private int attempts;
+
+    private Outbound(BotApiMethod<Message> method, long enqueuedAtNanos) {
+      this.method = method;
+      this.source = null;
+      this.enqueuedAtNanos = enqueuedAtNanos;
+    }
+
+    private Outbound(Iterator<? extends BotApiMethod<Message>> source, long enqueuedAtNanos) {
+      this.method = null;
+      this.source = source;
+      this.enqueuedAtNanos = enqueuedAtNanos;
+    }
+  }
+
+  /** Билет в очереди готовности: очередь чата может отправлять начиная с readyAtNanos. */
+  private final class LaneTicket implements Delayed {
+    private final ChatLane lane;
+    private final long readyAtNanos;
+
+    private LaneTicket(ChatLane lane, long readyAtNanos) {
+      this.lane = lane;
+      this.readyAtNanos = readyAtNanos;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(readyAtNanos - ticker.read(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(readyAtNanos, ((LaneTicket) other).readyAtNanos);
+    }
+  }
+
+  /** Очередь одного чата. В очереди готовности находится не больше одного её билета. */
+  private final class ChatLane {
+    private final Long chatId;
+    private final TokenBucket bucket;
+    private final Deque<Outbound> messages = new ArrayDeque<>();
+    private boolean scheduled;
+    private boolean retired;
+    private long pausedUntilNanos;
+
+    private ChatLane(Long chatId, TokenBucket bucket) {
+      this.chatId = chatId;
+      this.bucket = bucket;
+    }
+
+    /** @return false, если очередь уже удалена из таблицы и сообщение нужно поставить заново */
+    private boolean add(Outbound outbound) {
+      synchronized (this) {
+        if (retired) {
+          return false;
+        }
+        messages.addLast(outbound);
+        if (scheduled) {
+          return true;
+        }
+        scheduled = true;
+      }
+      ready.put(new LaneTicket(this, ticker.read()));
+      return true;
+    }
+
+    /**
+     * Удаляет очередь из таблицы, если она простаивает и её bucket полон. Проверка и удаление
+     * выполняются атомарно внутри {@code compute}; признак retired не даёт поставить сообщение в
+     * уже удалённую очередь, иначе у чата оказались бы две очереди со своими лимитами.
+     */
+    private void retireIfIdle(long nowNanos) {
+      lanes.computeIfPresent(
+          chatId,
+          (id, lane) -> {
+            if (lane != this) {
+              return lane;
+            }
+            synchronized (this) {
+              if (scheduled
+                  || !messages.isEmpty()
+                  || pausedUntilNanos - nowNanos > 0
+                  || bucket.nanosUntilFull(nowNanos) > 0) {
+                return lane;
+              }
+              retired = true;
+              return null;
+            }
+          });
+    }
+
+    private void sendNext() {
+      long now = ticker.read();
+      Outbound next;
+      synchronized (this) {
+        next = messages.peekFirst();
+        if (next == null) {
+          scheduled = false;
+          return;
+        }
+        if (pausedUntilNanos - now > 0) {
+          rescheduleAt(pausedUntilNanos);
+          return;
+        }
+      }
+      long globalPause = globalPausedUntilNanos.get();
+      if (globalPause - now > 0) {
+        rescheduleAt(globalPause);
+        return;
+      }
+
+      long chatWait = bucket.nanosUntilAvailable(now);
+      if (chatWait > 0) {
+        rescheduleAt(now + chatWait);
+        return;
+      }
+      if (next.source != null) {
+        next = pull(next);
+        if (next == null) {
+          return;
+        }
+      }
+      long globalWait = globalBucket.tryAcquire(now);
+      if (globalWait > 0) {
+        rescheduleAt(now + globalWait);
+        return;
+      }
+      bucket.tryAcquire(now);
+
+      next.attempts++;
+      long start = ticker.read();
+      try {
+        sender.execute(next.method);
+        long finish = ticker.read();
+        sent.incrementAndGet();
+        totalSendNanos.addAndGet(finish - start);
+        maxSendNanos.accumulateAndGet(finish - start, Math::max);
+        maxQueueLagNanos.accumulateAndGet(finish - next.enqueuedAtNanos, Math::max);
+        complete();
+      } catch (TelegramApiException e) {
+        handleFailure(next, e);
+      } catch (RuntimeException e) {
+        log.error("Ошибка при отправке сообщения в чат {}: {}", chatId, e.getMessage(), e);
+        failed.incrementAndGet();
+        complete();
+      }
+    }
+
+    private void handleFailure(Outbound outbound, TelegramApiException e) {
+      Integer retryAfter = retryAfterSeconds(e);
+      if (retryAfter != null) {
+        // Telegram явно сообщил, сколько ждать: попытку не засчитываем.
+        outbound.attempts--;
+        retried.incrementAndGet();
+        long now = ticker.read();
+        long until = now + TimeUnit.SECONDS.toNanos(retryAfter);
+        log.warn("Лимит Telegram для чата {}, повтор через {} с", chatId, retryAfter);
+        synchronized (this) {
+          pausedUntilNanos = until;
+        }
+        onThrottled(chatId, now, until);
+        rescheduleAt(until);
+        return;
+      }
+
+      if (isRetryable(e) && outbound.attempts < maxAttempts) {
+        retried.incrementAndGet();
+        long delay = backoffNanos(outbound.attempts);
+        log.warn(
+            "Ошибка при отправке сообщения в чат {} (попытка {}), повтор через {} мс: {}",
+            chatId,
+            outbound.attempts,
+            TimeUnit.NANOSECONDS.toMillis(delay),
+            e.getMessage());
+        rescheduleAt(ticker.read() + delay);
+        return;
+      }
+
+      log.error("Ошибка при отправке сообщения: {}", e.getMessage(), e);
+      failed.incrementAndGet();
+      complete();
+    }
+
+    /**
+     * Берёт из серии следующее сообщение и ставит его перед ней. Исчерпанная (или сломанная)
+     * серия убирается из очереди.
+     *
+     * @return сообщение для отправки или null, если серия закончилась
+     */
+    private Outbound pull(Outbound series) {
+      BotApiMethod<Message> method = null;
+      try {
+        if (series.source.hasNext()) {
+          method = series.source.next();
+        }
+      } catch (RuntimeException e) {
+        log.error("Ошибка при подготовке серии сообщений в чат {}: ", chatId, e);
+        failed.incrementAndGet();
+      }
+      if (method == null) {
+        complete();
+        return null;
+      }
+      Outbound pulled = new Outbound(method, series.enqueuedAtNanos);
+      queued.incrementAndGet();
+      synchronized (this) {
+        messages.addFirst(pulled);
+      }
+      return pulled;
+    }
+
+    /** Убирает отправленное (или отброшенное) сообщение и планирует следующее. */
+    private void complete() {
+      synchronized (this) {
+        queued.decrementAndGet();
+        messages.pollFirst();
+        if (messages.isEmpty()) {
+          scheduled = false;
+          return;
+        }
+      }
+      rescheduleAt(ticker.read());
+    }
+
+    private void rescheduleAt(long readyAtNanos) {
+      ready.put(new LaneTicket(this, readyAtNanos));
+    }
+  }
+}
@@ -1,25 +1,80 @@
 package compost.util;
 
+import compost.bot.ClusterRole;
 import compost.bot.CodeCompostInspectorBot;
+import compost.bot.WebhookServer;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
+/**
+ * Запуск бота. В режиме {@code bot.mode=polling} (по умолчанию) бот регистрируется в
+ * DefaultBotSession и сам запрашивает обновления. В режиме {@code bot.mode=webhook} поднимается
+ * {@link WebhookServer}, а Telegram сообщается адрес из {@code bot.webhook.url}.
+ *
+ * <p>Обработчик кластера ({@code bot.cluster.role=worker}) обновления не запрашивает: их получает
+ * узел приёма, а обработчик только отправляет ответы. Не запрашивает их и тренировочный запуск
+ * ({@code bot.startup.training-run}), который только записывает архив классов AppCDS.
+ */
 @Configuration
 @RequiredArgsConstructor
 public class TelegramBotConfig {
 
   private final CodeCompostInspectorBot bot;
+  private final ObjectProvider<WebhookServer> webhookServer;
+
+  @Value("${bot.cluster.role:standalone}")
+  private ClusterRole role;
+
+  @Value("${bot.startup.training-run:false}")
+  private boolean trainingRun;
+
+  @Value("${bot.mode:polling}")
+  private String mode;
+
+  @Value("${bot.webhook.url:}")
+  private String webhookUrl;
+
+  @Value("${bot.webhook.secret-token:}")
+  private String webhookSecretToken;
+
+  @Value("${bot.webhook.max-connections:40}")
+  private int webhookMaxConnections;
 
   @PostConstruct
   public void startBot() {
+    if (role == ClusterRole.WORKER || trainingRun) {
+      return;
+    }
     try {
-      TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
-      botsApi.registerBot(bot);
+      if ("webhook".equals(mode)) {
+        startWebhook();
+      } else {
+        TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
+        botsApi.registerBot(bot);
+      }
     } catch (Exception e) {
       e.printStackTrace();
     }
   }
+
+  private void startWebhook() throws Exception {
+    webhookServer.getObject().start();
+
+    // Без публичного адреса сервер работает только локально (например, для записанных Update).
+    if (webhookUrl.isBlank()) {
+      return;
+    }
+    SetWebhook setWebhook = new SetWebhook(webhookUrl);
+    setWebhook.setMaxConnections(webhookMaxConnections);
+    if (!webhookSecretToken.isBlank()) {
+      setWebhook.setSecretToken(webhookSecretToken);
+    }
+    bot.execute(setWebhook);
+  }
 }
@@ -1,23 +1,67 @@
 package compost.util;
 
 import compost.bot.CodeCompostInspectorBot;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 
+/**
+ * Отправка через Telegram Bot API. Каждый вызов попадает в гистограмму {@code
+ * telegram.api.requests} с тегами method, outcome (success/error) и code (код ошибки Telegram,
+ * {@code network} для ошибок без ответа сервера).
+ */
 @Component
 public class TelegramSenderImpl implements TelegramSender {
 
+  private static final String TIMER = "telegram.api.requests";
+
   private final CodeCompostInspectorBot bot;
+  private final MeterRegistry registry;
 
-  public TelegramSenderImpl(@Lazy CodeCompostInspectorBot bot) {
+  public TelegramSenderImpl(@Lazy CodeCompostInspectorBot bot, MeterRegistry registry) {
     this.bot = bot;
+    this.registry = registry;
   }
 
   @Override
   public Message execute(BotApiMethod<Message> method) throws TelegramApiException {
-    return bot.sendMethod(method);
+    Timer.Sample sample = Timer.start(registry);
+    try {
+      Message message = bot.sendMethod(method);
+      sample.stop(timer(method, "success", "200"));
+      return message;
+    } catch (TelegramApiException e) {
+      sample.stop(timer(method, "error", errorCode(e)));
+      throw e;
+    } catch (RuntimeException e) {
+      sample.stop(timer(method, "error", "exception"));
+      throw e;
+    }
+  }
+
+  private Timer timer(BotApiMethod<Message> method, String outcome, String code) {
+    return Timer.builder(TIMER)
+        .description("Длительность вызова Telegram Bot API")
+        .tag("method", method.getMethod())
+        .tag("outcome", outcome)
+        .tag("code", code)
+        .publishPercentileHistogram()
+        .minimumExpectedValue(Duration.ofMillis(5))
+        .maximumExpectedValue(Duration.ofSeconds(30))
+        .register(registry);
+  }
+
+  private static String errorCode(TelegramApiException e) {
+    if (e instanceof TelegramApiRequestException requestException
+        && requestException.getErrorCode() != null) {
+      return requestException.getErrorCode().toString();
+    }
+    return "network";
   }
 }
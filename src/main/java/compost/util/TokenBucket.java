@@ -0,0 +1,96 @@
+package compost.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Простой token bucket: ёмкость {@code capacity} токенов, один токен восстанавливается каждые
+ * {@code refillPeriod / capacity}. Используется для соблюдения лимитов Telegram на отправку.
+ */
+public class TokenBucket {
+
+  private final double baseCapacity;
+  private final double baseTokensPerNano;
+  private double capacity;
+  private double tokensPerNano;
+  private double tokens;
+  private long lastRefillNanos;
+
+  /**
+   * @param capacity максимальное количество токенов (размер всплеска)
+   * @param refillPeriod за какое время восстанавливается {@code capacity} токенов
+   * @param unit единица измерения refillPeriod
+   * @param nowNanos время создания; bucket создаётся полным
+   */
+  public TokenBucket(int capacity, long refillPeriod, TimeUnit unit, long nowNanos) {
+    this.baseCapacity = capacity;
+    this.baseTokensPerNano = capacity / (double) unit.toNanos(refillPeriod);
+    this.capacity = baseCapacity;
+    this.tokensPerNano = baseTokensPerNano;
+    this.tokens = capacity;
+    this.lastRefillNanos = nowNanos;
+  }
+
+  /**
+   * Пытается забрать один токен.
+   *
+   * @param nowNanos текущее время в {@link System#nanoTime()}
+   * @return 0, если токен получен, иначе сколько наносекунд ждать до появления токена
+   */
+  public synchronized long tryAcquire(long nowNanos) {
+    long wait = nanosUntilAvailable(nowNanos);
+    if (wait == 0) {
+      tokens -= 1;
+    }
+    return wait;
+  }
+
+  /**
+   * Сколько наносекунд осталось до появления токена, без его списания.
+   *
+   * @param nowNanos текущее время в {@link System#nanoTime()}
+   * @return 0, если токен уже доступен
+   */
+  public synchronized long nanosUntilAvailable(long nowNanos) {
+    refill(nowNanos);
+    if (tokens >= 1) {
+      return 0;
+    }
+    return (long) Math.ceil((1 - tokens) / tokensPerNano);
+  }
+
+  /**
+   * Сколько наносекунд осталось до полного восстановления bucket'а.
+   *
+   * @param nowNanos текущее время в {@link System#nanoTime()}
+   * @return 0, если bucket полон и неотличим от только что созданного
+   */
+  public synchronized long nanosUntilFull(long nowNanos) {
+    refill(nowNanos);
+    if (tokens >= capacity) {
+      return 0;
+    }
+    return (long) Math.ceil((capacity - tokens) / tokensPerNano);
+  }
+
+  /**
+   * Оставляет bucket'у долю исходного лимита: скорость и размер всплеска умножаются на {@code
+   * share}, но всплеск не меньше одного токена. Лишние накопленные токены сгорают.
+   *
+   * @param share доля лимита, заданного при создании
+   * @param nowNanos текущее время в {@link System#nanoTime()}
+   */
+  public synchronized void scale(double share, long nowNanos) {
+    refill(nowNanos);
+    capacity = Math.max(1, baseCapacity * share);
+    tokensPerNano = baseTokensPerNano * share;
+    tokens = Math.min(tokens, capacity);
+  }
+
+  private void refill(long nowNanos) {
+    long elapsed = nowNanos - lastRefillNanos;
+    if (elapsed > 0) {
+      tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+      lastRefillNanos = nowNanos;
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package compost.bot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+
+import compost.storage.ActivityBucketRepository;
+import compost.storage.UpdateOffsetRepository;
+import compost.storage.UserActivityBuffer;
+import compost.storage.UserRepository;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+@DisplayName("Проверка учёта применённых обновлений AppliedUpdates.")
+public class AppliedUpdatesTests {
+
+  private final InMemoryOffsets offsets = new InMemoryOffsets();
+  private UserRepository userRepository;
+  private UserActivityBuffer activityBuffer;
+
+  @BeforeEach
+  void setUp() {
+    userRepository = mock(UserRepository.class);
+    activityBuffer =
+        new UserActivityBuffer(userRepository, mock(ActivityBucketRepository.class), 60_000, 1000);
+  }
+
+  @Test
+  @DisplayName("Watermark растёт только до самого старого обновления в обработке")
+  void testOutOfOrderCompletion() {
+    AppliedUpdates applied = new AppliedUpdates(offsets, activityBuffer, 64);
+    LongStream.rangeClosed(101, 105).forEach(id -> assertTrue(applied.begin(id)));
+
+    applied.complete(103);
+    applied.complete(104);
+    assertEquals(100, applied.getStats().watermark());
+    assertFalse(applied.begin(103), "завершённое обновление выше watermark");
+    assertFalse(applied.begin(102), "обновление ещё в обработке");
+
+    applied.complete(101);
+    assertEquals(101, applied.getStats().watermark());
+    applied.complete(102);
+    assertEquals(104, applied.getStats().watermark());
+    applied.complete(105);
+    assertEquals(105, applied.getStats().watermark());
+    assertEquals(2, applied.getStats().duplicates());
+  }
+
+  @Test
+  @DisplayName("После перезапуска повторы из сохранённого окна пропускаются, остальные выполняются")
+  void testRestoreAfterRestart() {
+    AppliedUpdates before = new AppliedUpdates(offsets, activityBuffer, 64);
+    LongStream.rangeClosed(1, 5).forEach(before::begin);
+    before.complete(1);
+    before.complete(2);
+    before.complete(4);
+    activityBuffer.flush();
+
+    AppliedUpdates after = new AppliedUpdates(offsets, activityBuffer, 64);
+    assertFalse(after.begin(1));
+    assertFalse(after.begin(2));
+    assertTrue(after.begin(3), "не завершилось до перезапуска");
+    assertFalse(after.begin(4));
+    assertTrue(after.begin(5), "не завершилось до перезапуска");
+    after.complete(3);
+    after.complete(5);
+    assertEquals(5, after.getStats().watermark());
+  }
+
+  @Test
+  @DisplayName("Позиция сохраняется только после успешной записи активности")
+  void testCheckpointFollowsActivityFlush() {
+    AppliedUpdates applied = new AppliedUpdates(offsets, activityBuffer, 64);
+    User user = new User();
+    user.setId(42L);
+    user.setFirstName("Анна");
+    applied.begin(7);
+    activityBuffer.record(-100L, user, true, Instant.now());
+    applied.complete(7);
+
+    doThrow(new IllegalStateException("mongo down"))
+        .when(userRepository)
+        .bulkUpsertUsers(anyLong(), anyList());
+    assertThrows(IllegalStateException.class, activityBuffer::flush);
+    assertNull(offsets.saved, "инкремент не записан — позиция не должна его опережать");
+    assertEquals(0, offsets.saves);
+
+    reset(userRepository);
+    activityBuffer.flush();
+    assertEquals(7, offsets.saved.watermark());
+
+    // Без новых обновлений позиция не перезаписывается
+    activityBuffer.flush();
+    assertEquals(1, offsets.saves);
+  }
+
+  @Test
+  @DisplayName("Инкремент обновления в обработке не записывается раньше его позиции")
+  void testInFlightIncrementIsHeldBack() {
+    AppliedUpdates applied = new AppliedUpdates(offsets, activityBuffer, 64);
+    User user = new User();
+    user.setId(42L);
+    user.setFirstName("Анна");
+    applied.begin(7);
+    activityBuffer.record(-100L, user, true, Instant.now(), 7);
+
+    activityBuffer.flush();
+    verify(userRepository, never()).bulkUpsertUsers(anyLong(), anyList());
+    assertNull(offsets.saved);
+    // Падение здесь: повтор обновления 7 выполнится и посчитает сообщение один раз
+    assertTrue(new AppliedUpdates(offsets, 64).begin(7));
+
+    applied.complete(7);
+    activityBuffer.flush();
+    verify(userRepository)
+        .bulkUpsertUsers(
+            anyLong(), argThat(b -> b.size() == 1 && b.iterator().next().increment() == 1));
+    assertEquals(7, offsets.saved.watermark());
+  }
+
+  @Test
+  @DisplayName("Отклонённое обновление выполняется при повторной доставке")
+  void testReleasedUpdateIsRedelivered() {
+    AppliedUpdates applied = new AppliedUpdates(offsets, activityBuffer, 64);
+    LongStream.rangeClosed(1, 3).forEach(applied::begin);
+    applied.complete(1);
+    applied.release(2);
+    applied.complete(3);
+    assertEquals(1, applied.getStats().watermark(), "watermark ждёт повтора обновления 2");
+
+    assertTrue(applied.begin(2));
+    assertFalse(applied.begin(3));
+    applied.complete(2);
+    assertEquals(3, applied.getStats().watermark());
+  }
+
+  @Test
+  @DisplayName("Долгая обработка сдвигает переполненное окно принудительно")
+  void testWindowOverflow() {
+    AppliedUpdates applied = new AppliedUpdates(offsets, activityBuffer, 8);
+    LongStream.rangeClosed(1, 20).forEach(applied::begin);
+    LongStream.rangeClosed(2, 20).forEach(applied::complete);
+
+    assertEquals(20, applied.getStats().watermark() + 8);
+    assertEquals(1, applied.getStats().inFlight());
+    assertTrue(applied.getStats().forcedSlides() > 0);
+    assertFalse(applied.begin(15));
+    applied.complete(1);
+    assertEquals(20, applied.getStats().watermark());
+  }
+
+  private static final class InMemoryOffsets implements UpdateOffsetRepository {
+    private Offset saved;
+    private int saves;
+
+    @Override
+    public Optional<Offset> load() {
+      return Optional.ofNullable(saved);
+    }
+
+    @Override
+    public void save(Offset offset) {
+      saved = offset;
+      saves++;
+    }
+  }
+}
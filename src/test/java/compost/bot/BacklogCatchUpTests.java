@@ -0,0 +1,147 @@
+package compost.bot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import compost.bot.handlers.CommandHandler;
+import compost.bot.handlers.UnknownCommandHandler;
+import compost.service.UserService;
+import compost.storage.StorageDriver;
+import compost.util.Constants;
+import compost.util.Constants.BotCommand;
+import compost.util.MessageUtils;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+@DisplayName("Проверка режима догоняния бэклога BacklogCatchUp.")
+public class BacklogCatchUpTests {
+
+  private final CommandHandler topHandler = mock(CommandHandler.class);
+  private final UserService userService = mock(UserService.class);
+  private final MessageUtils messageUtils = mock(MessageUtils.class);
+  private BacklogCatchUp catchUp;
+  private UpdateProcessor processor;
+
+  private static Update update(long chatId, String text, long ageSeconds) {
+    User user = new User();
+    user.setId(7L);
+    Message message = new Message();
+    message.setChat(new Chat(chatId, "supergroup"));
+    message.setFrom(user);
+    message.setText(text);
+    message.setMessageThreadId(Constants.ALLOWED_THREAD_ID);
+    message.setDate((int) (System.currentTimeMillis() / 1000 - ageSeconds));
+    Update update = new Update();
+    update.setMessage(message);
+    return update;
+  }
+
+  @BeforeEach
+  void setUp() {
+    Map<BotCommand, CommandHandler> handlers = new EnumMap<>(BotCommand.class);
+    handlers.put(BotCommand.TOP, topHandler);
+    CommandRouter router =
+        new CommandRouter(handlers, mock(UnknownCommandHandler.class), "CompostBot");
+    catchUp = new BacklogCatchUp(messageUtils, 120, true, 0, 50);
+    processor =
+        new UpdateProcessor(router, userService, messageUtils, catchUp, StorageDriver.SYNC);
+  }
+
+  @Test
+  @DisplayName("Устаревшая команда не выполняется, но активность автора учитывается")
+  void testStaleCommandSkipped() {
+    processor.process(update(-100L, "/top", 3600));
+
+    verify(topHandler, never()).handle(any());
+    // В корзины активности сообщение попадает по времени отправки, а не обработки.
+    verify(userService)
+        .handleUser(
+            eq(-100L),
+            any(),
+            anyBoolean(),
+            argThat(sentAt -> sentAt.isBefore(Instant.now().minusSeconds(3000))),
+            any());
+    assertTrue(catchUp.getStats().active());
+    assertEquals(1, catchUp.getStats().skippedCommands());
+  }
+
+  @Test
+  @DisplayName("Свежая команда выполняется как обычно")
+  void testFreshCommandExecuted() {
+    processor.process(update(-100L, "/top", 5));
+
+    verify(topHandler).handle(any());
+    assertFalse(catchUp.getStats().active());
+    assertEquals(0, catchUp.getStats().skippedCommands());
+  }
+
+  @Test
+  @DisplayName("Когда бэклог разобран, каждый чат получает одну сводку о пропущенных командах")
+  void testSummaryAfterBacklog() {
+    for (int i = 0; i < 5; i++) {
+      processor.process(update(-100L, "/top", 3600 - i));
+      processor.process(update(-200L, "привет", 3600 - i));
+    }
+    processor.process(update(-200L, "/top", 3000));
+    verify(messageUtils, never()).sendText(any(), any(), any());
+
+    processor.process(update(-300L, "/top", 1));
+
+    verify(topHandler).handle(any());
+    verify(messageUtils)
+        .sendText(eq(-100L), eq(Constants.ALLOWED_THREAD_ID), contains("команд: 5"));
+    verify(messageUtils)
+        .sendText(eq(-200L), eq(Constants.ALLOWED_THREAD_ID), contains("команд: 1"));
+    verify(messageUtils, times(2)).sendText(any(), any(), any());
+    assertFalse(catchUp.getStats().active());
+    assertEquals(11, catchUp.getStats().caughtUp());
+  }
+
+  @Test
+  @DisplayName("Без новых устаревших сообщений догоняние завершается по таймеру со сводкой")
+  void testIdleBacklogEndsCatchUp() throws InterruptedException {
+    processor.process(update(-100L, "/top", 3600));
+    catchUp.exitIfIdle();
+    assertTrue(catchUp.getStats().active(), "устаревшее сообщение только что пришло");
+
+    TimeUnit.MILLISECONDS.sleep(100);
+    catchUp.exitIfIdle();
+
+    assertFalse(catchUp.getStats().active());
+    verify(messageUtils)
+        .sendText(eq(-100L), eq(Constants.ALLOWED_THREAD_ID), contains("команд: 1"));
+  }
+
+  @Test
+  @DisplayName("Вне догоняния задержавшаяся команда выполняется")
+  void testStaleCommandExecutedAfterCatchUp() {
+    processor.process(update(-100L, "/top", 3600));
+    processor.process(update(-200L, "/top", 1));
+    verify(topHandler).handle(any());
+
+    // Очередь медленного чата отдаёт старую команду уже после завершения догоняния
+    processor.process(update(-300L, "/top", 600));
+
+    verify(topHandler, times(2)).handle(any());
+    assertEquals(1, catchUp.getStats().skippedCommands());
+  }
+}
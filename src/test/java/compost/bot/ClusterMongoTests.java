@@ -0,0 +1,231 @@
+package compost.bot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Indexes;
+import compost.storage.MongoPartitionLeases;
+import compost.storage.MongoUpdateOffsetRepository;
+import compost.storage.MongoUpdateQueue;
+import compost.storage.StorageDriver;
+import compost.storage.TestMongoServer;
+import compost.storage.UpdateQueue;
+import compost.storage.UserActivityBuffer;
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.log4j.Log4j2;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Проверка распределённого режима на MongoDB: узел приёма пишет в очередь, несколько обработчиков
+ * в отдельных JVM разбирают партиции, один из них убивается посреди работы. Обработчики
+ * подключаются по адресу {@link TestMongoServer}, поэтому в обычной сборке это сервер в памяти
+ * тестовой JVM, а для живой базы достаточно задать её адрес:
+ *
+ * <pre>
+ * mvn test -Dtest=ClusterMongoTests -Dmongo.test.uri=mongodb://localhost:27017
+ * </pre>
+ */
+@Log4j2
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@DisplayName("Проверка распределённого режима на MongoDB в нескольких JVM.")
+public class ClusterMongoTests {
+
+  private static final int PARTITIONS = 8;
+  private static final int WORKERS = 3;
+  private static final int CHATS = 40;
+  private static final int PER_CHAT = 50;
+  private static final String PROCESSED = "processed";
+
+  private TestMongoServer mongo;
+  private MongoDatabase database;
+  private final List<Process> nodes = new ArrayList<>();
+
+  @BeforeAll
+  void connect() {
+    mongo = TestMongoServer.start("tg_bot_cluster");
+    database = mongo.getDatabase();
+    database.getCollection("update_queue").createIndex(Indexes.ascending("partition", "seq"));
+  }
+
+  @AfterAll
+  void dropDatabase() throws InterruptedException {
+    for (Process node : nodes) {
+      node.destroyForcibly().waitFor();
+    }
+    mongo.close();
+  }
+
+  @Test
+  @DisplayName("Все обновления выполнены по порядку чата, партиции упавшего узла переназначены")
+  void testWorkerFailover() throws Exception {
+    AppliedUpdates applied =
+        new AppliedUpdates(
+            new MongoUpdateOffsetRepository(database), mock(UserActivityBuffer.class), 4096);
+    ClusterIngest ingest =
+        new ClusterIngest(new MongoUpdateQueue(database), applied, PARTITIONS, 3, 100);
+    Map<Integer, Long> lastByPartition = new HashMap<>();
+    int updateId = 1;
+    for (int i = 0; i < PER_CHAT; i++) {
+      for (long chatId = 1; chatId <= CHATS; chatId++) {
+        // Номера партиции в новой базе идут с 1, последний равен числу записей
+        lastByPartition.merge(UpdateQueue.partitionOf(-chatId, PARTITIONS), 1L, Long::sum);
+        assertTrue(ingest.dispatch(update(-chatId, updateId++)));
+      }
+    }
+    int total = CHATS * PER_CHAT;
+
+    for (int i = 0; i < WORKERS; i++) {
+      nodes.add(startNode("node-" + i));
+    }
+    MongoCollection<Document> processed = database.getCollection(PROCESSED);
+    waitFor(() -> processed.countDocuments() >= total / 4, 60);
+
+    // Жёсткое завершение: без освобождения аренд и ухода из списка живых
+    nodes.get(0).destroyForcibly().waitFor();
+    log.info("node-0 остановлен после {} обновлений", processed.countDocuments());
+
+    waitFor(() -> distinctUpdates(processed).size() == total, 120);
+    waitFor(() -> ownersOf(database).equals(Set.of("node-1", "node-2")), 30);
+
+    // Порядок внутри чата: первые появления update_id у каждого узла идут по возрастанию
+    Map<String, Map<Long, Long>> lastSeen = new HashMap<>();
+    Set<Long> firstSeen = new HashSet<>();
+    for (Document doc : processed.find().sort(Indexes.ascending("worker", "seq"))) {
+      long id = doc.getLong("updateId");
+      if (!firstSeen.add(id)) {
+        continue;
+      }
+      Map<Long, Long> byChat =
+          lastSeen.computeIfAbsent(doc.getString("worker"), k -> new HashMap<>());
+      Long previous = byChat.put(doc.getLong("chatId"), id);
+      assertTrue(previous == null || previous < id, "порядок чата " + doc.getLong("chatId"));
+    }
+    assertEquals(total, firstSeen.size());
+    // Очередь очищается подтверждением позиций при следующем сбросе буфера активности
+    MongoCollection<Document> queue = database.getCollection("update_queue");
+    waitFor(() -> queue.countDocuments() == 0, 30);
+    // Подтверждения дошли до последнего номера каждой партиции
+    for (Document lease : database.getCollection("partition_leases").find()) {
+      assertEquals(
+          lastByPartition.get(lease.getInteger("_id")),
+          lease.get("ackedUpTo", Number.class).longValue());
+    }
+  }
+
+  private Process startNode(String workerId) throws Exception {
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    return new ProcessBuilder(
+            java,
+            "-cp",
+            System.getProperty("java.class.path"),
+            Node.class.getName(),
+            mongo.getUri(),
+            database.getName(),
+            workerId)
+        .redirectErrorStream(true)
+        .redirectOutput(new File(System.getProperty("java.io.tmpdir"), workerId + ".log"))
+        .start();
+  }
+
+  private static Set<Long> distinctUpdates(MongoCollection<Document> processed) {
+    Set<Long> ids = new HashSet<>();
+    processed.distinct("updateId", Long.class).into(ids);
+    return ids;
+  }
+
+  private static Set<String> ownersOf(MongoDatabase database) {
+    Set<String> owners = new HashSet<>();
+    database.getCollection("partition_leases").distinct("owner", String.class).into(owners);
+    owners.remove(null);
+    return owners;
+  }
+
+  private static void waitFor(Check check, int seconds) throws Exception {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+    while (!check.done()) {
+      assertTrue(System.nanoTime() < deadline, "истекло ожидание " + seconds + " с");
+      TimeUnit.MILLISECONDS.sleep(200);
+    }
+  }
+
+  private static Update update(long chatId, int updateId) {
+    Chat chat = new Chat();
+    chat.setId(chatId);
+    Message message = new Message();
+    message.setChat(chat);
+    message.setText("/top");
+    Update update = new Update();
+    update.setUpdateId(updateId);
+    update.setMessage(message);
+    return update;
+  }
+
+  @FunctionalInterface
+  private interface Check {
+    boolean done();
+  }
+
+  /** Процесс-обработчик: вместо команд записывает выполненные обновления в коллекцию. */
+  public static final class Node {
+
+    public static void main(String[] args) throws InterruptedException {
+      MongoClient client = MongoClients.create(args[0]);
+      MongoDatabase database = client.getDatabase(args[1]);
+      String workerId = args[2];
+      MongoCollection<Document> processed = database.getCollection(PROCESSED);
+      AtomicLong seq = new AtomicLong();
+      UpdateProcessor recorder =
+          new UpdateProcessor(null, null, null, null, StorageDriver.SYNC) {
+            @Override
+            public void process(Update update) {
+              processed.insertOne(
+                  new Document("updateId", update.getUpdateId().longValue())
+                      .append("chatId", update.getMessage().getChatId())
+                      .append("worker", workerId)
+                      .append("seq", seq.incrementAndGet()));
+            }
+          };
+      // Записей активности нет, сброс только подтверждает позиции партиций
+      UserActivityBuffer activityBuffer = new UserActivityBuffer(null, null, 200, 1000);
+      activityBuffer.start();
+      PartitionWorker worker =
+          new PartitionWorker(
+              new MongoUpdateQueue(database),
+              new MongoPartitionLeases(database),
+              recorder,
+              event -> {},
+              activityBuffer,
+              workerId,
+              PARTITIONS,
+              2,
+              2_000,
+              500,
+              50,
+              20);
+      worker.start();
+      Thread.currentThread().join();
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package compost.bot;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+
+import compost.bot.handlers.CommandHandler;
+import compost.bot.handlers.UnknownCommandHandler;
+import compost.util.Constants.BotCommand;
+import java.util.EnumMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+@DisplayName("Проверка маршрутизатора команд CommandRouter.")
+public class CommandRouterTests {
+
+  private final Map<BotCommand, CommandHandler> handlers = new EnumMap<>(BotCommand.class);
+  private final UnknownCommandHandler unknown = mock(UnknownCommandHandler.class);
+  private CommandRouter router;
+
+  @BeforeEach
+  void setUp() {
+    for (BotCommand command : BotCommand.values()) {
+      if (command != BotCommand.PANIC) {
+        handlers.put(command, mock(CommandHandler.class));
+      }
+    }
+    router = new CommandRouter(handlers, unknown, "CompostBot");
+  }
+
+  @Test
+  @DisplayName("Каждая команда находит свой обработчик")
+  void testEveryCommand() {
+    for (BotCommand command : BotCommand.values()) {
+      CommandHandler expected = handlers.getOrDefault(command, unknown);
+      assertSame(expected, router.route(command.getCommand()), command.getCommand());
+      assertSame(expected, router.route(command.getCommandWithArg("x")), command.getCommand());
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {
+        "/TAGS",
+        "/Tags@CompostBot",
+        "/tags@compostbot аргументы",
+        "/tags@",
+        "/tags\n#тег",
+        "/tags\t#тег"
+      })
+  @DisplayName("Регистр, суффикс нашего бота и пробельные символы не мешают разбору")
+  void testCaseAndSuffix(String text) {
+    assertSame(handlers.get(BotCommand.TAGS), router.route(text));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"/tagsx", "/tag", "/", "/тег", "/top5", "/unknown@CompostBot"})
+  @DisplayName("Неизвестные команды уходят в UnknownCommandHandler")
+  void testUnknown(String text) {
+    assertSame(unknown, router.route(text));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"/tags@OtherBot", "/tags@CompostBot2", "/unknown@Other x", "/t@Compost"})
+  @DisplayName("Команды другим ботам игнорируются")
+  void testOtherBot(String text) {
+    assertNull(router.route(text));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"", "tags", "#tags /tags"})
+  @DisplayName("Текст без команды не маршрутизируется")
+  void testNotACommand(String text) {
+    assertNull(router.route(text));
+  }
+}
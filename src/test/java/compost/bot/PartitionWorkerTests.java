@@ -0,0 +1,464 @@
+package compost.bot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import compost.storage.ActivityBucketRepository;
+import compost.storage.PartitionAcquiredEvent;
+import compost.storage.PartitionLeases;
+import compost.storage.PartitionShareChangedEvent;
+import compost.storage.UpdateOffsetRepository;
+import compost.storage.UpdateQueue;
+import compost.storage.UserActivityBuffer;
+import compost.storage.UserRepository;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+@DisplayName("Проверка распределённого режима: ClusterIngest и PartitionWorker.")
+public class PartitionWorkerTests {
+
+  private static final int PARTITIONS = 8;
+
+  private final InMemoryUpdateQueue queue = new InMemoryUpdateQueue();
+  private final InMemoryPartitionLeases leases = new InMemoryPartitionLeases();
+  private final UpdateProcessor processor = mock(UpdateProcessor.class);
+  private final List<Object> published = new CopyOnWriteArrayList<>();
+  // Сбрасывается вручную: сброс подтверждает позиции партиций
+  private final UserActivityBuffer activityBuffer =
+      new UserActivityBuffer(
+          mock(UserRepository.class), mock(ActivityBucketRepository.class), 60_000, 1000);
+  private final List<PartitionWorker> workers = new ArrayList<>();
+
+  private static Update update(long chatId, int updateId) {
+    Chat chat = new Chat();
+    chat.setId(chatId);
+    Message message = new Message();
+    message.setChat(chat);
+    message.setText("/top");
+    Update update = new Update();
+    update.setUpdateId(updateId);
+    update.setMessage(message);
+    return update;
+  }
+
+  private static AppliedUpdates appliedUpdates() {
+    return new AppliedUpdates(
+        mock(UpdateOffsetRepository.class), mock(UserActivityBuffer.class), 4096);
+  }
+
+  private PartitionWorker worker(String id, long leaseTtlMs) {
+    PartitionWorker worker =
+        new PartitionWorker(
+            queue,
+            leases,
+            processor,
+            published::add,
+            activityBuffer,
+            id,
+            PARTITIONS,
+            2,
+            leaseTtlMs,
+            leaseTtlMs / 3,
+            10,
+            16);
+    workers.add(worker);
+    return worker;
+  }
+
+  @AfterEach
+  void tearDown() {
+    workers.forEach(PartitionWorker::shutdown);
+  }
+
+  @Test
+  @DisplayName("Партиции делятся поровну между живыми обработчиками")
+  void testRebalanceSplitsPartitions() {
+    PartitionWorker first = worker("w1", 60_000);
+    PartitionWorker second = worker("w2", 60_000);
+
+    first.rebalance();
+    assertEquals(PARTITIONS, first.ownedPartitions().size());
+    assertEquals(
+        PARTITIONS, published.stream().filter(PartitionAcquiredEvent.class::isInstance).count());
+    assertEquals(new PartitionShareChangedEvent(PARTITIONS, PARTITIONS), lastShareEvent());
+
+    // Второй видит двух живых, но все партиции заняты; первый отдаёт лишние на своём шаге
+    second.rebalance();
+    first.rebalance();
+    second.rebalance();
+
+    assertEquals(PARTITIONS / 2, first.ownedPartitions().size());
+    assertEquals(PARTITIONS / 2, second.ownedPartitions().size());
+    Set<Integer> all = new HashSet<>(first.ownedPartitions());
+    all.addAll(second.ownedPartitions());
+    assertEquals(PARTITIONS, all.size());
+    // Оба узла оставили себе половину общего лимита отправки
+    assertEquals(0.5, lastShareEvent().share());
+  }
+
+  private PartitionShareChangedEvent lastShareEvent() {
+    return published.stream()
+        .filter(PartitionShareChangedEvent.class::isInstance)
+        .map(PartitionShareChangedEvent.class::cast)
+        .reduce((previous, next) -> next)
+        .orElseThrow();
+  }
+
+  @Test
+  @DisplayName("Партиции упавшего обработчика забирает живой после истечения аренды")
+  void testDeadWorkerPartitionsAreTakenOver() throws InterruptedException {
+    PartitionWorker survivor = worker("w1", 300);
+    PartitionWorker dead = worker("w2", 300);
+    survivor.rebalance();
+    dead.rebalance();
+    survivor.rebalance();
+    dead.rebalance();
+    assertEquals(PARTITIONS / 2, dead.ownedPartitions().size());
+
+    // w2 больше не продлевает аренду и пульс, как упавший процесс
+    TimeUnit.MILLISECONDS.sleep(400);
+    survivor.rebalance();
+
+    assertEquals(PARTITIONS, survivor.ownedPartitions().size());
+  }
+
+  @Test
+  @DisplayName("Штатная остановка сразу освобождает партиции")
+  void testShutdownReleasesPartitions() {
+    PartitionWorker first = worker("w1", 60_000);
+    PartitionWorker second = worker("w2", 60_000);
+    first.rebalance();
+
+    first.shutdown();
+    workers.remove(first);
+    second.rebalance();
+
+    assertEquals(PARTITIONS, second.ownedPartitions().size());
+    assertEquals(1, leases.liveWorkers());
+  }
+
+  @Test
+  @DisplayName("Обновления из очереди выполняются по порядку внутри чата и удаляются")
+  void testIngestedUpdatesAreProcessedInOrder() throws InterruptedException {
+    int chats = 20;
+    int perChat = 30;
+    CountDownLatch done = new CountDownLatch(chats * perChat);
+    Map<Long, List<Integer>> seen = new ConcurrentHashMap<>();
+    doAnswer(
+            invocation -> {
+              Update update = invocation.getArgument(0);
+              seen.computeIfAbsent(
+                      update.getMessage().getChatId(), k -> new CopyOnWriteArrayList<>())
+                  .add(update.getUpdateId());
+              done.countDown();
+              return CompletableFuture.completedFuture(null);
+            })
+        .when(processor)
+        .processAsync(any());
+
+    ClusterIngest ingest = new ClusterIngest(queue, appliedUpdates(), PARTITIONS, 1, 0);
+    int updateId = 1;
+    for (int i = 0; i < perChat; i++) {
+      for (long chatId = 1; chatId <= chats; chatId++) {
+        assertTrue(ingest.dispatch(update(-chatId, updateId++)));
+      }
+    }
+    // Повтор того же update_id не попадает в очередь второй раз
+    assertTrue(ingest.dispatch(update(-1L, 1)));
+    assertEquals(1, ingest.getStats().duplicates());
+
+    PartitionWorker first = worker("w1", 60_000);
+    PartitionWorker second = worker("w2", 60_000);
+    first.rebalance();
+    second.rebalance();
+    first.rebalance();
+    second.rebalance();
+
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(chats, seen.size());
+    for (List<Integer> ids : seen.values()) {
+      assertEquals(perChat, ids.size());
+      for (int i = 1; i < ids.size(); i++) {
+        assertTrue(ids.get(i - 1) < ids.get(i), "порядок внутри чата: " + ids);
+      }
+    }
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (queue.size() > 0 && System.nanoTime() < deadline) {
+      activityBuffer.flush();
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    assertEquals(0, queue.size());
+  }
+
+  @Test
+  @DisplayName("Перехваченная аренда: координатор не ждёт пачку, а её подтверждение отклоняется")
+  void testStolenLeaseFencesBatch() throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch resume = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              started.countDown();
+              resume.await();
+              return CompletableFuture.completedFuture(null);
+            })
+        .when(processor)
+        .processAsync(any());
+    ClusterIngest ingest = new ClusterIngest(queue, appliedUpdates(), PARTITIONS, 1, 0);
+    for (int updateId = 1; updateId <= 3; updateId++) {
+      assertTrue(ingest.dispatch(update(-1L, updateId)));
+    }
+    int partition = UpdateQueue.partitionOf(-1L, PARTITIONS);
+    PartitionWorker worker = worker("w1", 60_000);
+    worker.rebalance();
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    // Партицию забрал другой узел, пока первое обновление ещё выполняется
+    leases.steal(partition, "w2");
+    assertTimeoutPreemptively(Duration.ofSeconds(2), worker::rebalance);
+    assertFalse(worker.ownedPartitions().contains(partition));
+    resume.countDown();
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (worker.getStats().processed() == 0 && System.nanoTime() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    TimeUnit.MILLISECONDS.sleep(100);
+    activityBuffer.flush();
+    // Пачка прервана после текущего обновления и не подтверждена: остаток выполнит w2
+    verify(processor, times(1)).processAsync(any());
+    assertEquals(0, leases.ackedUpTo(partition));
+    assertEquals(3, queue.size());
+    assertEquals(1, worker.getStats().lostLeases());
+  }
+
+  @Test
+  @DisplayName("Позиция партиции подтверждается сбросом буфера, с неё продолжает новый владелец")
+  void testPositionAdvancesOnFlush() throws InterruptedException {
+    List<Integer> seen = new CopyOnWriteArrayList<>();
+    doAnswer(
+            invocation -> {
+              Update update = invocation.getArgument(0);
+              seen.add(update.getUpdateId());
+              return CompletableFuture.completedFuture(null);
+            })
+        .when(processor)
+        .processAsync(any());
+    ClusterIngest ingest = new ClusterIngest(queue, appliedUpdates(), PARTITIONS, 1, 0);
+    for (int updateId = 1; updateId <= 3; updateId++) {
+      assertTrue(ingest.dispatch(update(-1L, updateId)));
+    }
+    int partition = UpdateQueue.partitionOf(-1L, PARTITIONS);
+    PartitionWorker first = worker("w1", 60_000);
+    first.rebalance();
+    awaitProcessed(first, 3);
+
+    // До сброса счётчики этих обновлений ещё в буфере: позиция не подтверждена
+    assertEquals(0, leases.ackedUpTo(partition));
+    assertEquals(3, queue.size());
+    activityBuffer.flush();
+    assertEquals(3, leases.ackedUpTo(partition));
+    assertEquals(0, queue.size());
+
+    assertTrue(ingest.dispatch(update(-1L, 4)));
+    awaitProcessed(first, 4);
+    // Аренда w1 истекает до сброса буфера: обновление 4 выполнит новый владелец, 1–3 — нет
+    leases.expire(partition);
+    PartitionWorker second = worker("w2", 60_000);
+    second.rebalance();
+    awaitProcessed(second, 1);
+
+    assertEquals(List.of(1, 2, 3, 4, 4), seen);
+  }
+
+  private static void awaitProcessed(PartitionWorker worker, long expected)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (worker.getStats().processed() < expected && System.nanoTime() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    assertEquals(expected, worker.getStats().processed());
+  }
+
+  @Test
+  @DisplayName("Узел приёма повторяет запись и отбрасывает обновление после последней попытки")
+  void testIngestRetries() {
+    AtomicInteger calls = new AtomicInteger();
+    UpdateQueue failing =
+        new InMemoryUpdateQueue() {
+          @Override
+          public boolean append(int partition, long updateId, long chatId, String payload) {
+            if (calls.incrementAndGet() < 3) {
+              throw new IllegalStateException("mongo down");
+            }
+            return super.append(partition, updateId, chatId, payload);
+          }
+        };
+
+    ClusterIngest patient = new ClusterIngest(failing, appliedUpdates(), PARTITIONS, 3, 0);
+    assertTrue(patient.dispatch(update(1L, 1)));
+    calls.set(-10);
+    ClusterIngest ingest = new ClusterIngest(failing, appliedUpdates(), PARTITIONS, 2, 0);
+    assertFalse(ingest.dispatch(update(1L, 2)));
+    assertEquals(1, ingest.getStats().failed());
+  }
+
+  /** Очередь в памяти с той же семантикой, что MongoUpdateQueue. */
+  private static class InMemoryUpdateQueue implements UpdateQueue {
+    private final Map<Integer, TreeMap<Long, QueuedUpdate>> partitions = new HashMap<>();
+    private final Map<Integer, Long> sequences = new HashMap<>();
+    private final Set<Long> updateIds = new HashSet<>();
+
+    @Override
+    public synchronized boolean append(
+        int partition, long updateId, long chatId, String payload) {
+      if (!updateIds.add(updateId)) {
+        return false;
+      }
+      long seq = sequences.merge(partition, 1L, Long::sum);
+      partitions
+          .computeIfAbsent(partition, k -> new TreeMap<>())
+          .put(seq, new QueuedUpdate(seq, updateId, chatId, payload));
+      return true;
+    }
+
+    @Override
+    public synchronized List<QueuedUpdate> poll(int partition, long afterSeq, int limit) {
+      return partitions.getOrDefault(partition, new TreeMap<>()).tailMap(afterSeq, false)
+          .values().stream()
+          .limit(limit)
+          .toList();
+    }
+
+    @Override
+    public synchronized void ack(int partition, long upToSeq) {
+      TreeMap<Long, QueuedUpdate> updates = partitions.get(partition);
+      if (updates != null) {
+        updates.headMap(upToSeq, true).values().forEach(q -> updateIds.remove(q.updateId()));
+        updates.headMap(upToSeq, true).clear();
+      }
+    }
+
+    synchronized int size() {
+      return partitions.values().stream().mapToInt(Map::size).sum();
+    }
+  }
+
+  /** Аренды в памяти с той же семантикой, что MongoPartitionLeases. */
+  private static final class InMemoryPartitionLeases implements PartitionLeases {
+    private final Map<String, Long> heartbeats = new HashMap<>();
+    private final Map<Integer, Lease> current = new HashMap<>();
+    private final Map<Integer, Long> expiries = new HashMap<>();
+    private final Map<Integer, Long> acked = new HashMap<>();
+
+    @Override
+    public synchronized void heartbeat(String workerId, Duration ttl) {
+      heartbeats.put(workerId, System.currentTimeMillis() + ttl.toMillis());
+    }
+
+    @Override
+    public synchronized void leave(String workerId) {
+      heartbeats.remove(workerId);
+    }
+
+    @Override
+    public synchronized int liveWorkers() {
+      long now = System.currentTimeMillis();
+      return (int) heartbeats.values().stream().filter(expiry -> expiry > now).count();
+    }
+
+    @Override
+    public synchronized Lease tryAcquire(int partition, String workerId, Duration ttl) {
+      Lease lease = current.get(partition);
+      if (lease != null
+          && lease.workerId() != null
+          && !lease.workerId().equals(workerId)
+          && expiries.get(partition) >= System.currentTimeMillis()) {
+        return null;
+      }
+      long epoch = lease == null ? 1 : lease.epoch() + 1;
+      Lease acquired =
+          new Lease(partition, workerId, epoch, acked.getOrDefault(partition, 0L));
+      current.put(partition, acquired);
+      expiries.put(partition, System.currentTimeMillis() + ttl.toMillis());
+      return acquired;
+    }
+
+    @Override
+    public synchronized boolean renew(Lease lease, Duration ttl) {
+      if (!owns(lease)) {
+        return false;
+      }
+      expiries.put(lease.partition(), System.currentTimeMillis() + ttl.toMillis());
+      return true;
+    }
+
+    @Override
+    public synchronized boolean holds(Lease lease) {
+      return owns(lease) && expiries.get(lease.partition()) > System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized boolean commit(Lease lease, long upToUpdateId) {
+      if (!holds(lease)) {
+        return false;
+      }
+      acked.merge(lease.partition(), upToUpdateId, Math::max);
+      return true;
+    }
+
+    @Override
+    public synchronized void release(Lease lease) {
+      if (owns(lease)) {
+        current.put(lease.partition(), new Lease(lease.partition(), null, lease.epoch(), 0));
+        expiries.put(lease.partition(), 0L);
+      }
+    }
+
+    /** Завершает аренду партиции, как будто владелец перестал её продлевать. */
+    synchronized void expire(int partition) {
+      expiries.put(partition, 0L);
+    }
+
+    /** Захватывает партицию в обход текущего владельца, как узел после истечения аренды. */
+    synchronized Lease steal(int partition, String workerId) {
+      expire(partition);
+      return tryAcquire(partition, workerId, Duration.ofMinutes(1));
+    }
+
+    synchronized long ackedUpTo(int partition) {
+      return acked.getOrDefault(partition, 0L);
+    }
+
+    private boolean owns(Lease lease) {
+      Lease owner = current.get(lease.partition());
+      return owner != null
+          && lease.workerId().equals(owner.workerId())
+          && lease.epoch() == owner.epoch();
+    }
+  }
+}
@@ -0,0 +1,340 @@
+package compost.bot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import compost.bot.UpdateDispatcher.RejectionPolicy;
+import compost.storage.UpdateOffsetRepository;
+import compost.storage.UserActivityBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.log4j.Log4j2;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+@Log4j2
+@DisplayName("Проверка диспетчера обновлений UpdateDispatcher.")
+public class UpdateDispatcherTests {
+
+  private final UpdateProcessor processor = mock(UpdateProcessor.class);
+  private final AppliedUpdates appliedUpdates =
+      new AppliedUpdates(
+          mock(UpdateOffsetRepository.class), mock(UserActivityBuffer.class), 4096);
+  private UpdateDispatcher dispatcher;
+
+  private static Update update(long chatId, int updateId) {
+    Chat chat = new Chat();
+    chat.setId(chatId);
+    Message message = new Message();
+    message.setChat(chat);
+    Update update = new Update();
+    update.setUpdateId(updateId);
+    update.setMessage(message);
+    return update;
+  }
+
+  @BeforeEach
+  void setUp() {
+    when(processor.processAsync(any())).thenCallRealMethod();
+  }
+
+  @AfterEach
+  void tearDown() {
+    dispatcher.shutdown();
+  }
+
+  @Test
+  @DisplayName("Порядок обновлений внутри чата сохраняется")
+  void testOrderWithinChat() throws InterruptedException {
+    dispatcher = new UpdateDispatcher(processor, appliedUpdates, 4, 1_000, RejectionPolicy.BLOCK);
+    Map<Long, List<Integer>> seen = new ConcurrentHashMap<>();
+    CountDownLatch done = new CountDownLatch(300);
+    doAnswer(
+            invocation -> {
+              Update update = invocation.getArgument(0);
+              seen.computeIfAbsent(
+                      update.getMessage().getChatId(), k -> new CopyOnWriteArrayList<>())
+                  .add(update.getUpdateId());
+              done.countDown();
+              return null;
+            })
+        .when(processor)
+        .process(any());
+
+    int updateId = 0;
+    for (int i = 0; i < 100; i++) {
+      for (long chatId = 1; chatId <= 3; chatId++) {
+        dispatcher.dispatch(update(chatId, ++updateId));
+      }
+    }
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    for (List<Integer> ids : seen.values()) {
+      assertEquals(100, ids.size());
+      for (int i = 1; i < ids.size(); i++) {
+        assertTrue(ids.get(i - 1) < ids.get(i));
+      }
+    }
+    // Счётчик processed увеличивается после возврата из process(), то есть после countDown
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (dispatcher.getProcessedCount() < 300 && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(300, dispatcher.getProcessedCount());
+  }
+
+  @Test
+  @DisplayName("Опустевшая очередь чата удаляется, новое обновление создаёт её заново")
+  void testIdleLaneIsRemoved() throws InterruptedException {
+    dispatcher = new UpdateDispatcher(processor, appliedUpdates, 2, 10, RejectionPolicy.BLOCK);
+    List<Integer> seen = new CopyOnWriteArrayList<>();
+    doAnswer(
+            invocation -> {
+              Update update = invocation.getArgument(0);
+              seen.add(update.getUpdateId());
+              return null;
+            })
+        .when(processor)
+        .process(any());
+
+    for (int round = 0; round < 50; round++) {
+      for (long chatId = 1; chatId <= 20; chatId++) {
+        dispatcher.dispatch(update(chatId, round * 20 + (int) chatId));
+      }
+    }
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!dispatcher.getChatStats().isEmpty() && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+
+    assertTrue(dispatcher.getChatStats().isEmpty());
+    assertEquals(1_000, dispatcher.getProcessedCount());
+    dispatcher.dispatch(update(1L, 1_001));
+    deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (seen.size() < 1_001 && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(1_001, seen.size());
+    assertEquals(1_001, seen.get(seen.size() - 1));
+  }
+
+  @Test
+  @DisplayName("Медленный чат не блокирует остальные чаты")
+  void testSlowChatDoesNotBlockOthers() throws InterruptedException {
+    dispatcher =
+        new UpdateDispatcher(processor, appliedUpdates, 2, 10, RejectionPolicy.DROP_NEWEST);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch fastDone = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              Update update = invocation.getArgument(0);
+              if (update.getMessage().getChatId() == 1L) {
+                release.await(5, TimeUnit.SECONDS);
+              } else {
+                fastDone.countDown();
+              }
+              return null;
+            })
+        .when(processor)
+        .process(any());
+
+    dispatcher.dispatch(update(1L, 1));
+    dispatcher.dispatch(update(2L, 2));
+
+    assertTrue(fastDone.await(2, TimeUnit.SECONDS));
+    release.countDown();
+  }
+
+  @Test
+  @DisplayName("При переполнении очереди чата новое обновление отбрасывается")
+  void testDropNewest() throws InterruptedException {
+    dispatcher = new UpdateDispatcher(processor, appliedUpdates, 1, 2, RejectionPolicy.DROP_NEWEST);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              started.countDown();
+              release.await(5, TimeUnit.SECONDS);
+              return null;
+            })
+        .when(processor)
+        .process(any());
+
+    assertTrue(dispatcher.dispatch(update(1L, 1)));
+    assertTrue(started.await(2, TimeUnit.SECONDS));
+    assertTrue(dispatcher.dispatch(update(1L, 2)));
+    assertTrue(dispatcher.dispatch(update(1L, 3)));
+    assertFalse(dispatcher.dispatch(update(1L, 4)));
+
+    log.info("stats: {}", dispatcher.getChatStats());
+    assertEquals(1, dispatcher.getChatStats().get(1L).dropped());
+    release.countDown();
+  }
+
+  @Test
+  @DisplayName("Асинхронная команда не занимает поток и не нарушает порядок внутри чата")
+  void testAsyncCommandParksLane() throws InterruptedException {
+    dispatcher = new UpdateDispatcher(processor, appliedUpdates, 1, 10, RejectionPolicy.BLOCK);
+    CompletableFuture<Void> pending = new CompletableFuture<>();
+    List<Integer> seen = new CopyOnWriteArrayList<>();
+    CountDownLatch otherChat = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              Update update = invocation.getArgument(0);
+              if (update.getMessage().getChatId() == 2L) {
+                otherChat.countDown();
+                return CompletableFuture.completedFuture(null);
+              }
+              seen.add(update.getUpdateId());
+              if (update.getUpdateId() == 1) {
+                return pending;
+              }
+              done.countDown();
+              return CompletableFuture.completedFuture(null);
+            })
+        .when(processor)
+        .processAsync(any());
+
+    dispatcher.dispatch(update(1L, 1));
+    dispatcher.dispatch(update(1L, 2));
+    dispatcher.dispatch(update(2L, 3));
+
+    // Единственный поток пула свободен, пока первая команда чата 1 ждёт завершения
+    assertTrue(otherChat.await(2, TimeUnit.SECONDS));
+    assertEquals(List.of(1), seen);
+
+    pending.complete(null);
+    assertTrue(done.await(2, TimeUnit.SECONDS));
+    assertEquals(List.of(1, 2), seen);
+  }
+
+  /** Переполняет очередь чата при DROP_NEWEST и ждёт обработки принятых обновлений 1–3. */
+  private void overflowAndDrain(String mode) throws InterruptedException {
+    dispatcher =
+        new UpdateDispatcher(
+            processor, appliedUpdates, 1, 2, RejectionPolicy.DROP_NEWEST, mode);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              started.countDown();
+              release.await(5, TimeUnit.SECONDS);
+              return null;
+            })
+        .when(processor)
+        .process(any());
+
+    dispatcher.dispatch(update(1L, 1));
+    assertTrue(started.await(2, TimeUnit.SECONDS));
+    dispatcher.dispatch(update(1L, 2));
+    dispatcher.dispatch(update(1L, 3));
+    assertFalse(dispatcher.dispatch(update(1L, 4)));
+    release.countDown();
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+    while (dispatcher.getProcessedCount() < 3 && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(3, dispatcher.getProcessedCount());
+  }
+
+  @Test
+  @DisplayName("При long polling отброшенное обновление не задерживает watermark")
+  void testRejectedUpdateIsCompletedUnderPolling() throws InterruptedException {
+    overflowAndDrain("polling");
+
+    assertEquals(4, appliedUpdates.getStats().watermark());
+    assertFalse(appliedUpdates.begin(4));
+  }
+
+  @Test
+  @DisplayName("Отклонённое webhook обновление ждёт повторной доставки")
+  void testRejectedUpdateIsReleasedUnderWebhook() throws InterruptedException {
+    overflowAndDrain("webhook");
+
+    assertEquals(3, appliedUpdates.getStats().watermark());
+    assertTrue(appliedUpdates.begin(4));
+  }
+
+  @Test
+  @DisplayName("Остановка пула снимает с обработки недообработанную очередь чата")
+  void testShutdownReleasesRemainingUpdates() throws InterruptedException {
+    dispatcher = new UpdateDispatcher(processor, appliedUpdates, 1, 100, RejectionPolicy.BLOCK);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              if (invocation.<Update>getArgument(0).getUpdateId() == 1) {
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+              }
+              return null;
+            })
+        .when(processor)
+        .process(any());
+
+    for (int updateId = 1; updateId <= 40; updateId++) {
+      dispatcher.dispatch(update(1L, updateId));
+    }
+    assertTrue(started.await(2, TimeUnit.SECONDS));
+    Thread stopper = new Thread(dispatcher::shutdown);
+    stopper.start();
+    Thread.sleep(100);
+    release.countDown();
+    stopper.join(5_000);
+
+    // Порция из 32 обновлений обработана, остальные 8 ждут повторной доставки
+    assertEquals(32, dispatcher.getProcessedCount());
+    assertEquals(0, appliedUpdates.getStats().inFlight());
+    assertEquals(32, appliedUpdates.getStats().watermark());
+    assertTrue(appliedUpdates.begin(40));
+    assertTrue(dispatcher.getChatStats().isEmpty());
+  }
+
+  @Test
+  @DisplayName("Повторно доставленное обновление не выполняется второй раз")
+  void testRedeliveredUpdateIsSkipped() throws InterruptedException {
+    dispatcher = new UpdateDispatcher(processor, appliedUpdates, 2, 10, RejectionPolicy.BLOCK);
+    List<Integer> seen = new CopyOnWriteArrayList<>();
+    CountDownLatch done = new CountDownLatch(3);
+    doAnswer(
+            invocation -> {
+              seen.add(invocation.<Update>getArgument(0).getUpdateId());
+              done.countDown();
+              return null;
+            })
+        .when(processor)
+        .process(any());
+
+    dispatcher.dispatch(update(1L, 10));
+    dispatcher.dispatch(update(2L, 11));
+    dispatcher.dispatch(update(1L, 10));
+    dispatcher.dispatch(update(1L, 12));
+    dispatcher.dispatch(update(2L, 11));
+
+    assertTrue(done.await(2, TimeUnit.SECONDS));
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+    while (appliedUpdates.getStats().watermark() < 12 && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(12, appliedUpdates.getStats().watermark());
+    assertEquals(2, appliedUpdates.getStats().duplicates());
+    assertEquals(List.of(10, 11, 12), seen.stream().sorted().toList());
+  }
+}
@@ -0,0 +1,120 @@
+package compost.bot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import lombok.extern.log4j.Log4j2;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+@Log4j2
+@DisplayName("Проверка приёма обновлений через webhook.")
+public class WebhookServerTests {
+
+  private static final String SECRET = "s3cr3t";
+
+  private final UpdateDispatcher dispatcher = mock(UpdateDispatcher.class);
+  private final HttpClient client = HttpClient.newHttpClient();
+  private WebhookServer server;
+
+  private static byte[] recordedUpdate() throws IOException {
+    try (InputStream in =
+        WebhookServerTests.class.getResourceAsStream("/updates/group-command.json")) {
+      return in.readAllBytes();
+    }
+  }
+
+  private HttpRequest.Builder request() {
+    return HttpRequest.newBuilder(
+        URI.create("http://localhost:" + server.getPort() + "/webhook"));
+  }
+
+  @BeforeEach
+  void setUp() throws IOException {
+    when(dispatcher.dispatch(any())).thenReturn(true);
+    server = new WebhookServer(dispatcher, "localhost", 0, "/webhook", SECRET, 2, 8);
+    server.start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.stop();
+  }
+
+  @Test
+  @DisplayName("Записанный Update передаётся в диспетчер")
+  void testRecordedUpdateIsDispatched() throws Exception {
+    HttpRequest request =
+        request()
+            .header(WebhookServer.SECRET_HEADER, SECRET)
+            .POST(BodyPublishers.ofByteArray(recordedUpdate()))
+            .build();
+
+    int status = client.send(request, BodyHandlers.discarding()).statusCode();
+
+    assertEquals(200, status);
+    ArgumentCaptor<Update> captor = ArgumentCaptor.forClass(Update.class);
+    verify(dispatcher).dispatch(captor.capture());
+    Update update = captor.getValue();
+    log.info("Получен update: {}", update);
+    assertEquals(812345671, update.getUpdateId());
+    assertEquals(-1001234567890L, update.getMessage().getChatId());
+    assertEquals("/top@codeCompostInspectorBot", update.getMessage().getText());
+    assertEquals(14282, update.getMessage().getMessageThreadId());
+  }
+
+  @Test
+  @DisplayName("Запрос без секрета отклоняется")
+  void testMissingSecretIsRejected() throws Exception {
+    HttpRequest request = request().POST(BodyPublishers.ofByteArray(recordedUpdate())).build();
+
+    assertEquals(401, client.send(request, BodyHandlers.discarding()).statusCode());
+    verify(dispatcher, never()).dispatch(any());
+  }
+
+  @Test
+  @DisplayName("Некорректный JSON и не-POST запросы отклоняются")
+  void testBadRequests() throws Exception {
+    HttpRequest badJson =
+        request()
+            .header(WebhookServer.SECRET_HEADER, SECRET)
+            .POST(BodyPublishers.ofString("{not json"))
+            .build();
+    HttpRequest get = request().GET().build();
+
+    assertEquals(400, client.send(badJson, BodyHandlers.discarding()).statusCode());
+    assertEquals(405, client.send(get, BodyHandlers.discarding()).statusCode());
+    verify(dispatcher, never()).dispatch(any());
+  }
+
+  @Test
+  @DisplayName("Отброшенное диспетчером обновление не подтверждается")
+  void testRejectedUpdateIsNotAcknowledged() throws Exception {
+    when(dispatcher.dispatch(any())).thenReturn(false);
+    HttpRequest request =
+        request()
+            .header(WebhookServer.SECRET_HEADER, SECRET)
+            .POST(BodyPublishers.ofByteArray(recordedUpdate()))
+            .build();
+
+    int status = client.send(request, BodyHandlers.discarding()).statusCode();
+
+    assertEquals(503, status);
+    verify(dispatcher).dispatch(any());
+  }
+}
@@ -0,0 +1,47 @@
+package compost.config;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+import org.telegram.telegrambots.meta.api.objects.ApiResponse;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+@DisplayName("Проверка подсказок нативного образа BotRuntimeHints.")
+public class BotRuntimeHintsTests {
+
+  private final RuntimeHints hints = new RuntimeHints();
+
+  @BeforeEach
+  void setUp() {
+    new BotRuntimeHints().registerHints(hints, getClass().getClassLoader());
+  }
+
+  @Test
+  @DisplayName("Модели Telegram, включая вложенные, доступны Jackson через рефлексию")
+  void testTelegramModels() {
+    for (Class<?> type : new Class<?>[] {Update.class, Message.class, Chat.class}) {
+      assertTrue(
+          RuntimeHintsPredicates.reflection()
+              .onType(type)
+              .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS)
+              .test(hints),
+          type.getSimpleName());
+    }
+    assertTrue(RuntimeHintsPredicates.reflection().onType(ApiResponse.class).test(hints));
+  }
+
+  @Test
+  @DisplayName("Конфигурация Log4j2 включена в образ")
+  void testLoggingResources() {
+    assertTrue(RuntimeHintsPredicates.resource().forResource("log4j2-spring.xml").test(hints));
+    assertTrue(
+        RuntimeHintsPredicates.resource().forResource("log4j2.component.properties").test(hints));
+  }
+}
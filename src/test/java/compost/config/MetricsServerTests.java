@@ -0,0 +1,65 @@
+package compost.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Проверка эндпоинта метрик MetricsServer.")
+public class MetricsServerTests {
+
+  private final PrometheusMeterRegistry registry =
+      new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+  private final HttpClient client = HttpClient.newHttpClient();
+  private MetricsServer server;
+
+  private HttpRequest.Builder request() {
+    return HttpRequest.newBuilder(
+        URI.create("http://localhost:" + server.getPort() + "/metrics"));
+  }
+
+  @BeforeEach
+  void setUp() {
+    server = new MetricsServer(registry, "localhost", 0, "/metrics");
+    server.start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.stop();
+  }
+
+  @Test
+  @DisplayName("GET отдаёт метрики в формате Prometheus")
+  void testScrape() throws Exception {
+    registry.counter("bot.updates.received").increment(3);
+
+    HttpResponse<String> response = client.send(request().GET().build(), BodyHandlers.ofString());
+
+    assertEquals(200, response.statusCode());
+    assertTrue(
+        response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+    assertTrue(response.body().contains("bot_updates_received_total 3.0"), response.body());
+  }
+
+  @Test
+  @DisplayName("Другие методы отклоняются")
+  void testPostRejected() throws Exception {
+    HttpResponse<Void> response =
+        client.send(
+            request().POST(BodyPublishers.ofString("")).build(), BodyHandlers.discarding());
+
+    assertEquals(405, response.statusCode());
+  }
+}
@@ -16,10 +16,14 @@ import compost.service.UserService;
 import compost.storage.MongoUserRepository.RankedUser;
 import compost.util.Constants.BotCommand;
 import compost.util.Constants.TagOperationResult;
+import compost.util.Constants.TopPeriod;
 import compost.util.MessageBuilder;
 import compost.util.MessageUtils;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 import lombok.extern.log4j.Log4j2;
 import org.junit.jupiter.api.DisplayName;
@@ -284,18 +288,27 @@ class CommandsHandlerTests {
         new SimpleUser(2L, null, "Second", null)
     );
 
-    String built = MessageBuilder.mentionAll(users);
-    when(userService.buildMentionAllMessage(chatId)).thenReturn(built);
+    String first = MessageBuilder.mentionAll(users.subList(0, 1));
+    String second = MessageBuilder.mentionAll(users.subList(1, 2));
+    Iterator<String> chunks = List.of(first, second).iterator();
+    when(userService.mentionAll(eq(chatId), any()))
+        .thenAnswer(
+            invocation -> {
+              Consumer<Iterator<String>> send = invocation.getArgument(1);
+              send.accept(chunks);
+              return CompletableFuture.completedFuture(null);
+            });
 
     String command = BotCommand.ALL.getCommand();
     CommandContext context = new CommandContext(chatId, threadId, null, command);
 
     allHandler.handle(context);
 
-    log.info("Ожидаемое сообщение:\n{}", built);
+    log.info("Ожидаемые сообщения:\n{}\n{}", first, second);
 
-    verify(userService).buildMentionAllMessage(chatId);
-    verify(messageUtils).sendText(chatId, threadId, built);
+    // Сообщения уходят в очередь отправки одной ленивой серией
+    verify(messageUtils).sendTexts(chatId, threadId, chunks);
+    verify(userService).mentionAll(eq(chatId), any());
     verifyNoMoreInteractions(userService, messageUtils);
 
     log.info("✅ Проверка для HelpCommandHandler прошла успешно.");
@@ -327,4 +340,61 @@ class CommandsHandlerTests {
 
     log.info("✅ Проверка для TopCommandHandler прошла успешно.");
   }
+
+  @DisplayName("Проверка bot/handlers/TopCommandHandler.java. Команда /top week")
+  @Test
+  void testHandle_topUsersForPeriod() {
+    long chatId = 9L;
+    int threadId = 3;
+    List<RankedUser> top =
+        List.of(new RankedUser(new SimpleUser(1L, "u1", "First", "User"), 4, 1));
+    String expectedText = MessageBuilder.topUsers(top, TopPeriod.WEEK);
+
+    when(userService.getTopUsers(chatId, TopPeriod.WEEK, 10)).thenReturn(top);
+
+    String command = BotCommand.TOP.getCommandWithArg("WEEK");
+    topHandler.handle(new CommandContext(chatId, threadId, null, command));
+
+    log.info("Ожидаемое сообщение:\n{}", expectedText);
+
+    verify(userService).getTopUsers(chatId, TopPeriod.WEEK, 10);
+    verify(messageUtils).sendText(chatId, threadId, expectedText);
+    verifyNoMoreInteractions(userService, messageUtils);
+  }
+
+  @DisplayName("Проверка bot/handlers/TopCommandHandler.java. Неблокирующая /top week")
+  @Test
+  void testHandleAsync_topUsersForPeriod() {
+    long chatId = 9L;
+    int threadId = 3;
+    List<RankedUser> top =
+        List.of(new RankedUser(new SimpleUser(1L, "u1", "First", "User"), 4, 1));
+    String expectedText = MessageBuilder.topUsers(top, TopPeriod.WEEK);
+
+    when(userService.getTopUsersAsync(chatId, TopPeriod.WEEK, 10))
+        .thenReturn(CompletableFuture.completedFuture(top));
+
+    String command = BotCommand.TOP.getCommandWithArg("WEEK");
+    topHandler
+        .handleAsync(new CommandContext(chatId, threadId, null, command))
+        .toCompletableFuture()
+        .join();
+
+    verify(userService).getTopUsersAsync(chatId, TopPeriod.WEEK, 10);
+    verify(messageUtils).sendText(chatId, threadId, expectedText);
+    verifyNoMoreInteractions(userService, messageUtils);
+  }
+
+  @DisplayName("Проверка bot/handlers/TopCommandHandler.java. Неизвестный период")
+  @Test
+  void testHandle_topUsersUnknownPeriod() {
+    long chatId = 9L;
+    int threadId = 3;
+
+    topHandler.handle(
+        new CommandContext(chatId, threadId, null, BotCommand.TOP.getCommandWithArg("year")));
+
+    verify(messageUtils).sendText(chatId, threadId, MessageBuilder.topUsage());
+    verifyNoMoreInteractions(userService, messageUtils);
+  }
 }
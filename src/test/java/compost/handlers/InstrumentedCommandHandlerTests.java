@@ -0,0 +1,67 @@
+package compost.handlers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import compost.bot.CodeCompostInspectorBot.CommandContext;
+import compost.bot.handlers.CommandHandler;
+import compost.bot.handlers.InstrumentedCommandHandler;
+import compost.util.Constants.BotCommand;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Проверка обёртки InstrumentedCommandHandler.")
+public class InstrumentedCommandHandlerTests {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final CommandHandler delegate = mock(CommandHandler.class);
+  private final CommandContext context = new CommandContext(1L, null, null, "/top");
+
+  private long count(String outcome) {
+    return registry
+        .get("bot.command.duration")
+        .tags("command", "top", "outcome", outcome)
+        .timer()
+        .count();
+  }
+
+  @Test
+  @DisplayName("Длительность обработчика пишется в таймер его команды с исходом")
+  void testTimer() {
+    InstrumentedCommandHandler handler =
+        new InstrumentedCommandHandler(BotCommand.TOP, delegate, registry, 1);
+
+    handler.handle(context);
+    handler.handle(context);
+    IllegalStateException error = new IllegalStateException("mongo");
+    doThrow(error).when(delegate).handle(any());
+    assertSame(error, assertThrows(IllegalStateException.class, () -> handler.handle(context)));
+
+    verify(delegate, times(3)).handle(context);
+    assertEquals(2, count("success"));
+    assertEquals(1, count("error"));
+  }
+
+  @Test
+  @DisplayName("Без выборки логов вызовы всё равно замеряются")
+  void testNoSampling() {
+    doNothing().when(delegate).handle(any());
+    InstrumentedCommandHandler handler =
+        new InstrumentedCommandHandler(BotCommand.TOP, delegate, registry, 0);
+
+    for (int i = 0; i < 10; i++) {
+      handler.handle(context);
+    }
+
+    assertEquals(10, count("success"));
+    assertSame(delegate, handler.getDelegate());
+  }
+}
@@ -0,0 +1,193 @@
+package compost.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import compost.model.SimpleUser;
+import compost.storage.ActivityBucketRepository;
+import compost.storage.MongoUserRepository.RankedUser;
+import compost.storage.UserActivityBuffer;
+import compost.storage.UserRepository;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+@DisplayName("Проверка таблицы лидеров ActivityLeaderboard.")
+public class ActivityLeaderboardTests {
+
+  private static final Instant NOW = Instant.now();
+  private static final Long CHAT_ID = -100L;
+
+  private UserRepository userRepository;
+  private UserActivityBuffer activityBuffer;
+  private ActivityLeaderboard leaderboard;
+
+  private static User user(long id, String firstName) {
+    User user = new User();
+    user.setId(id);
+    user.setFirstName(firstName);
+    return user;
+  }
+
+  private static RankedUser stored(long id, String firstName, int count, int rank) {
+    return new RankedUser(new SimpleUser(id, null, firstName, null), count, rank);
+  }
+
+  private static List<String> ranking(List<RankedUser> top) {
+    return top.stream()
+        .map(r -> r.rank() + ":" + r.user().getFirstName() + "=" + r.messageCount())
+        .toList();
+  }
+
+  @BeforeEach
+  void setUp() {
+    userRepository = mock(UserRepository.class);
+    activityBuffer =
+        new UserActivityBuffer(
+            userRepository, mock(ActivityBucketRepository.class), 60_000, 1000);
+    leaderboard = new ActivityLeaderboard(userRepository, activityBuffer, false, 0);
+  }
+
+  @AfterEach
+  void tearDown() {
+    leaderboard.shutdown();
+  }
+
+  @Test
+  @DisplayName("Загрузка чата учитывает ещё не записанные инкременты буфера")
+  void testLoadMergesPendingActivity() {
+    when(userRepository.getRanking(CHAT_ID))
+        .thenReturn(List.of(stored(1, "Анна", 5, 1), stored(2, "Борис", 4, 2)));
+    activityBuffer.record(CHAT_ID, user(2, "Борис"), true, NOW);
+    activityBuffer.record(CHAT_ID, user(2, "Борис"), true, NOW);
+    activityBuffer.record(CHAT_ID, user(3, "Вера"), true, NOW);
+
+    assertEquals(
+        List.of("1:Борис=6", "2:Анна=5", "3:Вера=1"),
+        ranking(leaderboard.getTopUsers(CHAT_ID, 10)));
+  }
+
+  @Test
+  @DisplayName("Инкременты меняют порядок без повторного запроса к базе")
+  void testIncrementsReorder() {
+    when(userRepository.getRanking(CHAT_ID))
+        .thenReturn(List.of(stored(1, "Анна", 2, 1), stored(2, "Борис", 1, 2)));
+    leaderboard.getTopUsers(CHAT_ID, 10);
+
+    leaderboard.record(CHAT_ID, user(2, "Борис"), true, NOW);
+    leaderboard.record(CHAT_ID, user(2, "Борис"), true, NOW);
+    leaderboard.record(CHAT_ID, user(1, "Анна"), false, NOW);
+
+    assertEquals(List.of("1:Борис=3", "2:Анна=2"), ranking(leaderboard.getTopUsers(CHAT_ID, 10)));
+    assertEquals(List.of("1:Борис=3"), ranking(leaderboard.getTopUsers(CHAT_ID, 1)));
+    verify(userRepository, times(1)).getRanking(CHAT_ID);
+  }
+
+  @Test
+  @DisplayName("При равенстве счётчиков выше пользователь с меньшим id")
+  void testTiesOrderedById() {
+    when(userRepository.getRanking(CHAT_ID))
+        .thenReturn(List.of(stored(7, "Семён", 3, 1), stored(4, "Дина", 3, 2)));
+
+    assertEquals(
+        List.of("1:Дина=3", "2:Семён=3"), ranking(leaderboard.getTopUsers(CHAT_ID, 10)));
+  }
+
+  @Test
+  @DisplayName("Активность в незагруженном чате не создаёт таблицу")
+  void testRecordIgnoresUnloadedChat() {
+    leaderboard.record(CHAT_ID, user(1, "Анна"), true, NOW);
+
+    assertEquals(0, leaderboard.getStats().chats());
+  }
+
+  @Test
+  @DisplayName("Активность во время загрузки чата учитывается один раз")
+  void testRecordDuringLoadIsCountedOnce() throws Exception {
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(userRepository.getRanking(CHAT_ID))
+        .thenAnswer(
+            invocation -> {
+              loading.countDown();
+              release.await(5, TimeUnit.SECONDS);
+              return List.of(stored(1, "Анна", 5, 1));
+            });
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<?> load = executor.submit(() -> leaderboard.getTopUsers(CHAT_ID, 10));
+      assertTrue(loading.await(5, TimeUnit.SECONDS));
+      Future<?> record =
+          executor.submit(() -> leaderboard.record(CHAT_ID, user(1, "Анна"), true, NOW));
+      Thread.sleep(100);
+      release.countDown();
+      load.get(5, TimeUnit.SECONDS);
+      record.get(5, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(List.of("1:Анна=6"), ranking(leaderboard.getTopUsers(CHAT_ID, 10)));
+    assertEquals(1, activityBuffer.pendingForChat(CHAT_ID).get(0).increment());
+  }
+
+  @Test
+  @DisplayName("Сверка заменяет разошедшуюся таблицу данными хранилища")
+  void testVerifyCorrectsDrift() {
+    when(userRepository.getRanking(CHAT_ID)).thenReturn(List.of(stored(1, "Анна", 2, 1)));
+    leaderboard.getTopUsers(CHAT_ID, 10);
+    assertEquals(0, leaderboard.verify());
+
+    when(userRepository.getRanking(CHAT_ID))
+        .thenReturn(List.of(stored(1, "Анна", 10, 1), stored(2, "Борис", 1, 2)));
+
+    assertEquals(1, leaderboard.verify());
+    assertEquals(
+        List.of("1:Анна=10", "2:Борис=1"), ranking(leaderboard.getTopUsers(CHAT_ID, 10)));
+    assertEquals(1, leaderboard.getStats().corrections());
+  }
+
+  @Test
+  @DisplayName("Сверка читает хранилище, не блокируя запись активности в чат")
+  void testVerifyDoesNotBlockRecord() throws Exception {
+    when(userRepository.getRanking(CHAT_ID)).thenReturn(List.of(stored(1, "Анна", 5, 1)));
+    leaderboard.getTopUsers(CHAT_ID, 10);
+    CountDownLatch reading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(userRepository.getRanking(CHAT_ID))
+        .thenAnswer(
+            invocation -> {
+              reading.countDown();
+              release.await(5, TimeUnit.SECONDS);
+              return List.of(stored(1, "Анна", 5, 1));
+            });
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Integer> verify = executor.submit(leaderboard::verify);
+      assertTrue(reading.await(5, TimeUnit.SECONDS));
+      executor
+          .submit(() -> leaderboard.record(CHAT_ID, user(1, "Анна"), true, NOW))
+          .get(1, TimeUnit.SECONDS);
+      release.countDown();
+
+      // Инкремент во время чтения остался в буфере и вошёл в новую таблицу
+      assertEquals(0, verify.get(5, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(List.of("1:Анна=6"), ranking(leaderboard.getTopUsers(CHAT_ID, 10)));
+  }
+}
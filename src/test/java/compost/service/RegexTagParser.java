@@ -0,0 +1,147 @@
+package compost.service;
+
+import static compost.util.Constants.TAG_PATTERN;
+
+import compost.service.TagService.ParsedTag;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Эталонный разбор тегов на регулярных выражениях — копия реализации TagService до перехода на
+ * {@link TagLexer}. Используется в дифференциальных тестах и бенчмарках лексера.
+ */
+@Log4j2
+public class RegexTagParser {
+
+  public String stripCommand(String command, String fullCommandText) {
+    if (fullCommandText == null || command == null) {
+      return "";
+    }
+
+    String commandName = command.startsWith("/") ? command.substring(1) : command;
+
+    String regex = "^/" + Pattern.quote(commandName) + "(?:@\\w+)?\\s*";
+
+    return fullCommandText.replaceFirst(regex, "").trim();
+  }
+
+  /**
+   * Парсит входной текст, извлекая из него теги и связанные описания. Поддерживает множественные
+   * теги и общие или индивидуальные описания.
+   *
+   * @param input строка для анализа
+   * @return список ParsedTag с валидными тегами и описаниями
+   */
+  public List<ParsedTag> parseInput(String input) {
+    log.debug("parseInput получен: '{}'", input);
+    if (input == null || input.isBlank()) {
+      log.debug("Input пустой или null.");
+      return List.of();
+    }
+
+    Matcher matcher = TAG_PATTERN.matcher(input);
+    List<String> tags = new ArrayList<>();
+    List<Integer> tagStarts = new ArrayList<>();
+    List<Integer> tagEnds = new ArrayList<>();
+
+    while (matcher.find()) {
+      String tag = matcher.group();
+      if (!isValidTag(tag)) {
+        log.debug("Невалидный тег '{}', пропускаем", tag);
+        continue;
+      }
+
+      tags.add(tag);
+      tagStarts.add(matcher.start());
+      tagEnds.add(matcher.end());
+    }
+
+    if (tags.isEmpty()) {
+      log.debug("Не найдено ни одного валидного тега");
+      return List.of(new ParsedTag(null, null));
+    }
+
+    List<ParsedTag> parsed = new ArrayList<>();
+
+    // Собираем все тексты между тегами
+    List<String> betweenTexts = new ArrayList<>();
+    for (int i = 0; i < tags.size(); i++) {
+      int start = tagEnds.get(i);
+      int end = (i + 1 < tagStarts.size()) ? tagStarts.get(i + 1) : input.length();
+      String between = input.substring(start, end).trim();
+
+      // Если текст содержит невалидный тег - игнорируем это описание
+      Matcher tagMatcher = TAG_PATTERN.matcher(between);
+      boolean containsInvalidTag = false;
+      while (tagMatcher.find()) {
+        String found = tagMatcher.group();
+        if (!isValidTag(found)) {
+          containsInvalidTag = true;
+          break;
+        }
+      }
+
+      betweenTexts.add(containsInvalidTag ? "" : between); // очищаем описание, если оно загрязнено
+    }
+
+    long nonEmptyCount = betweenTexts.stream().filter(s -> !s.isEmpty()).count();
+
+    if (nonEmptyCount == 1) {
+      // Только один фрагмент текста - считаем это общим описанием
+      String commonDescription =
+          betweenTexts.stream().filter(s -> !s.isEmpty()).findFirst().orElse("");
+      for (String tag : tags) {
+        parsed.add(new ParsedTag(tag, commonDescription));
+      }
+    } else {
+      // Несколько описаний
+      for (int i = 0; i < tags.size(); i++) {
+        String desc = (i < betweenTexts.size()) ? betweenTexts.get(i) : "";
+        parsed.add(new ParsedTag(tags.get(i), desc));
+      }
+    }
+
+    log.debug("Найдены теги: '{}'", tags);
+    log.debug(
+        "Описание для каждого тега: '{}'", parsed.stream().map(ParsedTag::description).toList());
+
+    return parsed;
+  }
+
+  /**
+   * Проверяет, является ли тег валидным. Должен начинаться с #, содержать 2-30 символов (буквы,
+   * цифры, подчёркивания), не состоять только из цифр и не содержать запрещённых символов.
+   *
+   * @param tag строка тега
+   * @return true если тег валиден, иначе false
+   */
+  public boolean isValidTag(String tag) {
+    if (tag == null || tag.isBlank()) {
+      return false;
+    }
+
+    // Нельзя числа
+    if (tag.matches("#\\d+")) {
+      return false;
+    }
+
+    // Допустимые символы: буквы, цифры, подчёркивания
+    // Длина 2-30, первый символ - решётка
+    if (!tag.matches("#[\\p{L}\\d_]{2,30}")) {
+      return false;
+    }
+
+    // Явно запрещаем символы
+    String disallowedSymbols = "/.,:'\\-()$*=";
+    for (char c : disallowedSymbols.toCharArray()) {
+      if (tag.indexOf(c) >= 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+}
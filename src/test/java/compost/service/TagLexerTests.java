@@ -0,0 +1,117 @@
+package compost.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import compost.util.Constants;
+import compost.util.Constants.BotCommand;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+@DisplayName("Дифференциальная проверка TagLexer против разбора на регулярных выражениях.")
+public class TagLexerTests {
+
+  /** Фрагменты, из которых собираются случайные входы: всё, что влияет на границы и валидность. */
+  private static final String[] FRAGMENTS = {
+    "#", "#", "#", "a", "Z", "я", "Ё", "ß", "0", "7", "_", "/", ".", ",", ":", "'", "-", "(", ")",
+    "$", "*", "=", " ", " ", "  ", "\n", "\t", " ", "!", "?", "@", "+", "😀", "𝐀", "٣", "́",
+    "тег", "описание", "1234", "_x", "abcdefghijklmnopqrstuvwxyz", "ёжик_42", "#bot", "##"
+  };
+
+  private static final RegexTagParser REFERENCE = new RegexTagParser();
+
+  static Stream<String> handPickedInputs() {
+    return Stream.of(
+        "",
+        "   ",
+        "#",
+        "#a",
+        "#ab",
+        "#12",
+        "#1a",
+        "#тег описание",
+        "#тег1 #тег2",
+        "#тег4 описание общий #тег3 #тег6",
+        "#тег4 #тег3 описание общий #тег6",
+        "#a1 первое #b2 второе #c3",
+        "#тег1_тег1 #тег2-тег2 #тег3//тег3",
+        "#good описание #bad/tag ещё текст #next",
+        "#bad/tag #good описание",
+        "#abcdefghijklmnopqrstuvwxyz1234",
+        "#abcdefghijklmnopqrstuvwxyz12345",
+        "#" + "a".repeat(50) + "#tag",
+        "#" + "a".repeat(51) + " #tag описание",
+        "#" + "a".repeat(60) + "bc",
+        "#𝐀𝐁 описание",
+        "#a😀 описание",
+        "#ab#cd описание",
+        "##ab описание",
+        "#ab\n\nмногострочное\nописание\n#cd",
+        "#аб описание ",
+        "текст до #тег и после",
+        "#12345 описание",
+        "#tag $dollar #tag2 (скобки)");
+  }
+
+  @ParameterizedTest(name = "[{index}] ''{0}''")
+  @MethodSource("handPickedInputs")
+  @DisplayName("Разбор совпадает с эталоном на подобранных входах")
+  void testHandPicked(String input) {
+    assertEquals(REFERENCE.parseInput(input), TagLexer.parse(input), input);
+    assertEquals(
+        Constants.TAG_PATTERN.matcher(input).matches(), TagLexer.isTagToken(input), input);
+  }
+
+  @Test
+  @DisplayName("Разбор совпадает с эталоном на случайных входах")
+  void testRandomInputs() {
+    Random random = new Random(20240611L);
+    for (int i = 0; i < 20_000; i++) {
+      StringBuilder input = new StringBuilder();
+      int parts = random.nextInt(40);
+      for (int j = 0; j < parts; j++) {
+        input.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+      }
+      String text = input.toString();
+
+      assertEquals(REFERENCE.parseInput(text), TagLexer.parse(text), text);
+      assertEquals(
+          Constants.TAG_PATTERN.matcher(text).matches(), TagLexer.isTagToken(text), text);
+    }
+  }
+
+  @Test
+  @DisplayName("Удаление команды совпадает с эталоном")
+  void testStripCommand() {
+    String[] commands = {BotCommand.ADDTAG.getCommand(), "deltag", "/all"};
+    String[] texts = {
+      "/addtag #тег",
+      "/addtag@CompostBot #тег описание",
+      "/addtag@ #тег",
+      "/addtag@@bot #тег",
+      "/addtag@bot_1\t\n#тег",
+      "/addtagx #тег",
+      "/ADDTAG #тег",
+      "  /addtag #тег",
+      "/deltag #тег",
+      "/deltag@bot",
+      "/all",
+      "#тег без команды",
+      "/",
+      ""
+    };
+    for (String command : commands) {
+      for (String text : texts) {
+        assertEquals(
+            REFERENCE.stripCommand(command, text),
+            TagLexer.stripCommand(command, text),
+            command + " | " + text);
+      }
+    }
+    assertEquals("", TagLexer.stripCommand(null, "/addtag"));
+    assertEquals("", TagLexer.stripCommand("/addtag", null));
+  }
+}
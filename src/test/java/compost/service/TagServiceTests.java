@@ -2,15 +2,20 @@ package compost.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.argThat;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import compost.service.TagService.ParsedTag;
 import compost.service.TagService.TagResult;
+import compost.storage.AsyncTagRepository;
 import compost.storage.TagRepository;
 import compost.util.Constants.BotCommand;
 import compost.util.Constants.CaseType;
 import compost.util.Constants.TagOperationResult;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -290,7 +295,7 @@ public class TagServiceTests {
   @BeforeEach
   void setUp() {
     MockitoAnnotations.openMocks(this);
-    tagService = new TagService(tagRepository);
+    tagService = new TagService(tagRepository, AsyncTagRepository.blocking(tagRepository));
   }
 
   @ParameterizedTest(name = "[{index}] {0}: {2}")
@@ -342,8 +347,21 @@ public class TagServiceTests {
     log.info("Тест '{}'. (input: '{}')", testDescription, input);
     log.info("ОР: '{}'", expectedResults);
 
-    when(tagRepository.getTags(chatId)).thenReturn(existingTags);
     when(tagRepository.getTagMap(chatId)).thenReturn(existingTagDescriptions);
+    when(tagRepository.applyTagChanges(eq(chatId), any()))
+        .thenAnswer(
+            invocation -> {
+              List<ParsedTag> tags = invocation.getArgument(1);
+              Map<String, TagOperationResult> outcomes = new HashMap<>();
+              for (ParsedTag tag : tags) {
+                outcomes.put(
+                    tag.tag(),
+                    existingTags.contains(tag.tag())
+                        ? TagOperationResult.UPDATED_DESCRIPTION
+                        : TagOperationResult.SUCCESS);
+              }
+              return outcomes;
+            });
 
     List<TagResult> actualResults = tagService.tryAddTag(chatId, input);
 
@@ -365,18 +383,22 @@ public class TagServiceTests {
         TagOperationResult op = result.result();
 
         switch (op) {
-          case SUCCESS -> {
+          case SUCCESS, UPDATED_DESCRIPTION -> {
             if (tag != null) {
-              verify(tagRepository).addTag(eq(chatId), eq(tag), any());
+              verify(tagRepository)
+                  .applyTagChanges(
+                      eq(chatId),
+                      argThat(tags -> tags.stream().anyMatch(t -> tag.equals(t.tag()))));
             }
           }
-          case UPDATED_DESCRIPTION ->
-              verify(tagRepository).batchUpdateTagDescription(eq(chatId), any());
           case CLEARED_DESCRIPTION ->
               verify(tagRepository).batchClearTagDescription(eq(chatId), eq(List.of(tag)));
           default -> {}
         }
       }
+      // Изменения применяются одним вызовом, без предварительного чтения тегов
+      verify(tagRepository, never()).getTags(chatId);
+      verify(tagRepository, never()).addTag(any(), any(), any());
     }
   }
 
@@ -397,5 +419,9 @@ public class TagServiceTests {
     log.info("ФР: \n{}", result);
 
     assertEquals(expected, result, "Сортировка и форматирование тегов не совпадают!");
+    assertEquals(
+        expected,
+        tagService.getFormattedTagListAsync(chatId).toCompletableFuture().join(),
+        "Асинхронный путь форматирует теги так же");
   }
 }
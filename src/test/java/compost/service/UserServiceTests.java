@@ -0,0 +1,209 @@
+package compost.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import compost.model.SimpleUser;
+import compost.storage.ActivityBucketRepository;
+import compost.storage.ActivityBucketRepository.Granularity;
+import compost.storage.AsyncActivityBucketRepository;
+import compost.storage.AsyncUserRepository;
+import compost.storage.MongoUserRepository.RankedUser;
+import compost.storage.UserActivityBuffer;
+import compost.storage.UserRepository;
+import compost.util.Constants.TopPeriod;
+import compost.util.MentionChunker;
+import compost.util.MessageBuilder;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.mockito.ArgumentCaptor;
+
+@DisplayName("Проверка UserService: рейтинг за период и упоминания всех участников.")
+public class UserServiceTests {
+
+  private static final Long CHAT_ID = -100L;
+
+  private UserRepository userRepository;
+  private ActivityBucketRepository bucketRepository;
+  private UserActivityBuffer activityBuffer;
+  private ActivityLeaderboard leaderboard;
+  private UserService userService;
+
+  @BeforeEach
+  void setUp() {
+    userRepository = mock(UserRepository.class);
+    bucketRepository = mock(ActivityBucketRepository.class);
+    activityBuffer = new UserActivityBuffer(userRepository, bucketRepository, 60_000, 1000);
+    leaderboard = new ActivityLeaderboard(userRepository, activityBuffer, false, 0);
+    userService =
+        new UserService(
+            userRepository,
+            AsyncUserRepository.blocking(userRepository),
+            bucketRepository,
+            AsyncActivityBucketRepository.blocking(bucketRepository),
+            activityBuffer,
+            leaderboard);
+  }
+
+  @AfterEach
+  void tearDown() {
+    leaderboard.shutdown();
+  }
+
+  @Test
+  @DisplayName("Рейтинг за неделю строится из суточных корзин и читает профили только топа")
+  void testWeekRanking() {
+    when(bucketRepository.countsSince(eq(CHAT_ID), eq(Granularity.DAILY), any()))
+        .thenReturn(Map.of(1L, 3, 2L, 7, 3L, 3, 4L, 1));
+    when(userRepository.getUsers(eq(CHAT_ID), anyCollection()))
+        .thenReturn(
+            List.of(
+                new SimpleUser(1L, "anna", "Анна", null),
+                new SimpleUser(2L, "boris", "Борис", null),
+                new SimpleUser(3L, "vera", "Вера", null)));
+
+    List<RankedUser> top = userService.getTopUsers(CHAT_ID, TopPeriod.WEEK, 3);
+
+    assertEquals(
+        List.of("1:boris=7", "2:anna=3", "3:vera=3"),
+        top.stream()
+            .map(r -> r.rank() + ":" + r.user().getUsername() + "=" + r.messageCount())
+            .toList());
+    verify(userRepository).getUsers(CHAT_ID, List.of(2L, 1L, 3L));
+  }
+
+  @Test
+  @DisplayName("Неблокирующий рейтинг за день совпадает с синхронным")
+  void testAsyncDayRankingMatchesSync() {
+    when(bucketRepository.countsSince(eq(CHAT_ID), eq(Granularity.HOURLY), any()))
+        .thenReturn(Map.of(1L, 2, 2L, 5));
+    when(userRepository.getUsers(eq(CHAT_ID), anyCollection()))
+        .thenReturn(
+            List.of(
+                new SimpleUser(1L, "anna", "Анна", null),
+                new SimpleUser(2L, "boris", "Борис", null)));
+
+    List<RankedUser> async =
+        userService.getTopUsersAsync(CHAT_ID, TopPeriod.DAY, 10).toCompletableFuture().join();
+
+    assertEquals(userService.getTopUsers(CHAT_ID, TopPeriod.DAY, 10), async);
+    assertEquals(2L, async.get(0).user().getId());
+  }
+
+  @ParameterizedTest
+  @EnumSource(value = TopPeriod.class, names = {"DAY", "WEEK", "MONTH"})
+  @DisplayName("Период покрывает нужное число корзин, включая текущую")
+  void testPeriodWindow(TopPeriod period) {
+    when(bucketRepository.countsSince(eq(CHAT_ID), any(), any())).thenReturn(Map.of());
+    Instant before = Instant.now();
+
+    assertTrue(userService.getTopUsers(CHAT_ID, period, 10).isEmpty());
+
+    ArgumentCaptor<Granularity> granularity = ArgumentCaptor.forClass(Granularity.class);
+    ArgumentCaptor<Instant> from = ArgumentCaptor.forClass(Instant.class);
+    verify(bucketRepository).countsSince(eq(CHAT_ID), granularity.capture(), from.capture());
+    Duration expected =
+        switch (period) {
+          case DAY -> Duration.ofHours(23);
+          case WEEK -> Duration.ofDays(6);
+          default -> Duration.ofDays(29);
+        };
+    assertEquals(
+        granularity.getValue().bucketStart(before).minus(expected), from.getValue());
+    verify(userRepository, never()).getUsers(any(), anyCollection());
+  }
+
+  @Test
+  @DisplayName("Упоминания строятся лениво, страницами по id")
+  void testMentionAllPagesLazily() {
+    List<SimpleUser> firstPage = new ArrayList<>();
+    for (long id = 1; id <= MentionChunker.MAX_MENTIONS; id++) {
+      firstPage.add(new SimpleUser(id, "u" + id, "Имя", null));
+    }
+    SimpleUser last = new SimpleUser(100L, "last", "Имя", null);
+    when(userRepository.getUsersAfter(CHAT_ID, null, MentionChunker.MAX_MENTIONS))
+        .thenReturn(firstPage);
+    when(userRepository.getUsersAfter(CHAT_ID, 50L, MentionChunker.MAX_MENTIONS))
+        .thenReturn(List.of(last));
+
+    List<Iterator<String>> series = new ArrayList<>();
+    userService.mentionAll(CHAT_ID, series::add);
+    assertEquals(1, series.size());
+    verify(userRepository, never()).getUsersAfter(CHAT_ID, 50L, MentionChunker.MAX_MENTIONS);
+
+    assertEquals(MessageBuilder.mentionAll(firstPage), series.get(0).next());
+    assertFalse(series.get(0).hasNext());
+    assertEquals(2, series.size());
+    assertTrue(series.get(1).next().contains("last"));
+    assertFalse(series.get(1).hasNext());
+    assertEquals(2, series.size());
+  }
+
+  @Test
+  @DisplayName("Поток отправки не ждёт чтения следующей страницы упоминаний")
+  void testMentionAllDoesNotWaitForStorage() {
+    List<SimpleUser> firstPage = new ArrayList<>();
+    for (long id = 1; id <= MentionChunker.MAX_MENTIONS; id++) {
+      firstPage.add(new SimpleUser(id, "u" + id, "Имя", null));
+    }
+    CompletableFuture<List<SimpleUser>> secondPage = new CompletableFuture<>();
+    AsyncUserRepository asyncUsers = mock(AsyncUserRepository.class);
+    when(asyncUsers.getUsersAfter(CHAT_ID, null, MentionChunker.MAX_MENTIONS))
+        .thenReturn(CompletableFuture.completedFuture(firstPage));
+    when(asyncUsers.getUsersAfter(CHAT_ID, 50L, MentionChunker.MAX_MENTIONS))
+        .thenReturn(secondPage);
+    UserService service =
+        new UserService(
+            userRepository,
+            asyncUsers,
+            bucketRepository,
+            AsyncActivityBucketRepository.blocking(bucketRepository),
+            activityBuffer,
+            leaderboard);
+
+    List<Iterator<String>> series = new ArrayList<>();
+    service.mentionAll(CHAT_ID, series::add);
+    series.get(0).next();
+    assertFalse(series.get(0).hasNext());
+    assertEquals(1, series.size());
+
+    secondPage.complete(List.of(new SimpleUser(100L, "last", "Имя", null)));
+    assertEquals(2, series.size());
+    assertTrue(series.get(1).next().contains("last"));
+    verify(userRepository, never()).getUsersAfter(any(), any(), anyInt());
+  }
+
+  @Test
+  @DisplayName("Чат без пользователей получает сообщение о пустом списке")
+  void testMentionAllEmptyChat() {
+    when(userRepository.getUsersAfter(CHAT_ID, null, MentionChunker.MAX_MENTIONS))
+        .thenReturn(List.of());
+
+    List<Iterator<String>> series = new ArrayList<>();
+    userService.mentionAll(CHAT_ID, series::add);
+
+    assertEquals(1, series.size());
+    assertEquals(MessageBuilder.noUsersInChat(), series.get(0).next());
+    assertFalse(series.get(0).hasNext());
+  }
+}
@@ -0,0 +1,142 @@
+package compost.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import compost.service.TagService.ParsedTag;
+import compost.util.Constants.TagOperationResult;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Проверка кэширующего репозитория тегов CachingTagRepository.")
+public class CachingTagRepositoryTests {
+
+  private static final Long CHAT_ID = -100L;
+
+  private MongoTagRepository delegate;
+  private CachingTagRepository repository;
+
+  @BeforeEach
+  void setUp() {
+    delegate = mock(MongoTagRepository.class);
+    when(delegate.getTagMap(CHAT_ID)).thenReturn(Map.of("java", "язык", "go", ""));
+    repository = new CachingTagRepository(delegate, 100, 30);
+  }
+
+  @Test
+  @DisplayName("Повторные чтения не обращаются к хранилищу")
+  void testReadsAreCached() {
+    assertEquals(Map.of("java", "язык", "go", ""), repository.getTagMap(CHAT_ID));
+    assertEquals(Set.of("java", "go"), repository.getTags(CHAT_ID));
+    repository.getTagMap(CHAT_ID);
+
+    verify(delegate, times(1)).getTagMap(CHAT_ID);
+    assertEquals(2, repository.getStats().hitCount());
+    assertEquals(1, repository.getStats().missCount());
+  }
+
+  @Test
+  @DisplayName("После миграции данных снимки загружаются заново")
+  void testSnapshotsDroppedAfterMigration() {
+    repository.getTagMap(CHAT_ID);
+    when(delegate.getTagMap(CHAT_ID)).thenReturn(Map.of("java", "язык", "go", "", "rust", ""));
+
+    repository.onSchemaMigrated(new SchemaMigratedEvent(List.of(2)));
+
+    assertEquals(Set.of("java", "go", "rust"), repository.getTags(CHAT_ID));
+    verify(delegate, times(2)).getTagMap(CHAT_ID);
+  }
+
+  @Test
+  @DisplayName("При захвате партиции сбрасываются только снимки её чатов")
+  void testSnapshotsDroppedForAcquiredPartition() {
+    Long otherChat = CHAT_ID + 1;
+    when(delegate.getTagMap(otherChat)).thenReturn(Map.of("go", ""));
+    repository.getTagMap(CHAT_ID);
+    repository.getTagMap(otherChat);
+
+    repository.onPartitionAcquired(
+        new PartitionAcquiredEvent(UpdateQueue.partitionOf(CHAT_ID, 2), 2));
+
+    assertEquals(Map.of("go", ""), repository.getCachedTagMap(otherChat));
+    assertNull(repository.getCachedTagMap(CHAT_ID));
+  }
+
+  @Test
+  @DisplayName("Записи применяются к снимку без повторной загрузки")
+  void testWritesUpdateSnapshot() {
+    repository.getTagMap(CHAT_ID);
+    when(delegate.addTag(CHAT_ID, "rust", "")).thenReturn(true);
+    when(delegate.removeTag(CHAT_ID, "go")).thenReturn(true);
+
+    repository.addTag(CHAT_ID, "rust", "");
+    repository.removeTag(CHAT_ID, "go");
+    repository.batchUpdateTagDescription(
+        CHAT_ID, List.of(new ParsedTag("rust", "новый"), new ParsedTag("missing", "нет")));
+    repository.batchClearTagDescription(CHAT_ID, List.of("java"));
+
+    assertEquals(Map.of("java", "", "rust", "новый"), repository.getTagMap(CHAT_ID));
+    verify(delegate, times(1)).getTagMap(CHAT_ID);
+  }
+
+  @Test
+  @DisplayName("Набор изменений применяется к снимку")
+  void testApplyTagChangesUpdatesSnapshot() {
+    repository.getTagMap(CHAT_ID);
+    List<ParsedTag> changes = List.of(new ParsedTag("go", "язык"), new ParsedTag("rust", ""));
+    Map<String, TagOperationResult> outcomes =
+        Map.of("go", TagOperationResult.UPDATED_DESCRIPTION, "rust", TagOperationResult.SUCCESS);
+    when(delegate.applyTagChanges(CHAT_ID, changes)).thenReturn(outcomes);
+
+    assertEquals(outcomes, repository.applyTagChanges(CHAT_ID, changes));
+    assertEquals(Map.of("java", "язык", "go", "язык", "rust", ""), repository.getTagMap(CHAT_ID));
+    verify(delegate, times(1)).getTagMap(CHAT_ID);
+  }
+
+  @Test
+  @DisplayName("Запись в незакэшированный чат не загружает его")
+  void testWriteDoesNotPopulate() {
+    repository.addTag(CHAT_ID, "rust", "");
+
+    assertEquals(0, repository.size());
+    verify(delegate, times(0)).getTagMap(anyLong());
+  }
+
+  @Test
+  @DisplayName("Неудачная запись сбрасывает снимок чата")
+  void testFailedWriteInvalidates() {
+    repository.getTagMap(CHAT_ID);
+    when(delegate.addTag(CHAT_ID, "rust", "")).thenThrow(new IllegalStateException("mongo"));
+
+    assertThrows(IllegalStateException.class, () -> repository.addTag(CHAT_ID, "rust", ""));
+    repository.getTagMap(CHAT_ID);
+
+    verify(delegate, times(2)).getTagMap(CHAT_ID);
+  }
+
+  @Test
+  @DisplayName("Реактивная запись тегов сбрасывает снимок, чтения берут его из кэша")
+  void testReactiveWriteInvalidates() {
+    AsyncTagRepository reactive = mock(AsyncTagRepository.class);
+    CachingAsyncTagRepository async = new CachingAsyncTagRepository(reactive, repository);
+    repository.getTagMap(CHAT_ID);
+    when(reactive.removeTag(CHAT_ID, "go")).thenReturn(CompletableFuture.completedFuture(true));
+
+    assertEquals(Set.of("java", "go"), async.getTags(CHAT_ID).toCompletableFuture().join());
+    async.removeTag(CHAT_ID, "go").toCompletableFuture().join();
+
+    assertEquals(0, repository.size());
+    verify(reactive, times(0)).getTags(anyLong());
+  }
+}
@@ -0,0 +1,237 @@
+package compost.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.ListIndexesIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexOptions;
+import compost.storage.MongoSchemaManager.CollScanPolicy;
+import compost.storage.MongoSchemaManager.Mode;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEventPublisher;
+
+@DisplayName("Проверка подготовки схемы MongoSchemaManager.")
+public class MongoSchemaManagerTests {
+
+  private static final Document IXSCAN_PLAN =
+      Document.parse(
+          "{queryPlanner: {winningPlan: {stage: 'FETCH', inputStage: {stage: 'IXSCAN'}}}}");
+  private static final Document SBE_COLLSCAN_PLAN =
+      Document.parse(
+          "{queryPlanner: {winningPlan: {queryPlan: {stage: 'SORT',"
+              + " inputStage: {stage: 'COLLSCAN'}}, slotBasedPlan: {}}}}");
+
+  private MongoDatabase database;
+  private MongoCollection<Document> collection;
+  private FindIterable<Document> find;
+  private ObjectProvider<SchemaMigration> noMigrations;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    database = mock(MongoDatabase.class);
+    collection = mock(MongoCollection.class);
+    find = mock(FindIterable.class);
+    when(database.getCollection(anyString())).thenReturn(collection);
+    when(collection.find(any(Bson.class))).thenReturn(find);
+    when(find.sort(any())).thenReturn(find);
+    when(find.projection(any())).thenReturn(find);
+    noMigrations = mock(ObjectProvider.class);
+    when(noMigrations.orderedStream()).thenAnswer(invocation -> Stream.empty());
+  }
+
+  private MongoSchemaManager manager(CollScanPolicy policy) {
+    return manager(Mode.OFF, policy);
+  }
+
+  private MongoSchemaManager manager(Mode mode, CollScanPolicy policy) {
+    return new MongoSchemaManager(database, noMigrations, mode, policy);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void existingIndexes(Document... indexes) {
+    ListIndexesIterable<Document> iterable = mock(ListIndexesIterable.class);
+    when(collection.listIndexes()).thenReturn(iterable);
+    when(iterable.iterator()).thenAnswer(invocation -> iterator(indexes));
+  }
+
+  @Test
+  @DisplayName("COLLSCAN находится во вложенных стадиях любого формата плана")
+  void testContainsStage() {
+    assertFalse(MongoSchemaManager.containsStage(IXSCAN_PLAN, "COLLSCAN"));
+    assertTrue(MongoSchemaManager.containsStage(SBE_COLLSCAN_PLAN, "COLLSCAN"));
+    assertTrue(
+        MongoSchemaManager.containsStage(
+            Document.parse("{stage: 'OR', inputStages: [{stage: 'IXSCAN'}, {stage: 'COLLSCAN'}]}"),
+            "COLLSCAN"));
+  }
+
+  @Test
+  @DisplayName("Планы с индексами проходят проверку")
+  void testIndexedPlansPass() {
+    when(find.explain()).thenReturn(IXSCAN_PLAN);
+    MongoSchemaManager manager = manager(CollScanPolicy.FAIL);
+
+    assertTrue(manager.checkQueryPlans().isEmpty());
+  }
+
+  @Test
+  @DisplayName("Политика WARN перечисляет запросы с COLLSCAN")
+  void testCollScanWarns() {
+    when(find.explain()).thenReturn(SBE_COLLSCAN_PLAN);
+    MongoSchemaManager manager = manager(CollScanPolicy.WARN);
+
+    assertEquals(MongoSchemaManager.PROBES.size(), manager.checkQueryPlans().size());
+  }
+
+  @Test
+  @DisplayName("Политика FAIL прерывает запуск при COLLSCAN")
+  void testCollScanFails() {
+    when(find.explain()).thenReturn(SBE_COLLSCAN_PLAN);
+    MongoSchemaManager manager = manager(CollScanPolicy.FAIL);
+
+    assertThrows(IllegalStateException.class, manager::checkQueryPlans);
+  }
+
+  @Test
+  @DisplayName("Обязательный индекс создаётся синхронно, существующий не пересоздаётся")
+  void testRequiredIndexIsCreated() {
+    existingIndexes();
+    manager(Mode.ASYNC, CollScanPolicy.WARN).ensureRequiredIndexes();
+    verify(collection).createIndex(any(Bson.class), any(IndexOptions.class));
+
+    reset(collection);
+    existingIndexes(new Document("name", "chatId_id"));
+    manager(Mode.ASYNC, CollScanPolicy.WARN).ensureRequiredIndexes();
+    verify(collection, never()).createIndex(any(Bson.class), any(IndexOptions.class));
+  }
+
+  @Test
+  @DisplayName("Без обязательного индекса запуск прерывается")
+  void testMissingRequiredIndexAbortsStartup() {
+    existingIndexes();
+    when(collection.createIndex(any(Bson.class), any(IndexOptions.class)))
+        .thenThrow(new MongoException("E11000 duplicate key error"));
+    assertThrows(
+        IllegalStateException.class,
+        manager(Mode.SYNC, CollScanPolicy.WARN)::ensureRequiredIndexes);
+
+    // В режиме OFF индекс не создаётся, но и без него запуск не продолжается
+    reset(collection);
+    existingIndexes();
+    assertThrows(
+        IllegalStateException.class, manager(Mode.OFF, CollScanPolicy.WARN)::ensureRequiredIndexes);
+    verify(collection, never()).createIndex(any(Bson.class), any(IndexOptions.class));
+  }
+
+  @Test
+  @DisplayName("Уже применённые миграции не выполняются повторно")
+  void testAppliedMigrationsAreSkipped() {
+    Document applied = new Document("_id", 1);
+    when(collection.find()).thenReturn(find);
+    when(find.iterator()).thenAnswer(invocation -> iterator(applied));
+    MongoSchemaManager manager = manager(CollScanPolicy.WARN);
+
+    ApplicationEventPublisher publisher = mock(ApplicationEventPublisher.class);
+    manager.setApplicationEventPublisher(publisher);
+
+    assertEquals(0, manager.migrate());
+    verify(collection, never()).insertOne(any());
+    verify(publisher, never()).publishEvent(any(Object.class));
+  }
+
+  @Test
+  @DisplayName("Новая миграция выполняется и записывает свою версию")
+  void testPendingMigrationIsApplied() {
+    when(collection.find()).thenReturn(find);
+    when(find.iterator()).thenAnswer(invocation -> iterator());
+    MongoSchemaManager manager = manager(CollScanPolicy.WARN);
+    ApplicationEventPublisher publisher = mock(ApplicationEventPublisher.class);
+    manager.setApplicationEventPublisher(publisher);
+
+    assertEquals(MongoSchemaManager.BUILTIN_MIGRATIONS.size(), manager.migrate());
+    verify(collection).updateMany(any(Bson.class), any(Bson.class));
+    verify(collection).insertOne(any(Document.class));
+    // Кэши сбрасывают снимки, прочитанные до окончания миграций
+    verify(publisher).publishEvent(new SchemaMigratedEvent(List.of(1)));
+  }
+
+  @Test
+  @DisplayName("Обязательная миграция выполняется при создании бина, остальные ждут фона")
+  void testRequiredMigrationIsAppliedSynchronously() {
+    SchemaMigration required = mock(SchemaMigration.class);
+    when(required.version()).thenReturn(2);
+    when(required.description()).thenReturn("обязательная");
+    when(required.required()).thenReturn(true);
+    when(noMigrations.orderedStream()).thenAnswer(invocation -> Stream.of(required));
+    when(collection.find()).thenReturn(find);
+    when(find.iterator()).thenAnswer(invocation -> iterator());
+    MongoSchemaManager manager = manager(Mode.ASYNC, CollScanPolicy.WARN);
+    ApplicationEventPublisher publisher = mock(ApplicationEventPublisher.class);
+    manager.setApplicationEventPublisher(publisher);
+
+    assertEquals(1, manager.migrateRequired());
+    verify(required).apply(database);
+    // Встроенная миграция 1 не обязательная и выполняется позже
+    verify(collection, never()).updateMany(any(Bson.class), any(Bson.class));
+    verify(collection).insertOne(any(Document.class));
+    // Репозитории и кэши создаются после, сбрасывать им нечего
+    verify(publisher, never()).publishEvent(any(Object.class));
+  }
+
+  @Test
+  @DisplayName("В режиме OFF неприменённая обязательная миграция прерывает запуск")
+  void testMissingRequiredMigrationAbortsStartup() {
+    SchemaMigration required = mock(SchemaMigration.class);
+    when(required.version()).thenReturn(2);
+    when(required.description()).thenReturn("обязательная");
+    when(required.required()).thenReturn(true);
+    when(noMigrations.orderedStream()).thenAnswer(invocation -> Stream.of(required));
+    when(collection.find()).thenReturn(find);
+    when(find.iterator()).thenAnswer(invocation -> iterator(new Document("_id", 1)));
+
+    assertThrows(IllegalStateException.class, manager(CollScanPolicy.WARN)::migrateRequired);
+    verify(required, never()).apply(any());
+  }
+
+  @Test
+  @DisplayName("Повторяющиеся версии миграций отклоняются")
+  void testDuplicateMigrationVersionRejected() {
+    SchemaMigration duplicate = new TagEntryMigration(10);
+    SchemaMigration clash = new MongoSchemaManager.Migration(2, "другая", db -> {});
+    when(noMigrations.orderedStream()).thenAnswer(invocation -> Stream.of(duplicate, clash));
+
+    assertThrows(IllegalStateException.class, () -> manager(CollScanPolicy.WARN));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static MongoCursor<Document> iterator(Document... docs) {
+    Iterator<Document> source = List.of(docs).iterator();
+    MongoCursor<Document> cursor = mock(MongoCursor.class);
+    when(cursor.hasNext()).thenAnswer(invocation -> source.hasNext());
+    when(cursor.next()).thenAnswer(invocation -> source.next());
+    return cursor;
+  }
+}
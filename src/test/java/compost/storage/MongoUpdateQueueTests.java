@@ -0,0 +1,76 @@
+package compost.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import compost.storage.UpdateQueue.QueuedUpdate;
+import java.util.List;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Проверка очереди обновлений MongoUpdateQueue на сервере MongoDB.")
+public class MongoUpdateQueueTests {
+
+  private TestMongoServer mongo;
+  private MongoUpdateQueue queue;
+
+  @BeforeEach
+  void setUp() {
+    mongo = TestMongoServer.start("tg_bot_queue");
+    queue = new MongoUpdateQueue(mongo.getDatabase());
+  }
+
+  @AfterEach
+  void tearDown() {
+    mongo.close();
+  }
+
+  @Test
+  @DisplayName("Обновление с меньшим update_id, записанное после чтения, не пропускается")
+  void testLateLowerUpdateIdIsPolled() {
+    assertTrue(queue.append(0, 5, -1L, "{}"));
+    List<QueuedUpdate> first = queue.poll(0, 0, 10);
+    assertEquals(List.of(5L), first.stream().map(QueuedUpdate::updateId).toList());
+
+    // Telegram повторил отклонённое обновление 4 уже после 5
+    assertTrue(queue.append(0, 4, -1L, "{}"));
+    List<QueuedUpdate> second = queue.poll(0, first.get(0).seq(), 10);
+    assertEquals(List.of(4L), second.stream().map(QueuedUpdate::updateId).toList());
+
+    assertFalse(queue.append(0, 4, -1L, "{}"), "повтор того же update_id");
+    queue.ack(0, second.get(0).seq());
+    assertEquals(List.of(), queue.poll(0, 0, 10));
+  }
+
+  @Test
+  @DisplayName("Миграция нумерует старую очередь и продолжает номера после позиций аренд")
+  void testSequenceMigration() {
+    mongo
+        .getDatabase()
+        .getCollection(MongoUpdateQueue.COLLECTION)
+        .insertOne(
+            new Document("_id", 120L)
+                .append("partition", 0)
+                .append("chatId", -1L)
+                .append("payload", "{}"));
+    mongo
+        .getDatabase()
+        .getCollection(MongoPartitionLeases.LEASES_COLLECTION)
+        .insertMany(
+            List.of(
+                new Document("_id", 0).append("ackedUpTo", 100L),
+                new Document("_id", 1).append("ackedUpTo", 200L)));
+
+    new UpdateQueueSequenceMigration().apply(mongo.getDatabase());
+
+    assertEquals(List.of(120L), queue.poll(0, 100, 10).stream().map(QueuedUpdate::seq).toList());
+    assertTrue(queue.append(0, 7, -1L, "{}"));
+    assertTrue(queue.append(1, 8, -2L, "{}"));
+    assertEquals(121L, queue.poll(0, 120, 10).get(0).seq());
+    assertEquals(201L, queue.poll(1, 200, 10).get(0).seq());
+  }
+}
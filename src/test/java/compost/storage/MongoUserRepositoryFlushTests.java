@@ -0,0 +1,98 @@
+package compost.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.mongodb.client.MongoCollection;
+import compost.model.UserActivity;
+import java.util.List;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Проверка повтора пакетов активности MongoUserRepository на сервере MongoDB.")
+public class MongoUserRepositoryFlushTests {
+
+  private TestMongoServer mongo;
+  private MongoCollection<Document> users;
+  private MongoUserRepository repository;
+
+  @BeforeEach
+  void setUp() {
+    mongo = TestMongoServer.start("tg_bot_users");
+    users = mongo.getDatabase().getCollection("users");
+    for (MongoSchemaManager.IndexSpec index : MongoSchemaManager.INDEXES) {
+      if (index.collection().equals("users")) {
+        users.createIndex(index.keys(), index.options());
+      }
+    }
+    repository = new MongoUserRepository(mongo.getDatabase(), new UserProfileCache(100, 1));
+  }
+
+  @AfterEach
+  void tearDown() {
+    mongo.close();
+  }
+
+  private int messageCount(long chatId, long userId) {
+    Document user = users.find(new Document("chatId", chatId).append("id", userId)).first();
+    return user.getInteger("messageCount");
+  }
+
+  @Test
+  @DisplayName("Повтор пакета с тем же ID не увеличивает счётчики второй раз")
+  void testRetryWithSameIdIsIdempotent() {
+    UserActivity created = new UserActivity(1L, 10L, "new", "Новый", null, 2);
+    repository.bulkUpsertUsers(1, List.of(created));
+    UserActivity increment = new UserActivity(1L, 10L, "new", "Новый", null, 3);
+    UserActivity other = new UserActivity(1L, 11L, "other", "Другой", null, 1);
+
+    repository.bulkUpsertUsers(2, List.of(increment, other));
+    // Ответ потерян: пакет повторяется целиком. Вставка уже созданного документа даёт ошибку
+    // дубликата ключа, которая признаётся применённой записью.
+    repository.bulkUpsertUsers(2, List.of(increment, other));
+
+    assertEquals(5, messageCount(1L, 10L));
+    assertEquals(1, messageCount(1L, 11L));
+    repository.bulkUpsertUsers(3, List.of(increment));
+    assertEquals(8, messageCount(1L, 10L));
+  }
+
+  @Test
+  @DisplayName("Частичная ошибка возвращает только не записанные элементы пакета")
+  void testPartialFailureReportsOnlyFailedEntries() {
+    // $inc по нечисловому счётчику падает только у второй записи пакета.
+    users.insertOne(new Document("chatId", 2L).append("id", 20L).append("messageCount", "x"));
+    UserActivity ok = new UserActivity(1L, 10L, "ok", "Имя", null, 1);
+    UserActivity broken = new UserActivity(2L, 20L, "broken", "Имя", null, 1);
+
+    PartialFlushException e =
+        assertThrows(
+            PartialFlushException.class, () -> repository.bulkUpsertUsers(7, List.of(ok, broken)));
+
+    assertEquals(List.of(broken), e.getFailed());
+    assertEquals(1, messageCount(1L, 10L));
+  }
+
+  @Test
+  @DisplayName("$inc по пропавшему документу возвращается в повтор, остальные записи применены")
+  void testMissingDocumentIsReported() {
+    UserActivity first = new UserActivity(1L, 10L, "first", "Первый", null, 1);
+    UserActivity second = new UserActivity(1L, 11L, "second", "Второй", null, 1);
+    repository.bulkUpsertUsers(1, List.of(first, second));
+    users.deleteOne(new Document("chatId", 1L).append("id", 10L));
+
+    PartialFlushException e =
+        assertThrows(
+            PartialFlushException.class,
+            () -> repository.bulkUpsertUsers(2, List.of(first, second)));
+
+    assertEquals(List.of(first), e.getFailed());
+    assertEquals(2, messageCount(1L, 11L));
+    // Повтор с тем же ID пакета восстанавливает документ полным upsert
+    repository.bulkUpsertUsers(2, e.getFailed());
+    assertEquals(1, messageCount(1L, 10L));
+  }
+}
@@ -0,0 +1,163 @@
+package compost.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import compost.model.UserActivity;
+import java.util.Collections;
+import java.util.List;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+@DisplayName("Проверка пропуска лишних записей профиля в MongoUserRepository.")
+public class MongoUserRepositoryTests {
+
+  private MongoCollection<Document> collection;
+  private UserProfileCache profileCache;
+  private MongoUserRepository repository;
+  private long flushId;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    collection = mock(MongoCollection.class);
+    MongoDatabase database = mock(MongoDatabase.class);
+    when(database.getCollection("users")).thenReturn(collection);
+    profileCache = new UserProfileCache(100, 1);
+    repository = new MongoUserRepository(database, profileCache);
+  }
+
+  private void flush(UserActivity... activities) {
+    repository.bulkUpsertUsers(flushId++, List.of(activities));
+  }
+
+  private void stubBulkResult(int matched, int upserted) {
+    BulkWriteResult result = mock(BulkWriteResult.class);
+    when(result.getMatchedCount()).thenReturn(matched);
+    when(result.getUpserts())
+        .thenReturn(Collections.nCopies(upserted, mock(BulkWriteUpsert.class)));
+    when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(result);
+  }
+
+  /** Чтение отметок пакета не находит ни одного применённого документа. */
+  @SuppressWarnings("unchecked")
+  private void stubAppliedDocuments() {
+    FindIterable<Document> applied = mock(FindIterable.class);
+    MongoCursor<Document> cursor = mock(MongoCursor.class);
+    when(collection.find(any(Bson.class))).thenReturn(applied);
+    when(applied.projection(any(Bson.class))).thenReturn(applied);
+    when(applied.iterator()).thenReturn(cursor);
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<UpdateOneModel<Document>> lastBulk(int invocations) {
+    ArgumentCaptor<List<WriteModel<Document>>> captor = ArgumentCaptor.forClass(List.class);
+    verify(collection, times(invocations)).bulkWrite(captor.capture(), any(BulkWriteOptions.class));
+    return captor.getValue().stream().map(model -> (UpdateOneModel<Document>) model).toList();
+  }
+
+  @Test
+  @DisplayName("Известный профиль записывается только как $inc без upsert")
+  void testUnchangedProfileIsIncrementOnly() {
+    stubBulkResult(0, 1);
+    flush(new UserActivity(1L, 10L, "nick", "Имя", null, 2));
+    UpdateOneModel<Document> first = lastBulk(1).get(0);
+    assertTrue(first.getOptions().isUpsert());
+    assertTrue(first.getUpdate().toBsonDocument().containsKey("$set"));
+
+    stubBulkResult(1, 0);
+    flush(new UserActivity(1L, 10L, "nick", "Имя", null, 3));
+    UpdateOneModel<Document> second = lastBulk(2).get(0);
+    assertFalse(second.getOptions().isUpsert());
+    assertEquals(
+        Document.parse("{$inc: {messageCount: 3}, $set: {lastFlushId: {$numberLong: '1'}}}")
+            .toBsonDocument(),
+        second.getUpdate().toBsonDocument());
+  }
+
+  @Test
+  @DisplayName("Без инкремента и изменений профиль не пишется")
+  void testUnchangedWithoutIncrementIsSkipped() {
+    stubBulkResult(0, 1);
+    flush(new UserActivity(1L, 10L, "nick", "Имя", null, 1));
+    flush(new UserActivity(1L, 10L, "nick", "Имя", null, 0));
+
+    verify(collection, times(1)).bulkWrite(anyList(), any(BulkWriteOptions.class));
+  }
+
+  @Test
+  @DisplayName("Изменившийся профиль записывается целиком")
+  void testChangedProfileIsUpserted() {
+    stubBulkResult(0, 1);
+    flush(new UserActivity(1L, 10L, "nick", "Имя", null, 1));
+    stubBulkResult(1, 0);
+    flush(new UserActivity(1L, 10L, "new_nick", "Имя", null, 1));
+
+    assertTrue(lastBulk(2).get(0).getOptions().isUpsert());
+  }
+
+  @Test
+  @DisplayName("Ненайденный при $inc документ сбрасывает профиль")
+  void testMissingDocumentForgetsProfile() {
+    stubBulkResult(0, 1);
+    flush(new UserActivity(1L, 10L, "nick", "Имя", null, 1));
+    stubBulkResult(0, 0);
+    stubAppliedDocuments();
+    UserActivity missing = new UserActivity(1L, 10L, "nick", "Имя", null, 1);
+
+    PartialFlushException e = assertThrows(PartialFlushException.class, () -> flush(missing));
+    assertEquals(List.of(missing), e.getFailed());
+    assertFalse(profileCache.isUnchanged(1L, 10L, "nick", "Имя", null));
+  }
+
+  @Test
+  @DisplayName("Неудачная запись не запоминает профиль")
+  void testFailedWriteIsNotRemembered() {
+    when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class)))
+        .thenThrow(new IllegalStateException("mongo"));
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            flush(new UserActivity(1L, 10L, "nick", "Имя", null, 1)));
+
+    assertFalse(profileCache.isUnchanged(1L, 10L, "nick", "Имя", null));
+    verify(collection, never()).updateOne(any(), any(Bson.class));
+  }
+
+  @Test
+  @DisplayName("Отпечаток различает null, пустую строку и границы полей")
+  void testFingerprint() {
+    assertNotEquals(
+        UserProfileCache.fingerprint(null, "a", null),
+        UserProfileCache.fingerprint("", "a", null));
+    assertNotEquals(
+        UserProfileCache.fingerprint("ab", "c", null),
+        UserProfileCache.fingerprint("a", "bc", null));
+    assertEquals(
+        UserProfileCache.fingerprint("nick", "Имя", null),
+        UserProfileCache.fingerprint("nick", "Имя", null));
+  }
+}
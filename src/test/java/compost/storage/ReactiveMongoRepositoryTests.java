@@ -0,0 +1,136 @@
+package compost.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import compost.model.SimpleUser;
+import compost.model.UserActivity;
+import compost.service.TagService.ParsedTag;
+import compost.storage.ActivityBucketRepository.Granularity;
+import compost.util.Constants.TagOperationResult;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Проверка Reactive* репозиториев на сервере MongoDB.")
+public class ReactiveMongoRepositoryTests {
+
+  private static final Long CHAT_ID = -100L;
+
+  private TestMongoServer mongo;
+
+  @BeforeEach
+  void setUp() {
+    mongo = TestMongoServer.start("tg_bot_reactive");
+  }
+
+  @AfterEach
+  void tearDown() {
+    mongo.close();
+  }
+
+  private static <T> T await(CompletionStage<T> stage) {
+    return stage.toCompletableFuture().join();
+  }
+
+  @Test
+  @DisplayName("Пользователи читаются по одному и списком с проекцией на профиль")
+  void testUsers() {
+    new MongoUserRepository(mongo.getDatabase(), new UserProfileCache(100, 1))
+        .bulkUpsertUsers(
+            1,
+            List.of(
+                new UserActivity(CHAT_ID, 1L, "anna", "Анна", null, 3),
+                new UserActivity(CHAT_ID, 2L, "boris", "Борис", "Б", 1),
+                new UserActivity(-200L, 1L, "anna", "Анна", null, 1)));
+    ReactiveMongoUserRepository repository =
+        new ReactiveMongoUserRepository(mongo.getReactiveDatabase());
+
+    SimpleUser anna = await(repository.getUser(CHAT_ID, 1L));
+    assertEquals("anna", anna.getUsername());
+    assertNull(await(repository.getUser(CHAT_ID, 3L)));
+    List<SimpleUser> users = await(repository.getUsers(CHAT_ID, List.of(1L, 2L, 3L)));
+    assertEquals(Set.of(1L, 2L), Set.copyOf(users.stream().map(SimpleUser::getId).toList()));
+    assertEquals(List.of(), await(repository.getUsers(CHAT_ID, List.of())));
+  }
+
+  @Test
+  @DisplayName("Счётчики корзин по часам сообщений суммируются так же, как синхронной версией")
+  void testBucketCounts() {
+    MongoActivityBucketRepository buckets =
+        new MongoActivityBucketRepository(mongo.getDatabase(), 48, 35);
+    Instant now = Instant.parse("2024-06-10T12:30:00Z");
+    Instant hour = Granularity.HOURLY.bucketStart(now);
+    Instant yesterday = hour.minusSeconds(86_400);
+    // Один сброс с сообщениями трёх разных часов
+    Map<Instant, Integer> annaHours = Map.of(yesterday, 2, hour.minusSeconds(3600), 2, hour, 3);
+    buckets.increment(
+        List.of(
+            new UserActivity(CHAT_ID, 1L, "anna", "Анна", null, 7, annaHours),
+            new UserActivity(CHAT_ID, 2L, "boris", "Борис", null, 1, Map.of(yesterday, 1))));
+    ReactiveMongoActivityBucketRepository repository =
+        new ReactiveMongoActivityBucketRepository(mongo.getReactiveDatabase());
+
+    Instant weekStart = Granularity.DAILY.bucketStart(now).minus(6, Granularity.DAILY.unit());
+    Map<Long, Integer> week = await(repository.countsSince(CHAT_ID, Granularity.DAILY, weekStart));
+    assertEquals(Map.of(1L, 7, 2L, 1), week);
+    assertEquals(buckets.countsSince(CHAT_ID, Granularity.DAILY, weekStart), week);
+    Instant today = Granularity.DAILY.bucketStart(now);
+    assertEquals(
+        Map.of(1L, 5), await(repository.countsSince(CHAT_ID, Granularity.DAILY, today)));
+    assertEquals(
+        Map.of(1L, 3), await(repository.countsSince(CHAT_ID, Granularity.HOURLY, hour)));
+  }
+
+  @Test
+  @DisplayName("Теги в документах: набор изменений, чтение по порядку и удаление")
+  void testTagEntries() {
+    ReactiveMongoTagEntryRepository repository =
+        new ReactiveMongoTagEntryRepository(mongo.getReactiveDatabase());
+
+    assertEquals(
+        Map.of("java", TagOperationResult.SUCCESS, "go", TagOperationResult.SUCCESS),
+        await(
+            repository.applyTagChanges(
+                CHAT_ID, List.of(new ParsedTag("java", "язык"), new ParsedTag("go", "")))));
+    assertEquals(
+        Map.of("go", TagOperationResult.UPDATED_DESCRIPTION),
+        await(repository.applyTagChanges(CHAT_ID, List.of(new ParsedTag("go", "тоже")))));
+    assertEquals(
+        List.of("go", "java"), List.copyOf(await(repository.getTagMap(CHAT_ID)).keySet()));
+
+    await(repository.removeTag(CHAT_ID, "java"));
+    assertEquals(Map.of("go", "тоже"), await(repository.getTagMap(CHAT_ID)));
+    assertEquals(Set.of("go"), await(repository.getTags(CHAT_ID)));
+  }
+
+  @Test
+  @DisplayName("Теги массивом в документе чата: чтение и удаление")
+  void testEmbeddedTags() {
+    mongo
+        .getDatabase()
+        .getCollection("tags")
+        .insertOne(
+            new Document("chatId", CHAT_ID)
+                .append(
+                    "tags",
+                    List.of(
+                        new Document("tag", "java").append("description", "язык"),
+                        new Document("tag", "go").append("description", ""))));
+    ReactiveMongoTagRepository repository =
+        new ReactiveMongoTagRepository(mongo.getReactiveDatabase());
+
+    assertEquals(
+        List.of("go", "java"), List.copyOf(await(repository.getTagMap(CHAT_ID)).keySet()));
+    await(repository.removeTag(CHAT_ID, "go"));
+    assertEquals(Map.of("java", "язык"), await(repository.getTagMap(CHAT_ID)));
+    assertEquals(Set.of(), await(repository.getTags(-200L)));
+  }
+}
@@ -0,0 +1,74 @@
+package compost.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.bson.Document;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+@DisplayName("Проверка переноса тегов TagEntryMigration.")
+public class TagEntryMigrationTests {
+
+  private static Document chat(long chatId, String... tags) {
+    List<Document> tagDocs = new ArrayList<>();
+    for (String tag : tags) {
+      tagDocs.add(new Document("tag", tag).append("description", "о " + tag));
+    }
+    return new Document("chatId", chatId).append("tags", tagDocs);
+  }
+
+  @Test
+  @DisplayName("Теги переносятся пачками идемпотентных upsert-ов")
+  @SuppressWarnings("unchecked")
+  void testStreamsInBatches() {
+    MongoDatabase database = mock(MongoDatabase.class);
+    MongoCollection<Document> source = mock(MongoCollection.class);
+    MongoCollection<Document> target = mock(MongoCollection.class);
+    FindIterable<Document> find = mock(FindIterable.class);
+    MongoCursor<Document> cursor = mock(MongoCursor.class);
+    when(database.getCollection("tags")).thenReturn(source);
+    when(database.getCollection(MongoTagEntryRepository.COLLECTION)).thenReturn(target);
+    when(source.find()).thenReturn(find);
+    when(find.batchSize(anyInt())).thenReturn(find);
+    when(find.iterator()).thenReturn(cursor);
+    Iterator<Document> chats =
+        List.of(chat(1L, "#a", "#b", "#c"), new Document("chatId", 2L), chat(3L, "#d", "#e"))
+            .iterator();
+    when(cursor.hasNext()).thenAnswer(invocation -> chats.hasNext());
+    when(cursor.next()).thenAnswer(invocation -> chats.next());
+
+    new TagEntryMigration(2).apply(database);
+
+    ArgumentCaptor<List<WriteModel<Document>>> captor = ArgumentCaptor.forClass(List.class);
+    verify(target, times(3)).bulkWrite(captor.capture(), any(BulkWriteOptions.class));
+    assertEquals(List.of(2, 2, 1), captor.getAllValues().stream().map(List::size).toList());
+    UpdateOneModel<Document> last = (UpdateOneModel<Document>) captor.getValue().get(0);
+    assertEquals(
+        Filters.and(Filters.eq("chatId", 3L), Filters.eq("tag", "#e")).toBsonDocument(),
+        last.getFilter().toBsonDocument());
+    assertEquals(
+        Document.parse("{$setOnInsert: {description: 'о #e'}}").toBsonDocument(),
+        last.getUpdate().toBsonDocument());
+    assertTrue(last.getOptions().isUpsert());
+    verify(cursor).close();
+  }
+}
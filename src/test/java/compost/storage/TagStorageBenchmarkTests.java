@@ -0,0 +1,144 @@
+package compost.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import compost.service.TagService.ParsedTag;
+import compost.storage.codec.BotCodecs;
+import compost.util.Constants.TagOperationResult;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.log4j.Log4j2;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Сравнение раскладок хранения тегов на живой MongoDB. Запускается только при заданном адресе базы,
+ * для замера создаётся и затем удаляется отдельная база:
+ *
+ * <pre>
+ * mvn test -Dtest=TagStorageBenchmarkTests -Dbench.mongo.uri=mongodb://localhost:27017
+ * </pre>
+ */
+@Log4j2
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@EnabledIfSystemProperty(named = "bench.mongo.uri", matches = ".+")
+@DisplayName("Замер раскладок хранения тегов в MongoDB.")
+public class TagStorageBenchmarkTests {
+
+  private static final int[] CHAT_SIZES = {10, 100, 1000, 5000};
+  private static final int ITERATIONS = 200;
+
+  private MongoClient client;
+  private MongoDatabase database;
+
+  @BeforeAll
+  void connect() {
+    client = MongoClients.create(System.getProperty("bench.mongo.uri"));
+    database =
+        client
+            .getDatabase("tg_bot_bench_" + System.currentTimeMillis())
+            .withCodecRegistry(BotCodecs.registry());
+    database.getCollection("tags").createIndex(Indexes.ascending("chatId"));
+    database
+        .getCollection(MongoTagEntryRepository.COLLECTION)
+        .createIndex(Indexes.ascending("chatId", "tag"), new IndexOptions().unique(true));
+  }
+
+  @AfterAll
+  void dropDatabase() {
+    database.drop();
+    client.close();
+  }
+
+  @Test
+  @DisplayName("Встроенный массив против документа на тег")
+  void compareLayouts() {
+    TagRepository embedded = new MongoTagRepository(database);
+    TagRepository document = new MongoTagEntryRepository(database);
+
+    log.info(
+        String.format(
+            "%-9s %6s %13s %13s %13s %13s",
+            "layout", "tags", "getTagMap", "addTag", "updateDesc", "removeTag"));
+    for (int size : CHAT_SIZES) {
+      run("embedded", embedded, size);
+      run("document", document, size);
+    }
+  }
+
+  @Test
+  @DisplayName("applyTagChanges одинаково работает в обеих раскладках")
+  void applyTagChangesMatches() {
+    for (TagRepository repository :
+        List.of(new MongoTagRepository(database), new MongoTagEntryRepository(database))) {
+      long chatId = 42L;
+      repository.addTag(chatId, "#old", "было");
+
+      Map<String, TagOperationResult> outcomes =
+          repository.applyTagChanges(
+              chatId,
+              List.of(
+                  new ParsedTag("#old", "$стало"),
+                  new ParsedTag("#new", "раз"),
+                  new ParsedTag("#new", "два")));
+
+      assertEquals(
+          Map.of(
+              "#old", TagOperationResult.UPDATED_DESCRIPTION, "#new", TagOperationResult.SUCCESS),
+          outcomes);
+      assertEquals(Map.of("#old", "$стало", "#new", "два"), repository.getTagMap(chatId));
+    }
+  }
+
+  private void run(String layout, TagRepository repository, int size) {
+    long chatId = -size;
+    for (int i = 0; i < size; i++) {
+      repository.addTag(chatId, "#tag" + i, "описание " + i);
+    }
+    assertEquals(size, repository.getTagMap(chatId).size());
+
+    long getTagMap = measure(() -> repository.getTagMap(chatId));
+    List<String> added = new ArrayList<>();
+    long addTag =
+        measure(
+            () -> {
+              String tag = "#new" + added.size();
+              added.add(tag);
+              repository.addTag(chatId, tag, "");
+            });
+    long updateDesc =
+        measure(
+            () ->
+                repository.batchUpdateTagDescription(
+                    chatId, List.of(new ParsedTag("#tag" + (size / 2), "новое"))));
+    long removeTag = measure(() -> repository.removeTag(chatId, added.remove(added.size() - 1)));
+
+    log.info(
+        String.format(
+            "%-9s %6d %10d µs %10d µs %10d µs %10d µs",
+            layout, size, getTagMap, addTag, updateDesc, removeTag));
+  }
+
+  /** Средняя длительность операции в микросекундах после прогрева. */
+  private static long measure(Runnable operation) {
+    for (int i = 0; i < ITERATIONS / 10; i++) {
+      operation.run();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      operation.run();
+    }
+    return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / ITERATIONS;
+  }
+}
@@ -0,0 +1,95 @@
+package compost.storage;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+import compost.storage.codec.BotCodecs;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+
+/**
+ * MongoDB для интеграционных тестов хранилищ. По умолчанию поднимается сервер в памяти,
+ * говорящий по протоколу mongod, поэтому тесты идут в обычной сборке. Чтобы проверить на живой
+ * базе, задайте её адрес — тогда для теста создаётся и затем удаляется отдельная база:
+ *
+ * <pre>
+ * mvn test -Dmongo.test.uri=mongodb://localhost:27017
+ * </pre>
+ */
+public final class TestMongoServer implements AutoCloseable {
+
+  public static final String URI_PROPERTY = "mongo.test.uri";
+
+  private final MongoServer server;
+  private final String uri;
+  private final MongoClient client;
+  private final MongoDatabase database;
+  private final com.mongodb.reactivestreams.client.MongoClient reactiveClient;
+
+  private TestMongoServer(MongoServer server, String uri, String databaseName) {
+    this.server = server;
+    this.uri = uri;
+    // Реестр кодеков тот же, что у клиентов приложения (MongoSettings).
+    MongoClientSettings settings =
+        MongoClientSettings.builder()
+            .applyConnectionString(new ConnectionString(uri))
+            .codecRegistry(BotCodecs.registry())
+            .build();
+    this.client = MongoClients.create(settings);
+    this.database = client.getDatabase(databaseName);
+    this.reactiveClient = com.mongodb.reactivestreams.client.MongoClients.create(settings);
+  }
+
+  /**
+   * Подключается к базе из {@value #URI_PROPERTY} или запускает сервер в памяти.
+   *
+   * @param prefix префикс имени тестовой базы
+   */
+  public static TestMongoServer start(String prefix) {
+    String databaseName = prefix + "_" + System.currentTimeMillis();
+    String external = System.getProperty(URI_PROPERTY, "");
+    if (!external.isBlank()) {
+      return new TestMongoServer(null, external, databaseName);
+    }
+    MongoServer server = new MongoServer(new MemoryBackend());
+    String uri = server.bindAndGetConnectionString();
+    return new TestMongoServer(server, uri, databaseName);
+  }
+
+  /** Признак живой MongoDB вместо сервера в памяти. */
+  public boolean isExternal() {
+    return server == null;
+  }
+
+  public String getUri() {
+    return uri;
+  }
+
+  public MongoClient getClient() {
+    return client;
+  }
+
+  public MongoDatabase getDatabase() {
+    return database;
+  }
+
+  /** Та же база через клиент Reactive Streams драйвера. */
+  public com.mongodb.reactivestreams.client.MongoDatabase getReactiveDatabase() {
+    return reactiveClient.getDatabase(database.getName());
+  }
+
+  @Override
+  public void close() {
+    try {
+      database.drop();
+    } finally {
+      reactiveClient.close();
+      client.close();
+      if (server != null) {
+        server.shutdownNow();
+      }
+    }
+  }
+}
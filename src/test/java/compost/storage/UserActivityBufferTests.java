@@ -0,0 +1,211 @@
+package compost.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import compost.model.SimpleUser;
+import compost.model.UserActivity;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.log4j.Log4j2;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+@Log4j2
+@DisplayName("Проверка буфера отложенной записи активности UserActivityBuffer.")
+public class UserActivityBufferTests {
+
+  @Mock private UserRepository userRepository;
+  @Mock private ActivityBucketRepository bucketRepository;
+
+  private static final Instant NOW = Instant.parse("2024-06-10T12:30:00Z");
+  private static final Instant HOUR = Instant.parse("2024-06-10T12:00:00Z");
+
+  private UserActivityBuffer buffer;
+
+  private static User user(long id, String username) {
+    User user = new User();
+    user.setId(id);
+    user.setUserName(username);
+    user.setFirstName("Имя" + id);
+    return user;
+  }
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.openMocks(this);
+    // Большой интервал, чтобы таймер не мешал явным вызовам flush.
+    buffer = new UserActivityBuffer(userRepository, bucketRepository, 60_000, 1_000);
+  }
+
+  @AfterEach
+  void tearDown() {
+    buffer.shutdown();
+  }
+
+  @Test
+  @DisplayName("Инкременты одного пользователя сворачиваются в одну запись")
+  @SuppressWarnings("unchecked")
+  void testIncrementsAreFolded() {
+    buffer.record(1L, user(10L, "old"), true, NOW);
+    buffer.record(1L, user(10L, "new"), true, NOW);
+    buffer.record(1L, user(10L, "new"), false, NOW);
+    buffer.record(1L, user(11L, "other"), false, NOW);
+    buffer.record(2L, user(10L, "new"), true, NOW);
+
+    assertEquals(3, buffer.flush());
+
+    ArgumentCaptor<Collection<UserActivity>> captor = ArgumentCaptor.forClass(Collection.class);
+    verify(userRepository).bulkUpsertUsers(anyLong(), captor.capture());
+    List<UserActivity> batch = new ArrayList<>(captor.getValue());
+    batch.sort(Comparator.comparing(UserActivity::chatId).thenComparing(UserActivity::userId));
+    log.info("batch: {}", batch);
+
+    assertEquals(new UserActivity(1L, 10L, "new", "Имя10", null, 2, Map.of(HOUR, 2)), batch.get(0));
+    assertEquals(new UserActivity(1L, 11L, "other", "Имя11", null, 0), batch.get(1));
+    assertEquals(new UserActivity(2L, 10L, "new", "Имя10", null, 1, Map.of(HOUR, 1)), batch.get(2));
+    assertEquals(0, buffer.getStats().pending());
+    assertEquals(3, buffer.getStats().lastFlushSize());
+    // Тот же пакет уходит в корзины активности
+    verify(bucketRepository).increment(eq(captor.getValue()));
+  }
+
+  @Test
+  @DisplayName("Инкременты раскладываются по часу отправки сообщений, а не по времени сброса")
+  @SuppressWarnings("unchecked")
+  void testIncrementsKeepMessageHour() {
+    Instant earlier = Instant.parse("2024-06-10T09:59:59Z");
+    buffer.record(1L, user(10L, "u"), true, earlier);
+    buffer.record(1L, user(10L, "u"), true, NOW);
+    buffer.record(1L, user(10L, "u"), true, NOW);
+
+    buffer.flush();
+
+    ArgumentCaptor<Collection<UserActivity>> captor = ArgumentCaptor.forClass(Collection.class);
+    verify(bucketRepository).increment(captor.capture());
+    UserActivity activity = captor.getValue().iterator().next();
+    assertEquals(3, activity.increment());
+    assertEquals(
+        Map.of(Instant.parse("2024-06-10T09:00:00Z"), 1, HOUR, 2), activity.hourly());
+  }
+
+  @Test
+  @DisplayName("Ошибка записи корзин не возвращает уже записанную активность в буфер")
+  void testFailedBucketWriteKeepsUsersFlushed() {
+    buffer.record(1L, user(10L, "u"), true, NOW);
+    doThrow(new IllegalStateException("mongo down"))
+        .when(bucketRepository)
+        .increment(anyCollection());
+
+    assertEquals(1, buffer.flush());
+
+    verify(userRepository).bulkUpsertUsers(anyLong(), anyCollection());
+    assertEquals(0, buffer.getStats().pending());
+    assertEquals(0, buffer.getStats().failedFlushes());
+    assertEquals(1, buffer.getStats().failedBucketWrites());
+  }
+
+  @Test
+  @DisplayName("При ошибке записи активность возвращается в буфер")
+  void testFailedFlushRestoresActivity() {
+    buffer.record(1L, user(10L, "u"), true, NOW);
+    doThrow(new IllegalStateException("mongo down"))
+        .when(userRepository)
+        .bulkUpsertUsers(anyLong(), anyCollection());
+
+    assertThrows(IllegalStateException.class, buffer::flush);
+    buffer.record(1L, user(10L, "u"), true, NOW);
+
+    SimpleUser pending = buffer.peekUser(1L, 10L);
+    assertEquals("u", pending.getUsername());
+    assertEquals(1, buffer.getStats().pending());
+    assertEquals(1, buffer.getStats().failedFlushes());
+  }
+
+  @Test
+  @DisplayName("Неподтверждённый пакет повторяется целиком с тем же ID до новых записей")
+  @SuppressWarnings("unchecked")
+  void testUnconfirmedBatchIsRetriedWithSameId() {
+    buffer.record(1L, user(10L, "u"), true, NOW);
+    doThrow(new IllegalStateException("timeout"))
+        .doNothing()
+        .when(userRepository)
+        .bulkUpsertUsers(anyLong(), anyCollection());
+
+    assertThrows(IllegalStateException.class, buffer::flush);
+    assertEquals(1, buffer.getStats().unconfirmed());
+    buffer.record(1L, user(11L, "v"), true, NOW);
+    assertEquals(2, buffer.flush());
+
+    ArgumentCaptor<Long> ids = ArgumentCaptor.forClass(Long.class);
+    ArgumentCaptor<Collection<UserActivity>> batches = ArgumentCaptor.forClass(Collection.class);
+    verify(userRepository, times(3)).bulkUpsertUsers(ids.capture(), batches.capture());
+    List<Long> flushIds = ids.getAllValues();
+    assertEquals(flushIds.get(0), flushIds.get(1));
+    assertNotEquals(flushIds.get(1), flushIds.get(2));
+    assertEquals(batches.getAllValues().get(0), batches.getAllValues().get(1));
+    assertEquals(
+        List.of(new UserActivity(1L, 11L, "v", "Имя11", null, 1, Map.of(HOUR, 1))),
+        batches.getAllValues().get(2));
+    assertEquals(0, buffer.getStats().unconfirmed());
+    // Корзины получают каждый пакет один раз — после подтверждения
+    verify(bucketRepository, times(2)).increment(anyCollection());
+  }
+
+  @Test
+  @DisplayName("При частичной ошибке повторяются только не записанные элементы пакета")
+  void testPartialFailureRetriesOnlyFailedEntries() {
+    buffer.record(1L, user(10L, "ok"), true, NOW);
+    buffer.record(1L, user(11L, "failed"), true, NOW);
+    UserActivity failed = new UserActivity(1L, 11L, "failed", "Имя11", null, 1, Map.of(HOUR, 1));
+    UserActivity written = new UserActivity(1L, 10L, "ok", "Имя10", null, 1, Map.of(HOUR, 1));
+    doThrow(new PartialFlushException(List.of(failed), null))
+        .doNothing()
+        .when(userRepository)
+        .bulkUpsertUsers(anyLong(), anyCollection());
+
+    assertThrows(PartialFlushException.class, buffer::flush);
+    assertEquals(1, buffer.getStats().unconfirmed());
+    assertEquals("failed", buffer.peekUser(1L, 11L).getUsername());
+    // Пакет мог быть применён сервером — в отложенную активность чата он не входит
+    assertEquals(List.of(), buffer.pendingForChat(1L));
+    assertEquals(1, buffer.flush());
+
+    InOrder order = inOrder(userRepository, bucketRepository);
+    ArgumentCaptor<Long> id = ArgumentCaptor.forClass(Long.class);
+    order.verify(userRepository).bulkUpsertUsers(id.capture(), anyCollection());
+    order.verify(bucketRepository).increment(eq(List.of(written)));
+    order.verify(userRepository).bulkUpsertUsers(eq(id.getValue()), eq(List.of(failed)));
+    order.verify(bucketRepository).increment(eq(List.of(failed)));
+    assertEquals(0, buffer.getStats().unconfirmed());
+  }
+
+  @Test
+  @DisplayName("Пустой буфер не обращается к хранилищу")
+  void testEmptyFlush() {
+    assertEquals(0, buffer.flush());
+    assertNull(buffer.peekUser(1L, 1L));
+    verify(userRepository, never()).bulkUpsertUsers(anyLong(), anyCollection());
+  }
+}
@@ -0,0 +1,90 @@
+package compost.storage.codec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import compost.model.ChatTags;
+import compost.model.SimpleUser;
+import compost.model.TagEntry;
+import compost.storage.MongoUserRepository.RankedUser;
+import java.util.List;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Проверка кодеков BotCodecs.")
+public class BotCodecsTests {
+
+  private static <T> T decode(Document document, Class<T> type) {
+    Codec<T> codec = BotCodecs.registry().get(type);
+    return new RawBsonDocument(document, new DocumentCodec()).decode(codec);
+  }
+
+  private static Document userDocument() {
+    return new Document("_id", new ObjectId())
+        .append("chatId", -100L)
+        .append("id", 42L)
+        .append("username", null)
+        .append("firstName", "Имя")
+        .append("lastName", "Фамилия")
+        .append("messageCount", 7)
+        .append("legacy", new Document("nested", List.of(1, 2, 3)));
+  }
+
+  @Test
+  @DisplayName("SimpleUser читается из полного документа, лишние поля пропускаются")
+  void testSimpleUser() {
+    SimpleUser user = decode(userDocument(), SimpleUser.class);
+
+    assertEquals(42L, user.getId());
+    assertNull(user.getUsername());
+    assertEquals("Имя", user.getFirstName());
+    assertEquals("Фамилия", user.getLastName());
+  }
+
+  @Test
+  @DisplayName("RankedUser читает messageCount в int32 и int64, ранг остаётся 0")
+  void testRankedUser() {
+    RankedUser int32 = decode(userDocument(), RankedUser.class);
+    RankedUser int64 = decode(userDocument().append("messageCount", 9L), RankedUser.class);
+
+    assertEquals(7, int32.messageCount());
+    assertEquals(9, int64.messageCount());
+    assertEquals(0, int32.rank());
+    assertEquals(42L, int32.user().getId());
+  }
+
+  @Test
+  @DisplayName("Массив tags встроенного хранения читается в ChatTags")
+  void testChatTags() {
+    Document chat =
+        new Document("_id", new ObjectId())
+            .append("chatId", -100L)
+            .append(
+                "tags",
+                List.of(
+                    new Document("tag", "#java").append("description", "язык"),
+                    new Document("tag", "#maven").append("description", "")));
+
+    ChatTags tags = decode(chat, ChatTags.class);
+
+    assertEquals(
+        List.of(new TagEntry("#java", "язык"), new TagEntry("#maven", "")), tags.tags());
+    assertEquals(List.of(), decode(new Document("chatId", 1L), ChatTags.class).tags());
+  }
+
+  @Test
+  @DisplayName("Запись и чтение TagEntry дают исходное значение")
+  void testTagEntryRoundTrip() {
+    TagEntry entry = new TagEntry("#tag", null);
+    Document encoded =
+        Document.parse(
+            new RawBsonDocument(entry, BotCodecs.registry().get(TagEntry.class)).toJson());
+
+    assertEquals(entry, decode(encoded, TagEntry.class));
+  }
+}
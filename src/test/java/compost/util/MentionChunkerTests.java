@@ -0,0 +1,72 @@
+package compost.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import compost.model.SimpleUser;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Проверка упаковки упоминаний MentionChunker.")
+public class MentionChunkerTests {
+
+  private static final String HEADER = MessageBuilder.mentionAllHeader();
+
+  private final List<String> sent = new ArrayList<>();
+
+  private static SimpleUser user(long id) {
+    return id % 2 == 0
+        ? new SimpleUser(id, "user" + id, null, null)
+        : new SimpleUser(id, null, "Имя" + id, "Фамилия");
+  }
+
+  @Test
+  @DisplayName("Небольшой чат помещается в одно сообщение, как и раньше")
+  void testSingleChunk() {
+    List<SimpleUser> users = List.of(user(1), user(2), user(3));
+    MentionChunker chunker = new MentionChunker(HEADER, sent::add);
+    users.forEach(chunker::add);
+
+    assertEquals(1, chunker.finish());
+    assertEquals(List.of(MessageBuilder.mentionAll(users)), sent);
+  }
+
+  @Test
+  @DisplayName("Большой чат делится на сообщения в пределах длины и числа упоминаний")
+  void testLimits() {
+    int total = 10_000;
+    MentionChunker chunker = new MentionChunker(HEADER, 1000, 30, sent::add);
+    for (long id = 1; id <= total; id++) {
+      chunker.add(user(id));
+    }
+    int chunks = chunker.finish();
+
+    assertEquals(sent.size(), chunks);
+    assertTrue(sent.get(0).startsWith(HEADER));
+    int mentions = 0;
+    StringBuilder all = new StringBuilder();
+    for (String chunk : sent) {
+      assertTrue(chunk.length() <= 1000, chunk);
+      int inChunk = chunk.strip().split(" (?=@|<a )").length;
+      assertTrue(inChunk <= 30, chunk);
+      mentions += inChunk;
+      all.append(chunk.startsWith(HEADER) ? chunk.substring(HEADER.length()) : chunk);
+    }
+    assertEquals(total, mentions);
+
+    StringBuilder expected = new StringBuilder();
+    for (long id = 1; id <= total; id++) {
+      expected.append(MessageBuilder.mention(user(id))).append(' ');
+    }
+    assertEquals(expected.toString(), all.toString());
+  }
+
+  @Test
+  @DisplayName("Без участников ничего не отправляется")
+  void testEmpty() {
+    assertEquals(0, new MentionChunker(HEADER, sent::add).finish());
+    assertTrue(sent.isEmpty());
+  }
+}
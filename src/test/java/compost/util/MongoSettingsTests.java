@@ -0,0 +1,111 @@
+package compost.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCompressor;
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionId;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import compost.util.MongoSettings.PoolWaitListener;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+@DisplayName("Проверка настроек клиента MongoSettings.")
+public class MongoSettingsTests {
+
+  private static final String URI = "mongodb://u:p@localhost:27017/d";
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  @Test
+  @DisplayName("Свойства бота попадают в пул, таймауты, сжатие и повтор записей")
+  void testBuild() {
+    MongoSettings settings =
+        new MongoSettings(3, 30, 60_000, 1_500, 4_000, 8_000, 3_000, "zstd, snappy", false);
+
+    MongoClientSettings client = settings.build(URI, registry);
+
+    assertEquals(3, client.getConnectionPoolSettings().getMinSize());
+    assertEquals(30, client.getConnectionPoolSettings().getMaxSize());
+    assertEquals(
+        60_000, client.getConnectionPoolSettings().getMaxConnectionIdleTime(TimeUnit.MILLISECONDS));
+    assertEquals(1_500, client.getConnectionPoolSettings().getMaxWaitTime(TimeUnit.MILLISECONDS));
+    assertEquals(4_000, client.getSocketSettings().getConnectTimeout(TimeUnit.MILLISECONDS));
+    assertEquals(8_000, client.getSocketSettings().getReadTimeout(TimeUnit.MILLISECONDS));
+    assertEquals(
+        3_000, client.getClusterSettings().getServerSelectionTimeout(TimeUnit.MILLISECONDS));
+    assertEquals(
+        List.of("zstd", "snappy"),
+        client.getCompressorList().stream().map(MongoCompressor::getName).toList());
+    assertEquals(false, client.getRetryWrites());
+    assertEquals(2, client.getConnectionPoolSettings().getConnectionPoolListeners().size());
+    assertEquals(1, client.getCommandListeners().size());
+  }
+
+  @Test
+  @DisplayName("Клиент схемы получает свой таймаут чтения и не держит соединения")
+  void testBuildForSchema() {
+    MongoSettings settings =
+        new MongoSettings(3, 30, 60_000, 1_500, 4_000, 8_000, 0, 3_000, "zstd", false);
+
+    MongoClientSettings client = settings.buildForSchema(URI, registry);
+
+    assertEquals(0, client.getSocketSettings().getReadTimeout(TimeUnit.MILLISECONDS));
+    assertEquals(0, client.getConnectionPoolSettings().getMinSize());
+    assertEquals(30, client.getConnectionPoolSettings().getMaxSize());
+    MongoClientSettings regular = settings.build(URI, registry);
+    assertEquals(8_000, regular.getSocketSettings().getReadTimeout(TimeUnit.MILLISECONDS));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"", "none", " none "})
+  @DisplayName("Пустой список или none отключают сжатие")
+  void testNoCompression(String value) {
+    assertTrue(MongoSettings.parseCompressors(value).isEmpty());
+  }
+
+  @Test
+  @DisplayName("Неизвестный алгоритм сжатия или пул min > max останавливают запуск")
+  void testInvalid() {
+    assertThrows(IllegalArgumentException.class, () -> MongoSettings.parseCompressors("lz4"));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new MongoSettings(10, 5, 0, 0, 0, 0, 0, "zlib", true));
+  }
+
+  @Test
+  @DisplayName("Ожидание соединения из пула пишется в таймер с исходом")
+  void testPoolWaitListener() {
+    ConnectionPoolListener listener = new PoolWaitListener(registry);
+    ServerId serverId = new ServerId(new ClusterId(), new ServerAddress());
+    listener.connectionCheckedOut(
+        new ConnectionCheckedOutEvent(
+            new ConnectionId(serverId), 1, TimeUnit.MILLISECONDS.toNanos(5)));
+    listener.connectionCheckOutFailed(
+        new ConnectionCheckOutFailedEvent(
+            serverId,
+            2,
+            ConnectionCheckOutFailedEvent.Reason.TIMEOUT,
+            TimeUnit.MILLISECONDS.toNanos(2_000)));
+
+    Timer acquired = registry.get("mongodb.driver.pool.wait").tag("outcome", "acquired").timer();
+    Timer timeout = registry.get("mongodb.driver.pool.wait").tag("outcome", "timeout").timer();
+    assertEquals(1, acquired.count());
+    assertEquals(5, acquired.totalTime(TimeUnit.MILLISECONDS), 0.001);
+    assertEquals(1, timeout.count());
+    assertEquals(2_000, timeout.totalTime(TimeUnit.MILLISECONDS), 0.001);
+  }
+}
@@ -0,0 +1,270 @@
+package compost.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import compost.util.OutboundMessageQueue.OutboundStats;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import lombok.extern.log4j.Log4j2;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.ResponseParameters;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+@Log4j2
+@DisplayName("Проверка очереди исходящих сообщений OutboundMessageQueue.")
+public class OutboundMessageQueueTests {
+
+  private OutboundMessageQueue queue;
+
+  private static SendMessage message(long chatId, String text) {
+    return new SendMessage(String.valueOf(chatId), text);
+  }
+
+  private static TelegramApiRequestException requestException(int code, Integer retryAfter) {
+    TelegramApiRequestException e = mock(TelegramApiRequestException.class);
+    when(e.getErrorCode()).thenReturn(code);
+    when(e.getParameters())
+        .thenReturn(retryAfter == null ? null : new ResponseParameters(null, retryAfter));
+    return e;
+  }
+
+  private OutboundMessageQueue newQueue(TelegramSender sender) {
+    return newQueue(sender, Ticker.systemTicker());
+  }
+
+  private OutboundMessageQueue newQueue(TelegramSender sender, Ticker ticker) {
+    OutboundMessageQueue q =
+        new OutboundMessageQueue(sender, 30, 20, 1, 100, 3, 10, 50, 2, 2, 1000, ticker);
+    q.start();
+    return q;
+  }
+
+  private void awaitStats(Predicate<OutboundStats> condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.test(queue.getStats()) && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    log.info("stats: {}", queue.getStats());
+    assertTrue(condition.test(queue.getStats()));
+  }
+
+  @AfterEach
+  void tearDown() {
+    queue.shutdown();
+  }
+
+  @Test
+  @DisplayName("Сообщения одного чата отправляются по порядку")
+  void testOrderWithinChat() throws InterruptedException {
+    List<String> sent = new CopyOnWriteArrayList<>();
+    CountDownLatch done = new CountDownLatch(5);
+    queue =
+        newQueue(
+            method -> {
+              sent.add(((SendMessage) method).getText());
+              done.countDown();
+              return null;
+            });
+
+    for (int i = 0; i < 5; i++) {
+      assertTrue(queue.enqueue(-1L, message(-1L, "m" + i)));
+    }
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(List.of("m0", "m1", "m2", "m3", "m4"), sent);
+  }
+
+  @Test
+  @DisplayName("Ответ 429 откладывает повтор на retry_after секунд")
+  void testRetryAfterIsHonoured() throws InterruptedException {
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch done = new CountDownLatch(1);
+    long[] firstAt = new long[1];
+    long[] secondAt = new long[1];
+    queue =
+        newQueue(
+            method -> {
+              if (calls.incrementAndGet() == 1) {
+                firstAt[0] = System.nanoTime();
+                throw requestException(429, 1);
+              }
+              secondAt[0] = System.nanoTime();
+              done.countDown();
+              return null;
+            });
+
+    queue.enqueue(-1L, message(-1L, "text"));
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    long waitedMs = TimeUnit.NANOSECONDS.toMillis(secondAt[0] - firstAt[0]);
+    log.info("Повтор после 429 через {} мс", waitedMs);
+    assertTrue(waitedMs >= 950);
+    awaitStats(stats -> stats.retried() == 1 && stats.sent() == 1);
+  }
+
+  @Test
+  @DisplayName("Ответы 429 в нескольких чатах приостанавливают отправку во все чаты")
+  void testThrottlingInSeveralChatsPausesAll() throws InterruptedException {
+    CountDownLatch throttled = new CountDownLatch(2);
+    CountDownLatch otherSent = new CountDownLatch(1);
+    long[] otherSentAt = new long[1];
+    AtomicInteger throttledCalls = new AtomicInteger();
+    queue =
+        newQueue(
+            method -> {
+              String chatId = ((SendMessage) method).getChatId();
+              if (!chatId.equals("-3") && throttledCalls.incrementAndGet() <= 2) {
+                throttled.countDown();
+                throw requestException(429, 1);
+              }
+              if (chatId.equals("-3")) {
+                otherSentAt[0] = System.nanoTime();
+                otherSent.countDown();
+              }
+              return null;
+            });
+
+    queue.enqueue(-1L, message(-1L, "a"));
+    queue.enqueue(-2L, message(-2L, "b"));
+    assertTrue(throttled.await(5, TimeUnit.SECONDS));
+    long enqueuedAt = System.nanoTime();
+    queue.enqueue(-3L, message(-3L, "c"));
+
+    assertTrue(otherSent.await(5, TimeUnit.SECONDS));
+    long waitedMs = TimeUnit.NANOSECONDS.toMillis(otherSentAt[0] - enqueuedAt);
+    log.info("Сообщение в третий чат ушло через {} мс", waitedMs);
+    assertTrue(waitedMs >= 800);
+    awaitStats(stats -> stats.globalPauses() == 1 && stats.sent() == 3);
+  }
+
+  @Test
+  @DisplayName("Серия сообщений берётся из источника по одному по мере отправки")
+  void testSeriesIsPulledLazily() throws InterruptedException {
+    List<String> sent = new CopyOnWriteArrayList<>();
+    CountDownLatch firstSending = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    queue =
+        newQueue(
+            method -> {
+              sent.add(((SendMessage) method).getText());
+              firstSending.countDown();
+              try {
+                release.await(5, TimeUnit.SECONDS);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              return null;
+            });
+    AtomicInteger pulled = new AtomicInteger();
+    Iterator<SendMessage> series =
+        List.of("m0", "m1", "m2").stream()
+            .map(text -> message(-1L, text))
+            .peek(message -> pulled.incrementAndGet())
+            .iterator();
+
+    assertTrue(queue.enqueueAll(-1L, series));
+    assertTrue(firstSending.await(5, TimeUnit.SECONDS));
+    assertEquals(1, pulled.get());
+    release.countDown();
+
+    awaitStats(stats -> stats.sent() == 3 && stats.queued() == 0);
+    assertEquals(List.of("m0", "m1", "m2"), sent);
+  }
+
+  @Test
+  @DisplayName("Неисправимая ошибка не повторяется")
+  void testBadRequestIsDropped() throws InterruptedException {
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch next = new CountDownLatch(1);
+    queue =
+        newQueue(
+            method -> {
+              if (calls.incrementAndGet() == 1) {
+                throw requestException(400, null);
+              }
+              next.countDown();
+              return null;
+            });
+
+    queue.enqueue(5L, message(5L, "bad"));
+    queue.enqueue(6L, message(6L, "good"));
+
+    assertTrue(next.await(5, TimeUnit.SECONDS));
+    awaitStats(stats -> stats.failed() == 1 && stats.sent() == 1);
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  @DisplayName("Переполненная очередь отбрасывает сообщения")
+  void testQueueLimit() {
+    TelegramSender blocked = mock(TelegramSender.class);
+    queue =
+        new OutboundMessageQueue(
+            blocked, 30, 20, 1, 1, 3, 10, 50, 1, 2, 1000, Ticker.systemTicker());
+
+    assertTrue(queue.enqueue(1L, message(1L, "first")));
+    assertFalse(queue.enqueue(1L, message(1L, "second")));
+    assertEquals(1, queue.getStats().rejected());
+  }
+
+  @Test
+  @DisplayName("Простаивающая очередь чата удаляется только после восстановления лимита")
+  void testIdleLaneIsRetired() throws InterruptedException {
+    AtomicLong now = new AtomicLong();
+    List<String> sent = new CopyOnWriteArrayList<>();
+    queue =
+        newQueue(
+            method -> {
+              sent.add(((SendMessage) method).getText());
+              return null;
+            },
+            now::get);
+
+    queue.enqueue(7L, message(7L, "first"));
+    awaitStats(stats -> stats.sent() == 1 && stats.queued() == 0);
+
+    queue.retireIdleLanes();
+    assertEquals(1, queue.getStats().lanes(), "токен чата ещё не восстановился");
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    queue.retireIdleLanes();
+    assertEquals(0, queue.getStats().lanes());
+
+    queue.enqueue(7L, message(7L, "second"));
+    awaitStats(stats -> stats.sent() == 2);
+    assertEquals(List.of("first", "second"), sent);
+  }
+
+  @Test
+  @DisplayName("Узел кластера отправляет не больше своей доли общего лимита")
+  void testGlobalShareLimitsRate() throws InterruptedException {
+    AtomicLong now = new AtomicLong();
+    queue = newQueue(method -> null, now::get);
+    // 3 из 30 сообщений в секунду: два партнёра по кластеру забрали остальное
+    queue.setGlobalShare(0.1);
+
+    for (long chatId = 1; chatId <= 5; chatId++) {
+      queue.enqueue(chatId, message(chatId, "hi"));
+    }
+    awaitStats(stats -> stats.sent() == 3);
+    TimeUnit.MILLISECONDS.sleep(100);
+    assertEquals(3, queue.getStats().sent());
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    awaitStats(stats -> stats.sent() == 5);
+  }
+}